@@ -15,6 +15,7 @@
 '''
 from datetime import date, datetime, timedelta
 import decimal
+import struct
 import numpy as np
 import pandas as pd
 
@@ -37,6 +38,19 @@ class SingleResultSet:
         timedelta: np.timedelta64
     }
 
+    # the number of rows transferred from Java in a single call
+    columnar_chunk_size = 65536
+
+    # the kinds of columns in the format written by
+    # org.verdictdb.commons.VerdictResultColumnarWriter
+    _columnar_magic = 0x56444243
+    _kind_long = 1
+    _kind_double = 2
+    _kind_boolean = 3
+    _kind_string = 4
+    _kind_decimal = 5
+    _kind_bytes = 6
+
     def __init__(self, heading, column_types, rows, verdict_context):
         self._verdict_context = verdict_context
         # (heading, column_inttypes, column_types, rows) = self._read_all(resultset)
@@ -82,146 +96,153 @@ class SingleResultSet:
             columns = ['empty']
         return pd.DataFrame(np.array(rows), columns=columns)
 
-    @classmethod
-    def _read_value(cls, resultset, index, col_type, verdict_context):
-        dbtype = verdict_context.get_dbtype()
-        if dbtype == 'mysql':
-            return cls._read_value_mysql(resultset, index, col_type)
-        elif dbtype == 'presto':
-            return cls._read_value_presto(resultset, index, col_type)
-        else:
-            raise NotImplementedError
+    _type_to_read_in_str_for_presto = set(['decimal', 'date', 'timestamp'])
 
     @classmethod
-    def _read_value_presto(cls, resultset, index, col_type):
-        """
-        Type conversion rule (Presto):
-        'tinyint'    => int
-        'boolean'    => int
-        'smallint'   => int
-        'integer'    => int
-        'bigint'     => int
+    def _convert_str_presto(cls, value_str, col_type):
+        """Converts the str of a Presto value
+
+        Type conversion rule (Presto); the other types are read as they are:
         'decimal'    => float
-        'real'       => float
-        'double'     => float
         'date'       => str
         'timestamp'  => str
-        'char'       => str
-        'varchar'    => str
         """
-        type_to_read_in_str_for_presto = set(['decimal', 'date', 'timestamp'])
-
-        if col_type in type_to_read_in_str_for_presto:
-            value_str = resultset.getString(index)
-            if value_str is None:
-                return None
-
-            if col_type == 'decimal':
-                return float(value_str)
-            elif col_type == 'date':
-                return value_str
-            elif col_type == 'timestamp':
-                return value_str[:17] + '%06.3f'%float(value_str[18:])
-            else:
-                return None     # not supposed to reach here
+        if value_str is None:
+            return None
+
+        if col_type == 'decimal':
+            return float(value_str)
+        elif col_type == 'date':
+            return value_str
+        elif col_type == 'timestamp':
+            return value_str[:17] + '%06.3f'%float(value_str[18:])
+        else:
+            return None     # not supposed to reach here
 
-        return resultset.getValue(index)
+    _type_to_read_in_str_for_mysql = set(['date', 'timestamp', 'time', 'bigint'])
 
     @classmethod
-    def _read_value_mysql(cls, resultset, index, col_type):
-        """Reads the value in a type-sensitive way
+    def _convert_str_mysql(cls, value_str, col_type):
+        """Converts the str of a MySQL value
 
-        Due to the reliance on the underlying JDBC library, we cannot always distinguish the exact
-        type of the underlying data; we can only set the type according to the type indentifier as
-        indicated by the JDBC library itself. For example, MySQL's library does not distinguish bit and
-        boolean by passing -7 for both types while their actual meanings are different and they are
-        separate types defined in java.sql.Types.
+        Time-related Java objects would be read as py4j.JavaObject; thus, they are read as str and
+        converted to an appropriate python object. The other types are read as they are.
 
         Type conversion rule (MySQL):
-        'bit'                     => boolean,   # due to MySQL driver bug ('bit' is treated as boolean)
-        'tinyint'                 => int,
-        'bool'                    => boolean,
-        'smallint'                => int,
-        'medimumInteger'          => int,
-        'int'                     => int,
-        'integer                  => int,
-        'bigint'                  => int,
-        'decimal'                 => decimal.Decimal,
-        'dec'                     => decimal.Decimal,
-        'real'                    => float,
-        'double'                  => float,
-        'doubleprecision'         => float,
-        'date'      => JavaObject => datetime.date,
-        'datetime'  => JavaObject => datetime.datetime,
-        'timestamp' => JavaObject => datetime.datetime,
-        'time'      => JavaObject => datetime.timedelta,
-        'year(2)'   => JavaObject => datetime.date,
-        'year(4)'   => JavaObject => datetime.date,
-        'char'                    => str,
-        'varchar'                 => str,
-        'binary'                  => bytes,
-        'varbinary'               => bytes,
-        'tinyblob'                => bytes,
-        'tinytext'                => str,
-        'blob'                    => bytes,
-        'text'                    => str,
-        'mediumBlob'              => bytes,
-        'medimumText'             => str,
-        'longBlob'                => bytes,
-        'longText'                => str,
-        'enumCol'                 => str,
-        'setCol'                  => str
-
-        Time-related Java objects are read as py4j.JavaObject by default. To avoid this, we read
-        them as str and convert to an appropriate python object.
-
-        Args
-            resultset: the Java result set currently in process
-            index: zero-based index of the column to read
-            col_type: column type in str
+        'date'      => datetime.date
+        'timestamp' => datetime.datetime
+        'time'      => datetime.timedelta
+        'bigint'    => int
         """
-        type_to_read_in_str_for_mysql = set(['date', 'timestamp', 'time', 'bigint'])
-
-        if col_type in type_to_read_in_str_for_mysql:
-            value_str = resultset.getString(index)
-            if value_str is None:
-                return None
-
-            if col_type == 'date':
-                return datetime.strptime(value_str, "%Y-%m-%d").date()
-            elif col_type == 'timestamp':
-                value_str = value_str[:19]      # 19 == len('2018-12-31 00:00:01')
-                return datetime.strptime(value_str, "%Y-%m-%d %H:%M:%S")
-            elif col_type == 'time':
-                t = datetime.strptime(value_str, "%H:%M:%S")
-                return timedelta(hours=t.hour, minutes=t.minute, seconds=t.second)
-            elif col_type == 'bigint':
-                return int(value_str)
-            else:
-                return None         # not supposed to reach here
-        # if col_type == 'bit':
-        #     value = resultset.getByte(index)
-        #     return value        # this will return int 0 or int 1
+        if value_str is None:
+            return None
+
+        if col_type == 'date':
+            return datetime.strptime(value_str, "%Y-%m-%d").date()
+        elif col_type == 'timestamp':
+            value_str = value_str[:19]      # 19 == len('2018-12-31 00:00:01')
+            return datetime.strptime(value_str, "%Y-%m-%d %H:%M:%S")
+        elif col_type == 'time':
+            t = datetime.strptime(value_str, "%H:%M:%S")
+            return timedelta(hours=t.hour, minutes=t.minute, seconds=t.second)
+        elif col_type == 'bigint':
+            return int(value_str)
         else:
-            return resultset.getValue(index)
+            return None         # not supposed to reach here
 
     @classmethod
     def _read_all(cls, resultset, verdict_context):
+        """Reads the result in chunks, each of which is transferred in a single call
+
+        Each chunk is serialized column by column on the Java side (see
+        VerdictSingleResult.toColumnarBytes()); the values of some types are then converted from
+        their str (see _str_converter()).
+        """
         column_count = resultset.getColumnCount()
         heading = []          # column heading
         column_inttypes = []  # column types in java.sql.Types
         column_types = []     # column type
-        rows = []             # data in the table
+        columns = [[] for i in range(column_count)]
 
         for i in range(column_count):
             heading.append(resultset.getColumnName(i))
             column_inttypes.append(resultset.getColumnType(i))
             column_types.append(resultset.getColumnTypeName(i))
 
-        while (resultset.next()):
-            row = []
+        converters = [cls._str_converter(verdict_context, t) for t in column_types]
+        while True:
+            (row_count, chunk) = cls._decode_columnar(
+                resultset.toColumnarBytes(cls.columnar_chunk_size))
+            if row_count == 0:
+                break
             for i in range(column_count):
-                row.append(cls._read_value(resultset, i, column_types[i], verdict_context))
-            rows.append(row)
+                values = chunk[i]
+                if converters[i] is not None:
+                    values = [None if v is None else converters[i](str(v)) for v in values]
+                columns[i].extend(values)
 
+        rows = [list(row) for row in zip(*columns)]
         return (heading, column_inttypes, column_types, rows)
+
+    @classmethod
+    def _str_converter(cls, verdict_context, col_type):
+        """Returns the function that converts the str of a value, or None if not converted"""
+        dbtype = verdict_context.get_dbtype()
+        if dbtype == 'mysql':
+            if col_type in cls._type_to_read_in_str_for_mysql:
+                return lambda value_str: cls._convert_str_mysql(value_str, col_type)
+            return None
+        elif dbtype == 'presto':
+            if col_type in cls._type_to_read_in_str_for_presto:
+                return lambda value_str: cls._convert_str_presto(value_str, col_type)
+            return None
+        else:
+            raise NotImplementedError
+
+    @classmethod
+    def _decode_columnar(cls, buf):
+        """Decodes the bytes written by org.verdictdb.commons.VerdictResultColumnarWriter
+
+        Returns:
+            (row count, the list of the values of each column)
+        """
+        view = memoryview(buf)
+        (magic, version, column_count, row_count) = struct.unpack_from('>iBii', view, 0)
+        if magic != cls._columnar_magic:
+            raise ValueError('Not a columnar result.')
+        pos = 13
+
+        columns = []
+        for i in range(column_count):
+            kind = view[pos]
+            pos += 1
+            nulls = np.frombuffer(view, dtype=np.uint8, count=row_count, offset=pos).tolist()
+            pos += row_count
+
+            if kind == cls._kind_long:
+                values = np.frombuffer(view, dtype='>i8', count=row_count, offset=pos).tolist()
+                pos += 8 * row_count
+            elif kind == cls._kind_double:
+                values = np.frombuffer(view, dtype='>f8', count=row_count, offset=pos).tolist()
+                pos += 8 * row_count
+            elif kind == cls._kind_boolean:
+                values = (np.frombuffer(view, dtype=np.uint8, count=row_count, offset=pos) != 0)
+                values = values.tolist()
+                pos += row_count
+            else:
+                offsets = np.frombuffer(view, dtype='>i4', count=row_count + 1, offset=pos)
+                offsets = offsets.tolist()
+                pos += 4 * (row_count + 1)
+                payload = bytes(view[pos:pos + offsets[-1]])
+                pos += offsets[-1]
+                values = [payload[offsets[r]:offsets[r + 1]] for r in range(row_count)]
+                # the empty payloads of nulls are not converted.
+                if kind == cls._kind_string:
+                    values = [None if n else v.decode('utf-8') for (v, n) in zip(values, nulls)]
+                elif kind == cls._kind_decimal:
+                    values = [None if n else decimal.Decimal(v.decode('utf-8'))
+                              for (v, n) in zip(values, nulls)]
+
+            columns.append([None if n else v for (v, n) in zip(values, nulls)])
+
+        return (row_count, columns)
@@ -0,0 +1,85 @@
+'''
+    Copyright 2018 University of Michigan
+ 
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+'''
+import decimal
+import struct
+
+import pytest
+from pyverdict.verdictresult import SingleResultSet
+
+
+def encode(columns, row_count):
+    """Writes columns in the format of org.verdictdb.commons.VerdictResultColumnarWriter
+
+    Args:
+        columns: a list of (kind, values) where None denotes a null
+    """
+    buf = struct.pack('>iBii', SingleResultSet._columnar_magic, 1, len(columns), row_count)
+    for (kind, values) in columns:
+        buf += struct.pack('>B', kind)
+        buf += bytes([1 if v is None else 0 for v in values])
+        if kind == SingleResultSet._kind_long:
+            buf += b''.join(struct.pack('>q', 0 if v is None else v) for v in values)
+        elif kind == SingleResultSet._kind_double:
+            buf += b''.join(struct.pack('>d', 0 if v is None else v) for v in values)
+        elif kind == SingleResultSet._kind_boolean:
+            buf += bytes([1 if v else 0 for v in values])
+        else:
+            payloads = []
+            for v in values:
+                if v is None:
+                    payloads.append(b'')
+                elif isinstance(v, bytes):
+                    payloads.append(v)
+                else:
+                    payloads.append(str(v).encode('utf-8'))
+            offset = 0
+            buf += struct.pack('>i', offset)
+            for p in payloads:
+                offset += len(p)
+                buf += struct.pack('>i', offset)
+            buf += b''.join(payloads)
+    return buf
+
+
+def test_decode_all_kinds():
+    columns = [
+        (SingleResultSet._kind_long, [1, None, -(2 ** 62)]),
+        (SingleResultSet._kind_double, [0.5, 1e300, None]),
+        (SingleResultSet._kind_boolean, [True, None, False]),
+        (SingleResultSet._kind_string, [u'a', u'안녕', None]),
+        (SingleResultSet._kind_decimal, [None, decimal.Decimal('12345678901234567890.123'),
+                                         decimal.Decimal('-0.5')]),
+        (SingleResultSet._kind_bytes, [b'\x00\x01', b'', None]),
+    ]
+    (row_count, decoded) = SingleResultSet._decode_columnar(bytearray(encode(columns, 3)))
+
+    assert row_count == 3
+    assert decoded == [values for (kind, values) in columns]
+    assert isinstance(decoded[0][0], int)
+    assert isinstance(decoded[4][1], decimal.Decimal)
+
+
+def test_decode_no_rows():
+    columns = [(SingleResultSet._kind_long, []), (SingleResultSet._kind_string, [])]
+    (row_count, decoded) = SingleResultSet._decode_columnar(bytearray(encode(columns, 0)))
+
+    assert row_count == 0
+    assert decoded == [[], []]
+
+
+def test_decode_rejects_other_bytes():
+    with pytest.raises(ValueError):
+        SingleResultSet._decode_columnar(bytearray(struct.pack('>iBii', 0, 1, 0, 0)))
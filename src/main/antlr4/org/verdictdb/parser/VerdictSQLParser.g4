@@ -52,6 +52,7 @@ verdict_statement
     : select_statement
     | stream_select_statement
     | create_scramble_statement
+    | append_scramble_statement
     | drop_scramble_statement
     | drop_all_scrambles_statement
     | show_scrambles_statement
@@ -83,6 +84,11 @@ scrambling_method_name
 //    : ON column_name (',' column_name)*
 //    ;
 
+append_scramble_statement
+    : APPEND SCRAMBLE scrambled_table=table_name (FROM source_table=table_name)?
+      (WHERE where=search_condition)?
+    ;
+
 drop_scramble_statement
     : DROP SCRAMBLE scrambled_table=table_name (ON original_table=table_name)?
     ;
@@ -32,6 +32,8 @@ import org.verdictdb.connection.DbmsConnection;
 import org.verdictdb.connection.JdbcConnection;
 import org.verdictdb.connection.SparkConnection;
 import org.verdictdb.coordinator.ExecutionContext;
+import org.verdictdb.coordinator.QueryPlanCache;
+import org.verdictdb.coordinator.TempTableManager;
 import org.verdictdb.core.scrambling.ScrambleMetaSet;
 import org.verdictdb.core.sqlobject.CreateSchemaQuery;
 import org.verdictdb.exception.VerdictDBDbmsException;
@@ -51,6 +53,12 @@ public class VerdictContext {
 
   private VerdictMetaStore metaStore;
 
+  /** Shared by the execution contexts; null if disabled. */
+  private QueryPlanCache planCache;
+
+  /** Drops the temp tables of the terminated execution contexts in the background. */
+  private TempTableManager tempTableManager;
+
   private final String contextId;
 
   private long executionSerialNumber = 0;
@@ -65,21 +73,31 @@ public class VerdictContext {
   private List<ExecutionContext> executionContexts = new LinkedList<>();
 
   public VerdictContext(DbmsConnection conn) throws VerdictDBException {
-    this.conn = new CachedDbmsConnection(conn);
     this.contextId = RandomStringUtils.randomAlphanumeric(5);
     this.options = new VerdictOption();
+    this.conn = createCachedConnection(conn, options);
     this.metaStore = getCachedMetaStore(conn, options);
+    this.planCache = createPlanCache(options);
+    this.tempTableManager = createTempTableManager(options);
     initialize(options);
   }
 
   public VerdictContext(DbmsConnection conn, VerdictOption options) throws VerdictDBException {
-    this.conn = new CachedDbmsConnection(conn);
     this.contextId = RandomStringUtils.randomAlphanumeric(5);
     this.options = options;
+    this.conn = createCachedConnection(conn, options);
     this.metaStore = getCachedMetaStore(conn, options);
+    this.planCache = createPlanCache(options);
+    this.tempTableManager = createTempTableManager(options);
     initialize(options);
   }
 
+  private CachedDbmsConnection createCachedConnection(DbmsConnection conn, VerdictOption option) {
+    CachedDbmsConnection cachedConn = new CachedDbmsConnection(conn);
+    cachedConn.setCacheTtlMillis(option.getVerdictMetaDataCacheTtl() * 1000L);
+    return cachedConn;
+  }
+
   private VerdictMetaStore getCachedMetaStore(DbmsConnection conn, VerdictOption option) {
     CachedScrambleMetaStore metaStore =
         new CachedScrambleMetaStore(new ScrambleMetaStore(conn, options));
@@ -87,6 +105,18 @@ public class VerdictContext {
     return metaStore;
   }
 
+  private QueryPlanCache createPlanCache(VerdictOption option) {
+    int size = option.getVerdictPlanCacheSize();
+    return (size > 0) ? new QueryPlanCache(size) : null;
+  }
+
+  private TempTableManager createTempTableManager(VerdictOption option) {
+    TempTableManager manager =
+        new TempTableManager(this.conn, contextId, option.getVerdictTempSchemaName());
+    manager.startReclaiming(TempTableManager.DEFAULT_RECLAIM_INTERVAL_SECONDS);
+    return manager;
+  }
+
   /**
    * Creates the schema for temp tables.
    *
@@ -297,6 +327,7 @@ public class VerdictContext {
 
   public void close() {
     this.abort(); // terminates all ExecutionContexts first.
+    tempTableManager.close(); // drops their temp tables before closing the connection.
     conn.close();
     isClosed = true;
   }
@@ -338,6 +369,8 @@ public class VerdictContext {
 //          new ExecutionContext(conn.copy(), metaStore, contextId, execSerialNumber, options.copy());
       // Yongjoo: testing without copy().
     exec = new ExecutionContext(conn, metaStore, contextId, execSerialNumber, options.copy());
+    exec.setPlanCache(planCache);
+    exec.setTempTableManager(tempTableManager);
     executionContexts.add(exec);
     return exec;
   }
@@ -355,6 +388,15 @@ public class VerdictContext {
     return metaStore;
   }
 
+  /** @return The cache of select query plans; null if disabled by the option. */
+  public QueryPlanCache getPlanCache() {
+    return planCache;
+  }
+
+  public TempTableManager getTempTableManager() {
+    return tempTableManager;
+  }
+
   private void removeExecutionContext(ExecutionContext exec) {
     exec.terminate();
     executionContexts.remove(exec);
@@ -21,6 +21,7 @@ import java.sql.SQLException;
 import org.verdictdb.commons.AttributeValueRetrievalHelper;
 import org.verdictdb.commons.DBTablePrinter;
 import org.verdictdb.commons.DataTypeConverter;
+import org.verdictdb.commons.VerdictResultColumnarWriter;
 import org.verdictdb.commons.VerdictResultPrinter;
 import org.verdictdb.connection.DbmsQueryResultMetaData;
 import org.verdictdb.jdbc41.VerdictResultSet;
@@ -69,6 +70,12 @@ public abstract class VerdictSingleResult extends AttributeValueRetrievalHelper
    */
   public abstract boolean next();
 
+  /**
+   * Releases the resources (e.g., an open database cursor) held by this result. Does nothing if
+   * the result is fully in memory.
+   */
+  public void close() {}
+
   /**
    * Returns the total number of rows.
    *
@@ -84,6 +91,18 @@ public abstract class VerdictSingleResult extends AttributeValueRetrievalHelper
 
   public abstract boolean wasNull() throws SQLException;
   
+  /**
+   * Serializes the rows after the cursor, at most maxRowCount of them, column by column; the
+   * format is described in VerdictResultColumnarWriter. This lets a client in another process
+   * (e.g., pyverdict) read the rows in a few calls instead of one call per value.
+   *
+   * @param maxRowCount The maximum number of rows to serialize
+   * @return The serialized rows, whose row count is zero once all the rows have been read
+   */
+  public byte[] toColumnarBytes(int maxRowCount) {
+    return VerdictResultColumnarWriter.write(this, maxRowCount);
+  }
+
   public String toCsv() {
     return VerdictResultPrinter.SingleResultToCSV(this);
   }
@@ -32,10 +32,47 @@ public class VerdictOption {
   private static final String DEFAULT_CONSOLE_LOG_LEVEL = "info";
   private static final String DEFAULT_FILE_LOG_LEVEL = "debug";
 
+  /**
+   * Either "platform" or "virtual". The virtual mode runs query nodes on virtual threads, which is
+   * only available on JDK 21 or later; otherwise, the platform mode is used.
+   */
+  private static final String DEFAULT_THREAD_MODE = "platform";
+
+  /** The number of rows fetched at a time when the result of a query is streamed to the user. */
+  private static final int DEFAULT_FETCH_SIZE = 1000;
+
+  /** The number of select queries whose plans are cached for reuse; zero disables the cache. */
+  private static final int DEFAULT_PLAN_CACHE_SIZE = 256;
+
+  /** The seconds after which cached metadata (e.g., columns) expires; zero disables expiration. */
+  private static final int DEFAULT_METADATA_CACHE_TTL = 600;
+
+  /**
+   * A select query stops once the confidence interval of every aggregate is within this error
+   * relative to the aggregate.
+   */
+  private static final double DEFAULT_TARGET_ERROR = 0.05;
+
+  /** The probability that the confidence intervals of the target error contain the exact values. */
+  private static final double DEFAULT_CONFIDENCE = 0.95;
+
+  /**
+   * The number of statements that insert the rows of a new scramble, which run concurrently; one
+   * creates a scramble with a single statement.
+   */
+  private static final int DEFAULT_SCRAMBLING_CHUNK_COUNT = 1;
+
   private String verdictMetaSchemaName = DEFAULT_META_SCHEMA_NAME;
   private String verdictTempSchemaName = DEFAULT_TEMP_SCHEMA_NAME;
   private String verdictConsoleLogLevel = DEFAULT_CONSOLE_LOG_LEVEL;
   private String verdictFileLogLevel = DEFAULT_FILE_LOG_LEVEL;
+  private String verdictThreadMode = DEFAULT_THREAD_MODE;
+  private int verdictFetchSize = DEFAULT_FETCH_SIZE;
+  private int verdictPlanCacheSize = DEFAULT_PLAN_CACHE_SIZE;
+  private int verdictMetaDataCacheTtl = DEFAULT_METADATA_CACHE_TTL;
+  private double verdictTargetError = DEFAULT_TARGET_ERROR;
+  private double verdictConfidence = DEFAULT_CONFIDENCE;
+  private int verdictScramblingChunkCount = DEFAULT_SCRAMBLING_CHUNK_COUNT;
 
   public VerdictOption() {}
 
@@ -78,6 +115,62 @@ public class VerdictOption {
     VerdictDBLogger.setFileLogLevel(level);
   }
 
+  public String getVerdictThreadMode() {
+    return verdictThreadMode;
+  }
+
+  public void setVerdictThreadMode(String mode) {
+    this.verdictThreadMode = mode.toLowerCase();
+  }
+
+  public int getVerdictFetchSize() {
+    return verdictFetchSize;
+  }
+
+  public void setVerdictFetchSize(int fetchSize) {
+    this.verdictFetchSize = fetchSize;
+  }
+
+  public int getVerdictPlanCacheSize() {
+    return verdictPlanCacheSize;
+  }
+
+  public void setVerdictPlanCacheSize(int planCacheSize) {
+    this.verdictPlanCacheSize = planCacheSize;
+  }
+
+  public int getVerdictMetaDataCacheTtl() {
+    return verdictMetaDataCacheTtl;
+  }
+
+  public void setVerdictMetaDataCacheTtl(int ttlSeconds) {
+    this.verdictMetaDataCacheTtl = ttlSeconds;
+  }
+
+  public double getVerdictTargetError() {
+    return verdictTargetError;
+  }
+
+  public void setVerdictTargetError(double targetError) {
+    this.verdictTargetError = targetError;
+  }
+
+  public double getVerdictConfidence() {
+    return verdictConfidence;
+  }
+
+  public void setVerdictConfidence(double confidence) {
+    this.verdictConfidence = confidence;
+  }
+
+  public int getVerdictScramblingChunkCount() {
+    return verdictScramblingChunkCount;
+  }
+
+  public void setVerdictScramblingChunkCount(int chunkCount) {
+    this.verdictScramblingChunkCount = chunkCount;
+  }
+
   public void setVerdictTempSchemaName(String verdictTempSchemaName) {
     this.verdictTempSchemaName = verdictTempSchemaName;
   }
@@ -102,9 +195,38 @@ public class VerdictOption {
     return DEFAULT_FILE_LOG_LEVEL;
   }
 
+  public static String getDefaultThreadMode() {
+    return DEFAULT_THREAD_MODE;
+  }
+
+  public static int getDefaultFetchSize() {
+    return DEFAULT_FETCH_SIZE;
+  }
+
+  public static int getDefaultPlanCacheSize() {
+    return DEFAULT_PLAN_CACHE_SIZE;
+  }
+
+  public static int getDefaultMetaDataCacheTtl() {
+    return DEFAULT_METADATA_CACHE_TTL;
+  }
+
+  public static double getDefaultTargetError() {
+    return DEFAULT_TARGET_ERROR;
+  }
+
+  public static double getDefaultConfidence() {
+    return DEFAULT_CONFIDENCE;
+  }
+
+  public static int getDefaultScramblingChunkCount() {
+    return DEFAULT_SCRAMBLING_CHUNK_COUNT;
+  }
+
   public void parseConnectionString(String str) {
     String[] tokens = str.split("[&;?]");
-    String pattern = "\\w+=\\w+";
+    // the values may be decimals (e.g., targeterror=0.01).
+    String pattern = "\\w+=[\\w.]+";
     Pattern p = Pattern.compile(pattern);
     for (String token : tokens) {
       Matcher m = p.matcher(token);
@@ -123,6 +245,27 @@ public class VerdictOption {
           case "file_loglevel":
             this.setVerdictFileLogLevel(option[1]);
             break;
+          case "threadmode":
+            this.setVerdictThreadMode(option[1]);
+            break;
+          case "fetchsize":
+            this.setVerdictFetchSize(Integer.parseInt(option[1]));
+            break;
+          case "plancachesize":
+            this.setVerdictPlanCacheSize(Integer.parseInt(option[1]));
+            break;
+          case "metadatacachettl":
+            this.setVerdictMetaDataCacheTtl(Integer.parseInt(option[1]));
+            break;
+          case "targeterror":
+            this.setVerdictTargetError(Double.parseDouble(option[1]));
+            break;
+          case "confidence":
+            this.setVerdictConfidence(Double.parseDouble(option[1]));
+            break;
+          case "scramblingchunkcount":
+            this.setVerdictScramblingChunkCount(Integer.parseInt(option[1]));
+            break;
           default:
             break;
         }
@@ -134,9 +277,33 @@ public class VerdictOption {
     // Get properties here
     String newVerdictMetaSchemaName = prop.getProperty("verdictdbmetaschema");
     String newVerdictTempSchemaName = prop.getProperty("verdictdbtempschema");
+    String newVerdictThreadMode = prop.getProperty("threadmode");
+    String newVerdictFetchSize = prop.getProperty("fetchsize");
+    String newVerdictPlanCacheSize = prop.getProperty("plancachesize");
+    String newVerdictMetaDataCacheTtl = prop.getProperty("metadatacachettl");
+    String newVerdictTargetError = prop.getProperty("targeterror");
+    String newVerdictConfidence = prop.getProperty("confidence");
+    String newVerdictScramblingChunkCount = prop.getProperty("scramblingchunkcount");
 
     // Set them if properties exist
     if (newVerdictMetaSchemaName != null) verdictMetaSchemaName = newVerdictMetaSchemaName;
     if (newVerdictTempSchemaName != null) verdictTempSchemaName = newVerdictTempSchemaName;
+    if (newVerdictThreadMode != null) setVerdictThreadMode(newVerdictThreadMode);
+    if (newVerdictFetchSize != null) setVerdictFetchSize(Integer.parseInt(newVerdictFetchSize));
+    if (newVerdictPlanCacheSize != null) {
+      setVerdictPlanCacheSize(Integer.parseInt(newVerdictPlanCacheSize));
+    }
+    if (newVerdictMetaDataCacheTtl != null) {
+      setVerdictMetaDataCacheTtl(Integer.parseInt(newVerdictMetaDataCacheTtl));
+    }
+    if (newVerdictTargetError != null) {
+      setVerdictTargetError(Double.parseDouble(newVerdictTargetError));
+    }
+    if (newVerdictConfidence != null) {
+      setVerdictConfidence(Double.parseDouble(newVerdictConfidence));
+    }
+    if (newVerdictScramblingChunkCount != null) {
+      setVerdictScramblingChunkCount(Integer.parseInt(newVerdictScramblingChunkCount));
+    }
   }
 }
@@ -0,0 +1,221 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.commons;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.verdictdb.VerdictSingleResult;
+
+/**
+ * Serializes the rows of a result column by column into a byte array, so that a client in another
+ * process (e.g., pyverdict over py4j) can read many rows in a single call instead of making one
+ * call per value.
+ *
+ * <p>The format is as follows; all numbers are big-endian.
+ *
+ * <pre>
+ * int32 magic (0x56444243, "VDBC")
+ * int8 version (1)
+ * int32 column count
+ * int32 row count (n)
+ * for each column:
+ *   int8 kind
+ *   int8[n] null flags (1 if null)
+ *   values by kind:
+ *     LONG:    int64[n]
+ *     DOUBLE:  float64[n]
+ *     BOOLEAN: int8[n]
+ *     STRING, DECIMAL, BYTES: int32[n + 1] offsets into the following payload, and the payload
+ *       (UTF-8 for STRING and DECIMAL)
+ * </pre>
+ *
+ * <p>The null slots hold zeros. The kind of a column is determined by the classes of its values:
+ * integral numbers are LONG, floating-point numbers are DOUBLE, booleans are BOOLEAN, BigDecimals
+ * are DECIMAL, and byte arrays are BYTES. The other values (e.g., dates), and the columns that mix
+ * values of different kinds, are written as the strings returned by getString().
+ */
+public class VerdictResultColumnarWriter {
+
+  public static final int MAGIC = 0x56444243;
+
+  public static final byte VERSION = 1;
+
+  public static final byte LONG = 1;
+
+  public static final byte DOUBLE = 2;
+
+  public static final byte BOOLEAN = 3;
+
+  public static final byte STRING = 4;
+
+  public static final byte DECIMAL = 5;
+
+  public static final byte BYTES = 6;
+
+  // the arrays of values grow as rows are read; the row count of a streamed result is not known
+  // without reading all of its rows into memory.
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /**
+   * Reads the rows after the cursor of a result, at most maxRowCount of them, and serializes them.
+   * The cursor is left at the last row read.
+   *
+   * @param result The result to read
+   * @param maxRowCount The maximum number of rows to read
+   * @return The serialized rows; the row count is zero if no rows were left.
+   */
+  public static byte[] write(VerdictSingleResult result, int maxRowCount) {
+    int columnCount = result.getColumnCount();
+    Object[][] values = new Object[columnCount][];
+    String[][] strings = new String[columnCount][];
+    int capacity = Math.max(0, Math.min(maxRowCount, INITIAL_CAPACITY));
+    for (int i = 0; i < columnCount; i++) {
+      values[i] = new Object[capacity];
+      strings[i] = new String[capacity];
+    }
+
+    int rowCount = 0;
+    while (rowCount < maxRowCount && result.next()) {
+      if (rowCount == capacity) {
+        capacity = Math.min(maxRowCount, Math.max(16, capacity * 2));
+        for (int i = 0; i < columnCount; i++) {
+          values[i] = Arrays.copyOf(values[i], capacity);
+          strings[i] = Arrays.copyOf(strings[i], capacity);
+        }
+      }
+      for (int i = 0; i < columnCount; i++) {
+        Object value = result.getValue(i);
+        values[i][rowCount] = value;
+        if (value != null && kindOf(value) == STRING) {
+          strings[i][rowCount] = result.getString(i);
+        }
+      }
+      rowCount++;
+    }
+
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      out.writeInt(columnCount);
+      out.writeInt(rowCount);
+      for (int i = 0; i < columnCount; i++) {
+        writeColumn(out, values[i], strings[i], rowCount);
+      }
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      // not expected for an in-memory stream
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static byte kindOf(Object value) {
+    if (value instanceof Long
+        || value instanceof Integer
+        || value instanceof Short
+        || value instanceof Byte) {
+      return LONG;
+    } else if (value instanceof Double || value instanceof Float) {
+      return DOUBLE;
+    } else if (value instanceof Boolean) {
+      return BOOLEAN;
+    } else if (value instanceof BigDecimal) {
+      return DECIMAL;
+    } else if (value instanceof byte[]) {
+      return BYTES;
+    }
+    return STRING;
+  }
+
+  /** @return The kind shared by all the non-null values; STRING if the kinds differ. */
+  private static byte kindOfColumn(Object[] values, int rowCount) {
+    byte kind = 0;
+    for (int r = 0; r < rowCount; r++) {
+      if (values[r] == null) {
+        continue;
+      }
+      byte k = kindOf(values[r]);
+      if (kind == 0) {
+        kind = k;
+      } else if (kind != k) {
+        return STRING;
+      }
+    }
+    return (kind == 0) ? STRING : kind;
+  }
+
+  private static void writeColumn(
+      DataOutputStream out, Object[] values, String[] strings, int rowCount) throws IOException {
+    byte kind = kindOfColumn(values, rowCount);
+    out.writeByte(kind);
+    for (int r = 0; r < rowCount; r++) {
+      out.writeByte((values[r] == null) ? 1 : 0);
+    }
+
+    switch (kind) {
+      case LONG:
+        for (int r = 0; r < rowCount; r++) {
+          out.writeLong((values[r] == null) ? 0 : ((Number) values[r]).longValue());
+        }
+        break;
+      case DOUBLE:
+        for (int r = 0; r < rowCount; r++) {
+          out.writeDouble((values[r] == null) ? 0 : ((Number) values[r]).doubleValue());
+        }
+        break;
+      case BOOLEAN:
+        for (int r = 0; r < rowCount; r++) {
+          out.writeByte((values[r] != null && (Boolean) values[r]) ? 1 : 0);
+        }
+        break;
+      default:
+        byte[][] payloads = new byte[rowCount][];
+        int offset = 0;
+        out.writeInt(offset);
+        for (int r = 0; r < rowCount; r++) {
+          payloads[r] = toBytes(kind, values[r], strings[r]);
+          offset += payloads[r].length;
+          out.writeInt(offset);
+        }
+        for (byte[] payload : payloads) {
+          out.write(payload);
+        }
+        break;
+    }
+  }
+
+  private static byte[] toBytes(byte kind, Object value, String string) {
+    if (value == null) {
+      return new byte[0];
+    } else if (kind == BYTES) {
+      return (byte[]) value;
+    } else if (kind == DECIMAL) {
+      return ((BigDecimal) value).toString().getBytes(StandardCharsets.UTF_8);
+    } else if (string != null) {
+      return string.getBytes(StandardCharsets.UTF_8);
+    }
+    // a value of another kind in a mixed column
+    return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+  }
+}
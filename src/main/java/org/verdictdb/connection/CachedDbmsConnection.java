@@ -17,11 +17,14 @@
 package org.verdictdb.connection;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.verdictdb.commons.VerdictOption;
 import org.verdictdb.exception.VerdictDBDbmsException;
 import org.verdictdb.sqlsyntax.SqlSyntax;
 
@@ -29,19 +32,47 @@ import org.verdictdb.sqlsyntax.SqlSyntax;
  * Offers the same functionality as DbmsConnection; however, returns cached metadata whenever
  * possible to speed up query processing.
  *
+ * <p>Each cached entry expires after a time-to-live (TTL), and the entries of a schema or a table
+ * are invalidated when VerdictDB issues statements that may change them. Concurrent lookups of the
+ * same uncached metadata issue a single call to the database. Sessions created by {@link
+ * #createSession()} share the cache of this connection, but count the metadata calls of their own;
+ * thus, a session per query reports how many metadata calls the query issued to the database and
+ * how many were served from the cache.
+ *
  * @author Yongjoo Park
  */
 public class CachedDbmsConnection extends DbmsConnection implements MetaDataProvider {
 
   DbmsConnection originalConn;
 
+  private final MetaDataCaches cache;
+
+  // the number of metadata calls issued to the original connection
+  private final AtomicLong issuedCallCount = new AtomicLong(0);
+
+  // the number of metadata calls served from the cache
+  private final AtomicLong cachedCallCount = new AtomicLong(0);
+
   public DbmsConnection getOriginalConn() {
     return originalConn;
   }
 
   public CachedDbmsConnection(DbmsConnection conn) {
     //    super(conn);
+    this(conn, new MetaDataCaches());
+  }
+
+  private CachedDbmsConnection(DbmsConnection conn, MetaDataCaches cache) {
     this.originalConn = conn;
+    this.cache = cache;
+  }
+
+  /**
+   * @return A connection that shares the cached metadata with this connection, but counts its
+   *     metadata calls separately.
+   */
+  public CachedDbmsConnection createSession() {
+    return new CachedDbmsConnection(originalConn, cache);
   }
 
   @Override
@@ -49,11 +80,22 @@ public class CachedDbmsConnection extends DbmsConnection implements MetaDataProv
     return originalConn.execute(query);
   }
 
+  @Override
+  public DbmsQueryResult executeStreaming(String query, int fetchSize)
+      throws VerdictDBDbmsException {
+    return originalConn.executeStreaming(query, fetchSize);
+  }
+
   @Override
   public SqlSyntax getSyntax() {
     return originalConn.getSyntax();
   }
 
+  @Override
+  public int getConcurrentQueryCapacity() {
+    return originalConn.getConcurrentQueryCapacity();
+  }
+
   @Override
   public void abort() {
     originalConn.abort();
@@ -71,73 +113,208 @@ public class CachedDbmsConnection extends DbmsConnection implements MetaDataProv
   @Override
   public DbmsConnection copy() throws VerdictDBDbmsException {
     CachedDbmsConnection newConn = new CachedDbmsConnection(originalConn.copy());
+    newConn.setCacheTtlMillis(getCacheTtlMillis());
     return newConn;
   }
 
   //  private String defaultSchema = null;
 
-  private List<String> schemaCache = new ArrayList<>();
+  private static final String SCHEMAS_KEY = "";
+
+  /** The cached metadata shared by the sessions of a connection. */
+  private static class MetaDataCaches {
+
+    final MetaDataCache<String, List<String>> schemaCache;
+
+    final MetaDataCache<String, List<String>> tablesCache;
 
-  private HashMap<String, List<String>> tablesCache = new HashMap<>();
+    final MetaDataCache<Pair<String, String>, List<String>> partitionCache;
 
-  private HashMap<Pair<String, String>, List<String>> partitionCache = new HashMap<>();
+    // Get column name and type
+    final MetaDataCache<Pair<String, String>, List<Pair<String, String>>> columnsCache;
+
+    MetaDataCaches() {
+      long ttlMillis = VerdictOption.getDefaultMetaDataCacheTtl() * 1000L;
+      schemaCache = new MetaDataCache<>(ttlMillis);
+      tablesCache = new MetaDataCache<>(ttlMillis);
+      partitionCache = new MetaDataCache<>(ttlMillis);
+      columnsCache = new MetaDataCache<>(ttlMillis);
+    }
+
+    List<MetaDataCache<?, ?>> all() {
+      return Arrays.<MetaDataCache<?, ?>>asList(
+          schemaCache, tablesCache, partitionCache, columnsCache);
+    }
+  }
+
+  /**
+   * @param ttlMillis The time after which a cached entry expires; no expiration if non-positive.
+   */
+  public void setCacheTtlMillis(long ttlMillis) {
+    for (MetaDataCache<?, ?> c : cache.all()) {
+      c.setTtlMillis(ttlMillis);
+    }
+  }
+
+  public long getCacheTtlMillis() {
+    return cache.schemaCache.getTtlMillis();
+  }
+
+  /** @param maxSize The maximum number of entries cached for each kind of metadata. */
+  public void setCacheMaxSize(int maxSize) {
+    for (MetaDataCache<?, ?> c : cache.all()) {
+      c.setMaxSize(maxSize);
+    }
+  }
 
-  // Get column name and type
-  private HashMap<Pair<String, String>, List<Pair<String, String>>> columnsCache = new HashMap<>();
-  
-  
   public void clearCache() {
-    schemaCache.clear();
-    tablesCache.clear();
-    partitionCache.clear();
-    columnsCache.clear();
+    for (MetaDataCache<?, ?> c : cache.all()) {
+      c.invalidateAll();
+    }
   }
 
-  @Override
-  public List<String> getSchemas() throws VerdictDBDbmsException {
-    if (!schemaCache.isEmpty()) {
-      return schemaCache;
+  /** Removes the cached list of schemas. */
+  public void invalidateSchemaList() {
+    cache.schemaCache.invalidate(SCHEMAS_KEY);
+  }
+
+  /**
+   * Removes the cached metadata of a schema: the list of schemas, the tables in the schema, and
+   * the columns of those tables.
+   */
+  public void invalidateSchema(String schema) {
+    invalidateSchemaList();
+    cache.tablesCache.invalidate(schema);
+    for (Pair<String, String> key : cache.columnsCache.keys()) {
+      if (Objects.equals(key.getLeft(), schema)) {
+        cache.columnsCache.invalidate(key);
+      }
     }
-    synchronized (this) {
-      List<String> schemas = new ArrayList<>();
-      schemaCache.clear();
-      schemaCache.addAll(originalConn.getSchemas());
-      schemas.addAll(schemaCache);
-      return schemas;
+    for (Pair<String, String> key : cache.partitionCache.keys()) {
+      if (Objects.equals(key.getLeft(), schema)) {
+        cache.partitionCache.invalidate(key);
+      }
     }
   }
 
-  @Override
-  public List<String> getTables(String schema) throws VerdictDBDbmsException {
-    if (tablesCache.containsKey(schema) && !tablesCache.get(schema).isEmpty()) {
-      return tablesCache.get(schema);
+  /** Removes the cached metadata of a table and the list of tables in its schema. */
+  public void invalidateTable(String schema, String table) {
+    Pair<String, String> key = new ImmutablePair<>(schema, table);
+    cache.tablesCache.invalidate(schema);
+    cache.columnsCache.invalidate(key);
+    cache.partitionCache.invalidate(key);
+  }
+
+  /** @return The number of lookups of all sessions that were served by the shared cache. */
+  public long getCacheHitCount() {
+    long count = 0;
+    for (MetaDataCache<?, ?> c : cache.all()) {
+      count += c.getHitCount();
     }
-    return getTablesWithoutCaching(schema);
+    return count;
   }
-  
-  public List<String> getTablesWithoutCaching(String schema) 
-      throws VerdictDBDbmsException {
-    synchronized (this) {
-      List<String> tables = new ArrayList<>();
-      tablesCache.put(schema, originalConn.getTables(schema));
-      tables.addAll(tablesCache.get(schema));
-      return tables;
+
+  /** @return The number of lookups of all sessions that loaded metadata from the database. */
+  public long getCacheMissCount() {
+    long count = 0;
+    for (MetaDataCache<?, ?> c : cache.all()) {
+      count += c.getMissCount();
     }
+    return count;
   }
 
-  @Override
-  public List<Pair<String, String>> getColumns(String schema, String table)
+  /** @return The ratio of hits to all lookups; zero if there has been no lookup. */
+  public double getCacheHitRate() {
+    long hits = getCacheHitCount();
+    long total = hits + getCacheMissCount();
+    return (total == 0) ? 0 : hits / (double) total;
+  }
+
+  /** @return The number of metadata calls this connection issued to the database. */
+  public long getIssuedCallCount() {
+    return issuedCallCount.get();
+  }
+
+  /** @return The number of metadata calls this connection served from the cache. */
+  public long getCachedCallCount() {
+    return cachedCallCount.get();
+  }
+
+  /** Loads metadata from the original connection, counting the call for this session. */
+  private abstract class SessionLoader<V> implements MetaDataCache.Loader<V> {
+
+    private volatile boolean issued = false;
+
+    @Override
+    public V load() throws VerdictDBDbmsException {
+      issued = true;
+      issuedCallCount.incrementAndGet();
+      return loadFromOriginalConn();
+    }
+
+    abstract V loadFromOriginalConn() throws VerdictDBDbmsException;
+  }
+
+  /**
+   * Looks up the cache, and returns a copy of the found list. An empty list is not kept in the
+   * cache, since it often means the metadata is not yet available.
+   */
+  private <K, T> List<T> lookup(
+      MetaDataCache<K, List<T>> metaCache, K key, SessionLoader<List<T>> loader)
       throws VerdictDBDbmsException {
-    Pair<String, String> key = new ImmutablePair<>(schema, table);
-    if (columnsCache.containsKey(key) && !columnsCache.get(key).isEmpty()) {
-      return columnsCache.get(key);
+    List<T> values = metaCache.get(key, loader);
+    if (!loader.issued) {
+      cachedCallCount.incrementAndGet();
     }
-    synchronized (this) {
-      List<Pair<String, String>> columns = new ArrayList<>();
-      columnsCache.put(key, originalConn.getColumns(schema, table));
-      columns.addAll(columnsCache.get(key));
-      return columns;
+    if (values.isEmpty()) {
+      metaCache.invalidate(key);
     }
+    return new ArrayList<>(values);
+  }
+
+  @Override
+  public List<String> getSchemas() throws VerdictDBDbmsException {
+    return lookup(
+        cache.schemaCache,
+        SCHEMAS_KEY,
+        new SessionLoader<List<String>>() {
+          @Override
+          List<String> loadFromOriginalConn() throws VerdictDBDbmsException {
+            return originalConn.getSchemas();
+          }
+        });
+  }
+
+  @Override
+  public List<String> getTables(final String schema) throws VerdictDBDbmsException {
+    return lookup(
+        cache.tablesCache,
+        schema,
+        new SessionLoader<List<String>>() {
+          @Override
+          List<String> loadFromOriginalConn() throws VerdictDBDbmsException {
+            return originalConn.getTables(schema);
+          }
+        });
+  }
+
+  public List<String> getTablesWithoutCaching(String schema) throws VerdictDBDbmsException {
+    cache.tablesCache.invalidate(schema);
+    return getTables(schema);
+  }
+
+  @Override
+  public List<Pair<String, String>> getColumns(final String schema, final String table)
+      throws VerdictDBDbmsException {
+    return lookup(
+        cache.columnsCache,
+        new ImmutablePair<>(schema, table),
+        new SessionLoader<List<Pair<String, String>>>() {
+          @Override
+          List<Pair<String, String>> loadFromOriginalConn() throws VerdictDBDbmsException {
+            return originalConn.getColumns(schema, table);
+          }
+        });
   }
 
   /**
@@ -149,21 +326,20 @@ public class CachedDbmsConnection extends DbmsConnection implements MetaDataProv
    * @throws VerdictDBDbmsException
    */
   @Override
-  public List<String> getPartitionColumns(String schema, String table)
+  public List<String> getPartitionColumns(final String schema, final String table)
       throws VerdictDBDbmsException {
     //    if (!syntax.doesSupportTablePartitioning()) {
     //      throw new VerdictDBDbmsException("Database does not support table partitioning");
     //    }
-    Pair<String, String> key = new ImmutablePair<>(schema, table);
-    if (columnsCache.containsKey(key) && !partitionCache.isEmpty()) {
-      return partitionCache.get(key);
-    }
-    synchronized (this) {
-      List<String> columns = new ArrayList<>();
-      partitionCache.put(key, originalConn.getPartitionColumns(schema, table));
-      columns.addAll(partitionCache.get(key));
-      return columns;
-    }
+    return lookup(
+        cache.partitionCache,
+        new ImmutablePair<>(schema, table),
+        new SessionLoader<List<String>>() {
+          @Override
+          List<String> loadFromOriginalConn() throws VerdictDBDbmsException {
+            return originalConn.getPartitionColumns(schema, table);
+          }
+        });
   }
 
   public String getDefaultSchema() {
@@ -177,6 +353,7 @@ public class CachedDbmsConnection extends DbmsConnection implements MetaDataProv
 
   @Override
   public List<String> getPrimaryKey(String schema, String table) throws VerdictDBDbmsException {
+    issuedCallCount.incrementAndGet();
     return originalConn.getPrimaryKey(schema, table);
   }
 }
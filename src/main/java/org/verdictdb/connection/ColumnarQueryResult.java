@@ -0,0 +1,532 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.connection;
+
+import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.verdictdb.commons.AttributeValueRetrievalHelper;
+
+/**
+ * A query result that stores its values column by column. Integral columns are kept in long
+ * arrays and floating-point columns in double arrays, each with a bitmap of null positions;
+ * character columns are dictionary-encoded. The other columns (e.g., decimals and dates) are
+ * kept as objects.
+ *
+ * <p>getLong(), getInt(), getDouble() and getFloat() read the primitive arrays directly without
+ * boxing. getValue() returns an object of the same class as the one originally appended, so this
+ * result can be used in place of JdbcQueryResult.
+ */
+public class ColumnarQueryResult extends AttributeValueRetrievalHelper
+    implements DbmsQueryResult {
+
+  private static final long serialVersionUID = 8133546409312475520L;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  List<String> columnNames = new ArrayList<>();
+
+  List<Integer> columnTypes = new ArrayList<>();
+
+  List<Column> columns = new ArrayList<>();
+
+  DbmsQueryResultMetaData dbmsQueryResultMetaData = new DbmsQueryResultMetaData();
+
+  int rowCount = 0;
+
+  int cursor = -1;
+
+  private ColumnarQueryResult() {}
+
+  /**
+   * Creates an empty result; rows are added with addRow().
+   *
+   * @param columnNames Column names
+   * @param columnTypes Column types as defined in java.sql.Types
+   * @param metaData Must contain the entries for all the columns
+   */
+  public ColumnarQueryResult(
+      List<String> columnNames, List<Integer> columnTypes, DbmsQueryResultMetaData metaData) {
+    this.columnNames = columnNames;
+    this.columnTypes = columnTypes;
+    this.dbmsQueryResultMetaData = metaData;
+    for (int type : columnTypes) {
+      columns.add(Column.create(type));
+    }
+  }
+
+  /**
+   * Reads all the rows of the result set.
+   *
+   * @param resultSet A result set positioned before the first row
+   */
+  public ColumnarQueryResult(ResultSet resultSet) throws SQLException {
+    ResultSetMetaData meta = resultSet.getMetaData();
+    int columnCount = meta.getColumnCount();
+    for (int i = 0; i < columnCount; i++) {
+      columnNames.add(meta.getColumnLabel(i + 1));
+      columnTypes.add(meta.getColumnType(i + 1));
+      columns.add(Column.create(meta.getColumnType(i + 1)));
+    }
+    dbmsQueryResultMetaData = JdbcQueryResult.readMetaData(meta);
+
+    while (resultSet.next()) {
+      for (int i = 0; i < columnCount; i++) {
+        append(i, resultSet.getObject(i + 1));
+      }
+      rowCount++;
+    }
+  }
+
+  /**
+   * Copies all the rows of another result. The cursor of the source result is rewound.
+   *
+   * @param source The result to copy
+   * @return A columnar copy of the source
+   */
+  public static ColumnarQueryResult from(DbmsQueryResult source) {
+    List<String> names = new ArrayList<>();
+    List<Integer> types = new ArrayList<>();
+    for (int i = 0; i < source.getColumnCount(); i++) {
+      names.add(source.getColumnName(i));
+      types.add(source.getColumnType(i));
+    }
+    ColumnarQueryResult copied = new ColumnarQueryResult(names, types, source.getMetaData());
+
+    source.rewind();
+    List<Object> row = new ArrayList<>(names.size());
+    while (source.next()) {
+      row.clear();
+      for (int i = 0; i < names.size(); i++) {
+        row.add(source.getValue(i));
+      }
+      copied.addRow(row);
+    }
+    source.rewind();
+    return copied;
+  }
+
+  /**
+   * Appends a row at the end.
+   *
+   * @param row Must have as many values as the columns
+   */
+  public void addRow(List<Object> row) {
+    for (int i = 0; i < columns.size(); i++) {
+      append(i, row.get(i));
+    }
+    rowCount++;
+  }
+
+  private void append(int columnIndex, Object value) {
+    Column column = columns.get(columnIndex);
+    Column appended = column.append(rowCount, value);
+    if (appended != column) {
+      columns.set(columnIndex, appended);
+    }
+  }
+
+  @Override
+  public DbmsQueryResultMetaData getMetaData() {
+    return dbmsQueryResultMetaData;
+  }
+
+  @Override
+  public int getColumnCount() {
+    return columnNames.size();
+  }
+
+  @Override
+  public String getColumnName(int index) {
+    return columnNames.get(index);
+  }
+
+  @Override
+  public int getColumnType(int index) {
+    return columnTypes.get(index);
+  }
+
+  @Override
+  public void rewind() {
+    cursor = -1;
+  }
+
+  @Override
+  public boolean next() {
+    if (cursor < rowCount - 1) {
+      cursor++;
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  @Override
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  @Override
+  public Object getValue(int index) {
+    return columns.get(index).get(cursor);
+  }
+
+  @Override
+  public long getLong(int index) {
+    Column column = columns.get(index);
+    if (column instanceof LongColumn) {
+      return ((LongColumn) column).getLong(cursor);
+    } else if (column instanceof DoubleColumn) {
+      return (long) ((DoubleColumn) column).getDouble(cursor);
+    }
+    return super.getLong(index);
+  }
+
+  @Override
+  public int getInt(int index) {
+    Column column = columns.get(index);
+    if (column instanceof LongColumn) {
+      return (int) ((LongColumn) column).getLong(cursor);
+    } else if (column instanceof DoubleColumn) {
+      return (int) ((DoubleColumn) column).getDouble(cursor);
+    }
+    return super.getInt(index);
+  }
+
+  @Override
+  public double getDouble(int index) {
+    Column column = columns.get(index);
+    if (column instanceof DoubleColumn) {
+      return ((DoubleColumn) column).getDouble(cursor);
+    } else if (column instanceof LongColumn) {
+      return ((LongColumn) column).getLong(cursor);
+    }
+    return super.getDouble(index);
+  }
+
+  @Override
+  public float getFloat(int index) {
+    Column column = columns.get(index);
+    if (column instanceof DoubleColumn) {
+      return (float) ((DoubleColumn) column).getDouble(cursor);
+    } else if (column instanceof LongColumn) {
+      return ((LongColumn) column).getLong(cursor);
+    }
+    return super.getFloat(index);
+  }
+
+  /**
+   * Whether the value at the cursor is null. This can be used together with getLong() and
+   * getDouble(), which return zero for nulls.
+   *
+   * @param index zero-based column index
+   * @return True if the value is null
+   */
+  public boolean isNull(int index) {
+    return columns.get(index).isNull(cursor);
+  }
+
+  @Override
+  public DbmsQueryResult shallowCopy() {
+    ColumnarQueryResult copied = new ColumnarQueryResult();
+    copied.columnNames = columnNames;
+    copied.columnTypes = columnTypes;
+    copied.columns = columns;
+    copied.dbmsQueryResultMetaData = dbmsQueryResultMetaData;
+    copied.rowCount = rowCount;
+    return copied;
+  }
+
+  @Override
+  public void printContent() {
+    int oldCursor = cursor;
+    rewind();
+
+    StringBuilder row = new StringBuilder();
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (i > 0) {
+        row.append("\t");
+      }
+      row.append(columnNames.get(i));
+    }
+    System.out.println(row.toString());
+
+    while (next()) {
+      row = new StringBuilder();
+      for (int i = 0; i < columnNames.size(); i++) {
+        if (i > 0) {
+          row.append("\t");
+        }
+        row.append(getString(i));
+      }
+      System.out.println(row.toString());
+    }
+
+    cursor = oldCursor;
+  }
+
+  /**
+   * The values of a single column. append() returns the column that holds the values after the
+   * append, which is a different (more general) column if the value cannot be stored in this one.
+   */
+  abstract static class Column implements Serializable {
+
+    private static final long serialVersionUID = -1493058174420351427L;
+
+    static Column create(int sqlType) {
+      switch (sqlType) {
+        case Types.BIGINT:
+        case Types.INTEGER:
+        case Types.SMALLINT:
+        case Types.TINYINT:
+          return new LongColumn();
+        case Types.DOUBLE:
+        case Types.FLOAT:
+        case Types.REAL:
+          return new DoubleColumn();
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+        case Types.LONGNVARCHAR:
+          return new StringColumn();
+        default:
+          return new ObjectColumn();
+      }
+    }
+
+    abstract Column append(int row, Object value);
+
+    abstract Object get(int row);
+
+    abstract boolean isNull(int row);
+
+    static int grow(int capacity, int required) {
+      int newCapacity = Math.max(capacity, INITIAL_CAPACITY);
+      while (newCapacity < required) {
+        newCapacity *= 2;
+      }
+      return newCapacity;
+    }
+
+    /** Moves the values appended so far into an object column. */
+    ObjectColumn toObjectColumn(int size) {
+      ObjectColumn column = new ObjectColumn();
+      for (int i = 0; i < size; i++) {
+        column.append(i, get(i));
+      }
+      return column;
+    }
+  }
+
+  /** Integral values; getValue() returns the class (e.g., Integer) of the first non-null value. */
+  static class LongColumn extends Column {
+
+    private static final long serialVersionUID = 3316204466098215741L;
+
+    long[] values = new long[0];
+
+    BitSet nulls = new BitSet();
+
+    Class<?> valueClass = null;
+
+    @Override
+    Column append(int row, Object value) {
+      if (value != null) {
+        if (valueClass == null && isIntegral(value)) {
+          valueClass = value.getClass();
+        }
+        if (value.getClass() != valueClass) {
+          return toObjectColumn(row).append(row, value);
+        }
+      }
+      if (row >= values.length) {
+        values = Arrays.copyOf(values, grow(values.length, row + 1));
+      }
+      if (value == null) {
+        nulls.set(row);
+      } else {
+        values[row] = ((Number) value).longValue();
+      }
+      return this;
+    }
+
+    @Override
+    Object get(int row) {
+      if (nulls.get(row)) {
+        return null;
+      }
+      long value = values[row];
+      if (valueClass == Integer.class) {
+        return (int) value;
+      } else if (valueClass == Short.class) {
+        return (short) value;
+      } else if (valueClass == Byte.class) {
+        return (byte) value;
+      }
+      return value;
+    }
+
+    long getLong(int row) {
+      return values[row];
+    }
+
+    @Override
+    boolean isNull(int row) {
+      return nulls.get(row);
+    }
+
+    static boolean isIntegral(Object value) {
+      return value instanceof Long
+          || value instanceof Integer
+          || value instanceof Short
+          || value instanceof Byte;
+    }
+  }
+
+  /** Floating-point values; getValue() returns a Double or a Float. */
+  static class DoubleColumn extends Column {
+
+    private static final long serialVersionUID = -5862513311096460124L;
+
+    double[] values = new double[0];
+
+    BitSet nulls = new BitSet();
+
+    Class<?> valueClass = null;
+
+    @Override
+    Column append(int row, Object value) {
+      if (value != null) {
+        if (valueClass == null && (value instanceof Double || value instanceof Float)) {
+          valueClass = value.getClass();
+        }
+        if (value.getClass() != valueClass) {
+          return toObjectColumn(row).append(row, value);
+        }
+      }
+      if (row >= values.length) {
+        values = Arrays.copyOf(values, grow(values.length, row + 1));
+      }
+      if (value == null) {
+        nulls.set(row);
+      } else {
+        values[row] = ((Number) value).doubleValue();
+      }
+      return this;
+    }
+
+    @Override
+    Object get(int row) {
+      if (nulls.get(row)) {
+        return null;
+      }
+      if (valueClass == Float.class) {
+        return (float) values[row];
+      }
+      return values[row];
+    }
+
+    double getDouble(int row) {
+      return values[row];
+    }
+
+    @Override
+    boolean isNull(int row) {
+      return nulls.get(row);
+    }
+  }
+
+  /** Dictionary-encoded strings; a negative code represents null. */
+  static class StringColumn extends Column {
+
+    private static final long serialVersionUID = 6403560749851946519L;
+
+    int[] codes = new int[0];
+
+    List<String> dictionary = new ArrayList<>();
+
+    Map<String, Integer> codeOf = new HashMap<>();
+
+    @Override
+    Column append(int row, Object value) {
+      if (value != null && !(value instanceof String)) {
+        return toObjectColumn(row).append(row, value);
+      }
+      if (row >= codes.length) {
+        codes = Arrays.copyOf(codes, grow(codes.length, row + 1));
+      }
+      if (value == null) {
+        codes[row] = -1;
+      } else {
+        Integer code = codeOf.get(value);
+        if (code == null) {
+          code = dictionary.size();
+          dictionary.add((String) value);
+          codeOf.put((String) value, code);
+        }
+        codes[row] = code;
+      }
+      return this;
+    }
+
+    @Override
+    Object get(int row) {
+      int code = codes[row];
+      return (code < 0) ? null : dictionary.get(code);
+    }
+
+    @Override
+    boolean isNull(int row) {
+      return codes[row] < 0;
+    }
+  }
+
+  /** Values of any other type. */
+  static class ObjectColumn extends Column {
+
+    private static final long serialVersionUID = -2409715562290371865L;
+
+    List<Object> values = new ArrayList<>();
+
+    @Override
+    Column append(int row, Object value) {
+      values.add(value);
+      return this;
+    }
+
+    @Override
+    Object get(int row) {
+      return values.get(row);
+    }
+
+    @Override
+    boolean isNull(int row) {
+      return values.get(row) == null;
+    }
+  }
+}
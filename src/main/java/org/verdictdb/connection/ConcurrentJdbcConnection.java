@@ -16,62 +16,54 @@
 
 package org.verdictdb.connection;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-import java.util.ArrayList;
+import java.io.Closeable;
 import java.util.List;
 import java.util.Properties;
 
 import org.apache.commons.lang3.tuple.Pair;
-import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.exception.VerdictDBDbmsException;
 import org.verdictdb.sqlsyntax.SqlSyntax;
 import org.verdictdb.sqlsyntax.SqlSyntaxList;
 
 /**
  * Maintains a pool of multiple java.sql.Connections to provide concurrent execution of queries to
- * the backend database.
+ * the backend database. Every query checks out a connection from the pool and returns it when
+ * done; thus, concurrent queries never share a connection while another one is idle.
  *
  * @author Yongjoo Park
  */
 public class ConcurrentJdbcConnection extends DbmsConnection {
 
-  private static final int CONNECTION_POOL_SIZE = 10;
+  private JdbcConnectionPool pool;
 
-  private List<JdbcConnection> connections = new ArrayList<>();
-
-  private int nextConnectionIndex = 0;
-
-  private String url;
-
-  private Properties info;
-
-  private VerdictDBLogger logger = VerdictDBLogger.getLogger(getClass());
+  private SqlSyntax syntax;
 
   public ConcurrentJdbcConnection(List<JdbcConnection> connections) {
-    this.connections.addAll(connections);
+    this(new JdbcConnectionPool(connections));
   }
 
   public ConcurrentJdbcConnection(String url, Properties info, SqlSyntax syntax)
       throws VerdictDBDbmsException {
-    logger.debug(
-        String.format("Creating %d JDBC connections with this url: " + url, CONNECTION_POOL_SIZE));
-    this.url = url;
-    this.info = info;
-    for (int i = 0; i < CONNECTION_POOL_SIZE; i++) {
-      try {
-        Connection c;
-        if (info == null) {
-          c = DriverManager.getConnection(url);
-        } else {
-          c = DriverManager.getConnection(url, info);
-        }
-        connections.add(JdbcConnection.create(c));
-      } catch (SQLException e) {
-        throw new VerdictDBDbmsException(e);
-      }
-    }
+    this(url, info, syntax, JdbcConnectionPool.DEFAULT_MIN_SIZE,
+        JdbcConnectionPool.DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * @param url JDBC connection string
+   * @param info Connection properties; may be null
+   * @param syntax Not used; the syntax is inferred from the connections
+   * @param minPoolSize The number of connections that are kept open even if idle
+   * @param maxPoolSize The maximum number of connections
+   */
+  public ConcurrentJdbcConnection(
+      String url, Properties info, SqlSyntax syntax, int minPoolSize, int maxPoolSize)
+      throws VerdictDBDbmsException {
+    this(new JdbcConnectionPool(url, info, minPoolSize, maxPoolSize));
+  }
+
+  private ConcurrentJdbcConnection(JdbcConnectionPool pool) {
+    this.pool = pool;
+    this.syntax = pool.peek().getSyntax();
   }
 
   public static ConcurrentJdbcConnection create(String connectionString, Properties info)
@@ -86,106 +78,150 @@ public class ConcurrentJdbcConnection extends DbmsConnection {
     return new ConcurrentJdbcConnection(connectionString, null, syntax);
   }
 
+  public JdbcConnectionPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Returns one of the connections without checking it out; that is, the connection may be used
+   * by other queries at the same time. An idle connection is preferred.
+   *
+   * @return A connection in the pool
+   */
   public JdbcConnection getNextConnection() {
-    JdbcConnection c;
-    // prevent multiple thread increase index at same time
-    synchronized (this) {
-      c = connections.get(nextConnectionIndex);
-      nextConnectionIndex++;
-      if (nextConnectionIndex >= connections.size()) {
-        nextConnectionIndex = 0;
-      }
-    }
-    return c;
+    return pool.peek();
+  }
+
+  @Override
+  public int getConcurrentQueryCapacity() {
+    return pool.getMaxSize();
   }
 
   @Override
   public List<String> getSchemas() throws VerdictDBDbmsException {
-    return getNextConnection().getSchemas();
+    JdbcConnection c = pool.checkout();
+    try {
+      return c.getSchemas();
+    } finally {
+      pool.release(c);
+    }
   }
 
   @Override
   public List<String> getTables(String schema) throws VerdictDBDbmsException {
-    return getNextConnection().getTables(schema);
+    JdbcConnection c = pool.checkout();
+    try {
+      return c.getTables(schema);
+    } finally {
+      pool.release(c);
+    }
   }
 
   @Override
   public List<Pair<String, String>> getColumns(String schema, String table)
       throws VerdictDBDbmsException {
-    return getNextConnection().getColumns(schema, table);
+    JdbcConnection c = pool.checkout();
+    try {
+      return c.getColumns(schema, table);
+    } finally {
+      pool.release(c);
+    }
   }
 
   @Override
   public List<String> getPartitionColumns(String schema, String table)
       throws VerdictDBDbmsException {
-    return getNextConnection().getPartitionColumns(schema, table);
+    JdbcConnection c = pool.checkout();
+    try {
+      return c.getPartitionColumns(schema, table);
+    } finally {
+      pool.release(c);
+    }
   }
 
   @Override
   public String getDefaultSchema() {
-    return getNextConnection().getDefaultSchema();
+    return pool.getDefaultSchema();
   }
 
   @Override
   public void setDefaultSchema(String schema) throws VerdictDBDbmsException {
-    for (JdbcConnection c : connections) {
-      c.setDefaultSchema(schema);
-    }
+    pool.setDefaultSchema(schema);
   }
 
   @Override
   public List<String> getPrimaryKey(String schema, String table) throws VerdictDBDbmsException {
-    return getNextConnection().getPrimaryKey(schema, table);
+    JdbcConnection c = pool.checkout();
+    try {
+      return c.getPrimaryKey(schema, table);
+    } finally {
+      pool.release(c);
+    }
   }
 
   @Override
   public DbmsQueryResult execute(String query) throws VerdictDBDbmsException {
-    return getNextConnection().execute(query);
+    JdbcConnection c = pool.checkout();
+    try {
+      return c.execute(query);
+    } finally {
+      pool.release(c);
+    }
+  }
+
+  /**
+   * If the result is read from the database as it is consumed, the connection is returned to the
+   * pool when the result is closed (or fully read).
+   */
+  @Override
+  public DbmsQueryResult executeStreaming(String query, int fetchSize)
+      throws VerdictDBDbmsException {
+    final JdbcConnection c = pool.checkout();
+    boolean released = false;
+    try {
+      DbmsQueryResult result = c.executeStreaming(query, fetchSize);
+      if (result instanceof StreamingJdbcQueryResult
+          && !((StreamingJdbcQueryResult) result).isClosed()) {
+        ((StreamingJdbcQueryResult) result).setCloseListener(
+            new Closeable() {
+              @Override
+              public void close() {
+                pool.release(c);
+              }
+            });
+        released = true;
+      }
+      return result;
+    } finally {
+      if (!released) {
+        pool.release(c);
+      }
+    }
   }
 
   @Override
   public SqlSyntax getSyntax() {
-    return getNextConnection().getSyntax();
+    return syntax;
   }
 
   @Override
   public void abort() {
-    for (JdbcConnection c : connections) {
-      c.abort();
-    }
+    pool.abort();
   }
 
   @Override
   public void close() {
-    for (JdbcConnection c : connections) {
-      c.close();
-    }
+    pool.close();
   }
 
+  /** The copy shares the connection pool with this object. */
   @Override
   public DbmsConnection copy() {
-    ConcurrentJdbcConnection copy = new ConcurrentJdbcConnection(connections);
-    copy.url = url;
-    copy.info = info;
-    return copy;
+    return new ConcurrentJdbcConnection(pool);
   }
 
+  /** Replaces the idle connections that are no longer valid. */
   public void reinitiateConnection() throws VerdictDBDbmsException {
-    for (JdbcConnection connection : connections) {
-      try {
-        // Timeout 1s
-        if (!connection.getConnection().isValid(1)) {
-          Connection c;
-          if (info != null) {
-            c = DriverManager.getConnection(url, info);
-          } else {
-            c = DriverManager.getConnection(url);
-          }
-          connections.set(connections.indexOf(connection), JdbcConnection.create(c));
-        }
-      } catch (SQLException e) {
-        logger.info("Failed to reinitiate connection");
-      }
-    }
+    pool.validateIdleConnections();
   }
 }
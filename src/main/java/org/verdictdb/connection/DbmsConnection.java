@@ -16,6 +16,7 @@
 
 package org.verdictdb.connection;
 
+
 import org.verdictdb.core.sqlobject.SqlConvertible;
 import org.verdictdb.exception.VerdictDBDbmsException;
 import org.verdictdb.exception.VerdictDBException;
@@ -42,6 +43,27 @@ public abstract class DbmsConnection implements MetaDataProvider {
     return result;
   }
 
+  /**
+   * Executes a query (or queries) whose result will be read only once from the first row to the
+   * last row. The returned result may read rows from the database as they are consumed; in that
+   * case, rewind() is not allowed after reading rows. By default, this is the same as execute().
+   *
+   * @param sql
+   * @param fetchSize The number of rows to fetch from the database at a time; a hint only
+   * @return
+   * @throws VerdictDBDbmsException
+   */
+  public DbmsQueryResult executeStreaming(String sql, int fetchSize)
+      throws VerdictDBDbmsException {
+    return execute(sql);
+  }
+
+  public DbmsQueryResult executeStreaming(SqlConvertible query, int fetchSize)
+      throws VerdictDBException {
+    String sql = QueryToSql.convert(getSyntax(), query);
+    return executeStreaming(sql, fetchSize);
+  }
+
   //  /**
   //   *
   //   * @param sql
@@ -53,6 +75,16 @@ public abstract class DbmsConnection implements MetaDataProvider {
 
   public abstract SqlSyntax getSyntax();
 
+  /**
+   * Returns the number of queries that can run on this connection at the same time. By default, a
+   * connection runs its queries one by one.
+   *
+   * @return The number of concurrent queries
+   */
+  public int getConcurrentQueryCapacity() {
+    return 1;
+  }
+
   //  public Connection getConnection();
 
   public abstract void close();
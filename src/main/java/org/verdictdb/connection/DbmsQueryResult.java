@@ -76,6 +76,15 @@ public interface DbmsQueryResult extends Serializable {
    */
   public long getRowCount();
 
+  /**
+   * Returns a result that shares the rows of this result but has its own cursor, which is placed
+   * before the first row. The rows are not modified after a result is created; thus, the two
+   * results can be read independently.
+   *
+   * @return A result sharing the rows of this result
+   */
+  public DbmsQueryResult shallowCopy();
+
   /**
    * @param index This is a zero-based index.
    * @return
@@ -38,8 +38,10 @@ import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -61,6 +63,13 @@ public class JdbcConnection extends DbmsConnection {
 
   protected boolean isAborting = false;
 
+  // the statements run by the last call to execute() and their elapsed times in milliseconds
+  private volatile List<Pair<String, Long>> lastStatementTimings =
+      Collections.<Pair<String, Long>>emptyList();
+
+  // null until checked whether the driver supports batch updates
+  private Boolean batchSupported = null;
+
   public static JdbcConnection create(String jdbcConnectionString, Properties info)
       throws VerdictDBDbmsException {
     try {
@@ -177,15 +186,122 @@ public class JdbcConnection extends DbmsConnection {
     }
   }
 
+  /**
+   * Executes the queries separated by semicolons in order, and returns the result of the last one.
+   * If the queries are all data manipulation statements (e.g., the inserts of many rows), they are
+   * sent to the database as a single JDBC batch.
+   */
   @Override
   public DbmsQueryResult execute(String sql) throws VerdictDBDbmsException {
     String quoteChars = "'\"";
     List<String> sqls = StringSplitter.splitOnSemicolon(sql, quoteChars);
-    DbmsQueryResult finalResult = null;
+    List<Pair<String, Long>> timings = new ArrayList<>();
+    try {
+      if (sqls.size() > 1 && areAllDataManipulations(sqls) && isBatchSupported()) {
+        long start = System.nanoTime();
+        if (executeBatch(sqls)) {
+          long elapsed = elapsedMillisSince(start);
+          timings.add(Pair.of(sql, elapsed));
+          log.debug(
+              String.format("Executed %d statements as a batch in %d ms.", sqls.size(), elapsed));
+          return null;
+        }
+      }
+
+      DbmsQueryResult finalResult = null;
+      for (String s : sqls) {
+        long start = System.nanoTime();
+        finalResult = executeSingle(s);
+        long elapsed = elapsedMillisSince(start);
+        timings.add(Pair.of(s, elapsed));
+        log.debug(String.format("Executed a statement in %d ms.", elapsed));
+      }
+      return finalResult;
+    } finally {
+      lastStatementTimings = timings;
+    }
+  }
+
+  /**
+   * Returns the statements run by the last call to execute() together with their elapsed times in
+   * milliseconds. The statements sent as a batch are reported as a single entry.
+   *
+   * @return The pairs of a statement and its elapsed time
+   */
+  public List<Pair<String, Long>> getLastStatementTimings() {
+    return lastStatementTimings;
+  }
+
+  private static long elapsedMillisSince(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1000000L;
+  }
+
+  /** Data manipulation statements return no rows; thus, they can be sent as a batch. */
+  private static boolean areAllDataManipulations(List<String> sqls) {
     for (String s : sqls) {
-      finalResult = executeSingle(s);
+      String lower = s.trim().toLowerCase();
+      if (!(lower.startsWith("insert ")
+          || lower.startsWith("update ")
+          || lower.startsWith("delete "))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isBatchSupported() {
+    if (batchSupported == null) {
+      try {
+        batchSupported = conn.getMetaData().supportsBatchUpdates();
+      } catch (SQLException e) {
+        batchSupported = false;
+      }
+    }
+    return batchSupported;
+  }
+
+  /**
+   * Sends the statements to the database as a batch.
+   *
+   * @return False if the driver turns out not to support batches, in which case nothing has been
+   *     executed; true if the statements have been executed.
+   */
+  private boolean executeBatch(List<String> sqls) throws VerdictDBDbmsException {
+    log.debug(String.format("Issues a batch of %d statements to DBMS.", sqls.size()));
+    Statement stmt = null;
+    try {
+      stmt = conn.createStatement();
+      try {
+        for (String s : sqls) {
+          stmt.addBatch(s);
+        }
+      } catch (SQLFeatureNotSupportedException e) {
+        batchSupported = false;
+        return false;
+      }
+      setRunningStatement(stmt);
+      stmt.executeBatch();
+      return true;
+    } catch (SQLException e) {
+      if (isAborting) {
+        return true;
+      } else {
+        String msg =
+            String.format(
+                "Issued a batch of %d statements starting with: %s\n%s",
+                sqls.size(), sqls.get(0), e.getMessage());
+        throw new VerdictDBDbmsException(msg);
+      }
+    } finally {
+      setRunningStatement(null);
+      try {
+        if (stmt != null) {
+          stmt.close();
+        }
+      } catch (SQLException e) {
+        // the statements have already been executed (or failed).
+      }
     }
-    return finalResult;
   }
 
   protected void setRunningStatement(Statement stmt) {
@@ -228,6 +344,60 @@ public class JdbcConnection extends DbmsConnection {
     }
   }
 
+  /**
+   * Executes the queries separated by semicolons in order. The result of the last query is
+   * returned as a StreamingJdbcQueryResult, which reads rows from the database as they are
+   * consumed.
+   */
+  @Override
+  public DbmsQueryResult executeStreaming(String sql, int fetchSize)
+      throws VerdictDBDbmsException {
+    String quoteChars = "'\"";
+    List<String> sqls = StringSplitter.splitOnSemicolon(sql, quoteChars);
+    for (int i = 0; i < sqls.size() - 1; i++) {
+      executeSingle(sqls.get(i));
+    }
+    return executeSingleStreaming(sqls.get(sqls.size() - 1), fetchSize);
+  }
+
+  private DbmsQueryResult executeSingleStreaming(String sql, int fetchSize)
+      throws VerdictDBDbmsException {
+    log.debug("Issues the following query to DBMS (streaming): " + sql);
+
+    Statement stmt = null;
+    try {
+      stmt = conn.createStatement();
+      if (fetchSize > 0) {
+        stmt.setFetchSize(fetchSize);
+      }
+      setRunningStatement(stmt);
+      boolean doesResultExist = stmt.execute(sql);
+      setRunningStatement(null);
+      if (doesResultExist) {
+        // the statement is closed by the result once all the rows are read.
+        return new StreamingJdbcQueryResult(stmt, stmt.getResultSet());
+      } else {
+        stmt.close();
+        return null;
+      }
+    } catch (SQLException e) {
+      setRunningStatement(null);
+      try {
+        if (stmt != null) {
+          stmt.close();
+        }
+      } catch (SQLException e1) {
+        // the original error is reported below.
+      }
+      if (isAborting) {
+        return null;
+      } else {
+        String msg = "Issued the following query: " + sql + "\n" + e.getMessage();
+        throw new VerdictDBDbmsException(msg);
+      }
+    }
+  }
+
   public DbmsQueryResult executeQuery(String sql) throws VerdictDBDbmsException {
     return execute(sql);
   }
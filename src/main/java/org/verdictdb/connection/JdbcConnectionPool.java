@@ -0,0 +1,770 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.connection;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.exception.VerdictDBDbmsException;
+
+/**
+ * A pool of JdbcConnections from which a connection is checked out for exclusive use and then
+ * returned.
+ *
+ * <p>A checkout takes an idle connection if one exists. Otherwise, a new connection is opened as
+ * long as the pool has fewer than the maximum number of connections; if not, the caller waits
+ * until a connection is returned. If no connection is returned within the maximum wait time, the
+ * checkout fails so that a leaked connection cannot block queries forever; a connection is never
+ * handed out to two callers at once.
+ *
+ * <p>A connection that has been idle for longer than the validation interval is validated before
+ * it is handed out, and is replaced if it is no longer valid. Connections that have been idle for
+ * longer than the idle timeout are closed as long as the pool keeps at least its minimum number of
+ * connections.
+ *
+ * <p>The pool lock is never held while talking to the database. A checkout reserves an idle
+ * connection (by taking it out of the idle list) or a slot for a new connection (by counting it in
+ * pendingOpenCount), and then validates or opens the connection after releasing the lock.
+ *
+ * <p>A pool created from a fixed list of connections neither opens new connections nor evicts idle
+ * ones.
+ */
+public class JdbcConnectionPool {
+
+  public static final int DEFAULT_MIN_SIZE = 2;
+
+  public static final int DEFAULT_MAX_SIZE = 10;
+
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+  public static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = 30 * 1000;
+
+  public static final long DEFAULT_MAX_WAIT_MILLIS = 60 * 1000;
+
+  private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+  private static final String VALIDATION_QUERY = "SELECT 1";
+
+  // null for a pool of a fixed list of connections
+  private final String url;
+
+  private final Properties info;
+
+  private final int minSize;
+
+  private final int maxSize;
+
+  private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+
+  private long validationIntervalMillis = DEFAULT_VALIDATION_INTERVAL_MILLIS;
+
+  private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+
+  /**
+   * Guards all the fields below. An explicit lock is used since a caller may wait for a connection
+   * on a virtual thread; waiting inside a synchronized block would pin its carrier thread.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition returned = lock.newCondition();
+
+  private final List<PooledConnection> connections = new ArrayList<>();
+
+  private final Map<JdbcConnection, PooledConnection> pooledOf = new IdentityHashMap<>();
+
+  // the most recently returned connection is at the head.
+  private final Deque<PooledConnection> idleConnections = new ArrayDeque<>();
+
+  private String defaultSchema = null;
+
+  private boolean closed = false;
+
+  // the connections being opened outside the lock; counted toward the maximum size.
+  private int pendingOpenCount = 0;
+
+  private long checkoutCount = 0;
+
+  private long waitCount = 0;
+
+  private long totalWaitNanos = 0;
+
+  private long maxWaitNanos = 0;
+
+  private long createdCount = 0;
+
+  private long evictedCount = 0;
+
+  private long timeoutCount = 0;
+
+  private VerdictDBLogger log = VerdictDBLogger.getLogger(getClass());
+
+  static class PooledConnection {
+
+    final JdbcConnection connection;
+
+    int userCount = 0;
+
+    long lastReturnedMillis = System.currentTimeMillis();
+
+    PooledConnection(JdbcConnection connection) {
+      this.connection = connection;
+    }
+  }
+
+  /**
+   * Creates a pool that opens connections with the given url. The minimum number of connections
+   * are opened right away.
+   *
+   * @param url JDBC connection string
+   * @param info Connection properties; may be null
+   * @param minSize The number of connections that are kept open even if idle
+   * @param maxSize The maximum number of connections
+   */
+  public JdbcConnectionPool(String url, Properties info, int minSize, int maxSize)
+      throws VerdictDBDbmsException {
+    if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+      throw new IllegalArgumentException(
+          String.format("Invalid pool size: min=%d, max=%d", minSize, maxSize));
+    }
+    this.url = url;
+    this.info = info;
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+
+    log.debug(String.format("Creating %d JDBC connections with this url: " + url, minSize));
+    // at least one connection is opened to check the url.
+    for (int i = 0; i < Math.max(minSize, 1); i++) {
+      idleConnections.addLast(addConnection(openConnection()));
+      createdCount++;
+    }
+  }
+
+  /**
+   * Creates a pool of the given connections. The pool neither opens new connections nor evicts
+   * idle ones.
+   *
+   * @param connections Must not be empty
+   */
+  public JdbcConnectionPool(List<JdbcConnection> connections) {
+    if (connections.isEmpty()) {
+      throw new IllegalArgumentException("A connection pool requires at least one connection.");
+    }
+    this.url = null;
+    this.info = null;
+    this.minSize = connections.size();
+    this.maxSize = connections.size();
+    for (JdbcConnection c : connections) {
+      idleConnections.addLast(addConnection(c));
+    }
+  }
+
+  /**
+   * Checks out a connection for exclusive use. The connection must be returned by release().
+   *
+   * @return A connection
+   * @throws VerdictDBDbmsException if a new connection cannot be opened, or if no connection is
+   *     returned within the maximum wait time.
+   */
+  public JdbcConnection checkout() throws VerdictDBDbmsException {
+    long startNanos = System.nanoTime();
+    long waitLimitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    boolean waited = false;
+
+    while (true) {
+      PooledConnection reserved = null;
+      boolean validationDue = false;
+      List<JdbcConnection> evicted = new ArrayList<>();
+
+      lock.lock();
+      try {
+        while (true) {
+          if (closed) {
+            throw new VerdictDBDbmsException("The connection pool has been closed.");
+          }
+          evicted.addAll(evictIdleConnections());
+
+          reserved = idleConnections.pollFirst();
+          if (reserved != null) {
+            validationDue = isValidationDue(reserved);
+            if (!validationDue) {
+              return lease(reserved, startNanos, waited);
+            }
+            break;
+          }
+
+          if (url != null && connections.size() + pendingOpenCount < maxSize) {
+            pendingOpenCount++;
+            break;
+          }
+
+          long remainingNanos = waitLimitNanos - (System.nanoTime() - startNanos);
+          if (remainingNanos <= 0) {
+            timeoutCount++;
+            throw new VerdictDBDbmsException(
+                String.format(
+                    "No JDBC connection has been returned for %d ms (%d connections open).",
+                    maxWaitMillis, connections.size()));
+          }
+          waited = true;
+          returned.awaitNanos(remainingNanos);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new VerdictDBDbmsException("Interrupted while waiting for a JDBC connection.");
+      } finally {
+        lock.unlock();
+        closeAll(evicted);
+      }
+
+      if (reserved == null) {
+        return leaseNewConnection(startNanos, waited);
+      }
+      if (validationDue && isValid(reserved.connection)) {
+        lock.lock();
+        try {
+          return lease(reserved, startNanos, waited);
+        } finally {
+          lock.unlock();
+        }
+      }
+
+      // the reserved connection is broken; it is replaced by the next iteration.
+      lock.lock();
+      try {
+        remove(reserved);
+        returned.signal();
+      } finally {
+        lock.unlock();
+      }
+      reserved.connection.close();
+    }
+  }
+
+  /**
+   * Returns a connection obtained by checkout().
+   *
+   * @param connection A connection obtained by checkout()
+   */
+  public void release(JdbcConnection connection) {
+    lock.lock();
+    try {
+      PooledConnection pooled = pooledOf.get(connection);
+      if (pooled == null) {
+        // discarded while checked out
+        return;
+      }
+      pooled.userCount--;
+      if (pooled.userCount > 0) {
+        return;
+      }
+      pooled.lastReturnedMillis = System.currentTimeMillis();
+      if (!closed) {
+        idleConnections.addFirst(pooled);
+        returned.signal();
+        return;
+      }
+      remove(pooled);
+    } finally {
+      lock.unlock();
+    }
+    connection.close();
+  }
+
+  /**
+   * Returns a connection without checking it out; that is, the connection may be in use by others.
+   * An idle connection is preferred. This is for the callers that need an underlying
+   * java.sql.Connection (e.g., to read its DatabaseMetaData).
+   *
+   * @return A connection in this pool
+   */
+  public JdbcConnection peek() {
+    lock.lock();
+    try {
+      PooledConnection pooled = idleConnections.peekFirst();
+      if (pooled == null) {
+        pooled = getLeastUsedConnection();
+      }
+      return (pooled == null) ? null : pooled.connection;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Validates all the idle connections regardless of when they were last validated, and replaces
+   * the invalid ones.
+   */
+  public void validateIdleConnections() throws VerdictDBDbmsException {
+    if (url == null) {
+      return;
+    }
+    // the idle connections are reserved while they are validated outside the lock.
+    List<PooledConnection> reserved;
+    lock.lock();
+    try {
+      reserved = new ArrayList<>(idleConnections);
+      idleConnections.clear();
+    } finally {
+      lock.unlock();
+    }
+
+    List<PooledConnection> valid = new ArrayList<>();
+    List<JdbcConnection> invalid = new ArrayList<>();
+    for (PooledConnection pooled : reserved) {
+      if (isValid(pooled.connection)) {
+        valid.add(pooled);
+      } else {
+        invalid.add(pooled.connection);
+      }
+    }
+
+    int replaceCount = 0;
+    lock.lock();
+    try {
+      for (PooledConnection pooled : reserved) {
+        if (!valid.contains(pooled)) {
+          remove(pooled);
+        }
+      }
+      if (closed) {
+        for (PooledConnection pooled : valid) {
+          remove(pooled);
+          invalid.add(pooled.connection);
+        }
+      } else {
+        for (PooledConnection pooled : valid) {
+          idleConnections.addLast(pooled);
+        }
+        while (replaceCount < invalid.size()
+            && connections.size() + pendingOpenCount < minSize) {
+          pendingOpenCount++;
+          replaceCount++;
+        }
+      }
+      returned.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    closeAll(invalid);
+
+    for (int i = 0; i < replaceCount; i++) {
+      JdbcConnection connection;
+      try {
+        connection = openConnection();
+      } catch (VerdictDBDbmsException e) {
+        cancelPendingOpens(replaceCount - i);
+        throw e;
+      }
+      PooledConnection pooled = addOpenedConnection(connection);
+      lock.lock();
+      try {
+        if (!closed) {
+          idleConnections.addLast(pooled);
+          returned.signal();
+          continue;
+        }
+        remove(pooled);
+      } finally {
+        lock.unlock();
+      }
+      connection.close();
+    }
+  }
+
+  /**
+   * Sets the default schema of all the connections, including the ones opened later.
+   *
+   * @param schema Schema name
+   */
+  public void setDefaultSchema(String schema) throws VerdictDBDbmsException {
+    lock.lock();
+    try {
+      for (PooledConnection pooled : connections) {
+        pooled.connection.setDefaultSchema(schema);
+      }
+      defaultSchema = schema;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public String getDefaultSchema() {
+    lock.lock();
+    try {
+      if (defaultSchema != null || connections.isEmpty()) {
+        return defaultSchema;
+      }
+      return connections.get(0).connection.getDefaultSchema();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Aborts the statements running on any of the connections. */
+  public void abort() {
+    for (JdbcConnection c : getAllConnections()) {
+      c.abort();
+    }
+  }
+
+  /**
+   * Closes the idle connections. The connections in use are closed when they are returned. A pool
+   * of a fixed list of connections closes all of them right away.
+   */
+  public void close() {
+    List<JdbcConnection> toClose = new ArrayList<>();
+    lock.lock();
+    try {
+      closed = true;
+      if (url == null) {
+        toClose.addAll(pooledOf.keySet());
+        connections.clear();
+        pooledOf.clear();
+        idleConnections.clear();
+      } else {
+        for (PooledConnection pooled : idleConnections) {
+          remove(pooled);
+          toClose.add(pooled.connection);
+        }
+        idleConnections.clear();
+      }
+      returned.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    closeAll(toClose);
+  }
+
+  public int getMinSize() {
+    return minSize;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /** @return The number of connections that are currently open */
+  public int getSize() {
+    lock.lock();
+    try {
+      return connections.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getIdleCount() {
+    lock.lock();
+    try {
+      return idleConnections.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getCheckoutCount() {
+    lock.lock();
+    try {
+      return checkoutCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** @return The number of checkouts that had to wait for a connection to be returned */
+  public long getWaitCount() {
+    lock.lock();
+    try {
+      return waitCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** @return The average time a checkout took, in milliseconds */
+  public double getAverageWaitMillis() {
+    lock.lock();
+    try {
+      if (checkoutCount == 0) {
+        return 0;
+      }
+      return totalWaitNanos / 1e6 / checkoutCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** @return The longest time a checkout took, in milliseconds */
+  public double getMaxWaitMillis() {
+    lock.lock();
+    try {
+      return maxWaitNanos / 1e6;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getCreatedCount() {
+    lock.lock();
+    try {
+      return createdCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getEvictedCount() {
+    lock.lock();
+    try {
+      return evictedCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** @return The number of checkouts that failed since no connection was returned in time */
+  public long getTimeoutCount() {
+    lock.lock();
+    try {
+      return timeoutCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  public void setValidationIntervalMillis(long validationIntervalMillis) {
+    this.validationIntervalMillis = validationIntervalMillis;
+  }
+
+  public void setMaxWaitMillis(long maxWaitMillis) {
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  List<JdbcConnection> getAllConnections() {
+    lock.lock();
+    try {
+      List<JdbcConnection> all = new ArrayList<>();
+      for (PooledConnection pooled : connections) {
+        all.add(pooled.connection);
+      }
+      return all;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private JdbcConnection lease(PooledConnection pooled, long startNanos, boolean waited) {
+    pooled.userCount++;
+    long elapsed = System.nanoTime() - startNanos;
+    checkoutCount++;
+    totalWaitNanos += elapsed;
+    maxWaitNanos = Math.max(maxWaitNanos, elapsed);
+    if (waited) {
+      waitCount++;
+      log.debug(
+          String.format(
+              "Waited %.1f ms for a JDBC connection (%d connections open).",
+              elapsed / 1e6, connections.size()));
+    }
+    return pooled.connection;
+  }
+
+  private PooledConnection getLeastUsedConnection() {
+    PooledConnection leastUsed = null;
+    for (PooledConnection pooled : connections) {
+      if (leastUsed == null || pooled.userCount < leastUsed.userCount) {
+        leastUsed = pooled;
+      }
+    }
+    return leastUsed;
+  }
+
+  private PooledConnection addConnection(JdbcConnection connection) {
+    PooledConnection pooled = new PooledConnection(connection);
+    connections.add(pooled);
+    pooledOf.put(connection, pooled);
+    return pooled;
+  }
+
+  /**
+   * Opens a connection for the slot a checkout has reserved, and leases it. Called without
+   * holding the lock.
+   */
+  private JdbcConnection leaseNewConnection(long startNanos, boolean waited)
+      throws VerdictDBDbmsException {
+    JdbcConnection connection;
+    try {
+      connection = openConnection();
+    } catch (VerdictDBDbmsException e) {
+      cancelPendingOpens(1);
+      throw e;
+    }
+    PooledConnection pooled = addOpenedConnection(connection);
+    lock.lock();
+    try {
+      return lease(pooled, startNanos, waited);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Adds a connection opened for a reserved slot to this pool. The connection is neither idle nor
+   * leased yet; the caller does either.
+   */
+  private PooledConnection addOpenedConnection(JdbcConnection connection)
+      throws VerdictDBDbmsException {
+    lock.lock();
+    try {
+      pendingOpenCount--;
+      createdCount++;
+      if (!closed) {
+        return addConnection(connection);
+      }
+      returned.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    connection.close();
+    throw new VerdictDBDbmsException("The connection pool has been closed.");
+  }
+
+  private void cancelPendingOpens(int count) {
+    lock.lock();
+    try {
+      pendingOpenCount -= count;
+      returned.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Removes a connection that is not in the idle list from this pool. The caller closes it. */
+  private void remove(PooledConnection pooled) {
+    connections.remove(pooled);
+    pooledOf.remove(pooled.connection);
+  }
+
+  /** Closes connections; called without holding the lock. */
+  private void closeAll(List<JdbcConnection> toClose) {
+    for (JdbcConnection c : toClose) {
+      c.close();
+    }
+  }
+
+  /** @return The evicted connections, which the caller closes after releasing the lock. */
+  private List<JdbcConnection> evictIdleConnections() {
+    List<JdbcConnection> evicted = new ArrayList<>();
+    if (url == null) {
+      return evicted;
+    }
+    long now = System.currentTimeMillis();
+    while (connections.size() > minSize && !idleConnections.isEmpty()) {
+      PooledConnection oldest = idleConnections.peekLast();
+      if (now - oldest.lastReturnedMillis < idleTimeoutMillis) {
+        break;
+      }
+      idleConnections.pollLast();
+      remove(oldest);
+      evicted.add(oldest.connection);
+      evictedCount++;
+    }
+    return evicted;
+  }
+
+  private boolean isValidationDue(PooledConnection pooled) {
+    if (url == null) {
+      // cannot be replaced anyway
+      return false;
+    }
+    return System.currentTimeMillis() - pooled.lastReturnedMillis >= validationIntervalMillis;
+  }
+
+  /**
+   * Uses Connection.isValid() if the driver supports it; otherwise, issues a validation query.
+   */
+  private boolean isValid(JdbcConnection connection) {
+    Connection c = connection.getConnection();
+    try {
+      return c.isValid(VALIDATION_TIMEOUT_SECONDS);
+    } catch (SQLException e) {
+      // not supported by the driver
+    }
+
+    Statement stmt = null;
+    try {
+      stmt = c.createStatement();
+      stmt.setQueryTimeout(VALIDATION_TIMEOUT_SECONDS);
+      stmt.execute(VALIDATION_QUERY);
+      return true;
+    } catch (SQLException e) {
+      log.debug("A JDBC connection failed validation: " + e.getMessage());
+      return false;
+    } finally {
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (SQLException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
+  /** Opens a new connection. Called without holding the lock except from the constructor. */
+  private JdbcConnection openConnection() throws VerdictDBDbmsException {
+    String schema;
+    lock.lock();
+    try {
+      schema = defaultSchema;
+    } finally {
+      lock.unlock();
+    }
+    try {
+      Connection c;
+      if (info == null) {
+        c = DriverManager.getConnection(url);
+      } else {
+        c = DriverManager.getConnection(url, info);
+      }
+      JdbcConnection connection = JdbcConnection.create(c);
+      if (schema != null) {
+        connection.setDefaultSchema(schema);
+      }
+      return connection;
+    } catch (SQLException e) {
+      throw new VerdictDBDbmsException(e);
+    }
+  }
+}
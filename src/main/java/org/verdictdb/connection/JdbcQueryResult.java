@@ -40,35 +40,16 @@ public class JdbcQueryResult extends AttributeValueRetrievalHelper implements Db
 
   DbmsQueryResultMetaData dbmsQueryResultMetaData = new DbmsQueryResultMetaData();
 
-  public JdbcQueryResult(ResultSet resultSet) throws SQLException {
-    List<Boolean> isCurrency = new ArrayList<>();
-    List<Integer> isNullable = new ArrayList<>();
-    List<Integer> precision = new ArrayList<>();
-    List<Integer> scale = new ArrayList<>();
-    List<Integer> columnDisplaySize = new ArrayList<>();
-    List<Boolean> isAutoIncrement = new ArrayList<>();
-    List<String> columnClassName = new ArrayList<>();
+  private JdbcQueryResult() {}
 
+  public JdbcQueryResult(ResultSet resultSet) throws SQLException {
     ResultSetMetaData meta = resultSet.getMetaData();
     int columnCount = meta.getColumnCount();
     for (int i = 0; i < columnCount; i++) {
       columnNames.add(meta.getColumnLabel(i + 1));
       columnTypes.add(meta.getColumnType(i + 1));
-      precision.add(meta.getPrecision(i + 1));
-      scale.add(meta.getScale(i + 1));
-      columnDisplaySize.add(meta.getColumnDisplaySize(i + 1));
-      isNullable.add(meta.isNullable(i + 1));
-      isCurrency.add(meta.isCurrency(i + 1));
-      isAutoIncrement.add(meta.isAutoIncrement(i + 1));
-      columnClassName.add(meta.getColumnClassName(i + 1));
     }
-    dbmsQueryResultMetaData.columnDisplaySize = columnDisplaySize;
-    dbmsQueryResultMetaData.isAutoIncrement = isAutoIncrement;
-    dbmsQueryResultMetaData.isCurrency = isCurrency;
-    dbmsQueryResultMetaData.isNullable = isNullable;
-    dbmsQueryResultMetaData.precision = precision;
-    dbmsQueryResultMetaData.scale = scale;
-    dbmsQueryResultMetaData.columnClassName = columnClassName;
+    dbmsQueryResultMetaData = readMetaData(meta);
 
     while (resultSet.next()) {
       List<Object> row = new ArrayList<>();
@@ -84,6 +65,37 @@ public class JdbcQueryResult extends AttributeValueRetrievalHelper implements Db
     }
   }
 
+  static DbmsQueryResultMetaData readMetaData(ResultSetMetaData meta) throws SQLException {
+    List<Boolean> isCurrency = new ArrayList<>();
+    List<Integer> isNullable = new ArrayList<>();
+    List<Integer> precision = new ArrayList<>();
+    List<Integer> scale = new ArrayList<>();
+    List<Integer> columnDisplaySize = new ArrayList<>();
+    List<Boolean> isAutoIncrement = new ArrayList<>();
+    List<String> columnClassName = new ArrayList<>();
+
+    int columnCount = meta.getColumnCount();
+    for (int i = 0; i < columnCount; i++) {
+      precision.add(meta.getPrecision(i + 1));
+      scale.add(meta.getScale(i + 1));
+      columnDisplaySize.add(meta.getColumnDisplaySize(i + 1));
+      isNullable.add(meta.isNullable(i + 1));
+      isCurrency.add(meta.isCurrency(i + 1));
+      isAutoIncrement.add(meta.isAutoIncrement(i + 1));
+      columnClassName.add(meta.getColumnClassName(i + 1));
+    }
+
+    DbmsQueryResultMetaData metaData = new DbmsQueryResultMetaData();
+    metaData.columnDisplaySize = columnDisplaySize;
+    metaData.isAutoIncrement = isAutoIncrement;
+    metaData.isCurrency = isCurrency;
+    metaData.isNullable = isNullable;
+    metaData.precision = precision;
+    metaData.scale = scale;
+    metaData.columnClassName = columnClassName;
+    return metaData;
+  }
+
   @Override
   public DbmsQueryResultMetaData getMetaData() {
     return dbmsQueryResultMetaData;
@@ -179,4 +191,14 @@ public class JdbcQueryResult extends AttributeValueRetrievalHelper implements Db
   public long getRowCount() {
     return result.size();
   }
+
+  @Override
+  public DbmsQueryResult shallowCopy() {
+    JdbcQueryResult copied = new JdbcQueryResult();
+    copied.columnNames = columnNames;
+    copied.columnTypes = columnTypes;
+    copied.result = result;
+    copied.dbmsQueryResultMetaData = dbmsQueryResultMetaData;
+    return copied;
+  }
 }
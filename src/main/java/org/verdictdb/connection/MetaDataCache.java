@@ -0,0 +1,208 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.verdictdb.exception.VerdictDBDbmsException;
+
+/**
+ * A thread-safe cache of metadata (e.g., the columns of tables) that expires each entry a
+ * time-to-live (TTL) after it was loaded and holds at most a given number of entries.
+ *
+ * <p>When several threads miss the same key at the same time, only one of them loads the value;
+ * the others wait for and share its result. A failed load is not cached.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of metadata
+ */
+public class MetaDataCache<K, V> {
+
+  static final int DEFAULT_MAX_SIZE = 10000;
+
+  /** Loads the metadata of a key from the database. */
+  public interface Loader<V> {
+    V load() throws VerdictDBDbmsException;
+  }
+
+  private static class Entry<V> {
+
+    final FutureTask<V> task;
+
+    // System.nanoTime() when the load finished; valid only if loaded is true
+    volatile long loadedNanos;
+
+    volatile boolean loaded = false;
+
+    Entry(final Loader<V> loader) {
+      task =
+          new FutureTask<>(
+              new Callable<V>() {
+                @Override
+                public V call() throws Exception {
+                  V value = loader.load();
+                  loadedNanos = System.nanoTime();
+                  loaded = true;
+                  return value;
+                }
+              });
+    }
+
+    boolean isExpired(long nowNanos, long ttlNanos) {
+      return ttlNanos > 0 && loaded && nowNanos - loadedNanos > ttlNanos;
+    }
+  }
+
+  private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+  // non-positive if the entries never expire
+  private volatile long ttlNanos;
+
+  private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+  private final AtomicLong hitCount = new AtomicLong(0);
+
+  private final AtomicLong missCount = new AtomicLong(0);
+
+  /** @param ttlMillis The time after which an entry expires; no expiration if non-positive */
+  public MetaDataCache(long ttlMillis) {
+    setTtlMillis(ttlMillis);
+  }
+
+  /**
+   * Returns the cached value of the key, or loads and caches it if it is not cached or has expired.
+   *
+   * @param key Identifies the metadata; if null, the value is loaded without being cached.
+   * @param loader Loads the value; called at most once for the concurrent misses of the same key.
+   */
+  public V get(K key, Loader<V> loader) throws VerdictDBDbmsException {
+    if (key == null) {
+      missCount.incrementAndGet();
+      return loader.load();
+    }
+
+    Entry<V> entry = entries.get(key);
+    if (entry != null && entry.isExpired(System.nanoTime(), ttlNanos)) {
+      entries.remove(key, entry);
+      entry = null;
+    }
+    if (entry != null) {
+      hitCount.incrementAndGet();
+    } else {
+      Entry<V> created = new Entry<>(loader);
+      entry = entries.putIfAbsent(key, created);
+      if (entry != null) {
+        // another thread is loading (or has loaded) the value.
+        hitCount.incrementAndGet();
+      } else {
+        missCount.incrementAndGet();
+        entry = created;
+        created.task.run();
+        evictIfFull();
+      }
+    }
+
+    try {
+      return entry.task.get();
+    } catch (ExecutionException e) {
+      entries.remove(key, entry);
+      Throwable cause = e.getCause();
+      if (cause instanceof VerdictDBDbmsException) {
+        throw (VerdictDBDbmsException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new VerdictDBDbmsException(String.valueOf(cause));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new VerdictDBDbmsException("Interrupted while loading metadata.");
+    }
+  }
+
+  /** Removes the loaded entries that were loaded the earliest until the size is within the max. */
+  private void evictIfFull() {
+    while (entries.size() > maxSize) {
+      K oldestKey = null;
+      long oldestNanos = Long.MAX_VALUE;
+      for (Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+        Entry<V> entry = e.getValue();
+        if (entry.loaded && entry.loadedNanos < oldestNanos) {
+          oldestKey = e.getKey();
+          oldestNanos = entry.loadedNanos;
+        }
+      }
+      if (oldestKey == null) {
+        return;
+      }
+      entries.remove(oldestKey);
+    }
+  }
+
+  public void invalidate(K key) {
+    if (key != null) {
+      entries.remove(key);
+    }
+  }
+
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  /** @return A snapshot of the cached keys, including the ones being loaded */
+  public List<K> keys() {
+    return new ArrayList<>(entries.keySet());
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public void setTtlMillis(long ttlMillis) {
+    this.ttlNanos = ttlMillis * 1000L * 1000L;
+  }
+
+  public long getTtlMillis() {
+    return ttlNanos / 1000L / 1000L;
+  }
+
+  public void setMaxSize(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /** @return The number of lookups served without loading, including those waiting for a load */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** @return The number of lookups that loaded the value */
+  public long getMissCount() {
+    return missCount.get();
+  }
+}
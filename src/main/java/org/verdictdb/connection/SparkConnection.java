@@ -17,7 +17,12 @@
 package org.verdictdb.connection;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -30,14 +35,33 @@ import org.verdictdb.exception.VerdictDBDbmsException;
 import org.verdictdb.sqlsyntax.SparkSyntax;
 import org.verdictdb.sqlsyntax.SqlSyntax;
 
+/**
+ * Runs queries on a SparkSession.
+ *
+ * <p>Each statement runs in its own Spark job group, so that several statements (e.g., the blocks
+ * of an async aggregation) can run on the cluster at the same time, and {@link #abort()} can
+ * cancel the running ones.
+ */
 public class SparkConnection extends DbmsConnection {
 
+  static final int DEFAULT_CONCURRENT_QUERY_CAPACITY = 4;
+
   SparkSession sc;
 
   SqlSyntax syntax;
 
   String currentSchema;
-  
+
+  private int concurrentQueryCapacity = DEFAULT_CONCURRENT_QUERY_CAPACITY;
+
+  // distinguishes the job groups of this connection from those of others on the same session
+  private final String jobGroupPrefix = "verdictdb_" + UUID.randomUUID().toString();
+
+  private final AtomicLong jobGroupCounter = new AtomicLong(0);
+
+  private final Set<String> runningJobGroups =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
   private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());;
 
   public SparkConnection(Object sc) {
@@ -154,6 +178,11 @@ public class SparkConnection extends DbmsConnection {
     sql = sql.replace(";", "");   // remove semicolons
     log.debug("Issues the following query to Spark: " + sql);
 
+    // The job group is a property of the current thread; the jobs started by the statement,
+    // including those for collecting its result, belong to the group.
+    String jobGroup = jobGroupPrefix + "_" + jobGroupCounter.getAndIncrement();
+    runningJobGroups.add(jobGroup);
+    sc.sparkContext().setJobGroup(jobGroup, sql, true);
     try {
       SparkQueryResult srs = null;
       Dataset<Row> result = sc.sql(sql);
@@ -164,17 +193,43 @@ public class SparkConnection extends DbmsConnection {
     } catch (Exception e) {
       String msg = "Issued the following query: " + sql + "\n" + e.getMessage();
       throw new VerdictDBDbmsException(msg);
+    } finally {
+      sc.sparkContext().clearJobGroup();
+      runningJobGroups.remove(jobGroup);
     }
   }
 
+  /**
+   * The number of statements that may run on the cluster at the same time. Spark schedules the
+   * jobs of concurrent statements in the FIFO order by default; the fair scheduler
+   * (spark.scheduler.mode=FAIR) shares the cluster among them more evenly.
+   */
+  @Override
+  public int getConcurrentQueryCapacity() {
+    return concurrentQueryCapacity;
+  }
+
+  public void setConcurrentQueryCapacity(int concurrentQueryCapacity) {
+    this.concurrentQueryCapacity = concurrentQueryCapacity;
+  }
+
+  /** @return The job groups of the statements running on this connection */
+  List<String> getRunningJobGroups() {
+    return new ArrayList<>(runningJobGroups);
+  }
+
   @Override
   public SqlSyntax getSyntax() {
     return syntax;
   }
   
+  /** Cancels the jobs of the statements running on this connection. */
   @Override
   public void abort() {
-    
+    for (String jobGroup : runningJobGroups) {
+      log.debug("Cancels the Spark job group: " + jobGroup);
+      sc.sparkContext().cancelJobGroup(jobGroup);
+    }
   }
 
   @Override
@@ -194,6 +249,7 @@ public class SparkConnection extends DbmsConnection {
   public DbmsConnection copy() {
     SparkConnection newConn = new SparkConnection(sc, syntax);
     newConn.setDefaultSchema(currentSchema);
+    newConn.setConcurrentQueryCapacity(concurrentQueryCapacity);
     return newConn;
   }
 }
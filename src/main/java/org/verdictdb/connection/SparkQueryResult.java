@@ -41,6 +41,8 @@ public class SparkQueryResult extends AttributeValueRetrievalHelper implements D
 
   int cursor = -1;
 
+  private SparkQueryResult() {}
+
   public SparkQueryResult(Dataset<Row> dataset) {
     //    Tuple2<String, String>[] colNameAndColType = dataset.dtypes();
     List<Integer> nullable = new ArrayList<>();
@@ -145,4 +147,14 @@ public class SparkQueryResult extends AttributeValueRetrievalHelper implements D
   public long getRowCount() {
     return result.size();
   }
+
+  @Override
+  public DbmsQueryResult shallowCopy() {
+    SparkQueryResult copied = new SparkQueryResult();
+    copied.columnNames = columnNames;
+    copied.columnTypes = columnTypes;
+    copied.result = result;
+    copied.dbmsQueryResultMetaData = dbmsQueryResultMetaData;
+    return copied;
+  }
 }
@@ -0,0 +1,257 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.connection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.verdictdb.commons.AttributeValueRetrievalHelper;
+
+/**
+ * A query result that reads rows from an open JDBC ResultSet as next() is called. Unlike
+ * JdbcQueryResult, the rows are not copied into memory before the first row is returned.
+ *
+ * <p>The rows read so far are kept, so rewind() moves the cursor back to the first row at any
+ * time; the rows after them are still read as the cursor reaches them. The remaining rows are read
+ * into memory (i.e., materialized) only when getRowCount() or shallowCopy() is called.
+ *
+ * <p>The statement and the result set are closed when all the rows have been read, when the
+ * result is materialized, or when close() is called. Until then, the result holds the connection it
+ * is read from; thus, it must be used only by the consumers that close their results.
+ */
+public class StreamingJdbcQueryResult extends AttributeValueRetrievalHelper
+    implements DbmsQueryResult {
+
+  private static final long serialVersionUID = -6470093285166402613L;
+
+  List<String> columnNames = new ArrayList<>();
+
+  List<Integer> columnTypes = new ArrayList<>();
+
+  DbmsQueryResultMetaData dbmsQueryResultMetaData;
+
+  private transient Statement statement;
+
+  private transient ResultSet resultSet;
+
+  // notified once when the result set is closed
+  private transient Closeable closeListener = null;
+
+  // the rows read from the result set so far
+  private List<List<Object>> rows = new ArrayList<>();
+
+  private int cursor = -1;
+
+  /**
+   * @param statement The statement that produced the result set; closed together with it.
+   * @param resultSet An open result set positioned before the first row
+   */
+  public StreamingJdbcQueryResult(Statement statement, ResultSet resultSet) throws SQLException {
+    this.statement = statement;
+    this.resultSet = resultSet;
+    ResultSetMetaData meta = resultSet.getMetaData();
+    for (int i = 0; i < meta.getColumnCount(); i++) {
+      columnNames.add(meta.getColumnLabel(i + 1));
+      columnTypes.add(meta.getColumnType(i + 1));
+    }
+    dbmsQueryResultMetaData = JdbcQueryResult.readMetaData(meta);
+  }
+
+  @Override
+  public DbmsQueryResultMetaData getMetaData() {
+    return dbmsQueryResultMetaData;
+  }
+
+  @Override
+  public int getColumnCount() {
+    return columnNames.size();
+  }
+
+  @Override
+  public String getColumnName(int index) {
+    return columnNames.get(index);
+  }
+
+  @Override
+  public int getColumnType(int index) {
+    return columnTypes.get(index);
+  }
+
+  /**
+   * @return True if all the rows are in memory; false if some are still read from the database.
+   */
+  public boolean isMaterialized() {
+    return resultSet == null;
+  }
+
+  @Override
+  public boolean next() {
+    if (cursor < rows.size() - 1) {
+      cursor++;
+      return true;
+    }
+    if (resultSet == null) {
+      cursor = rows.size();
+      return false;
+    }
+    try {
+      if (resultSet.next()) {
+        rows.add(readRow());
+        cursor++;
+        return true;
+      } else {
+        close();
+        cursor = rows.size();
+        return false;
+      }
+    } catch (SQLException e) {
+      close();
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public Object getValue(int index) {
+    return rows.get(cursor).get(index);
+  }
+
+  @Override
+  public void rewind() {
+    cursor = -1;
+  }
+
+  /** Reads all the remaining rows into memory. */
+  @Override
+  public long getRowCount() {
+    materialize();
+    return rows.size();
+  }
+
+  @Override
+  public DbmsQueryResult shallowCopy() {
+    materialize();
+    StreamingJdbcQueryResult copied = new StreamingJdbcQueryResult();
+    copied.columnNames = columnNames;
+    copied.columnTypes = columnTypes;
+    copied.dbmsQueryResultMetaData = dbmsQueryResultMetaData;
+    copied.rows = rows;
+    return copied;
+  }
+
+  @Override
+  public void printContent() {
+    materialize();
+    int oldCursor = cursor;
+    rewind();
+
+    StringBuilder row = new StringBuilder();
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (i > 0) {
+        row.append("\t");
+      }
+      row.append(columnNames.get(i));
+    }
+    System.out.println(row.toString());
+
+    while (next()) {
+      row = new StringBuilder();
+      for (int i = 0; i < columnNames.size(); i++) {
+        if (i > 0) {
+          row.append("\t");
+        }
+        row.append(getString(i));
+      }
+      System.out.println(row.toString());
+    }
+
+    cursor = oldCursor;
+  }
+
+  /** Closes the underlying result set and statement if they are still open. */
+  public void close() {
+    try {
+      if (resultSet != null) {
+        resultSet.close();
+      }
+      if (statement != null) {
+        statement.close();
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    } finally {
+      resultSet = null;
+      statement = null;
+      notifyCloseListener();
+    }
+  }
+
+  /** @return True if the underlying result set has been closed. */
+  public boolean isClosed() {
+    return resultSet == null;
+  }
+
+  /**
+   * Sets the listener that is notified once the underlying result set is closed, e.g., to return
+   * the connection that the result set is read from.
+   *
+   * @param closeListener Listener
+   */
+  public void setCloseListener(Closeable closeListener) {
+    this.closeListener = closeListener;
+  }
+
+  private void notifyCloseListener() {
+    Closeable listener = closeListener;
+    closeListener = null;
+    if (listener != null) {
+      try {
+        listener.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private StreamingJdbcQueryResult() {}
+
+  private List<Object> readRow() throws SQLException {
+    int columnCount = columnNames.size();
+    List<Object> row = new ArrayList<>(columnCount);
+    for (int i = 0; i < columnCount; i++) {
+      row.add(resultSet.getObject(i + 1));
+    }
+    return row;
+  }
+
+  private void materialize() {
+    try {
+      while (resultSet != null && resultSet.next()) {
+        rows.add(readRow());
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    } finally {
+      close();
+    }
+  }
+}
@@ -25,8 +25,11 @@ import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.commons.VerdictOption;
 import org.verdictdb.connection.CachedDbmsConnection;
 import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.DbmsQueryResult;
 import org.verdictdb.connection.MetaDataProvider;
 import org.verdictdb.connection.StaticMetaData;
+import org.verdictdb.core.querying.IdCreator;
+import org.verdictdb.core.querying.TempIdCreatorInScratchpadSchema;
 import org.verdictdb.core.resulthandler.ExecutionResultReader;
 import org.verdictdb.core.scrambling.ScrambleMeta;
 import org.verdictdb.core.scrambling.ScrambleMetaSet;
@@ -41,12 +44,14 @@ import org.verdictdb.core.sqlobject.UnnamedColumn;
 import org.verdictdb.exception.VerdictDBDbmsException;
 import org.verdictdb.exception.VerdictDBException;
 import org.verdictdb.exception.VerdictDBTypeException;
+import org.verdictdb.exception.VerdictDBValueException;
 import org.verdictdb.metastore.CachedScrambleMetaStore;
 import org.verdictdb.metastore.ScrambleMetaStore;
 import org.verdictdb.metastore.VerdictMetaStore;
 import org.verdictdb.parser.VerdictSQLParser;
 import org.verdictdb.parser.VerdictSQLParser.IdContext;
 import org.verdictdb.parser.VerdictSQLParserBaseVisitor;
+import org.verdictdb.sqlreader.CondGen;
 import org.verdictdb.sqlreader.NonValidatingSQLParser;
 import org.verdictdb.sqlreader.RelationGen;
 import org.verdictdb.sqlreader.RelationStandardizer;
@@ -56,6 +61,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.verdictdb.coordinator.VerdictSingleResultFromListData.createWithSingleColumn;
 
@@ -74,6 +80,20 @@ public class ExecutionContext {
 
   private Coordinator runningCoordinator = null;
 
+  private QueryPlanCache planCache = null;
+
+  // streams the results of the queries run as-is instead of reading them into memory
+  private boolean streamingResults = false;
+
+  // drops the temp tables of this context after it terminates; null if this context drops them
+  private TempTableManager tempTableManager = null;
+
+  // name the temp tables created by the select queries of this context
+  private final List<IdCreator> tempIdCreators = new CopyOnWriteArrayList<>();
+
+  // counts the metadata calls made while the last select query was planned
+  private CachedDbmsConnection lastMetaDataSession = null;
+
   private final long serialNumber;
 
   private final VerdictDBLogger log = VerdictDBLogger.getLogger(getClass());
@@ -83,6 +103,7 @@ public class ExecutionContext {
   public enum QueryType {
     select,
     scrambling,
+    append_scramble,
     drop_scramble,
     drop_all_scrambles,
     set_default_schema,
@@ -112,10 +133,62 @@ public class ExecutionContext {
     this.options = options;
   }
 
+  /**
+   * @return The number of metadata calls issued to the database while the last select query was
+   *     planned; zero if none.
+   */
+  public long getLastIssuedMetaDataCallCount() {
+    return (lastMetaDataSession == null) ? 0 : lastMetaDataSession.getIssuedCallCount();
+  }
+
+  /**
+   * @return The number of metadata calls served from the cache while the last select query was
+   *     planned; zero if none.
+   */
+  public long getLastCachedMetaDataCallCount() {
+    return (lastMetaDataSession == null) ? 0 : lastMetaDataSession.getCachedCallCount();
+  }
+
   public long getExecutionContextSerialNumber() {
     return serialNumber;
   }
 
+  /** @return The syntax of the database on which this context runs queries. */
+  public SqlSyntax getSyntax() {
+    return conn.getSyntax();
+  }
+
+  /**
+   * @param planCache If not null, the plans of select queries are cached in and reused from this
+   *     cache.
+   */
+  public void setPlanCache(QueryPlanCache planCache) {
+    this.planCache = planCache;
+  }
+
+  /**
+   * Lets the results of the queries run as-is (i.e., bypassed queries and the select queries for
+   * which no scrambles are available) be read from the database as they are consumed. Such a
+   * result holds a database connection until it is read to the end or closed; thus, this must be
+   * set only if the caller closes every result (e.g., as a JDBC ResultSet).
+   *
+   * @param streamingResults True if the results may be streamed; false by default.
+   */
+  public void setStreamingResults(boolean streamingResults) {
+    this.streamingResults = streamingResults;
+  }
+
+  /**
+   * Lets the temp tables of this context be dropped in the background (together with those of
+   * other contexts) after it terminates.
+   *
+   * @param tempTableManager The manager shared by the contexts of the same VerdictContext
+   */
+  public void setTempTableManager(TempTableManager tempTableManager) {
+    this.tempTableManager = tempTableManager;
+    tempTableManager.register(serialNumber);
+  }
+
   /**
    * Check whether given sql contains 'bypass' keyword at the beginning
    *
@@ -130,17 +203,62 @@ public class ExecutionContext {
   }
 
   private VerdictSingleResult executeAsIs(String sql) throws VerdictDBDbmsException {
-    return new VerdictSingleResultFromDbmsQueryResult(conn.execute(sql));
+    if (!streamingResults) {
+      return new VerdictSingleResultFromDbmsQueryResult(conn.execute(sql));
+    }
+    // the result is closed by the caller; thus, it is streamed from the database.
+    DbmsQueryResult result = conn.executeStreaming(sql, options.getVerdictFetchSize());
+    return new VerdictSingleResultFromDbmsQueryResult(result, true);
   }
 
   public VerdictSingleResult sql(String query) throws VerdictDBException {
     return this.sql(query, true);
   }
 
+  /**
+   * Executes a query with parameter markers (?). The plan of a select query is created once and
+   * reused for other parameter values if the plan cache is enabled; other queries are executed
+   * with the values written into them.
+   *
+   * @param query Query with parameter markers
+   * @param parameters SQL literals in the order of the markers
+   */
+  public VerdictSingleResult sql(String query, List<String> parameters, boolean getResult)
+      throws VerdictDBException {
+    if (planCache == null || checkBypass(query) != null || !isSelectWithMarkers(query)) {
+      return sql(QueryParameters.bind(query, parameters), getResult);
+    }
+    log.debug("Query type: select (prepared)");
+    return sqlSelectQuery(query, parameters, getResult);
+  }
+
+  private boolean isSelectWithMarkers(String query) {
+    String template = QueryParameters.replaceMarkersWithPlaceholders(query);
+    if (isCachedSelect(template)) {
+      return true;
+    }
+    try {
+      return identifyQueryType(template).equals(QueryType.select);
+    } catch (RuntimeException e) {
+      // a marker is at a position where the grammar does not allow a literal (e.g., LIMIT).
+      return false;
+    }
+  }
+
   public VerdictSingleResult sql(String query, boolean getResult) throws VerdictDBException {
     String bypassSql = checkBypass(query);
     if (bypassSql != null) {
-      return executeAsIs(bypassSql);
+      VerdictSingleResult result = executeAsIs(bypassSql);
+      // the bypassed statement may have changed the tables or the schemas.
+      if (!bypassSql.trim().toLowerCase().startsWith("select")) {
+        clearMetaDataCache();
+      }
+      return result;
+    }
+
+    if (isCachedSelect(query)) {
+      log.debug("Query type: select (cached)");
+      return sqlSelectQuery(query, null, getResult);
     }
 
     QueryType queryType = identifyQueryType(query);
@@ -157,19 +275,22 @@ public class ExecutionContext {
 
     if (queryType.equals(QueryType.select)) {
       log.debug("Query type: select");
-      return sqlSelectQuery(query, getResult);
+      return sqlSelectQuery(query, null, getResult);
     }
 
-    // for other types of queries, we invalidate cached metadata for expected data
-    // manipulations
-    if (conn instanceof CachedDbmsConnection) {
-      ((CachedDbmsConnection) conn).clearCache();
+    if (planCache != null
+        && (queryType == QueryType.scrambling
+            || queryType == QueryType.append_scramble
+            || queryType == QueryType.drop_scramble
+            || queryType == QueryType.drop_all_scrambles)) {
+      planCache.invalidateAll();
     }
 
     if (queryType.equals(QueryType.scrambling)) {
       log.debug("Query type: scrambling");
 
       CreateScrambleQuery scrambleQuery = generateScrambleQuery(query);
+      invalidateMetaDataForScrambling(scrambleQuery);
 
       List<String> existingPartitionColumns =
           conn.getPartitionColumns(
@@ -188,22 +309,33 @@ public class ExecutionContext {
               options.getVerdictTempSchemaName(),
               scrambleQuery.getBlockSize(),
               scrambleQuery.getExistingPartitionColumns());
+      scrambler.setChunkCount(options.getVerdictScramblingChunkCount());
+      ScrambleMetaStore metaStore = new ScrambleMetaStore(conn, options);
+      scrambler.setMetaStore(metaStore);
 
       // store this metadata to our own metadata db.
       ScrambleMeta meta = scrambler.scramble(scrambleQuery);
 
       // Add metadata to metastore
-      ScrambleMetaStore metaStore = new ScrambleMetaStore(conn, options);
       metaStore.addToStore(meta);
+      invalidateMetaDataForScrambling(scrambleQuery);
       refreshScrambleMetaStore();
       return null;
 
+    } else if (queryType.equals(QueryType.append_scramble)) {
+      log.debug("Query type: append_scramble");
+      appendScramble(query);
+      return null;
+
     } else if (queryType.equals(QueryType.drop_scramble)) {
       log.debug("Query type: drop_scramble");
 
       ScrambleMetaStore metaStore = new ScrambleMetaStore(conn, options);
       Pair<BaseTable, BaseTable> tablePair = getTablePairForDropScramble(query);
       metaStore.dropScrambleTable(tablePair.getLeft(), tablePair.getRight());
+      invalidateMetaDataOfSchema(tablePair.getRight().getSchemaName());
+      invalidateMetaDataOfSchema(options.getVerdictMetaSchemaName());
+      refreshScrambleMetaStore();
       return null;
 
     } else if (queryType.equals(QueryType.drop_all_scrambles)) {
@@ -212,6 +344,9 @@ public class ExecutionContext {
       ScrambleMetaStore metaStore = new ScrambleMetaStore(conn, options);
       BaseTable table = getTableForDropAllScramble(query);
       metaStore.dropAllScrambleTable(table);
+      // the dropped scrambles may be in any schemas.
+      clearMetaDataCache();
+      refreshScrambleMetaStore();
       return null;
 
     } else if (queryType.equals(QueryType.show_scrambles)) {
@@ -242,18 +377,46 @@ public class ExecutionContext {
     }
   }
 
-  private VerdictSingleResult sqlSelectQuery(String query, boolean getResult)
-      throws VerdictDBException {
-    SelectQuery selectQuery = standardizeQuery(query);
-    VerdictResultStream stream = streamSelectQuery(selectQuery);
+  private void clearMetaDataCache() {
+    if (conn instanceof CachedDbmsConnection) {
+      ((CachedDbmsConnection) conn).clearCache();
+    }
+  }
+
+  /**
+   * Scrambling changes only the schemas of the new scramble, the metadata, and the temporary
+   * tables; their metadata is read again both during and after scrambling.
+   */
+  private void invalidateMetaDataForScrambling(CreateScrambleQuery scrambleQuery) {
+    invalidateMetaDataOfSchema(scrambleQuery.getNewSchema());
+    invalidateMetaDataOfSchema(options.getVerdictMetaSchemaName());
+    invalidateMetaDataOfSchema(options.getVerdictTempSchemaName());
+  }
+
+  private void invalidateMetaDataOfSchema(String schema) {
+    if (conn instanceof CachedDbmsConnection) {
+      ((CachedDbmsConnection) conn).invalidateSchema(schema);
+    }
+  }
+
+  private VerdictSingleResult sqlSelectQuery(
+      String query, List<String> parameters, boolean getResult) throws VerdictDBException {
+    VerdictResultStream stream = streamSelectQuery(query, parameters, streamingResults);
 
     if (stream == null) {
       return null;
     }
-    QueryResultAccuracyEstimator accEst =
-        new QueryResultAccuracyEstimatorFromDifference(selectQuery);
 
     try {
+      if (runningCoordinator == null) {
+        // no scrambles were used; the only answer is exact and is returned without being read.
+        return stream.hasNext() ? stream.next() : null;
+      }
+      QueryResultAccuracyEstimator accEst =
+          new QueryResultAccuracyEstimatorFromConfidenceInterval(
+              ((SelectQueryCoordinator) runningCoordinator).getLastQuery(),
+              options.getVerdictTargetError(),
+              options.getVerdictConfidence());
       while (stream.hasNext()) {
         VerdictSingleResult rs = stream.next();
         accEst.add(rs);
@@ -297,6 +460,10 @@ public class ExecutionContext {
   }
 
   public VerdictResultStream streamsql(String query) throws VerdictDBException {
+    if (isCachedSelect(query)) {
+      return streamSelectQuery(query, null, false);
+    }
+
     // determines the type of the given query and forward it to an appropriate coordinator.
     QueryType queryType = identifyQueryType(query);
 
@@ -304,25 +471,54 @@ public class ExecutionContext {
       throw new VerdictDBTypeException("Only a select query can be issued to streamsql().");
     }
 
-    SelectQuery selectQuery = standardizeQuery(query);
-    return streamSelectQuery(selectQuery);
+    return streamSelectQuery(query, null, false);
   }
 
   /**
    * Returns a stream of answers for the select query .
    *
-   * @param selectQuery Already standardized select query.
+   * @param query Select query; standardized by the coordinator unless its plan is cached.
+   * @param parameters The values of the parameter markers in the query; null if the query has no
+   *     markers.
+   * @param streamingResult True if the answer of a query run as-is may be streamed from the
+   *     database (see {@link #setStreamingResults(boolean)}).
    * @return
    * @throws VerdictDBException
    */
-  private VerdictResultStream streamSelectQuery(SelectQuery selectQuery) throws VerdictDBException {
-    //    selectQuery = standardizeSelectQuery(selectQuery, conn);
-
+  private VerdictResultStream streamSelectQuery(
+      String query, List<String> parameters, boolean streamingResult) throws VerdictDBException {
     ScrambleMetaSet metaset = metaStore.retrieve();
-    SelectQueryCoordinator coordinator = new SelectQueryCoordinator(conn, metaset, options);
+
+    // the metadata calls of this query are counted by its own session.
+    DbmsConnection queryConn = conn;
+    if (conn instanceof CachedDbmsConnection) {
+      queryConn = ((CachedDbmsConnection) conn).createSession();
+    }
+    SelectQueryCoordinator coordinator = new SelectQueryCoordinator(queryConn, metaset, options);
+    coordinator.setStreamingResult(streamingResult);
+    if (planCache != null) {
+      coordinator.setPlanCache(planCache, getScrambleMetaVersion());
+    }
     runningCoordinator = null;
+    if (tempTableManager != null) {
+      // this context may be used again after it was terminated.
+      tempTableManager.register(serialNumber);
+    }
 
-    ExecutionResultReader reader = coordinator.process(selectQuery, queryContext);
+    ExecutionResultReader reader =
+        (parameters == null)
+            ? coordinator.process(query, queryContext)
+            : coordinator.process(query, parameters, queryContext);
+    if (queryConn instanceof CachedDbmsConnection) {
+      lastMetaDataSession = (CachedDbmsConnection) queryConn;
+      log.debug(
+          String.format(
+              "Metadata calls: %d issued to the database, %d served from the cache.",
+              lastMetaDataSession.getIssuedCallCount(), lastMetaDataSession.getCachedCallCount()));
+    }
+    if (coordinator.getLastIdCreator() != null) {
+      tempIdCreators.add(coordinator.getLastIdCreator());
+    }
     if (coordinator.getLastQuery() != null) {
       // this means there are scrambles for the query so that
       // we need to abort the coordinator at the end.
@@ -339,10 +535,6 @@ public class ExecutionContext {
    * @return
    * @throws VerdictDBException
    */
-  private SelectQuery standardizeQuery(String query) throws VerdictDBException {
-    return standardizeQuery(query, conn);
-  }
-
   static SelectQuery standardizeQuery(String query, DbmsConnection conn) throws VerdictDBException {
     SelectQuery selectQuery = NonValidatingSQLParser.toSelectQuery(query);
     SelectQuery standardized = standardizeSelectQuery(selectQuery, conn);
@@ -362,18 +554,79 @@ public class ExecutionContext {
     //      throw new VerdictDBValueException("The query has already been standardized.");
     //    }
 
-    RelationStandardizer.resetItemID();
     SqlSyntax syntax = conn.getSyntax();
     MetaDataProvider metaData = createMetaDataFor(selectQuery, conn);
     selectQuery = RelationStandardizer.standardizeSelectQuery(selectQuery, metaData, syntax);
     return selectQuery;
   }
 
+  /**
+   * Only select queries are cached; thus, a query whose plan is cached is known to be a select
+   * query without being parsed.
+   */
+  private boolean isCachedSelect(String query) {
+    if (planCache == null) {
+      return false;
+    }
+    String key = QueryPlanCache.createKey(query, conn.getDefaultSchema(), getScrambleMetaVersion());
+    return planCache.contains(key);
+  }
+
+  private long getScrambleMetaVersion() {
+    if (metaStore instanceof CachedScrambleMetaStore) {
+      return ((CachedScrambleMetaStore) metaStore).getVersion();
+    }
+    return 0;
+  }
+
   private void refreshScrambleMetaStore() {
     // no type check was added to make it fail if non-cached metastore is used.
     ((CachedScrambleMetaStore) this.metaStore).refreshCache();
   }
 
+  /**
+   * Inserts the new rows of the original table (or of the table given by the FROM clause) into an
+   * existing scramble. The metadata of the scramble is stored again to record the time of the
+   * append; its distributions stay the same. Appending from the original table needs a WHERE
+   * clause, since all of its rows are already in the scramble.
+   */
+  private void appendScramble(String query) throws VerdictDBException {
+    VerdictSQLParser parser = NonValidatingSQLParser.parserOf(query);
+    VerdictSQLParser.Append_scramble_statementContext ctx = parser.append_scramble_statement();
+    RelationGen g = new RelationGen();
+    BaseTable scrambleTable = (BaseTable) g.visit(ctx.scrambled_table);
+    String schema =
+        (scrambleTable.getSchemaName() == null)
+            ? conn.getDefaultSchema()
+            : scrambleTable.getSchemaName();
+    String table = scrambleTable.getTableName();
+
+    ScrambleMetaStore scrambleMetaStore = new ScrambleMetaStore(conn, options);
+    ScrambleMeta meta = scrambleMetaStore.retrieve().getSingleMeta(schema, table);
+    if (meta == null) {
+      throw new VerdictDBValueException(String.format("%s.%s is not a scramble.", schema, table));
+    }
+
+    String sourceSchema = meta.getOriginalSchemaName();
+    String sourceTable = meta.getOriginalTableName();
+    if (ctx.source_table != null) {
+      BaseTable source = (BaseTable) g.visit(ctx.source_table);
+      sourceSchema =
+          (source.getSchemaName() == null) ? conn.getDefaultSchema() : source.getSchemaName();
+      sourceTable = source.getTableName();
+    }
+    UnnamedColumn condition = (ctx.where == null) ? null : new CondGen().visit(ctx.where);
+
+    ScramblingCoordinator scrambler =
+        new ScramblingCoordinator(conn, schema, options.getVerdictTempSchemaName());
+    meta = scrambler.append(meta, sourceSchema, sourceTable, condition);
+
+    scrambleMetaStore.addToStore(meta);
+    invalidateMetaDataOfSchema(schema);
+    invalidateMetaDataOfSchema(options.getVerdictMetaSchemaName());
+    refreshScrambleMetaStore();
+  }
+
   private Pair<BaseTable, BaseTable> getTablePairForDropScramble(String query) {
     VerdictSQLParser parser = NonValidatingSQLParser.parserOf(query);
     VerdictSQLParserBaseVisitor<Pair<BaseTable, BaseTable>> visitor =
@@ -454,6 +707,10 @@ public class ExecutionContext {
 
   private VerdictSingleResult generateShowSchemaResultFromQuery() throws VerdictDBException {
     List<String> header = Arrays.asList("schema");
+    // users expect to see the current schemas; thus, they are read again.
+    if (conn instanceof CachedDbmsConnection) {
+      ((CachedDbmsConnection) conn).invalidateSchemaList();
+    }
     List<String> rows = conn.getSchemas();
     VerdictSingleResultFromListData result = createWithSingleColumn(header, (List) rows);
     return result;
@@ -465,7 +722,10 @@ public class ExecutionContext {
     IdContext schemaCtx = parser.show_tables_statement().schema;
     String schema = (schemaCtx == null) ? conn.getDefaultSchema() : schemaCtx.getText();
     List<String> header = Arrays.asList("table");
-    List<String> rows = conn.getTables(schema);
+    List<String> rows =
+        (conn instanceof CachedDbmsConnection)
+            ? ((CachedDbmsConnection) conn).getTablesWithoutCaching(schema)
+            : conn.getTables(schema);
     VerdictSingleResultFromListData result = createWithSingleColumn(header, (List) rows);
     return result;
   }
@@ -493,6 +753,9 @@ public class ExecutionContext {
     if (schema == null) {
       schema = conn.getDefaultSchema();
     }
+    if (conn instanceof CachedDbmsConnection) {
+      ((CachedDbmsConnection) conn).invalidateTable(schema, table);
+    }
     List<Pair<String, String>> columnInfo = conn.getColumns(schema, table);
     List<List<String>> newColumnInfo = new ArrayList<>();
     for (Pair<String, String> pair : columnInfo) {
@@ -522,38 +785,31 @@ public class ExecutionContext {
   /**
    * Terminates existing threads. The created database tables may still exist for successive uses.
    *
-   * <p>This method also removes all temporary tables created by this ExecutionContext.
+   * <p>This method also removes all temporary tables created by this ExecutionContext: in the
+   * background if a {@link TempTableManager} is set; otherwise, before returning.
    */
   public void terminate() {
     abort();
 
-    try {
-      String schema = options.getVerdictTempSchemaName();
-      String tempTablePrefix =
-          String.format(
-              "%s_%s_%d",
-              VerdictOption.getVerdictTempTablePrefix(),
-              queryContext.getVerdictContextId(),
-              this.serialNumber);
-      List<String> tempTableList = new ArrayList<>();
-
-      List<String> allTempTables = null;
-      if (conn instanceof CachedDbmsConnection) {
-        allTempTables = ((CachedDbmsConnection) conn).getTablesWithoutCaching(schema);
-      } else {
-        allTempTables = conn.getTables(schema);
-      }
-      for (String tableName : allTempTables) {
-        if (tableName.startsWith(tempTablePrefix)) {
-          tempTableList.add(tableName);
-        }
+    List<Pair<String, String>> tempTables = new ArrayList<>();
+    List<Pair<String, String>> tempViews = new ArrayList<>();
+    for (IdCreator creator : tempIdCreators) {
+      if (creator instanceof TempIdCreatorInScratchpadSchema) {
+        TempIdCreatorInScratchpadSchema tempCreator = (TempIdCreatorInScratchpadSchema) creator;
+        tempTables.addAll(tempCreator.getGeneratedTempTables());
+        tempViews.addAll(tempCreator.getGeneratedTempViews());
       }
+    }
+    tempIdCreators.clear();
 
-      for (String tempTable : tempTableList) {
-        conn.execute(String.format("DROP TABLE IF EXISTS %s.%s", schema, tempTable));
-      }
-    } catch (VerdictDBDbmsException e) {
-      e.printStackTrace();
+    if (tempTableManager != null) {
+      tempTableManager.release(serialNumber, tempTables, tempViews);
+    } else {
+      TempTableManager manager =
+          new TempTableManager(
+              conn, queryContext.getVerdictContextId(), options.getVerdictTempSchemaName());
+      manager.release(serialNumber, tempTables, tempViews);
+      manager.close();
     }
   }
 
@@ -641,6 +897,12 @@ public class ExecutionContext {
             return QueryType.scrambling;
           }
 
+          @Override
+          public QueryType visitAppend_scramble_statement(
+              VerdictSQLParser.Append_scramble_statementContext ctx) {
+            return QueryType.append_scramble;
+          }
+
           @Override
           public QueryType visitDrop_scramble_statement(
               VerdictSQLParser.Drop_scramble_statementContext ctx) {
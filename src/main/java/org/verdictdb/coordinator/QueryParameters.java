@@ -0,0 +1,233 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.coordinator;
+
+import java.math.BigDecimal;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.sqlsyntax.SqlSyntax;
+
+/**
+ * Handles the parameter markers (?) of prepared queries.
+ *
+ * <p>To plan a query once for all parameter values, its markers are replaced with placeholder
+ * literals. The placeholders are carried through the standardization and the planning as constants;
+ * each execution replaces them with the actual values while copying the cached plan (see {@link
+ * QueryPlanCache#get(String, Map)}).
+ */
+public class QueryParameters {
+
+  private static final String PLACEHOLDER_FORMAT = "'verdictdbparam%d'";
+
+  private QueryParameters() {}
+
+  /** @return The placeholder literal for the parameter at the index (starting from 0). */
+  public static String placeholderOf(int index) {
+    return String.format(PLACEHOLDER_FORMAT, index);
+  }
+
+  /** @return The number of parameter markers outside quotes. */
+  public static int countMarkers(String sql) {
+    int count = 0;
+    char quote = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote == 0 && c == '?') {
+        count++;
+      } else if (quote == 0 && (c == '\'' || c == '"' || c == '`')) {
+        quote = c;
+      } else if (c == quote) {
+        quote = 0;
+      }
+    }
+    return count;
+  }
+
+  /** Replaces the parameter markers with placeholder literals. */
+  public static String replaceMarkersWithPlaceholders(String sql) {
+    int count = countMarkers(sql);
+    List<String> placeholders = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      placeholders.add(placeholderOf(i));
+    }
+    return replaceMarkers(sql, placeholders);
+  }
+
+  /**
+   * Replaces the parameter markers with the given literals.
+   *
+   * @param literals SQL literals in the order of the markers
+   */
+  public static String bind(String sql, List<String> literals) throws VerdictDBValueException {
+    checkCount(sql, literals);
+    return replaceMarkers(sql, literals);
+  }
+
+  /** @return A map from placeholder literals to the given literals. */
+  public static Map<String, String> bindingsOf(String sql, List<String> literals)
+      throws VerdictDBValueException {
+    checkCount(sql, literals);
+    Map<String, String> bindings = new HashMap<>();
+    for (int i = 0; i < literals.size(); i++) {
+      bindings.put(placeholderOf(i), literals.get(i));
+    }
+    return bindings;
+  }
+
+  /**
+   * Converts a value set for a parameter into a SQL literal. Strings are quoted as the syntax
+   * requires; dates and times are written as typed literals.
+   *
+   * @throws VerdictDBValueException if the value cannot be written as a literal (e.g., NaN)
+   */
+  public static String toLiteral(Object value, SqlSyntax syntax) throws VerdictDBValueException {
+    if (value == null) {
+      return "NULL";
+    } else if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).toPlainString();
+    } else if (value instanceof Double || value instanceof Float) {
+      double number = ((Number) value).doubleValue();
+      if (Double.isNaN(number) || Double.isInfinite(number)) {
+        throw new VerdictDBValueException(
+            String.format("The value %s cannot be written as a SQL literal.", value));
+      }
+      return value.toString();
+    } else if (value instanceof Number || value instanceof Boolean) {
+      return value.toString();
+    } else if (value instanceof java.sql.Date) {
+      return "date " + syntax.quoteStringLiteral(value.toString());
+    } else if (value instanceof Time) {
+      return "time " + syntax.quoteStringLiteral(value.toString());
+    } else if (value instanceof Timestamp) {
+      return "timestamp " + syntax.quoteStringLiteral(value.toString());
+    } else {
+      return syntax.quoteStringLiteral(value.toString());
+    }
+  }
+
+  /**
+   * Converts a value set for a parameter into the Java type of the given SQL type (see {@link
+   * Types}).
+   *
+   * @throws VerdictDBValueException if the value cannot be converted or the type is not supported
+   */
+  public static Object convert(Object value, int targetSqlType) throws VerdictDBValueException {
+    if (value == null) {
+      return null;
+    }
+    try {
+      switch (targetSqlType) {
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+        case Types.LONGNVARCHAR:
+          return value.toString();
+        case Types.BIT:
+        case Types.BOOLEAN:
+          if (value instanceof Number) {
+            return ((Number) value).intValue() != 0;
+          }
+          return Boolean.valueOf(value.toString().trim());
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+          return toBigDecimal(value).toBigIntegerExact();
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+          return (value instanceof Number)
+              ? ((Number) value).doubleValue()
+              : Double.valueOf(value.toString().trim());
+        case Types.NUMERIC:
+        case Types.DECIMAL:
+          return toBigDecimal(value);
+        case Types.DATE:
+          return (value instanceof java.util.Date)
+              ? new java.sql.Date(((java.util.Date) value).getTime())
+              : java.sql.Date.valueOf(value.toString().trim());
+        case Types.TIME:
+          return (value instanceof java.util.Date)
+              ? new Time(((java.util.Date) value).getTime())
+              : Time.valueOf(value.toString().trim());
+        case Types.TIMESTAMP:
+          return (value instanceof java.util.Date)
+              ? new Timestamp(((java.util.Date) value).getTime())
+              : Timestamp.valueOf(value.toString().trim());
+        default:
+          throw new VerdictDBValueException(
+              String.format("The SQL type %d is not supported for parameters.", targetSqlType));
+      }
+    } catch (IllegalArgumentException | ArithmeticException e) {
+      throw new VerdictDBValueException(
+          String.format(
+              "The value %s cannot be converted to the SQL type %d.", value, targetSqlType));
+    }
+  }
+
+  private static BigDecimal toBigDecimal(Object value) {
+    if (value instanceof BigDecimal) {
+      return (BigDecimal) value;
+    } else if (value instanceof Boolean) {
+      return ((Boolean) value) ? BigDecimal.ONE : BigDecimal.ZERO;
+    } else if (value instanceof Double || value instanceof Float) {
+      return new BigDecimal(value.toString());
+    } else if (value instanceof Number) {
+      return BigDecimal.valueOf(((Number) value).longValue());
+    }
+    return new BigDecimal(value.toString().trim());
+  }
+
+  private static void checkCount(String sql, List<String> literals)
+      throws VerdictDBValueException {
+    int count = countMarkers(sql);
+    if (literals.size() != count) {
+      throw new VerdictDBValueException(
+          String.format(
+              "The query has %d parameters, but %d values were given.", count, literals.size()));
+    }
+  }
+
+  private static String replaceMarkers(String sql, List<String> replacements) {
+    StringBuilder replaced = new StringBuilder(sql.length());
+    int index = 0;
+    char quote = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote == 0 && c == '?') {
+        replaced.append(replacements.get(index++));
+        continue;
+      }
+      replaced.append(c);
+      if (quote == 0 && (c == '\'' || c == '"' || c == '`')) {
+        quote = c;
+      } else if (c == quote) {
+        quote = 0;
+      }
+    }
+    return replaced.toString();
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.coordinator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.core.querying.ExecutableNodeBase;
+import org.verdictdb.core.querying.QueryExecutionPlan;
+import org.verdictdb.core.querying.ola.AggMeta;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.SelectQuery;
+
+import com.rits.cloning.Cloner;
+import com.rits.cloning.IDeepCloner;
+import com.rits.cloning.IFastCloner;
+
+/**
+ * An LRU cache of the work done for a select query before it is executed: parsing, standardizing,
+ * replacing tables with scrambles, and creating the (simplified) asynchronous plan. The same query
+ * sent again is executed on a copy of the cached plan.
+ *
+ * <p>The key consists of the normalized SQL, the default schema, and the version of the scramble
+ * metadata; thus, a cached plan is never used with different metadata. The cache is also cleared
+ * whenever scrambles are created or dropped.
+ *
+ * <p>The queries of prepared statements are cached with placeholders for their parameters (see
+ * {@link QueryParameters}), which are bound to actual values when the entry is copied.
+ *
+ * <p>A copy shares the parts of an entry that are only read while its plan runs: the rewritten
+ * query, the scramble metadata, the query context, and the aggregate metadata that the nodes
+ * created during planning and hand to their subscribers (see ExecutionInfoToken). The nodes and
+ * their queries, which hold the state of a run, are copied.
+ */
+public class QueryPlanCache {
+
+  private final int capacity;
+
+  private final Map<String, CachedPlan> entries;
+
+  private long hitCount = 0;
+
+  private long missCount = 0;
+
+  private final Cloner cloner = createCloner();
+
+  private VerdictDBLogger log = VerdictDBLogger.getLogger(getClass());
+
+  /** @param capacity The maximum number of cached queries */
+  public QueryPlanCache(final int capacity) {
+    this.capacity = capacity;
+    this.entries =
+        new LinkedHashMap<String, CachedPlan>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, CachedPlan> eldest) {
+            return size() > capacity;
+          }
+        };
+  }
+
+  private static Cloner createCloner() {
+    Cloner cloner = new Cloner();
+    // loggers are stateless; the scramble metadata is identified by the version in the key; the
+    // context is replaced by the one of each run (see TempIdCreatorInScratchpadSchema.renew()).
+    cloner.dontCloneInstanceOf(
+        VerdictDBLogger.class, ScrambleMetaSet.class, ScrambleMeta.class, QueryContext.class);
+    return cloner;
+  }
+
+  /**
+   * The work done for a select query.
+   *
+   * <p>If the plan is null, no scrambles are used for the query; the query is the standardized
+   * query, which is executed as-is. Otherwise, the query is the one rewritten with scrambles, from
+   * which the plan was created.
+   */
+  public static class CachedPlan {
+
+    private final SelectQuery query;
+
+    private final QueryExecutionPlan plan;
+
+    public CachedPlan(SelectQuery query, QueryExecutionPlan plan) {
+      this.query = query;
+      this.plan = plan;
+    }
+
+    public SelectQuery getQuery() {
+      return query;
+    }
+
+    public QueryExecutionPlan getPlan() {
+      return plan;
+    }
+  }
+
+  /**
+   * Creates the key for a query. The SQL is normalized by collapsing whitespace outside quotes and
+   * removing trailing semicolons.
+   */
+  public static String createKey(String sql, String defaultSchema, long scrambleMetaVersion) {
+    return String.format("%d:%s:%s", scrambleMetaVersion, defaultSchema, normalize(sql));
+  }
+
+  static String normalize(String sql) {
+    StringBuilder normalized = new StringBuilder(sql.length());
+    char quote = 0;
+    boolean pendingSpace = false;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote == 0 && Character.isWhitespace(c)) {
+        pendingSpace = normalized.length() > 0;
+        continue;
+      }
+      if (pendingSpace) {
+        normalized.append(' ');
+        pendingSpace = false;
+      }
+      normalized.append(c);
+      if (quote == 0 && (c == '\'' || c == '"' || c == '`')) {
+        quote = c;
+      } else if (c == quote) {
+        quote = 0;
+      }
+    }
+    while (normalized.length() > 0
+        && (normalized.charAt(normalized.length() - 1) == ';'
+            || normalized.charAt(normalized.length() - 1) == ' ')) {
+      normalized.setLength(normalized.length() - 1);
+    }
+    return normalized.toString();
+  }
+
+  /**
+   * @return A copy of the cached entry, which the caller may modify and execute; null if the key is
+   *     not cached.
+   */
+  public CachedPlan get(String key) {
+    return get(key, Collections.<String, String>emptyMap());
+  }
+
+  /**
+   * @param bindings Maps the placeholders of parameters to the literals they are replaced with
+   * @return A copy of the cached entry in which the placeholders are replaced; null if the key is
+   *     not cached.
+   */
+  public CachedPlan get(String key, Map<String, String> bindings) {
+    CachedPlan entry;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry == null) {
+        missCount++;
+        return null;
+      }
+      hitCount++;
+    }
+    log.debug("Reuses the cached plan for the query.");
+    return copy(entry, bindings);
+  }
+
+  /**
+   * Copies an entry, replacing the placeholders of parameters with the literals they are mapped to.
+   * The constants other than the placeholders are copied as they are. Without bindings, only the
+   * parts of the plan that change while it runs are copied.
+   */
+  public CachedPlan copy(CachedPlan entry, final Map<String, String> bindings) {
+    if (bindings.isEmpty()) {
+      return copyPlan(entry);
+    }
+    Cloner binder = createCloner();
+    binder.registerFastCloner(
+        ConstantColumn.class,
+        new IFastCloner() {
+          @Override
+          public Object clone(Object t, IDeepCloner cloner, Map<Object, Object> clones) {
+            Object value = ((ConstantColumn) t).getValue();
+            if (value instanceof String && bindings.containsKey(value)) {
+              return ConstantColumn.valueOf(bindings.get(value));
+            }
+            return ConstantColumn.valueOf(value);
+          }
+        });
+    return binder.deepClone(entry);
+  }
+
+  /**
+   * Caches a copy of the entry. The entry must be copied before its plan starts to run.
+   */
+  public void put(String key, CachedPlan entry) {
+    CachedPlan copy = copyPlan(entry);
+    synchronized (this) {
+      entries.put(key, copy);
+    }
+  }
+
+  /**
+   * @return True if the key is cached. Unlike get(), the entry is neither copied nor counted as a
+   *     hit or a miss.
+   */
+  public synchronized boolean contains(String key) {
+    return entries.containsKey(key);
+  }
+
+  /**
+   * Copies the plan of an entry. The aggregate metadata the nodes hold since planning is shared;
+   * any other instance (e.g., the one a node keeps updating across tokens) is copied.
+   */
+  private CachedPlan copyPlan(CachedPlan entry) {
+    QueryExecutionPlan plan = entry.getPlan();
+    if (plan == null) {
+      return new CachedPlan(entry.getQuery(), null);
+    }
+
+    Set<AggMeta> planned = Collections.newSetFromMap(new IdentityHashMap<AggMeta, Boolean>());
+    for (ExecutableNodeBase node : collectNodes(plan.getRootNode())) {
+      planned.add(node.getAggMeta());
+    }
+    QueryExecutionPlan copied = cloner.deepCloneDontCloneInstances(plan, planned.toArray());
+    return new CachedPlan(entry.getQuery(), copied);
+  }
+
+  private static List<ExecutableNodeBase> collectNodes(ExecutableNodeBase root) {
+    Set<ExecutableNodeBase> visited =
+        Collections.newSetFromMap(new IdentityHashMap<ExecutableNodeBase, Boolean>());
+    List<ExecutableNodeBase> nodes = new ArrayList<>();
+    List<ExecutableNodeBase> toVisit = new ArrayList<>();
+    toVisit.add(root);
+    while (!toVisit.isEmpty()) {
+      ExecutableNodeBase node = toVisit.remove(toVisit.size() - 1);
+      if (node == null || !visited.add(node)) {
+        continue;
+      }
+      nodes.add(node);
+      toVisit.addAll(node.getSources());
+    }
+    return nodes;
+  }
+
+  /** Removes all the cached entries; the hit and miss counts are kept. */
+  public synchronized void invalidateAll() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+}
@@ -1,10 +1,18 @@
 package org.verdictdb.coordinator;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.verdictdb.VerdictSingleResult;
 import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
 
 public abstract class QueryResultAccuracyEstimator {
 
@@ -31,4 +39,74 @@ public abstract class QueryResultAccuracyEstimator {
   public boolean isLastResultAccurate() {
     return false;
   }
+
+  /**
+   * Infers the aggregate (i.e., non-grouping) columns of the answers using the original query. The
+   * columns projected by '*' are considered to be aggregate columns.
+   *
+   * @param query The original query
+   * @param columnCount The number of columns of an answer
+   * @return The indexes of the aggregate columns
+   */
+  protected static Set<Integer> findAggregateColumnIndexes(SelectQuery query, int columnCount) {
+    List<SelectItem> selectItems = query.getSelectList();
+    Set<Integer> indexes = new HashSet<>();
+
+    // estimate the number of columns that would be projected by '*'.
+    int numColExceptforAsterisk = 0;
+    int numAsterisk = 0;
+    for (SelectItem item : selectItems) {
+      if (item instanceof AsteriskColumn) {
+        numAsterisk++;
+      } else {
+        numColExceptforAsterisk++;
+      }
+    }
+
+    int numColForAsterisk =
+        (numAsterisk == 0) ? 0 : (columnCount - numColExceptforAsterisk) / numAsterisk;
+
+    // obtain the index of grouping and non-grouping attribute indexes.
+    int i = 0;
+    for (SelectItem item : selectItems) {
+      if (item instanceof AsteriskColumn) {
+        for (int j = 0; j < numColForAsterisk; j++) {
+          indexes.add(i);
+          i++;
+        }
+      } else if (item.isAggregateColumn()) {
+        indexes.add(i);
+        i++;
+      } else {
+        i++;
+      }
+    }
+    return indexes;
+  }
+
+  /**
+   * @return True if and only query contains only count or count distinct and doesn't contain group
+   *     by
+   */
+  protected static boolean isCountOnly(SelectQuery query) {
+    if (!query.getGroupby().isEmpty()) {
+      return false;
+    }
+    for (SelectItem sel : query.getSelectList()) {
+      if (sel instanceof AliasedColumn) {
+        UnnamedColumn col = ((AliasedColumn) sel).getColumn();
+        if (!(col instanceof ColumnOp)) {
+          return false;
+        } else {
+          ColumnOp op = (ColumnOp) col;
+          if (!(op.isCountDistinctAggregate() || op.isCountAggregate())) {
+            return false;
+          }
+        }
+      } else {
+        return false;
+      }
+    }
+    return true;
+  }
 }
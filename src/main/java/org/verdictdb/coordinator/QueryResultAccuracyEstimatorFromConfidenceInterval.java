@@ -0,0 +1,280 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.coordinator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.commons.TypeCasting;
+import org.verdictdb.core.sqlobject.SelectQuery;
+
+/**
+ * Considers an answer to be accurate when the confidence interval of every aggregate value is
+ * within a target relative error.
+ *
+ * <p>The k-th progressive answer is the mean of the estimates obtained from each of the first k
+ * blocks of the scrambles. Thus, the estimate from the k-th block is recovered as
+ * k * A(k) - (k - 1) * A(k - 1), where A(k) is the k-th answer, and the variance of the block
+ * estimates is maintained incrementally for every group and aggregate column. The half-width of
+ * the confidence interval of A(k) is then z * s / sqrt(k), where s is the standard deviation of the
+ * block estimates.
+ *
+ * <p>A group that first appears in the k-th answer had no rows in the earlier blocks; its earlier
+ * block estimates are taken to be zero. An answer that has a new group is not considered to be
+ * accurate since the set of groups has not settled yet.
+ *
+ * <p>When a single answer covers several blocks (e.g., for the joins of scrambles), the variance is
+ * overestimated, which only delays the termination.
+ */
+public class QueryResultAccuracyEstimatorFromConfidenceInterval
+    extends QueryResultAccuracyEstimator {
+
+  static final double DEFAULT_TARGET_ERROR = 0.05;
+
+  static final double DEFAULT_CONFIDENCE = 0.95;
+
+  // the variance estimated from fewer blocks is not trusted.
+  static final int MIN_BLOCK_COUNT = 3;
+
+  // Used for inferring grouping and aggregate columns.
+  private SelectQuery originalQuery;
+
+  // the half-width of the confidence interval relative to the estimate
+  private double targetError;
+
+  private double confidence;
+
+  // the z-score of the confidence
+  private double zScore;
+
+  private int[] aggregateColumns;
+
+  private int[] groupColumns;
+
+  private boolean isCountOnly;
+
+  // The key is the values of grouping columns; kept across answers.
+  private Map<List<Object>, GroupState> groupStates = new HashMap<>();
+
+  private boolean isLastAnswerAccurate = false;
+
+  /** The statistics of the block estimates of the aggregate columns of a group. */
+  static class GroupState {
+
+    // the number of block estimates folded into the mean and m2 of each aggregate column
+    int[] count;
+
+    // the number of blocks the last estimate of each aggregate column was computed from
+    int[] lastBlockCount;
+
+    double[] lastEstimate;
+
+    double[] mean;
+
+    // the sum of squared differences from the mean
+    double[] m2;
+
+    /**
+     * @param width The number of aggregate columns
+     * @param blockCount The number of blocks before the first appearance of the group, whose
+     *     estimates are zero
+     */
+    GroupState(int width, int blockCount) {
+      count = new int[width];
+      lastBlockCount = new int[width];
+      Arrays.fill(count, blockCount);
+      Arrays.fill(lastBlockCount, blockCount);
+      lastEstimate = new double[width];
+      mean = new double[width];
+      m2 = new double[width];
+    }
+
+    /**
+     * Adds the block estimate derived from the answer after the given number of blocks. If the
+     * answers in between had no value for the column (i.e., null), the blocks since the last
+     * estimate are folded in as a single block estimate, their average.
+     */
+    void update(int index, int blockCount, double estimate) {
+      int blocks = blockCount - lastBlockCount[index];
+      double blockEstimate =
+          (blockCount * estimate - lastBlockCount[index] * lastEstimate[index]) / blocks;
+      count[index]++;
+      double delta = blockEstimate - mean[index];
+      mean[index] += delta / count[index];
+      m2[index] += delta * (blockEstimate - mean[index]);
+      lastBlockCount[index] = blockCount;
+      lastEstimate[index] = estimate;
+    }
+
+    /** @return The half-width of the confidence interval of the last estimate */
+    double halfWidth(int index, double zScore) {
+      int n = count[index];
+      if (n < 2) {
+        return Double.POSITIVE_INFINITY;
+      }
+      double variance = m2[index] / (n - 1);
+      return zScore * Math.sqrt(variance / n);
+    }
+  }
+
+  QueryResultAccuracyEstimatorFromConfidenceInterval(SelectQuery originalQuery) {
+    this(originalQuery, DEFAULT_TARGET_ERROR, DEFAULT_CONFIDENCE);
+  }
+
+  /**
+   * @param originalQuery Used for inferring aggregate columns
+   * @param targetError The half-width of confidence intervals relative to the estimates
+   * @param confidence The probability that a confidence interval contains the exact value
+   */
+  QueryResultAccuracyEstimatorFromConfidenceInterval(
+      SelectQuery originalQuery, double targetError, double confidence) {
+    this.originalQuery = originalQuery;
+    this.targetError = targetError;
+    this.confidence = confidence;
+    this.zScore = normalQuantile((1.0 + confidence) / 2.0);
+  }
+
+  public double getTargetError() {
+    return targetError;
+  }
+
+  public double getConfidence() {
+    return confidence;
+  }
+
+  @Override
+  public void add(VerdictSingleResult rs) {
+    super.add(rs);
+    if (getAnswerCount() == 1) {
+      inferColumns(rs.getColumnCount());
+    }
+    if (aggregateColumns.length == 0) {
+      isLastAnswerAccurate = true;
+      return;
+    }
+
+    // the number of blocks before this answer
+    int blockCount = getAnswerCount() - 1;
+    boolean isAccurate = getAnswerCount() >= MIN_BLOCK_COUNT;
+    while (rs.next()) {
+      List<Object> groupValues = new ArrayList<>(groupColumns.length);
+      for (int i : groupColumns) {
+        groupValues.add(rs.getValue(i));
+      }
+      GroupState state = groupStates.get(groupValues);
+      if (state == null) {
+        state = new GroupState(aggregateColumns.length, blockCount);
+        groupStates.put(groupValues, state);
+        if (blockCount > 0) {
+          isAccurate = false;
+        }
+      }
+      for (int j = 0; j < aggregateColumns.length; j++) {
+        Object value = rs.getValue(aggregateColumns[j]);
+        if (value == null && isCountOnly) {
+          value = 0;
+        }
+        if (value == null) {
+          // a null aggregate is never accurate; its estimates are kept as they are.
+          isAccurate = false;
+          continue;
+        }
+        double estimate = TypeCasting.toDouble(value);
+        state.update(j, blockCount + 1, estimate);
+        if (isAccurate && state.halfWidth(j, zScore) > targetError * Math.abs(estimate)) {
+          isAccurate = false;
+        }
+      }
+    }
+    rs.rewind();
+    isLastAnswerAccurate = isAccurate;
+  }
+
+  private void inferColumns(int columnCount) {
+    Set<Integer> aggregates = findAggregateColumnIndexes(originalQuery, columnCount);
+    aggregateColumns = new int[aggregates.size()];
+    groupColumns = new int[columnCount - aggregates.size()];
+    int a = 0;
+    int g = 0;
+    for (int i = 0; i < columnCount; i++) {
+      if (aggregates.contains(i)) {
+        aggregateColumns[a++] = i;
+      } else {
+        groupColumns[g++] = i;
+      }
+    }
+    isCountOnly = isCountOnly(originalQuery);
+  }
+
+  @Override
+  public boolean isLastResultAccurate() {
+    if (isLastAnswerAccurate) {
+      log.debug(
+          String.format(
+              "The confidence intervals at %.2f confidence are within %.2f%% of the estimates.",
+              confidence, targetError * 100));
+    }
+    return isLastAnswerAccurate;
+  }
+
+  /**
+   * Computes the quantile of the standard normal distribution using the rational approximation by
+   * Acklam, whose relative error is below 1.15e-9.
+   *
+   * @param p The cumulative probability in (0, 1)
+   * @return The value below which the probability is p
+   */
+  static double normalQuantile(double p) {
+    if (p <= 0 || p >= 1) {
+      throw new IllegalArgumentException("The probability must be in (0, 1): " + p);
+    }
+    final double[] a = {
+      -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+      1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00
+    };
+    final double[] b = {
+      -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+      6.680131188771972e+01, -1.328068155288572e+01
+    };
+    final double[] c = {
+      -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+      -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00
+    };
+    final double[] d = {
+      7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00
+    };
+    final double low = 0.02425;
+
+    if (p < low) {
+      double q = Math.sqrt(-2 * Math.log(p));
+      return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+          / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+    } else if (p > 1 - low) {
+      return -normalQuantile(1 - p);
+    }
+    double q = p - 0.5;
+    double r = q * q;
+    return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5])
+        * q
+        / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+  }
+}
@@ -65,38 +65,8 @@ public class QueryResultAccuracyEstimatorFromDifference extends QueryResultAccur
       return;
     }
     
-    List<SelectItem> selectItems = originalQuery.getSelectList();
-    VerdictSingleResult singleAnswer = answers.get(0);
-    
-    // estimate the number of columns that would be projected by '*'.
-    int numColExceptforAsterisk = 0;
-    int numAsterisk = 0;
-    for (SelectItem item : selectItems) {
-      if (item instanceof AsteriskColumn) {
-        numAsterisk++;
-      } else {
-        numColExceptforAsterisk++;
-      }
-    }
-    
-    int numColForAsterisk = (numAsterisk == 0)? 0:
-      (singleAnswer.getColumnCount() - numColExceptforAsterisk) / numAsterisk;
-    
-    // obtain the index of grouping and non-grouping attribute indexes.
-    int i = 0;
-    for (SelectItem item : selectItems) {
-      if (item instanceof AsteriskColumn) {
-        for (int j = 0; j < numColForAsterisk; j++) {
-          nongroupingColumnIndxes.add(i);
-          i++;
-        }
-      } else if (item.isAggregateColumn()) {
-        nongroupingColumnIndxes.add(i);
-        i++;
-      } else {
-        i++;
-      }
-    }
+    nongroupingColumnIndxes =
+        findAggregateColumnIndexes(originalQuery, answers.get(0).getColumnCount());
   }
 
   public void setValueError(Double valueError) {
@@ -221,23 +191,6 @@ public class QueryResultAccuracyEstimatorFromDifference extends QueryResultAccur
    * @return True if and only query contains only count or count distinct and doesn't contain group by
    */
   public boolean checkIfQueryCountOnly() {
-    if (!originalQuery.getGroupby().isEmpty()) {
-      return false;
-    }
-    for (SelectItem sel:this.originalQuery.getSelectList()) {
-      if (sel instanceof AliasedColumn) {
-        UnnamedColumn col = ((AliasedColumn) sel).getColumn();
-        if (!(col instanceof ColumnOp)) {
-          return false;
-        } else {
-          if (!(((ColumnOp)col).isCountDistinctAggregate() || ((ColumnOp)col).isCountAggregate())) {
-            return false;
-          }
-        }
-      } else {
-        return false;
-      }
-    }
-    return true;
+    return isCountOnly(originalQuery);
   }
 }
@@ -18,6 +18,7 @@ package org.verdictdb.coordinator;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
+import org.apache.commons.lang3.tuple.Pair;
 import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.connection.CachedDbmsConnection;
 import org.verdictdb.connection.ConcurrentJdbcConnection;
@@ -25,16 +26,27 @@ import org.verdictdb.connection.DbmsConnection;
 import org.verdictdb.core.execplan.ExecutablePlanRunner;
 import org.verdictdb.core.scrambling.FastConvergeScramblingMethod;
 import org.verdictdb.core.scrambling.HashScramblingMethod;
+import org.verdictdb.core.scrambling.ScrambleAppender;
 import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScramblingChunkNode;
+import org.verdictdb.core.scrambling.ScramblingChunkSplit;
 import org.verdictdb.core.scrambling.ScramblingMethod;
+import org.verdictdb.core.scrambling.ScramblingMethodBase;
 import org.verdictdb.core.scrambling.ScramblingPlan;
+import org.verdictdb.core.scrambling.ScramblingProgress;
+import org.verdictdb.core.scrambling.ScramblingProgressListener;
 import org.verdictdb.core.scrambling.UniformScramblingMethod;
 import org.verdictdb.core.sqlobject.CreateSchemaQuery;
 import org.verdictdb.core.sqlobject.CreateScrambleQuery;
+import org.verdictdb.core.sqlobject.DropTableQuery;
+import org.verdictdb.core.sqlobject.InsertIntoSelectQuery;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
 import org.verdictdb.exception.VerdictDBException;
 import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.metastore.ScrambleMetaStore;
 import org.verdictdb.sqlwriter.QueryToSql;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -78,6 +90,8 @@ public class ScramblingCoordinator {
           put("createIfNotExists", "false");
           put("maxScrambleTableBlockCount", "100");
           put("existingPartitionColumns", "");
+          put("reuseStatistics", "false");
+          put("scramblingChunkCount", "1");
         }
       };
 
@@ -87,6 +101,9 @@ public class ScramblingCoordinator {
 
   Optional<String> scratchpadSchema;
 
+  // records the progress of the scramblings in chunks; null if not recorded
+  private ScrambleMetaStore metaStore = null;
+
   private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
 
   public ScramblingCoordinator(DbmsConnection conn) {
@@ -196,6 +213,38 @@ public class ScramblingCoordinator {
     return meta;
   }
 
+  /**
+   * Splits the insertion of rows into a scramble into the given number of chunks, which are staged
+   * in their own tables concurrently if the connection allows (e.g., ConcurrentJdbcConnection) and
+   * then inserted into the scramble table. If a metastore is set, the progress is recorded in it,
+   * and issuing the same scrambling again after an interruption stages only the chunks that were
+   * not staged, with the distributions of the interrupted scrambling, and inserts the staged chunks
+   * into the scramble table created again. Otherwise, the scrambling fails if the scramble table
+   * exists.
+   *
+   * @param chunkCount The number of chunks; one creates a scramble with a single statement.
+   */
+  public void setChunkCount(int chunkCount) {
+    options.put("scramblingChunkCount", String.valueOf(chunkCount));
+  }
+
+  /**
+   * By default, the rows are split into chunks by a partition column of the original table, by the
+   * ranges of its primary key, or by the hash of its first column. A hash split makes every chunk
+   * scan the entire original table; an integral column that is indexed or sorted (e.g., a
+   * clustering key) can be given instead, so that the rows are split by its ranges.
+   *
+   * @param chunkColumn The column of the original table by which the rows are split into chunks
+   */
+  public void setChunkColumn(String chunkColumn) {
+    options.put("scramblingChunkColumn", chunkColumn);
+  }
+
+  /** @param metaStore Records the progress of scramblings in chunks (see setChunkCount()). */
+  public void setMetaStore(ScrambleMetaStore metaStore) {
+    this.metaStore = metaStore;
+  }
+
   // Note: this is the method currently used by the upstream interface.
   public ScrambleMeta scramble(CreateScrambleQuery query) throws VerdictDBException {
 
@@ -302,11 +351,15 @@ public class ScramblingCoordinator {
     } else if (methodName.equalsIgnoreCase("hash")) {
       scramblingMethod =
           new HashScramblingMethod(blockSize, maxBlockCount, relativeSize, primaryColumn);
-    } else if (methodName.equalsIgnoreCase("FastConverge") && primaryColumn == null) {
-      scramblingMethod = new FastConvergeScramblingMethod(blockSize, scratchpadSchema.get());
-    } else if (methodName.equalsIgnoreCase("FastConverge") && primaryColumn != null) {
-      scramblingMethod =
-          new FastConvergeScramblingMethod(blockSize, scratchpadSchema.get(), primaryColumn);
+    } else if (methodName.equalsIgnoreCase("FastConverge")) {
+      FastConvergeScramblingMethod fastConvergeMethod =
+          (primaryColumn == null)
+              ? new FastConvergeScramblingMethod(blockSize, scratchpadSchema.get())
+              : new FastConvergeScramblingMethod(blockSize, scratchpadSchema.get(), primaryColumn);
+      // keeps the statistics of the original table for the scrambles created later.
+      fastConvergeMethod.setStatisticsReused(
+          Boolean.parseBoolean(effectiveOptions.get("reuseStatistics")));
+      scramblingMethod = fastConvergeMethod;
     } else {
       throw new VerdictDBValueException("Invalid scrambling method: " + methodName);
     }
@@ -325,9 +378,71 @@ public class ScramblingCoordinator {
         String.format(
             "Relative size: %.6f (or equivalently, %.4f %%)", relativeSize, relativeSize * 100));
 
+    ScramblingProgress progress = null;
+    ScramblingProgressListener listener = null;
+    boolean isChunked = Integer.parseInt(effectiveOptions.get("scramblingChunkCount")) > 1;
+    if (isChunked) {
+      // only a scrambling that recorded its progress is resumed.
+      progress = (metaStore == null) ? null : metaStore.retrieveInProgress(newSchema, newTable);
+      if (progress != null || conn.getTables(newSchema).contains(newTable)) {
+        checkResumable(progress, newSchema, newTable, originalSchema, originalTable, methodName);
+        ScrambleMeta meta = progress.getMeta();
+        Map<Integer, List<Double>> distributions = new HashMap<>();
+        for (int i = 0; i < meta.getNumberOfTiers(); i++) {
+          distributions.put(i, meta.getCumulativeDistributionForTier(i));
+        }
+        ((ScramblingMethodBase) scramblingMethod)
+            .setCumulativeProbabilityDistributions(distributions);
+        effectiveOptions.put("tierColumnName", meta.getTierColumn());
+        effectiveOptions.put("blockColumnName", meta.getAggregationBlockColumn());
+        effectiveOptions.put("scramblingChunkCount", String.valueOf(progress.getChunkCount()));
+        effectiveOptions.put("scramblingChunkColumn", progress.getChunkColumn());
+        if (progress.isMerged()) {
+          // interrupted after all the chunks were inserted; only the staging tables remain.
+          log.info(String.format("Finishes the scrambling of %s.%s", newSchema, newTable));
+          dropStagingTables(newSchema, newTable, progress.getChunkCount());
+          return meta;
+        }
+
+        // The scramble table may have only some of the staged chunks, and the staging table of a
+        // chunk not recorded may be incomplete. Both are created again.
+        Set<Integer> completedChunks = progress.getCompletedChunks();
+        log.info(
+            String.format(
+                "Resumes the interrupted scrambling of %s.%s (%d of %d chunks staged)",
+                newSchema, newTable, completedChunks.size(), progress.getChunkCount()));
+        dropTableIfExists(newSchema, newTable);
+        for (int i = 0; i < progress.getChunkCount(); i++) {
+          if (!completedChunks.contains(i)) {
+            dropTableIfExists(newSchema, ScramblingChunkNode.getStagingTableName(newTable, i));
+          }
+        }
+      }
+      if (metaStore != null) {
+        listener =
+            createProgressListener(
+                progress,
+                newSchema,
+                newTable,
+                originalSchema,
+                originalTable,
+                methodName,
+                primaryColumn,
+                scramblingMethod,
+                effectiveOptions);
+      }
+    }
+
     ScramblingPlan plan =
         ScramblingPlan.create(
-            newSchema, newTable, originalSchema, originalTable, scramblingMethod, effectiveOptions);
+            newSchema,
+            newTable,
+            originalSchema,
+            originalTable,
+            scramblingMethod,
+            effectiveOptions,
+            progress,
+            listener);
     ExecutablePlanRunner.runTillEnd(conn, plan);
     log.info(String.format("Finished creating %s.%s", newSchema, newTable));
 
@@ -343,7 +458,38 @@ public class ScramblingCoordinator {
           .reinitiateConnection();
     }
 
-    // compose scramble meta
+    ScrambleMeta meta =
+        composeScrambleMeta(
+            newSchema,
+            newTable,
+            originalSchema,
+            originalTable,
+            methodName,
+            primaryColumn,
+            scramblingMethod,
+            effectiveOptions);
+    if (isChunked) {
+      // the staging tables are dropped only after all the chunks are recorded as inserted.
+      if (metaStore != null) {
+        metaStore.addMergedToStore(meta);
+      }
+      dropStagingTables(
+          newSchema, newTable, Integer.parseInt(effectiveOptions.get("scramblingChunkCount")));
+    }
+
+    return meta;
+  }
+
+  private ScrambleMeta composeScrambleMeta(
+      String newSchema,
+      String newTable,
+      String originalSchema,
+      String originalTable,
+      String methodName,
+      String primaryColumn,
+      ScramblingMethod scramblingMethod,
+      Map<String, String> effectiveOptions)
+      throws VerdictDBValueException {
     String tierColumn = effectiveOptions.get("tierColumnName");
     int tierCount = scramblingMethod.getTierCount();
     Map<Integer, List<Double>> cumulativeDistribution = new HashMap<>();
@@ -370,4 +516,153 @@ public class ScramblingCoordinator {
 
     return meta;
   }
+
+  /**
+   * A scramble table that exists is filled only if it is being created by the same scrambling,
+   * which has been interrupted. Since the chunks are then staged with the distributions recorded
+   * when the scrambling started, the scrambles whose tiers are determined by statistics (e.g.,
+   * FastConverge) are not resumed.
+   */
+  private void checkResumable(
+      ScramblingProgress progress,
+      String newSchema,
+      String newTable,
+      String originalSchema,
+      String originalTable,
+      String methodName)
+      throws VerdictDBValueException {
+    if (progress == null) {
+      throw new VerdictDBValueException(
+          String.format("The table %s.%s already exists.", newSchema, newTable));
+    }
+    ScrambleMeta meta = progress.getMeta();
+    if (!meta.getOriginalSchemaName().equals(originalSchema)
+        || !meta.getOriginalTableName().equals(originalTable)
+        || !methodName.equalsIgnoreCase(meta.getMethodWithDefault("uniform"))) {
+      throw new VerdictDBValueException(
+          String.format(
+              "The scramble %s.%s is being created from %s.%s by the %s method. "
+                  + "Drop it to create a different scramble.",
+              newSchema,
+              newTable,
+              meta.getOriginalSchemaName(),
+              meta.getOriginalTableName(),
+              meta.getMethodWithDefault("uniform")));
+    }
+    if (meta.getNumberOfTiers() > 1) {
+      throw new VerdictDBValueException(
+          String.format(
+              "The interrupted scrambling of %s.%s cannot be resumed since its tiers depend on "
+                  + "the statistics of the original table. Drop it and create it again.",
+              newSchema, newTable));
+    }
+  }
+
+  private void dropTableIfExists(String schema, String table) throws VerdictDBException {
+    DropTableQuery drop = new DropTableQuery(schema, table);
+    drop.setIfExists(true);
+    conn.execute(QueryToSql.convert(conn.getSyntax(), drop));
+  }
+
+  private void dropStagingTables(String schema, String table, int chunkCount)
+      throws VerdictDBException {
+    for (int i = 0; i < chunkCount; i++) {
+      dropTableIfExists(schema, ScramblingChunkNode.getStagingTableName(table, i));
+    }
+  }
+
+  /**
+   * Records the progress of a scrambling in chunks in the metastore: the metadata (including the
+   * distributions and the split of the chunks) when the scramble table is created, and then every
+   * chunk staged.
+   *
+   * @param resumed The progress of the interrupted scrambling being resumed; null if new.
+   */
+  private ScramblingProgressListener createProgressListener(
+      final ScramblingProgress resumed,
+      final String newSchema,
+      final String newTable,
+      final String originalSchema,
+      final String originalTable,
+      final String methodName,
+      final String primaryColumn,
+      final ScramblingMethod scramblingMethod,
+      final Map<String, String> effectiveOptions) {
+    final int chunkCount = Integer.parseInt(effectiveOptions.get("scramblingChunkCount"));
+
+    return new ScramblingProgressListener() {
+
+      private ScrambleMeta meta = (resumed == null) ? null : resumed.getMeta();
+
+      @Override
+      public synchronized void scrambleTableCreated(
+          String chunkColumn, ScramblingChunkSplit split) throws VerdictDBException {
+        meta =
+            composeScrambleMeta(
+                newSchema,
+                newTable,
+                originalSchema,
+                originalTable,
+                methodName,
+                primaryColumn,
+                scramblingMethod,
+                effectiveOptions);
+        metaStore.addInProgressToStore(
+            new ScramblingProgress(meta, chunkCount, chunkColumn, split));
+      }
+
+      @Override
+      public synchronized void chunkStaged(int chunk) throws VerdictDBException {
+        metaStore.addCompletedChunkToStore(meta, chunk);
+      }
+    };
+  }
+
+  /**
+   * Inserts the rows of a table into an existing scramble without rebuilding it. The rows are
+   * assigned to the blocks by the cumulative distributions stored in the metadata of the scramble;
+   * see ScrambleAppender for details.
+   *
+   * @param meta The metadata of the scramble
+   * @param sourceSchema The schema of the table that contains the new rows
+   * @param sourceTable The table that contains the new rows
+   * @param condition The predicate that selects the new rows; null to append all the rows. It
+   *     must not be null if the source table is the original table of the scramble, whose rows
+   *     are already in the scramble.
+   * @return The metadata of the scramble, which stays valid after the rows are appended.
+   * @throws VerdictDBException
+   */
+  public ScrambleMeta append(
+      ScrambleMeta meta, String sourceSchema, String sourceTable, UnnamedColumn condition)
+      throws VerdictDBException {
+    String schema = meta.getSchemaName();
+    String table = meta.getTableName();
+    if (condition == null
+        && sourceSchema.equals(meta.getOriginalSchemaName())
+        && sourceTable.equals(meta.getOriginalTableName())) {
+      throw new VerdictDBValueException(
+          String.format(
+              "Appending all the rows of %s.%s would duplicate the rows of the scramble %s.%s. "
+                  + "Specify the table of the new rows with FROM or the new rows with WHERE.",
+              sourceSchema, sourceTable, schema, table));
+    }
+
+    List<String> columns = new ArrayList<>();
+    for (Pair<String, String> column : conn.getColumns(schema, table)) {
+      columns.add(column.getLeft());
+    }
+    ScrambleAppender appender = new ScrambleAppender(meta, sourceSchema, sourceTable);
+    appender.setCondition(condition);
+    appender.setPartitionColumns(conn.getPartitionColumns(schema, table));
+    InsertIntoSelectQuery insert = appender.createQuery(columns);
+
+    log.info(
+        String.format(
+            "Starts to append the rows of %s.%s to the scramble %s.%s",
+            sourceSchema, sourceTable, schema, table));
+    conn.execute(QueryToSql.convert(conn.getSyntax(), insert));
+    log.info(String.format("Finished appending to %s.%s", schema, table));
+
+    return meta;
+  }
 }
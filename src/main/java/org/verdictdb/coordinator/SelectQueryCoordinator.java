@@ -18,16 +18,21 @@ package org.verdictdb.coordinator;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.Triple;
 import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.commons.VerdictOption;
+import org.verdictdb.connection.CachedDbmsConnection;
 import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.core.execplan.ExecutableNodeScheduler;
 import org.verdictdb.core.execplan.ExecutablePlanRunner;
 import org.verdictdb.core.execplan.ExecutionInfoToken;
 import org.verdictdb.core.execplan.ExecutionTokenQueue;
+import org.verdictdb.core.querying.IdCreator;
 import org.verdictdb.core.querying.QueryExecutionPlan;
 import org.verdictdb.core.querying.QueryExecutionPlanFactory;
+import org.verdictdb.core.querying.TempIdCreatorInScratchpadSchema;
 import org.verdictdb.core.querying.ola.AsyncQueryExecutionPlan;
 import org.verdictdb.core.querying.simplifier.QueryExecutionPlanSimplifier;
 import org.verdictdb.core.resulthandler.ExecutionResultReader;
@@ -58,8 +63,18 @@ public class SelectQueryCoordinator implements Coordinator {
 
   SelectQuery lastQuery;
 
+  // names the temp tables of the last executed plan
+  IdCreator lastIdCreator;
+
   VerdictOption options;
 
+  private QueryPlanCache planCache = null;
+
+  private long scrambleMetaVersion = 0;
+
+  // streams the answer of a query run as-is instead of reading it into memory
+  private boolean streamingResult = false;
+
   private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
 
   public SelectQueryCoordinator(DbmsConnection conn) {
@@ -95,6 +110,34 @@ public class SelectQueryCoordinator implements Coordinator {
   public SelectQuery getLastQuery() {
     return lastQuery;
   }
+
+  /**
+   * @return The creator of the temp table names of the last executed plan; null if no plan has
+   *     been executed.
+   */
+  IdCreator getLastIdCreator() {
+    return lastIdCreator;
+  }
+
+  /**
+   * Lets process(String, QueryContext) reuse the plans of the queries processed before.
+   *
+   * @param planCache The cache shared by the coordinators of the same VerdictContext
+   * @param scrambleMetaVersion The version of the scramble metadata of this coordinator; the plans
+   *     created with other versions are not reused.
+   */
+  public void setPlanCache(QueryPlanCache planCache, long scrambleMetaVersion) {
+    this.planCache = planCache;
+    this.scrambleMetaVersion = scrambleMetaVersion;
+  }
+
+  /**
+   * @param streamingResult True if the answer of a query run as-is may be read from the database
+   *     as it is consumed; the consumer must then close it. False by default.
+   */
+  public void setStreamingResult(boolean streamingResult) {
+    this.streamingResult = streamingResult;
+  }
   
   /**
    * This method must be used only for testing. Currently, process(SelectQuery selectQuery)
@@ -108,6 +151,53 @@ public class SelectQueryCoordinator implements Coordinator {
     return process(selectQuery);
   }
   
+  /**
+   * Processes a select query in its string form. If a plan cache is set, the parsing, the
+   * standardization, and the planning are skipped for the queries processed before.
+   */
+  public ExecutionResultReader process(String sql, QueryContext context)
+      throws VerdictDBException {
+    if (planCache == null) {
+      return process(ExecutionContext.standardizeQuery(sql, conn), context);
+    }
+
+    String cacheKey = QueryPlanCache.createKey(sql, conn.getDefaultSchema(), scrambleMetaVersion);
+    QueryPlanCache.CachedPlan cached = planCache.get(cacheKey);
+    if (cached == null) {
+      SelectQuery selectQuery = ExecutionContext.standardizeQuery(sql, conn);
+      return process(selectQuery, context, cacheKey);
+    }
+    return execute(cached, context);
+  }
+
+  /**
+   * Processes a select query with parameter markers (?). If a plan cache is set, the query is
+   * planned once with placeholders for its parameters, and the plan is reused for other parameter
+   * values.
+   *
+   * @param sql Select query with parameter markers
+   * @param parameters SQL literals in the order of the markers
+   */
+  public ExecutionResultReader process(String sql, List<String> parameters, QueryContext context)
+      throws VerdictDBException {
+    if (planCache == null) {
+      return process(QueryParameters.bind(sql, parameters), context);
+    }
+
+    Map<String, String> bindings = QueryParameters.bindingsOf(sql, parameters);
+    String template = QueryParameters.replaceMarkersWithPlaceholders(sql);
+    String cacheKey =
+        QueryPlanCache.createKey(template, conn.getDefaultSchema(), scrambleMetaVersion);
+    QueryPlanCache.CachedPlan bound = planCache.get(cacheKey, bindings);
+    if (bound == null) {
+      QueryPlanCache.CachedPlan entry =
+          createEntry(ExecutionContext.standardizeQuery(template, conn), context);
+      planCache.put(cacheKey, entry);
+      bound = planCache.copy(entry, bindings);
+    }
+    return execute(bound, context);
+  }
+
   /**
    * The input is assumed to have been standardized.
    */
@@ -117,30 +207,43 @@ public class SelectQueryCoordinator implements Coordinator {
 
   public ExecutionResultReader process(SelectQuery selectQuery, QueryContext context)
       throws VerdictDBException {
+    return process(selectQuery, context, null);
+  }
 
-    // create scratchpad schema if not exists
-    if (!conn.getSchemas().contains(scratchpadSchema)) {
-      log.info(
-          String.format(
-              "The schema for temporary tables (%s) does not exist; so we create it.",
-              scratchpadSchema));
-      CreateSchemaQuery createSchema = new CreateSchemaQuery(scratchpadSchema);
-      conn.execute(createSchema);
+  /**
+   * @param cacheKey If not null, the resulting plan is cached with this key.
+   */
+  private ExecutionResultReader process(
+      SelectQuery selectQuery, QueryContext context, String cacheKey) throws VerdictDBException {
+
+    createScratchpadSchemaIfNotExists();
+
+    QueryPlanCache.CachedPlan entry = createEntry(selectQuery, context);
+
+    // the plan is cached before its nodes start to run (and modify their states).
+    if (cacheKey != null) {
+      planCache.put(cacheKey, entry);
     }
-    
-    // replaces original tables with scrambles if available
-    SelectQuery fasterQuery = lookforReplacement2Scrambles(selectQuery);
 
     lastQuery = null;
+    if (entry.getPlan() == null) {
+      return executeAsIs(entry.getQuery());
+    }
+    return executePlan(entry.getPlan(), entry.getQuery());
+  }
+
+  /**
+   * Replaces the tables of a standardized query with scrambles, and creates its plan.
+   *
+   * @return The query to execute as-is (with a null plan) if no scrambles are available for it;
+   *     otherwise, the query rewritten with scrambles and its plan.
+   */
+  private QueryPlanCache.CachedPlan createEntry(SelectQuery selectQuery, QueryContext context)
+      throws VerdictDBException {
+    // replaces original tables with scrambles if available
+    SelectQuery fasterQuery = lookforReplacement2Scrambles(selectQuery);
     if (fasterQuery == null) {
-      // this means there are no scrambles available, we should run it as-is
-      log.debug("No scrambles available for the query. We will execute it as-is.");
-      ExecutionInfoToken token = ExecutionInfoToken.empty();
-      ExecutionTokenQueue queue = new ExecutionTokenQueue();
-      token.setKeyValue("queryResult", conn.execute(selectQuery));
-      queue.add(token);
-      queue.add(ExecutionInfoToken.successToken());
-      return new ExecutionResultReader(queue);
+      return new QueryPlanCache.CachedPlan(selectQuery, null);
     }
 
     // make plan
@@ -152,7 +255,10 @@ public class SelectQueryCoordinator implements Coordinator {
     // convert it to an asynchronous plan
     // if the plan does not include any aggregates, this operation should not alter the original
     // plan.
-    QueryExecutionPlan asyncPlan = AsyncQueryExecutionPlan.create(plan);
+    AsyncQueryExecutionPlan asyncPlan = AsyncQueryExecutionPlan.create(plan);
+    if (conn.getSyntax().doesPreferViewsForAggCombiners()) {
+      asyncPlan.setAggCombinersAsViews(true);
+    }
     log.debug("Async plan created.");
 
     // simplify the plan
@@ -161,11 +267,64 @@ public class SelectQueryCoordinator implements Coordinator {
     log.debug("Plan simplification done.");
     log.trace(asyncPlan.getRoot().getStructure());
 
+    return new QueryPlanCache.CachedPlan(fasterQuery, asyncPlan);
+  }
+
+  /** Executes a copy of a cached entry. */
+  private ExecutionResultReader execute(QueryPlanCache.CachedPlan entry, QueryContext context)
+      throws VerdictDBException {
+    createScratchpadSchemaIfNotExists();
+    lastQuery = null;
+    if (entry.getPlan() == null) {
+      return executeAsIs(entry.getQuery());
+    }
+    QueryExecutionPlan asyncPlan = entry.getPlan();
+    ((TempIdCreatorInScratchpadSchema) asyncPlan.getIdCreator()).renew(context);
+    return executePlan(asyncPlan, entry.getQuery());
+  }
+
+  private void createScratchpadSchemaIfNotExists() throws VerdictDBException {
+    if (!conn.getSchemas().contains(scratchpadSchema)) {
+      log.info(
+          String.format(
+              "The schema for temporary tables (%s) does not exist; so we create it.",
+              scratchpadSchema));
+      CreateSchemaQuery createSchema = new CreateSchemaQuery(scratchpadSchema);
+      conn.execute(createSchema);
+      // the cached list of schemas does not include the new schema.
+      if (conn instanceof CachedDbmsConnection) {
+        ((CachedDbmsConnection) conn).invalidateSchema(scratchpadSchema);
+      }
+    }
+  }
+
+  private ExecutionResultReader executeAsIs(SelectQuery selectQuery) throws VerdictDBException {
+    // this means there are no scrambles available, we should run it as-is
+    log.debug("No scrambles available for the query. We will execute it as-is.");
+    ExecutionInfoToken token = ExecutionInfoToken.empty();
+    ExecutionTokenQueue queue = new ExecutionTokenQueue();
+    if (streamingResult) {
+      int fetchSize =
+          (options == null) ? VerdictOption.getDefaultFetchSize() : options.getVerdictFetchSize();
+      token.setKeyValue("queryResult", conn.executeStreaming(selectQuery, fetchSize));
+    } else {
+      token.setKeyValue("queryResult", conn.execute(selectQuery));
+    }
+    queue.add(token);
+    queue.add(ExecutionInfoToken.successToken());
+    return new ExecutionResultReader(queue);
+  }
+
+  private ExecutionResultReader executePlan(QueryExecutionPlan asyncPlan, SelectQuery fasterQuery) {
     // execute the plan
-    planRunner = new ExecutablePlanRunner(conn, asyncPlan);
+    String threadMode = (options == null) ? null : options.getVerdictThreadMode();
+    planRunner =
+        new ExecutablePlanRunner(
+            conn, asyncPlan, ExecutableNodeScheduler.forThreadMode(threadMode));
     ExecutionResultReader reader = planRunner.getResultReader();
 
     lastQuery = fasterQuery;
+    lastIdCreator = asyncPlan.getIdCreator();
 
     return reader;
   }
@@ -0,0 +1,325 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.coordinator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.commons.VerdictOption;
+import org.verdictdb.connection.CachedDbmsConnection;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.core.sqlobject.DropTableQuery;
+import org.verdictdb.exception.VerdictDBException;
+
+/**
+ * Drops the temporary tables of the execution contexts of a VerdictContext in the background.
+ *
+ * <p>An execution context hands over the temp tables its queries created when it terminates; the
+ * tables are then dropped by a background thread, several tables per statement if the database
+ * supports it. Thus, neither the termination nor the following queries wait for the drops.
+ *
+ * <p>The temp tables of this VerdictContext that were not handed over (e.g., because a query was
+ * aborted while creating them) are reclaimed periodically: the tables whose names carry the
+ * serial number of no live execution context are dropped. The temp schema is listed only by this
+ * reclamation, which also runs in the background.
+ *
+ * <p>Temp views (e.g., those created by the combiners of partial aggregates) are dropped one by one
+ * before the tables, the later views first, since a view may depend on the views and tables created
+ * before it.
+ */
+public class TempTableManager {
+
+  static final int DEFAULT_BATCH_SIZE = 100;
+
+  public static final long DEFAULT_RECLAIM_INTERVAL_SECONDS = 600;
+
+  private final DbmsConnection conn;
+
+  private final String contextId;
+
+  private final String tempSchema;
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  private final ConcurrentLinkedQueue<Pair<String, String>> pendingDrops =
+      new ConcurrentLinkedQueue<>();
+
+  // each element lists the views of an execution context, in the order of their creation
+  private final ConcurrentLinkedQueue<List<Pair<String, String>>> pendingViewDrops =
+      new ConcurrentLinkedQueue<>();
+
+  private final Set<Long> liveSerialNumbers =
+      Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+  // a single thread; thus, the drops and the reclamations never run concurrently.
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(new DropperThreadFactory());
+
+  private final AtomicLong droppedTableCount = new AtomicLong(0);
+
+  private final AtomicLong dropStatementCount = new AtomicLong(0);
+
+  private final Runnable drainTask =
+      new Runnable() {
+        @Override
+        public void run() {
+          drain();
+        }
+      };
+
+  private static final VerdictDBLogger log = VerdictDBLogger.getLogger(TempTableManager.class);
+
+  /**
+   * @param conn The connection on which the tables are dropped
+   * @param contextId The ID of the VerdictContext, which is part of its temp table names
+   * @param tempSchema The schema of the temp tables
+   */
+  public TempTableManager(DbmsConnection conn, String contextId, String tempSchema) {
+    this.conn = conn;
+    this.contextId = contextId;
+    this.tempSchema = tempSchema;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Starts reclaiming the orphaned temp tables periodically.
+   *
+   * @param intervalSeconds The time between the reclamations
+   */
+  public void startReclaiming(long intervalSeconds) {
+    executor.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            reclaimOrphans();
+          }
+        },
+        intervalSeconds,
+        intervalSeconds,
+        TimeUnit.SECONDS);
+  }
+
+  /**
+   * Marks an execution context as live so that its temp tables are not reclaimed; must be called
+   * before it creates any temp table.
+   */
+  public void register(long executionSerialNumber) {
+    liveSerialNumbers.add(executionSerialNumber);
+  }
+
+  /**
+   * Drops the temp tables of a terminated execution context in the background.
+   *
+   * @param executionSerialNumber The serial number of the execution context
+   * @param tempTables The schema and table names
+   */
+  public void release(long executionSerialNumber, Collection<Pair<String, String>> tempTables) {
+    release(executionSerialNumber, tempTables, new ArrayList<Pair<String, String>>());
+  }
+
+  /**
+   * Drops the temp tables and views of a terminated execution context in the background.
+   *
+   * @param executionSerialNumber The serial number of the execution context
+   * @param tempTables The schema and table names
+   * @param tempViews The schema and view names in the order of their creation
+   */
+  public void release(
+      long executionSerialNumber,
+      Collection<Pair<String, String>> tempTables,
+      List<Pair<String, String>> tempViews) {
+    if (!tempViews.isEmpty()) {
+      pendingViewDrops.add(new ArrayList<>(tempViews));
+    }
+    pendingDrops.addAll(tempTables);
+    liveSerialNumbers.remove(executionSerialNumber);
+    if ((!tempTables.isEmpty() || !tempViews.isEmpty()) && !executor.isShutdown()) {
+      executor.execute(drainTask);
+    }
+  }
+
+  /** Drops all the pending views, and then all the pending tables in batches. */
+  private void drain() {
+    List<Pair<String, String>> views;
+    while ((views = pendingViewDrops.poll()) != null) {
+      for (int i = views.size() - 1; i >= 0; i--) {
+        Pair<String, String> v = views.get(i);
+        DropTableQuery drop = new DropTableQuery(v.getLeft(), v.getRight());
+        drop.setView(true);
+        executeDrop(drop, Collections.singletonList(v));
+      }
+    }
+    while (!pendingDrops.isEmpty()) {
+      List<Pair<String, String>> batch = new ArrayList<>();
+      Pair<String, String> table;
+      while (batch.size() < batchSize && (table = pendingDrops.poll()) != null) {
+        batch.add(table);
+      }
+      dropTables(batch);
+    }
+  }
+
+  /**
+   * Drops tables, several tables per statement if the syntax allows. A failed batch is retried
+   * table by table so that a single failure does not leave the others behind.
+   */
+  private void dropTables(List<Pair<String, String>> tables) {
+    if (tables.isEmpty()) {
+      return;
+    }
+    if (tables.size() > 1 && conn.getSyntax().doesSupportDropMultipleTables()) {
+      DropTableQuery drop = new DropTableQuery(tables.get(0).getLeft(), tables.get(0).getRight());
+      for (Pair<String, String> t : tables.subList(1, tables.size())) {
+        drop.addTable(t.getLeft(), t.getRight());
+      }
+      if (executeDrop(drop, tables)) {
+        return;
+      }
+    }
+    for (Pair<String, String> t : tables) {
+      List<Pair<String, String>> single = Collections.singletonList(t);
+      if (!executeDrop(new DropTableQuery(t.getLeft(), t.getRight()), single)) {
+        // an orphaned view is listed together with the tables.
+        DropTableQuery dropView = new DropTableQuery(t.getLeft(), t.getRight());
+        dropView.setView(true);
+        executeDrop(dropView, single);
+      }
+    }
+  }
+
+  private boolean executeDrop(DropTableQuery drop, List<Pair<String, String>> tables) {
+    drop.setIfExists(true);
+    try {
+      dropStatementCount.incrementAndGet();
+      conn.execute(drop);
+      droppedTableCount.addAndGet(tables.size());
+      return true;
+    } catch (VerdictDBException e) {
+      log.debug(
+          String.format("Failed to drop %d temp table(s): %s", tables.size(), e.getMessage()));
+      return false;
+    } finally {
+      if (conn instanceof CachedDbmsConnection) {
+        for (Pair<String, String> t : tables) {
+          ((CachedDbmsConnection) conn).invalidateTable(t.getLeft(), t.getRight());
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops the temp tables of this VerdictContext that belong to no live execution context.
+   *
+   * @return The number of the orphaned tables found
+   */
+  public int reclaimOrphans() {
+    String prefix =
+        String.format("%s_%s_", VerdictOption.getVerdictTempTablePrefix(), contextId);
+    List<Pair<String, String>> orphans = new ArrayList<>();
+    try {
+      List<String> tables =
+          (conn instanceof CachedDbmsConnection)
+              ? ((CachedDbmsConnection) conn).getTablesWithoutCaching(tempSchema)
+              : conn.getTables(tempSchema);
+      for (String table : tables) {
+        if (!table.startsWith(prefix)) {
+          continue;
+        }
+        String rest = table.substring(prefix.length());
+        int end = rest.indexOf('_');
+        try {
+          long serialNumber = Long.parseLong((end < 0) ? rest : rest.substring(0, end));
+          if (!liveSerialNumbers.contains(serialNumber)) {
+            orphans.add(Pair.of(tempSchema, table));
+          }
+        } catch (NumberFormatException e) {
+          // not a name generated for an execution context
+        }
+      }
+    } catch (VerdictDBException e) {
+      log.debug("Failed to list the temp tables: " + e.getMessage());
+      return 0;
+    }
+
+    if (!orphans.isEmpty()) {
+      log.debug(String.format("Reclaims %d orphaned temp table(s).", orphans.size()));
+      pendingDrops.addAll(orphans);
+      drain();
+    }
+    return orphans.size();
+  }
+
+  /** Waits until the tables released so far are dropped. */
+  public void flush() {
+    if (executor.isShutdown()) {
+      return;
+    }
+    try {
+      executor.submit(drainTask).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.debug("Failed to drop temp tables: " + e.getMessage());
+    }
+  }
+
+  /** Drops the remaining tables, and stops the background thread. */
+  public void close() {
+    flush();
+    executor.shutdownNow();
+  }
+
+  /** @return The number of tables dropped successfully (including those that did not exist) */
+  public long getDroppedTableCount() {
+    return droppedTableCount.get();
+  }
+
+  /** @return The number of DROP TABLE and DROP VIEW statements issued */
+  public long getDropStatementCount() {
+    return dropStatementCount.get();
+  }
+
+  private static class DropperThreadFactory implements ThreadFactory {
+
+    private static final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "verdictdb-temp-table-dropper-" + threadNumber.getAndIncrement());
+      // pending drops must not prevent the JVM from exiting.
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
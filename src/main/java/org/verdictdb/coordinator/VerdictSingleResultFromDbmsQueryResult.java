@@ -3,9 +3,9 @@ package org.verdictdb.coordinator;
 import org.verdictdb.VerdictSingleResult;
 import org.verdictdb.connection.DbmsQueryResult;
 import org.verdictdb.connection.DbmsQueryResultMetaData;
+import org.verdictdb.connection.StreamingJdbcQueryResult;
 
 import com.google.common.base.Optional;
-import com.rits.cloning.Cloner;
 
 public class VerdictSingleResultFromDbmsQueryResult
     extends VerdictSingleResult {
@@ -27,8 +27,8 @@ public class VerdictSingleResultFromDbmsQueryResult
   }
 
   public VerdictSingleResultFromDbmsQueryResult(DbmsQueryResult result, boolean asIs) {
-    // If result contains objects that cannot be serialized (e.g., BLOB, CLOB in H2),
-    // it is just copied as-is (i.e., shallow copy) as opposed to deep copy.
+    // If asIs is true, the result is used without a copy; that is, this object and the caller
+    // share the cursor of the result.
     super();
     if (result == null) {
       this.result = Optional.absent();
@@ -52,9 +52,16 @@ public class VerdictSingleResultFromDbmsQueryResult
   }
 
 
+  /**
+   * The rows of a query result are not modified after it is created; thus, a copy only needs its
+   * own cursor, which shallowCopy() provides without copying the rows.
+   */
   private DbmsQueryResult copyResult(DbmsQueryResult result) {
-    DbmsQueryResult copied = new Cloner().deepClone(result);
-    return copied;
+    if (result instanceof StreamingJdbcQueryResult) {
+      // the rows are still in the database; the result is handed over as-is.
+      return result;
+    }
+    return result.shallowCopy();
   }
 
   public DbmsQueryResultMetaData getMetaData() {
@@ -123,4 +130,11 @@ public class VerdictSingleResultFromDbmsQueryResult
       result.get().rewind();
     }
   }
+
+  @Override
+  public void close() {
+    if (result.isPresent() && result.get() instanceof StreamingJdbcQueryResult) {
+      ((StreamingJdbcQueryResult) result.get()).close();
+    }
+  }
 }
@@ -3,6 +3,7 @@ package org.verdictdb.coordinator;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.verdictdb.VerdictSingleResult;
@@ -10,7 +11,6 @@ import org.verdictdb.commons.DataTypeConverter;
 import org.verdictdb.connection.DbmsQueryResultMetaData;
 
 import com.google.common.base.Optional;
-import com.rits.cloning.Cloner;
 
 public class VerdictSingleResultFromListData extends VerdictSingleResult {
 
@@ -38,8 +38,7 @@ public class VerdictSingleResultFromListData extends VerdictSingleResult {
 
   public VerdictSingleResultFromListData(
       List<String> header, List<List<Object>> result, boolean asIs) {
-    // If result contains objects that cannot be serialized (e.g., BLOB, CLOB in H2),
-    // it is just copied as-is (i.e., shallow copy) as opposed to deep copy.
+    // If asIs is true, the list is used as it is passed (i.e., without a read-only view).
     super();
     if (result == null) {
       this.result = Optional.absent();
@@ -62,9 +61,12 @@ public class VerdictSingleResultFromListData extends VerdictSingleResult {
     return !result.isPresent();
   }
 
+  /**
+   * Takes a snapshot of the rows so that later changes to the given list do not change this result.
+   * The rows themselves are shared (i.e., a shallow copy), and the cursor is kept by this object.
+   */
   private static List<List<Object>> copyResult(List<List<Object>> result) {
-    List<List<Object>> copied = new Cloner().deepClone(result);
-    return copied;
+    return Collections.unmodifiableList(new ArrayList<>(result));
   }
 
   public DbmsQueryResultMetaData getMetaData() {
@@ -150,4 +150,9 @@ public class AggregateFrameQueryResult extends AttributeValueRetrievalHelper
     // TODO Auto-generated method stub
     return 0;
   }
+
+  @Override
+  public DbmsQueryResult shallowCopy() {
+    return new AggregateFrameQueryResult(aggregateFrame);
+  }
 }
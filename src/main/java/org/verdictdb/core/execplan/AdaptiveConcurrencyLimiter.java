@@ -0,0 +1,294 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.execplan;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.verdictdb.commons.VerdictDBLogger;
+
+/**
+ * Decides how many blocks of an async aggregation may run at the same time, based on the observed
+ * throughput and latency of blocks, using additive increase and multiplicative decrease (AIMD).
+ *
+ * <p>Blocks are observed in rounds; a round ends when as many blocks as the limit have finished.
+ * At the end of a round, the throughput (blocks finished per second) of the round is compared with
+ * that of the previous round:
+ *
+ * <ul>
+ *   <li>If the throughput improved, the limit grows: it doubles until the first time the
+ *       throughput stops improving, and grows by one afterwards.
+ *   <li>If the throughput worsened and the latency of the blocks exceeds the smallest latency seen
+ *       so far by more than the tolerance ratio (i.e., the backend is overloaded by the blocks),
+ *       the limit is multiplied by the backoff ratio.
+ *   <li>Otherwise, the limit stays the same. A backend that queues the blocks instead of running
+ *       them in parallel inflates their latency, but running them concurrently still overlaps the
+ *       queries with the processing of their results; thus, latency alone does not lower the
+ *       limit.
+ * </ul>
+ *
+ * <p>A failed block decreases the limit right away. The latency of a block is the time its query
+ * spent in the backend database. The limit always stays within the given bounds, which are derived
+ * from the backend (e.g., the size of the connection pool).
+ */
+public class AdaptiveConcurrencyLimiter {
+
+  static final double DEFAULT_TOLERANCE_RATIO = 2.0;
+
+  static final double DEFAULT_BACKOFF_RATIO = 0.75;
+
+  // throughput must change by this ratio to be considered improved or worsened
+  static final double CHANGE_RATIO = 0.05;
+
+  // latency differences below this are treated as noise
+  static final long LATENCY_SLACK_NANOS = 10 * 1000 * 1000;
+
+  private final int minLimit;
+
+  private final int maxLimit;
+
+  private double toleranceRatio = DEFAULT_TOLERANCE_RATIO;
+
+  private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+
+  private int limit;
+
+  private boolean slowStart = true;
+
+  private final Set<Object> inFlight = new HashSet<>();
+
+  private boolean anyStarted = false;
+
+  private long firstStartNanos = 0;
+
+  private long lastCompleteNanos = 0;
+
+  // the current round
+  private long roundStartNanos = 0;
+
+  private int roundSampleCount = 0;
+
+  private long roundLatencyNanos = 0;
+
+  // the throughput of the previous round; negative if none
+  private double lastRoundThroughput = -1;
+
+  private long sampleCount = 0;
+
+  private long failureCount = 0;
+
+  private long minLatencyNanos = Long.MAX_VALUE;
+
+  private long lastLatencyNanos = 0;
+
+  private long totalLatencyNanos = 0;
+
+  private VerdictDBLogger log = VerdictDBLogger.getLogger(getClass());
+
+  /**
+   * @param minLimit The smallest number of blocks that may run at the same time; at least 1
+   * @param maxLimit The largest number of blocks that may run at the same time
+   */
+  public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit) {
+    if (minLimit < 1 || minLimit > maxLimit) {
+      throw new IllegalArgumentException(
+          String.format("Invalid concurrency bounds: min=%d, max=%d", minLimit, maxLimit));
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.limit = Math.min(maxLimit, Math.max(minLimit, 2));
+  }
+
+  /**
+   * Records that a block has started.
+   *
+   * @param block Identifies the block
+   */
+  public void onStart(Object block) {
+    onStart(block, System.nanoTime());
+  }
+
+  synchronized void onStart(Object block, long nowNanos) {
+    inFlight.add(block);
+    if (!anyStarted) {
+      anyStarted = true;
+      firstStartNanos = nowNanos;
+      roundStartNanos = nowNanos;
+    }
+  }
+
+  /** @return True if the block has started but its completion has not been recorded. */
+  public synchronized boolean isInFlight(Object block) {
+    return inFlight.contains(block);
+  }
+
+  /**
+   * Records that a block has finished, and adjusts the limit if a round has ended.
+   *
+   * @param block Identifies the block
+   * @param success False if the block failed
+   * @param latencyNanos The time the block's query spent in the backend database
+   */
+  public void onComplete(Object block, boolean success, long latencyNanos) {
+    onComplete(block, success, latencyNanos, System.nanoTime());
+  }
+
+  synchronized void onComplete(Object block, boolean success, long latencyNanos, long nowNanos) {
+    if (!inFlight.remove(block)) {
+      return;
+    }
+    lastCompleteNanos = nowNanos;
+
+    if (!success) {
+      failureCount++;
+      slowStart = false;
+      setLimit((int) (limit * backoffRatio));
+      startRound(nowNanos, -1);
+      return;
+    }
+
+    long latency = Math.max(latencyNanos, 0);
+    sampleCount++;
+    totalLatencyNanos += latency;
+    lastLatencyNanos = latency;
+    minLatencyNanos = Math.min(minLatencyNanos, latency);
+    roundSampleCount++;
+    roundLatencyNanos += latency;
+
+    if (roundSampleCount >= limit) {
+      endRound(nowNanos);
+    }
+  }
+
+  /**
+   * Forgets a block that was cancelled; the limit is not changed.
+   *
+   * @param block Identifies the block
+   */
+  public synchronized void onDrop(Object block) {
+    inFlight.remove(block);
+  }
+
+  private void endRound(long nowNanos) {
+    double elapsedSeconds = Math.max(nowNanos - roundStartNanos, 1) / 1e9;
+    double throughput = roundSampleCount / elapsedSeconds;
+    double averageLatency = roundLatencyNanos / (double) roundSampleCount;
+
+    boolean improved =
+        lastRoundThroughput < 0 || throughput > lastRoundThroughput * (1 + CHANGE_RATIO);
+    boolean worsened = throughput < lastRoundThroughput * (1 - CHANGE_RATIO);
+    boolean congested = averageLatency > minLatencyNanos * toleranceRatio + LATENCY_SLACK_NANOS;
+    if (improved) {
+      setLimit(slowStart ? limit * 2 : limit + 1);
+    } else {
+      slowStart = false;
+      if (worsened && congested) {
+        setLimit((int) (limit * backoffRatio));
+      }
+    }
+    startRound(nowNanos, throughput);
+  }
+
+  private void startRound(long nowNanos, double previousThroughput) {
+    roundStartNanos = nowNanos;
+    roundSampleCount = 0;
+    roundLatencyNanos = 0;
+    lastRoundThroughput = previousThroughput;
+  }
+
+  private void setLimit(int newLimit) {
+    int oldLimit = limit;
+    limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    if (limit != oldLimit) {
+      log.debug(
+          String.format(
+              "Concurrency limit changed from %d to %d (last latency: %.1f ms, min latency: %.1f "
+                  + "ms)",
+              oldLimit, limit, getLastLatencyMillis(), getMinLatencyMillis()));
+    }
+  }
+
+  /** @return The number of blocks that may run at the same time */
+  public synchronized int getLimit() {
+    return limit;
+  }
+
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  /** @return The number of blocks that have started but not finished */
+  public synchronized int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  /** @return The number of blocks that finished successfully */
+  public synchronized long getSampleCount() {
+    return sampleCount;
+  }
+
+  public synchronized long getFailureCount() {
+    return failureCount;
+  }
+
+  public synchronized double getMinLatencyMillis() {
+    return (sampleCount == 0) ? 0 : minLatencyNanos / 1e6;
+  }
+
+  public synchronized double getLastLatencyMillis() {
+    return lastLatencyNanos / 1e6;
+  }
+
+  public synchronized double getAverageLatencyMillis() {
+    return (sampleCount == 0) ? 0 : totalLatencyNanos / 1e6 / sampleCount;
+  }
+
+  /** @return The number of blocks finished per second since the first block started */
+  public synchronized double getThroughput() {
+    if (sampleCount == 0 || lastCompleteNanos - firstStartNanos <= 0) {
+      return 0;
+    }
+    return sampleCount / ((lastCompleteNanos - firstStartNanos) / 1e9);
+  }
+
+  public synchronized void setToleranceRatio(double toleranceRatio) {
+    this.toleranceRatio = toleranceRatio;
+  }
+
+  public synchronized void setBackoffRatio(double backoffRatio) {
+    this.backoffRatio = backoffRatio;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "AdaptiveConcurrencyLimiter[limit=%d, bounds=[%d, %d], in-flight=%d, samples=%d, "
+            + "failures=%d, avg latency=%.1f ms, min latency=%.1f ms]",
+        limit,
+        minLimit,
+        maxLimit,
+        inFlight.size(),
+        sampleCount,
+        failureCount,
+        getAverageLatencyMillis(),
+        getMinLatencyMillis());
+  }
+}
@@ -23,13 +23,11 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.verdictdb.commons.VerdictDBLogger;
-import org.verdictdb.connection.CachedDbmsConnection;
 import org.verdictdb.connection.DbmsConnection;
 import org.verdictdb.connection.DbmsQueryResult;
-import org.verdictdb.connection.JdbcConnection;
-import org.verdictdb.connection.SparkConnection;
 import org.verdictdb.core.querying.ExecutableNodeBase;
 import org.verdictdb.core.querying.ola.AsyncAggExecutionNode;
 import org.verdictdb.core.querying.ola.SelectAsyncAggExecutionNode;
@@ -38,7 +36,6 @@ import org.verdictdb.core.sqlobject.SqlConvertible;
 import org.verdictdb.exception.VerdictDBDbmsException;
 import org.verdictdb.exception.VerdictDBException;
 import org.verdictdb.exception.VerdictDBValueException;
-import org.verdictdb.sqlsyntax.MysqlSyntax;
 import org.verdictdb.sqlwriter.QueryToSql;
 
 public class ExecutableNodeRunner implements Runnable {
@@ -66,18 +63,59 @@ public class ExecutableNodeRunner implements Runnable {
 
   private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
 
-  private Thread runningTask = null;
+  /**
+   * Set when this runner has been handed to the scheduler; reset at the end of run().
+   */
+  private volatile boolean runningTask = false;
+
+  private ExecutableNodeScheduler.Group schedulingGroup;
+
+  /**
+   * Serializes the runs of this runner. An explicit lock is used instead of synchronized methods
+   * because a run blocks on the backend database while holding it; when nodes run on virtual
+   * threads, blocking inside a synchronized block would pin the carrier thread.
+   */
+  private final ReentrantLock runLock = new ReentrantLock();
 
   private List<ExecutableNodeRunner> childRunners = new ArrayList<>();
 
+  /**
+   * Decides how many children run at the same time if this node is an async aggregation; created
+   * when the children are first run.
+   */
+  private AdaptiveConcurrencyLimiter concurrencyLimiter = null;
+
+  /** Serializes runDependents() for async aggregation, which may be triggered by many children. */
+  private final ReentrantLock dependentsLock = new ReentrantLock();
+
+  // the total time this node's queries spent in the backend database; the latency of a block.
+  private volatile long queryNanos = 0;
+
   public void markComplete() {
     status = NodeRunningStatus.completed;
     clearRunningTask();
+    runMoreBlocksOfSubscribers();
   }
 
   public void markFailure() {
     status = NodeRunningStatus.failed;
     clearRunningTask();
+    runMoreBlocksOfSubscribers();
+  }
+
+  /**
+   * A block notifies its async aggregation before its status becomes completed, when it still
+   * counts as running. If all the running blocks are in that state at the same time, none of the
+   * notifications starts the next block; thus, the aggregation is asked again once a block has
+   * actually finished.
+   */
+  private void runMoreBlocksOfSubscribers() {
+    for (ExecutableNode dest : node.getSubscribers()) {
+      ExecutableNodeRunner runner = dest.getRegisteredRunner();
+      if (runner != null && runner.doesThisNodeContainAsyncAggExecutionNode()) {
+        runner.runDependents();
+      }
+    }
   }
 
   public void markInitiated() {
@@ -86,14 +124,26 @@ public class ExecutableNodeRunner implements Runnable {
   }
 
   private void clearRunningTask() {
-    this.runningTask = null;
+    this.runningTask = false;
   }
 
   public ExecutableNodeRunner(DbmsConnection conn, ExecutableNode node) {
+    this(conn, node, ExecutableNodeScheduler.getDefault().createGroup());
+  }
+
+  /**
+   * @param conn The connection on which the node's query is issued.
+   * @param node The node to run.
+   * @param schedulingGroup The node runs on a worker thread obtained through this group. The nodes
+   *     of the same plan are expected to share a group.
+   */
+  public ExecutableNodeRunner(
+      DbmsConnection conn, ExecutableNode node, ExecutableNodeScheduler.Group schedulingGroup) {
     this.conn = conn;
     node.registerNodeRunner(this);
     this.node = node;
     this.dependentCount = node.getDependentNodeCount();
+    this.schedulingGroup = schedulingGroup;
   }
 
   public static ExecutionInfoToken execute(DbmsConnection conn, ExecutableNode node)
@@ -169,80 +219,58 @@ public class ExecutableNodeRunner implements Runnable {
     log.trace(String.format("Invoked to run: %s", node.toString()));
 
     // https://stackoverflow.com/questions/11165852/java-singleton-and-synchronization
-    Thread runningTask = this.runningTask;
-    if (runningTask == null) {
-      synchronized (this) {
-        runningTask = this.runningTask;
-
-        if (runningTask == null) {
+    if (!runningTask) {
+      runLock.lock();
+      try {
+        if (!runningTask) {
           if (noNeedToRun()) {
             log.trace(String.format("No need to run: %s", node.toString()));
             return false;
           }
           status = NodeRunningStatus.running;
 
-          runningTask = new Thread(this);
-          this.runningTask = runningTask;
-          runningTask.start();
+          // the scheduler runs this runner on one of its worker threads. Until a worker becomes
+          // available, this node is considered to be running; thus, it is not submitted again.
+          runningTask = true;
+          schedulingGroup.submit(this);
 
           return true;
-          // this.runningTask is set to null at the end of run()
+          // this.runningTask is set to false at the end of run()
         }
+      } finally {
+        runLock.unlock();
       }
     }
 
     return false;
   }
 
-  private int getMaxNumberOfRunningNode() {
-    if ((conn instanceof JdbcConnection && conn.getSyntax() instanceof MysqlSyntax)
-        || (conn instanceof CachedDbmsConnection
-          && ((CachedDbmsConnection)conn).getOriginalConnection() instanceof JdbcConnection)
-          && ((CachedDbmsConnection)conn).getOriginalConnection().getSyntax() instanceof MysqlSyntax) {
-      // For MySQL, issue query one by one.
-      if (node instanceof SelectAsyncAggExecutionNode || node instanceof AsyncAggExecutionNode) {
-        return 2;
-      } else {
-        return 1;
-      }
-    } else if (((conn instanceof SparkConnection) || (conn instanceof CachedDbmsConnection
-            && ((CachedDbmsConnection) conn).getOriginalConnection() instanceof SparkConnection))
-            && !(node instanceof SelectAsyncAggExecutionNode)) {
-      // Since abort() does not work for Spark (or I don't know how to do so), we issue query
-      // one by one.
-      return 1;
-    } else {
-      return 10;
-    }
+  /**
+   * Creates the limiter on the number of child nodes (i.e., blocks of an async aggregation) that
+   * run at the same time. The upper bound is the number of queries the connection can run
+   * concurrently (e.g., the size of a connection pool). At least two blocks run at the same time so
+   * that the next block is queued on the database while the previous one is being transferred; this
+   * also guarantees progress, since a block notifies this node before its status becomes completed.
+   */
+  private AdaptiveConcurrencyLimiter createConcurrencyLimiter() {
+    return new AdaptiveConcurrencyLimiter(2, Math.max(conn.getConcurrentQueryCapacity(), 2));
+  }
+
+  /**
+   * @return The limiter on the number of children running at the same time if this node is an
+   *     async aggregation whose children have started; null otherwise.
+   */
+  public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
   }
 
   private void runDependents() {
     if (doesThisNodeContainAsyncAggExecutionNode()) {
-      int maxNumberOfRunningNode = getMaxNumberOfRunningNode();
-      int currentlyRunningOrCompleteNodeCount = childRunners.size();
-
-      // check the number of currently running nodes
-      int runningChildCount = 0;
-      for (ExecutableNodeRunner r : childRunners) {
-        if (r.getStatus() == NodeRunningStatus.running) {
-          runningChildCount++;
-        }
-      }
-
-      // maintain the number of running nodes to a certain number
-      List<ExecutableNodeBase> childNodes = ((ExecutableNodeBase) node).getSources();
-      int moreToRun = Math.min(
-          maxNumberOfRunningNode - runningChildCount,
-          ((ExecutableNodeBase) node).getSourceCount() - currentlyRunningOrCompleteNodeCount);
-      for (int i = currentlyRunningOrCompleteNodeCount;
-          i < currentlyRunningOrCompleteNodeCount + moreToRun; i++) {
-        ExecutableNodeBase child = childNodes.get(i);
-
-        ExecutableNodeRunner runner = child.getRegisteredRunner();
-        boolean started = runner.runThisAndDependents();
-        if (started) {
-          childRunners.add(runner);
-        }
+      dependentsLock.lock();
+      try {
+        runAsyncDependents();
+      } finally {
+        dependentsLock.unlock();
       }
     } else {
       // by default, run every child
@@ -256,11 +284,66 @@ public class ExecutableNodeRunner implements Runnable {
     }
   }
 
+  /**
+   * Runs the children (i.e., blocks) of an async aggregation in order, keeping the number of
+   * running children within the limit of the concurrency limiter. The latencies of the children
+   * finished since the last call are reported to the limiter first.
+   */
+  private void runAsyncDependents() {
+    if (concurrencyLimiter == null) {
+      concurrencyLimiter = createConcurrencyLimiter();
+    }
+    int currentlyRunningOrCompleteNodeCount = childRunners.size();
+
+    // check the number of currently running nodes
+    int runningChildCount = 0;
+    for (ExecutableNodeRunner r : childRunners) {
+      NodeRunningStatus childStatus = r.getStatus();
+      if (childStatus == NodeRunningStatus.running) {
+        runningChildCount++;
+      } else if (concurrencyLimiter.isInFlight(r)) {
+        if (childStatus == NodeRunningStatus.completed) {
+          concurrencyLimiter.onComplete(r, true, r.queryNanos);
+        } else if (childStatus == NodeRunningStatus.failed) {
+          concurrencyLimiter.onComplete(r, false, r.queryNanos);
+        } else {
+          concurrencyLimiter.onDrop(r);
+        }
+      }
+    }
+
+    // maintain the number of running nodes to the current limit
+    List<ExecutableNodeBase> childNodes = ((ExecutableNodeBase) node).getSources();
+    int moreToRun = Math.min(
+        concurrencyLimiter.getLimit() - runningChildCount,
+        ((ExecutableNodeBase) node).getSourceCount() - currentlyRunningOrCompleteNodeCount);
+    for (int i = currentlyRunningOrCompleteNodeCount;
+        i < currentlyRunningOrCompleteNodeCount + moreToRun; i++) {
+      ExecutableNodeBase child = childNodes.get(i);
+
+      ExecutableNodeRunner runner = child.getRegisteredRunner();
+      boolean started = runner.runThisAndDependents();
+      if (started) {
+        concurrencyLimiter.onStart(runner);
+        childRunners.add(runner);
+      }
+    }
+  }
+
   /**
    * A single run of this method consumes all combinations of the tokens in the queue.
    */
   @Override
-  public synchronized void run() {
+  public void run() {
+    runLock.lock();
+    try {
+      runWithLock();
+    } finally {
+      runLock.unlock();
+    }
+  }
+
+  private void runWithLock() {
     //    String nodeType = node.getClass().getSimpleName();
     //    int nodeGroupId = ((ExecutableNodeBase) node).getGroupId();
 
@@ -302,7 +385,15 @@ public class ExecutableNodeRunner implements Runnable {
       if (tokens == null) {
         //        markInitiated();
         clearRunningTask();
-        return;
+        // A source may have delivered its token after retrieve() but before the flag was cleared;
+        // its notification then found this node running and did not submit it again. Since the
+        // notifications submit this node only under the lock held here, the node is claimed again
+        // only if such a token exists.
+        if (!hasTokenFromEverySource()) {
+          return;
+        }
+        runningTask = true;
+        continue;
       }
 
       log.trace(String.format("Attempts to process %s (%s)", node.toString(), status));
@@ -350,6 +441,15 @@ public class ExecutableNodeRunner implements Runnable {
     }
   }
 
+  private boolean hasTokenFromEverySource() {
+    for (ExecutionTokenQueue queue : node.getSourceQueues().values()) {
+      if (queue.peek() == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   List<ExecutionInfoToken> retrieve() {
     Map<Integer, ExecutionTokenQueue> sourceChannelAndQueues = node.getSourceQueues();
 
@@ -392,7 +492,7 @@ public class ExecutableNodeRunner implements Runnable {
     }
 
     for (ExecutableNode dest : node.getSubscribers()) {
-      ExecutionInfoToken copiedToken = token.deepcopy();
+      ExecutionInfoToken copiedToken = token.copy();
       dest.getNotified(node, copiedToken);
 
       // signal the runner of the broadcasted node so that its associated runner performs
@@ -413,8 +513,9 @@ public class ExecutableNodeRunner implements Runnable {
   }
 
   /**
-   * Execute the associated node. This method is synchronized on object level, assuming that
-   * every node has its own associated ExecutableNodeRunner, which is actually the case.
+   * Execute the associated node. When called from run(), this method is serialized by the runner's
+   * lock, assuming that every node has its own associated ExecutableNodeRunner, which is actually
+   * the case.
    * 
    * @param tokens Contains information from the downstream nodes.
    * @return Information for the upstream nodes.
@@ -431,8 +532,10 @@ public class ExecutableNodeRunner implements Runnable {
     DbmsQueryResult intermediate = null;
     if (sqlObj != null) {
       String sql = QueryToSql.convert(conn.getSyntax(), sqlObj);
+      long queryStart = System.nanoTime();
       try {
         intermediate = conn.execute(sql);
+        queryNanos += System.nanoTime() - queryStart;
       } catch (VerdictDBDbmsException e) {
         if (noNeedToRun()) {
           // the errors from the underlying dbms are expected if the query is cancelled.
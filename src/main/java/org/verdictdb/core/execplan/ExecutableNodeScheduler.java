@@ -0,0 +1,445 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.execplan;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.verdictdb.commons.VerdictDBLogger;
+
+/**
+ * Runs ExecutableNodeRunners on a shared pool of worker threads instead of creating a new thread
+ * for every node run.
+ *
+ * <p>Every plan (i.e., every ExecutablePlanRunner) obtains its own {@link Group}. The scheduler
+ * limits both the total number of nodes running at the same time and the number of nodes running
+ * for a single group. When workers become available, pending nodes are taken from the groups in a
+ * round-robin manner so that a plan with many agg blocks cannot starve the other plans.
+ *
+ * <p>The scheduler only decides when a node runner starts; the dependency and token semantics of
+ * ExecutableNodeRunner are not affected.
+ *
+ * <p>On JDK 21 or later, the nodes may be run on virtual threads instead (see {@link
+ * #forThreadMode(String)}). Since most of a node's time is spent waiting for the backend database,
+ * the virtual-thread scheduler allows a much higher global limit.
+ */
+public class ExecutableNodeScheduler {
+
+  public static final int DEFAULT_MAX_CONCURRENT_NODES = 64;
+
+  public static final int DEFAULT_MAX_CONCURRENT_NODES_PER_GROUP = 16;
+
+  public static final int DEFAULT_MAX_CONCURRENT_VIRTUAL_NODES = 1024;
+
+  public static final String PLATFORM_THREAD_MODE = "platform";
+
+  public static final String VIRTUAL_THREAD_MODE = "virtual";
+
+  private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+  private static ExecutableNodeScheduler defaultScheduler = null;
+
+  private static ExecutableNodeScheduler virtualThreadScheduler = null;
+
+  private final ExecutorService executor;
+
+  private final int maxConcurrentNodes;
+
+  private final int defaultMaxConcurrentNodesPerGroup;
+
+  private final Object lock = new Object();
+
+  /** The groups that have one or more pending nodes, in the order they will be served. */
+  private final Deque<Group> readyGroups = new ArrayDeque<>();
+
+  private int runningNodeCount = 0;
+
+  private final QueueWaitStatistics waitStatistics = new QueueWaitStatistics();
+
+  private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
+
+  public ExecutableNodeScheduler() {
+    this(DEFAULT_MAX_CONCURRENT_NODES, DEFAULT_MAX_CONCURRENT_NODES_PER_GROUP);
+  }
+
+  public ExecutableNodeScheduler(int maxConcurrentNodes, int maxConcurrentNodesPerGroup) {
+    this(createWorkerPool(maxConcurrentNodes), maxConcurrentNodes, maxConcurrentNodesPerGroup);
+  }
+
+  /**
+   * @param executor The executor on which node runners are run. The scheduler never submits more
+   *     than maxConcurrentNodes tasks to this executor at the same time.
+   * @param maxConcurrentNodes The global limit on the number of concurrently running nodes.
+   * @param maxConcurrentNodesPerGroup The default limit for each group (i.e., each plan).
+   */
+  public ExecutableNodeScheduler(
+      ExecutorService executor, int maxConcurrentNodes, int maxConcurrentNodesPerGroup) {
+    if (maxConcurrentNodes < 1 || maxConcurrentNodesPerGroup < 1) {
+      throw new IllegalArgumentException("Concurrency limits must be at least one.");
+    }
+    this.executor = executor;
+    this.maxConcurrentNodes = maxConcurrentNodes;
+    this.defaultMaxConcurrentNodesPerGroup = maxConcurrentNodesPerGroup;
+  }
+
+  /**
+   * Returns the scheduler shared by all the plans that do not specify their own scheduler.
+   */
+  public static synchronized ExecutableNodeScheduler getDefault() {
+    if (defaultScheduler == null) {
+      defaultScheduler = new ExecutableNodeScheduler();
+    }
+    return defaultScheduler;
+  }
+
+  /**
+   * Replaces the shared scheduler. The plans that are already running keep using the previous one.
+   */
+  public static synchronized void setDefault(ExecutableNodeScheduler scheduler) {
+    defaultScheduler = scheduler;
+  }
+
+  /**
+   * Returns the shared scheduler that runs nodes on virtual threads. If the running JVM does not
+   * support virtual threads (i.e., older than JDK 21), the default scheduler is returned.
+   */
+  public static synchronized ExecutableNodeScheduler getVirtualThreadScheduler() {
+    if (virtualThreadScheduler == null) {
+      ExecutorService executor = createVirtualThreadExecutor();
+      if (executor == null) {
+        VerdictDBLogger.getLogger(ExecutableNodeScheduler.class)
+            .info("Virtual threads are not supported by this JVM; uses platform threads instead.");
+        return getDefault();
+      }
+      virtualThreadScheduler =
+          new ExecutableNodeScheduler(
+              executor,
+              DEFAULT_MAX_CONCURRENT_VIRTUAL_NODES,
+              DEFAULT_MAX_CONCURRENT_NODES_PER_GROUP);
+    }
+    return virtualThreadScheduler;
+  }
+
+  /**
+   * @param threadMode Either "platform" or "virtual" (case insensitive). Null or an unknown value
+   *     indicates the platform mode.
+   * @return The shared scheduler for the thread mode.
+   */
+  public static ExecutableNodeScheduler forThreadMode(String threadMode) {
+    if (threadMode != null && threadMode.equalsIgnoreCase(VIRTUAL_THREAD_MODE)) {
+      return getVirtualThreadScheduler();
+    } else {
+      return getDefault();
+    }
+  }
+
+  public static boolean isVirtualThreadSupported() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Since we compile against JDK 7, Executors.newVirtualThreadPerTaskExecutor() is invoked through
+   * reflection.
+   *
+   * @return null if virtual threads are not supported.
+   */
+  private static ExecutorService createVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      return null;
+    }
+  }
+
+  private static ExecutorService createWorkerPool(int poolSize) {
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            poolSize,
+            poolSize,
+            IDLE_THREAD_KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new WorkerThreadFactory());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  public Group createGroup() {
+    return new Group(defaultMaxConcurrentNodesPerGroup);
+  }
+
+  public Group createGroup(int maxConcurrentNodes) {
+    return new Group(maxConcurrentNodes);
+  }
+
+  public int getMaxConcurrentNodes() {
+    return maxConcurrentNodes;
+  }
+
+  public int getRunningNodeCount() {
+    synchronized (lock) {
+      return runningNodeCount;
+    }
+  }
+
+  public int getPendingNodeCount() {
+    synchronized (lock) {
+      int count = 0;
+      for (Group g : readyGroups) {
+        count += g.pending.size();
+      }
+      return count;
+    }
+  }
+
+  /**
+   * @return The queueing delays of all the nodes that have been run by this scheduler.
+   */
+  public QueueWaitStatistics getQueueWaitStatistics() {
+    return waitStatistics;
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private void submit(Group group, Runnable task) {
+    synchronized (lock) {
+      group.pending.addLast(new PendingTask(task));
+      if (!group.isReady) {
+        group.isReady = true;
+        readyGroups.addLast(group);
+      }
+      dispatch();
+    }
+  }
+
+  /**
+   * Starts as many pending nodes as the limits allow. Must be called while holding the lock.
+   */
+  private void dispatch() {
+    while (runningNodeCount < maxConcurrentNodes) {
+      Group group = pollRunnableGroup();
+      if (group == null) {
+        return;
+      }
+
+      PendingTask task = group.pending.pollFirst();
+      if (group.pending.isEmpty()) {
+        group.isReady = false;
+      } else {
+        readyGroups.addLast(group);
+      }
+
+      long waitNanos = System.nanoTime() - task.enqueuedAt;
+      waitStatistics.record(waitNanos);
+      group.waitStatistics.record(waitNanos);
+      runningNodeCount++;
+      group.runningNodeCount++;
+
+      try {
+        executor.execute(new ScheduledTask(group, task.runnable));
+      } catch (RejectedExecutionException e) {
+        // the executor has been shut down; we fall back to a dedicated thread so that the plan
+        // still terminates.
+        log.debug("The worker pool rejected a node; runs it on a new thread.");
+        new Thread(new ScheduledTask(group, task.runnable)).start();
+      }
+    }
+  }
+
+  /**
+   * Finds the next group (in round-robin order) that has not reached its own limit.
+   */
+  private Group pollRunnableGroup() {
+    int groupCount = readyGroups.size();
+    for (int i = 0; i < groupCount; i++) {
+      Group group = readyGroups.pollFirst();
+      if (group.runningNodeCount < group.maxConcurrentNodes) {
+        return group;
+      }
+      readyGroups.addLast(group);
+    }
+    return null;
+  }
+
+  private void finish(Group group) {
+    synchronized (lock) {
+      runningNodeCount--;
+      group.runningNodeCount--;
+      dispatch();
+    }
+  }
+
+  /**
+   * The unit of fair queuing. Every plan submits its nodes through its own group.
+   */
+  public class Group {
+
+    private final int maxConcurrentNodes;
+
+    private final Deque<PendingTask> pending = new ArrayDeque<>();
+
+    private boolean isReady = false;
+
+    private int runningNodeCount = 0;
+
+    private final QueueWaitStatistics waitStatistics = new QueueWaitStatistics();
+
+    private Group(int maxConcurrentNodes) {
+      if (maxConcurrentNodes < 1) {
+        throw new IllegalArgumentException("Concurrency limits must be at least one.");
+      }
+      this.maxConcurrentNodes = maxConcurrentNodes;
+    }
+
+    public void submit(Runnable task) {
+      ExecutableNodeScheduler.this.submit(this, task);
+    }
+
+    public int getMaxConcurrentNodes() {
+      return maxConcurrentNodes;
+    }
+
+    public int getRunningNodeCount() {
+      synchronized (lock) {
+        return runningNodeCount;
+      }
+    }
+
+    public int getPendingNodeCount() {
+      synchronized (lock) {
+        return pending.size();
+      }
+    }
+
+    public QueueWaitStatistics getQueueWaitStatistics() {
+      return waitStatistics;
+    }
+  }
+
+  /**
+   * Summarizes how long nodes waited in the queue before a worker picked them up.
+   */
+  public static class QueueWaitStatistics {
+
+    private long count = 0;
+
+    private long totalWaitNanos = 0;
+
+    private long maxWaitNanos = 0;
+
+    synchronized void record(long waitNanos) {
+      count++;
+      totalWaitNanos += waitNanos;
+      maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+    }
+
+    public synchronized long getCount() {
+      return count;
+    }
+
+    public synchronized double getAverageWaitMillis() {
+      return (count == 0) ? 0 : totalWaitNanos / (double) count / 1e6;
+    }
+
+    public synchronized double getMaxWaitMillis() {
+      return maxWaitNanos / 1e6;
+    }
+
+    public synchronized double getTotalWaitMillis() {
+      return totalWaitNanos / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format(
+          "count=%d, avg wait=%.3f ms, max wait=%.3f ms",
+          count, getAverageWaitMillis(), getMaxWaitMillis());
+    }
+  }
+
+  private static class PendingTask {
+
+    final Runnable runnable;
+
+    final long enqueuedAt;
+
+    PendingTask(Runnable runnable) {
+      this.runnable = runnable;
+      this.enqueuedAt = System.nanoTime();
+    }
+  }
+
+  private class ScheduledTask implements Runnable {
+
+    private final Group group;
+
+    private final Runnable runnable;
+
+    ScheduledTask(Group group, Runnable runnable) {
+      this.group = group;
+      this.runnable = runnable;
+    }
+
+    @Override
+    public void run() {
+      try {
+        runnable.run();
+      } catch (RuntimeException e) {
+        log.debug("A node runner terminated with an exception: " + e.getMessage());
+        throw e;
+      } finally {
+        finish(group);
+      }
+    }
+  }
+
+  private static class WorkerThreadFactory implements ThreadFactory {
+
+    private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    private final String namePrefix =
+        "verdictdb-node-runner-" + poolNumber.getAndIncrement() + "-";
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+      // the worker threads must not prevent the JVM from exiting.
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
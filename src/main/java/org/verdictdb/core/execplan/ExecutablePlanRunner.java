@@ -33,17 +33,45 @@ public class ExecutablePlanRunner {
 
   private ExecutablePlan plan;
 
-//  private int nThreads = 1;
+  /**
+   * All the nodes of this plan are run on the worker threads of this scheduler.
+   */
+  private ExecutableNodeScheduler scheduler;
+
+  /**
+   * The nodes of this plan are queued (and limited) together within this group.
+   */
+  private ExecutableNodeScheduler.Group schedulingGroup;
   
   private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
   
   private List<ExecutableNodeRunner> nodeRunners = new ArrayList<>();
-  
-//  private Map<Integer, ExecutorService> executorPool = new HashMap<>();
 
   public ExecutablePlanRunner(DbmsConnection conn, ExecutablePlan plan) {
+    this(conn, plan, ExecutableNodeScheduler.getDefault());
+  }
+
+  public ExecutablePlanRunner(
+      DbmsConnection conn, ExecutablePlan plan, ExecutableNodeScheduler scheduler) {
+    this(conn, plan, scheduler, scheduler.createGroup());
+  }
+
+  /**
+   * @param conn Connection to the backend database
+   * @param plan The plan to run
+   * @param scheduler Provides worker threads for running nodes
+   * @param schedulingGroup Per-plan queue; its limit determines how many nodes of this plan may run
+   *     concurrently.
+   */
+  public ExecutablePlanRunner(
+      DbmsConnection conn,
+      ExecutablePlan plan,
+      ExecutableNodeScheduler scheduler,
+      ExecutableNodeScheduler.Group schedulingGroup) {
     this.conn = conn;
     this.plan = plan;
+    this.scheduler = scheduler;
+    this.schedulingGroup = schedulingGroup;
   }
 
   public static ExecutionTokenReader getTokenReader(DbmsConnection conn, ExecutablePlan plan) {
@@ -104,7 +132,7 @@ public class ExecutablePlanRunner {
         // It is critically that each node is associated with a separate ExecutableNodeRunner.
         // The execution of the same ExecutableNodeRunner instance is serialized.
         // See ExecutableNodeRunner.execute() method.
-        nodeRunners.add(new ExecutableNodeRunner(conn, n));
+        nodeRunners.add(new ExecutableNodeRunner(conn, n, schedulingGroup));
       }
     }
     
@@ -121,6 +149,21 @@ public class ExecutablePlanRunner {
     ExecutionTokenReader reader = getTokenReader();
     return new ExecutionResultReader(reader);
   }
+
+  public ExecutableNodeScheduler getScheduler() {
+    return scheduler;
+  }
+
+  public ExecutableNodeScheduler.Group getSchedulingGroup() {
+    return schedulingGroup;
+  }
+
+  /**
+   * @return How long the nodes of this plan have waited for a worker thread.
+   */
+  public ExecutableNodeScheduler.QueueWaitStatistics getQueueWaitStatistics() {
+    return schedulingGroup.getQueueWaitStatistics();
+  }
   
   /**
    * Kill all currently running threads.
@@ -133,6 +176,7 @@ public class ExecutablePlanRunner {
     for (ExecutableNodeRunner nodeRunner : nodeRunners) {
       nodeRunner.abort();
     }
+    log.debug("Queueing delays of the aborted plan: " + getQueueWaitStatistics());
   }
 
 }
@@ -21,9 +21,18 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.verdictdb.connection.DbmsQueryResult;
 
-import com.rits.cloning.Cloner;
-
+/**
+ * A set of key-value pairs passed from a node to its subscribers.
+ *
+ * <p>When a token is broadcast, each subscriber receives its own token (see {@link #copy()}), but
+ * the values are shared among the subscribers and with the node that created them. Thus, the values
+ * in a received token must be treated as read-only, including the mutable ones such as "aggMeta"
+ * (AggMeta) and "dependentQuery" (SelectQuery); a node that modifies such a value must deep-copy it
+ * first. Setting a key (e.g., "channel") on a received token does not affect the other
+ * subscribers.
+ */
 public class ExecutionInfoToken implements Serializable {
 
   private static final long serialVersionUID = 4467660505348718275L;
@@ -96,7 +105,22 @@ public class ExecutionInfoToken implements Serializable {
     return data.containsKey(key);
   }
 
-  public ExecutionInfoToken deepcopy() {
-    return new Cloner().deepClone(this);
+  /**
+   * Creates a token for a single subscriber. The key-value map is copied; the values are shared
+   * except for query results, for which a new cursor is created over the same rows.
+   *
+   * @return A token whose keys can be set without affecting this token. The shared values must not
+   *     be modified.
+   */
+  public ExecutionInfoToken copy() {
+    ExecutionInfoToken copied = new ExecutionInfoToken();
+    for (Map.Entry<String, Object> entry : data.entrySet()) {
+      Object value = entry.getValue();
+      if (value instanceof DbmsQueryResult) {
+        value = ((DbmsQueryResult) value).shallowCopy();
+      }
+      copied.data.put(entry.getKey(), value);
+    }
+    return copied;
   }
 }
@@ -23,6 +23,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.verdictdb.connection.DbmsQueryResult;
 import org.verdictdb.core.execplan.ExecutionInfoToken;
 import org.verdictdb.core.sqlobject.CreateTableAsSelectQuery;
+import org.verdictdb.core.sqlobject.CreateViewQuery;
 import org.verdictdb.core.sqlobject.SelectQuery;
 import org.verdictdb.core.sqlobject.SqlConvertible;
 import org.verdictdb.exception.VerdictDBException;
@@ -39,6 +40,9 @@ public class CreateTableAsSelectNode extends QueryNodeWithPlaceHolders {
 
   List<String> partitionColumns = new ArrayList<>();
 
+  // creates a view instead of a table; the partition columns are ignored for views.
+  boolean createView = false;
+
   public CreateTableAsSelectNode(IdCreator namer, SelectQuery query) {
     super(namer, query);
     this.namer = namer;
@@ -61,6 +65,13 @@ public class CreateTableAsSelectNode extends QueryNodeWithPlaceHolders {
     partitionColumns.add(column);
   }
 
+  public boolean isCreateView() {
+    return createView;
+  }
+
+  public void setCreateView(boolean createView) {
+    this.createView = createView;
+  }
 
   /**
    * The namer is used for each token to handle the case that the downstream node passes multiple
@@ -72,6 +83,12 @@ public class CreateTableAsSelectNode extends QueryNodeWithPlaceHolders {
     Pair<String, String> tempTableFullName = namer.generateTempTableName();
     newTableSchemaName = tempTableFullName.getLeft();
     newTableName = tempTableFullName.getRight();
+    if (createView) {
+      if (namer instanceof TempIdCreatorInScratchpadSchema) {
+        ((TempIdCreatorInScratchpadSchema) namer).markAsView(tempTableFullName);
+      }
+      return new CreateViewQuery(newTableSchemaName, newTableName, selectQuery);
+    }
     CreateTableAsSelectQuery createQuery =
         new CreateTableAsSelectQuery(newTableSchemaName, newTableName, selectQuery);
     for (String col : partitionColumns) {
@@ -97,5 +114,6 @@ public class CreateTableAsSelectNode extends QueryNodeWithPlaceHolders {
 
   void copyFields(CreateTableAsSelectNode from, CreateTableAsSelectNode to) {
     super.copyFields(from, to);
+    to.createView = from.createView;
   }
 }
@@ -17,8 +17,8 @@ import org.verdictdb.exception.VerdictDBException;
  *
  * When the outer query is an aggregation query that contains scramble tables,
  * SelectAggExecutionNode will created as the source of SelectAsyncAggExecutionNode.
- * When SelectAggExecutionNode is executed, it will create a temporary table in
- * H2 database that stores the results of subquery.
+ * When SelectAggExecutionNode is executed, it will hand the results of subquery to
+ * an InMemoryAggregate, which merges them into a hash table.
  *
  * @author Shucheng Zhong
  *
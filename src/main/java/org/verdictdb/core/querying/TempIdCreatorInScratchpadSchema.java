@@ -17,7 +17,9 @@
 package org.verdictdb.core.querying;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -32,12 +34,18 @@ public class TempIdCreatorInScratchpadSchema implements IdCreator, Serializable
 
   QueryContext context = null;
 
-  final int serialNum = ThreadLocalRandom.current().nextInt(0, 1000000);
+  int serialNum = ThreadLocalRandom.current().nextInt(0, 1000000);
 
   static final String GLOBAL_KEYWORD = "internal_global_keyword";
 
   private Map<String, Integer> keywordIdentifierMap = new HashMap<>();
 
+  // the names of the temp tables generated since the last renewal
+  private List<Pair<String, String>> generatedTempTables = new ArrayList<>();
+
+  // the generated names that were used for views instead of tables, in the order of creation
+  private List<Pair<String, String>> generatedTempViews = new ArrayList<>();
+
   public TempIdCreatorInScratchpadSchema(String scratchpadSchemaName) {
     this.scratchpadSchemaName = scratchpadSchemaName;
   }
@@ -51,6 +59,46 @@ public class TempIdCreatorInScratchpadSchema implements IdCreator, Serializable
     return serialNum;
   }
 
+  /**
+   * Draws a new serial number so that the temp tables of a copied plan do not collide with those
+   * of the plan it was copied from.
+   *
+   * @param context The context of the query for which the copy is executed
+   */
+  public synchronized void renew(QueryContext context) {
+    this.context = context;
+    this.serialNum = ThreadLocalRandom.current().nextInt(0, 1000000);
+    this.generatedTempTables = new ArrayList<>();
+    this.generatedTempViews = new ArrayList<>();
+  }
+
+  /**
+   * @return The temp tables whose names this creator generated; the tables may or may not have
+   *     been created yet.
+   */
+  public synchronized List<Pair<String, String>> getGeneratedTempTables() {
+    return new ArrayList<>(generatedTempTables);
+  }
+
+  /**
+   * @return The temp views whose names this creator generated, in the order of their generation;
+   *     a view may depend on the views generated before it.
+   */
+  public synchronized List<Pair<String, String>> getGeneratedTempViews() {
+    return new ArrayList<>(generatedTempViews);
+  }
+
+  /**
+   * Records that a generated name is used for a view, which must be dropped as a view.
+   *
+   * @param name The schema and name returned by generateTempTableName()
+   */
+  public synchronized void markAsView(Pair<String, String> name) {
+    if (generatedTempTables.remove(name)) {
+      generatedTempViews.add(name);
+    }
+  }
+
   public void resetAliasNameGeneration() {
     resetAliasNameGeneration(GLOBAL_KEYWORD);
   }
@@ -103,17 +151,25 @@ public class TempIdCreatorInScratchpadSchema implements IdCreator, Serializable
   public Pair<String, String> generateTempTableName() {
     //    return Pair.of(scratchpadSchemaName, String.format("verdictdbtemptable_%d",
     // tempTableNameNum++));
+    Pair<String, String> tableName;
     if (context == null) {
-      return Pair.of(
-          scratchpadSchemaName, String.format("verdictdbtemptable_%s", generateUniqueIdentifier()));
+      tableName =
+          Pair.of(
+              scratchpadSchemaName,
+              String.format("verdictdbtemptable_%s", generateUniqueIdentifier()));
     } else {
-      return Pair.of(
-          scratchpadSchemaName,
-          String.format(
-              "verdictdbtemptable_%s_%d_%s",
-              context.getVerdictContextId(),
-              context.getExecutionSerialNumber(),
-              generateUniqueIdentifier()));
+      tableName =
+          Pair.of(
+              scratchpadSchemaName,
+              String.format(
+                  "verdictdbtemptable_%s_%d_%s",
+                  context.getVerdictContextId(),
+                  context.getExecutionSerialNumber(),
+                  generateUniqueIdentifier()));
+    }
+    synchronized (this) {
+      generatedTempTables.add(tableName);
     }
+    return tableName;
   }
 }
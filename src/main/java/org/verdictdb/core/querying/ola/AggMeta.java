@@ -75,6 +75,23 @@ public class AggMeta implements Serializable {
   
   String tierColumnName;
   
+  /**
+   * The scrambles for which the scale factors below are maintained, in the order of the tiers in
+   * `combinationTiers`. Null until the scale factors are first computed.
+   */
+  private List<Pair<String, String>> scaledScrambles;
+  
+  private List<TierCombination> tierCombinations;
+  
+  // the tier of each scramble for every tier combination
+  private int[][] combinationTiers;
+  
+  // the sum of the sampling ratios of the cubes in cubes[0, foldedCubeCount) for every tier
+  // combination; maintained as cubes are added instead of being recomputed over all cubes.
+  private double[] combinationRatios;
+  
+  private int foldedCubeCount = 0;
+  
   public AggMeta() { }
   
   public Set<String> getAllTierColumnAliases() {
@@ -87,22 +104,68 @@ public class AggMeta implements Serializable {
    * tier column related to those original scrambled tables must be returned from another field
    * `tierColumnForScramble`
    *
+   * <p>The sampling ratios are accumulated as cubes are added; thus, only the cubes added since the
+   * last call are examined, each in time proportional to its dimensions times the number of tier
+   * combinations.
+   *
    * @return Tier combination -> scaling factor for that tier.
    */
-  public Map<TierCombination, Double> computeScaleFactors() {
-    Map<TierCombination, Double> tierToScalingFactor = new TreeMap<>();
-    ScrambleMetaSet metaset =
-        ScrambleMetaSet.createFromCollection(tierColumnForScramble.keySet());
-    
-    List<TierCombination> tierCombinations = generateAllTierCombinations(metaset);
-    for (TierCombination c : tierCombinations) {
-      double ratio = ratioOfAllCubes(c, metaset);
-      double scalingFactor = 1.0 / ratio;
-      tierToScalingFactor.put(c, scalingFactor);
+  public synchronized Map<TierCombination, Double> computeScaleFactors() {
+    Map<Pair<String, String>, ScrambleMeta> scrambles = getScrambleIndex();
+    if (scaledScrambles == null || !scrambles.keySet().equals(new HashSet<>(scaledScrambles))) {
+      initializeScaleFactors(scrambles);
+    }
+    for (; foldedCubeCount < cubes.size(); foldedCubeCount++) {
+      foldCube(cubes.get(foldedCubeCount), scrambles);
     }
     
+    Map<TierCombination, Double> tierToScalingFactor = new TreeMap<>();
+    for (int i = 0; i < tierCombinations.size(); i++) {
+      double scalingFactor = 1.0 / combinationRatios[i];
+      tierToScalingFactor.put(tierCombinations.get(i), scalingFactor);
+    }
     return tierToScalingFactor;
   }
+  
+  /** @return (schema, table) -> the metadata of the scrambled tables that have tier columns */
+  private Map<Pair<String, String>, ScrambleMeta> getScrambleIndex() {
+    Map<Pair<String, String>, ScrambleMeta> index = new HashMap<>();
+    for (ScrambleMeta meta : tierColumnForScramble.keySet()) {
+      index.put(Pair.of(meta.getSchemaName(), meta.getTableName()), meta);
+    }
+    return index;
+  }
+  
+  /**
+   * @return (schema, table) -> the alias of the tier column of the scrambled table in the
+   *     associated select query
+   */
+  public Map<Pair<String, String>, String> getTierColumnAliasIndex() {
+    Map<Pair<String, String>, String> index = new HashMap<>();
+    for (Map.Entry<ScrambleMeta, String> e : tierColumnForScramble.entrySet()) {
+      index.put(Pair.of(e.getKey().getSchemaName(), e.getKey().getTableName()), e.getValue());
+    }
+    return index;
+  }
+  
+  private void initializeScaleFactors(Map<Pair<String, String>, ScrambleMeta> scrambles) {
+    ScrambleMetaSet metaset = ScrambleMetaSet.createFromCollection(scrambles.values());
+    scaledScrambles = new ArrayList<>();
+    for (ScrambleMeta meta : metaset) {
+      scaledScrambles.add(Pair.of(meta.getSchemaName(), meta.getTableName()));
+    }
+    tierCombinations = generateAllTierCombinations(metaset);
+    combinationTiers = new int[tierCombinations.size()][scaledScrambles.size()];
+    for (int i = 0; i < tierCombinations.size(); i++) {
+      for (int j = 0; j < scaledScrambles.size(); j++) {
+        Pair<String, String> table = scaledScrambles.get(j);
+        combinationTiers[i][j] =
+            tierCombinations.get(i).getTierNumberFor(table.getLeft(), table.getRight());
+      }
+    }
+    combinationRatios = new double[tierCombinations.size()];
+    foldedCubeCount = 0;
+  }
 
   List<TierCombination> generateAllTierCombinations(ScrambleMetaSet metaset) {
     List<TierCombination> combinations = new ArrayList<>();
@@ -137,42 +200,39 @@ public class AggMeta implements Serializable {
   }
 
   /**
-   * Computes the scaling ratio for a certain tier combination, which is simply the inverse of the
-   * sampling probability.
+   * Adds the sampling ratio of a cube to the ratio of every tier combination.
    *
-   * The final sampling probability is the product of the sampling probabilities of the involving
-   * tables. The sampling probability of each table can be computed by looking at a hypercube.
-   *
-   * @param tiers
-   * @return
+   * The sampling ratio of a cube is the product of the sampling ratios of the involving tables,
+   * each of which is computed by looking at the span of the cube for the table.
    */
-  private double ratioOfAllCubes(TierCombination tiers, ScrambleMetaSet metaset) {
-    double ratio = 0.0;
-    for (HyperTableCube cube : cubes) {
-      double r = ratioOfCube(cube, metaset, tiers);
-      ratio += r;
+  private void foldCube(HyperTableCube cube, Map<Pair<String, String>, ScrambleMeta> scrambles) {
+    List<Dimension> dims = cube.getDimensions();
+    // the scramble and the per-tier ratio of each dimension
+    int[] scrambleIndexes = new int[dims.size()];
+    double[][] ratiosPerTier = new double[dims.size()][];
+    for (int d = 0; d < dims.size(); d++) {
+      Dimension dim = dims.get(d);
+      Pair<String, String> table = Pair.of(dim.getSchemaName(), dim.getTableName());
+      ScrambleMeta meta = scrambles.get(table);
+      scrambleIndexes[d] = scaledScrambles.indexOf(table);
+      ratiosPerTier[d] = new double[meta.getNumberOfTiers()];
+      for (int tier = 0; tier < meta.getNumberOfTiers(); tier++) {
+        ratiosPerTier[d][tier] = ratioOfDimension(dim, meta, tier);
+      }
     }
-    return ratio;
-  }
-
-  private double ratioOfCube(HyperTableCube cube, ScrambleMetaSet metaset, TierCombination tiers) {
-    double ratio = 1.0;
-    for (Dimension dim : cube.getDimensions()) {
-      String schemaName = dim.getSchemaName();
-      String tableName = dim.getTableName();
-      int tier = tiers.getTierNumberFor(schemaName, tableName);
-      double ratioForDim = ratioOfDimension(dim, metaset, tier);
-      ratio *= ratioForDim;
+    
+    for (int i = 0; i < combinationRatios.length; i++) {
+      double ratio = 1.0;
+      for (int d = 0; d < dims.size(); d++) {
+        ratio *= ratiosPerTier[d][combinationTiers[i][scrambleIndexes[d]]];
+      }
+      combinationRatios[i] += ratio;
     }
-    return ratio;
   }
 
-  private double ratioOfDimension(Dimension dim, ScrambleMetaSet metaset, int tier) {
-    String schemaName = dim.getSchemaName();
-    String tableName = dim.getTableName();
+  private double ratioOfDimension(Dimension dim, ScrambleMeta meta, int tier) {
     int begin = dim.getBegin();
     int end = dim.getEnd();
-    ScrambleMeta meta = metaset.getSingleMeta(schemaName, tableName);
     List<Double> cumulDist = meta.getCumulativeDistributionForTier(tier);
 
     double ratio;
@@ -204,7 +264,7 @@ public class AggMeta implements Serializable {
     return tierColumnForScramble;
   }
   
-  public void addCube(HyperTableCube cube) {
+  public synchronized void addCube(HyperTableCube cube) {
     cubes.add(cube);
   }
   
@@ -254,7 +314,18 @@ public class AggMeta implements Serializable {
     this.aggColumnAggAliasPairOfMaxMin = aggColumnAggAliasPairOfMaxMin;
   }
   
-  public void setCubes(List<HyperTableCube> cubes) {
+  /**
+   * Sets the covered blocks. If the new list starts with the cubes for which the scale factors have
+   * been computed (e.g., the cubes of the previous progressive step), only the rest are examined
+   * when the scale factors are computed next time.
+   */
+  public synchronized void setCubes(List<HyperTableCube> cubes) {
+    if (foldedCubeCount > 0
+        && (cubes.size() < foldedCubeCount
+            || cubes.get(foldedCubeCount - 1) != this.cubes.get(foldedCubeCount - 1))) {
+      combinationRatios = new double[combinationRatios.length];
+      foldedCubeCount = 0;
+    }
     this.cubes = cubes;
   }
   
@@ -287,8 +358,12 @@ public class AggMeta implements Serializable {
                .build();
   }
   
-  public AggMeta deepcopy() {
-    return new Cloner().deepClone(this);
+  public synchronized AggMeta deepcopy() {
+    Cloner cloner = new Cloner();
+    // cubes are immutable and the scramble metadata is not modified by queries; thus, they are
+    // shared. Otherwise, the copies made at each progressive step grow with the number of cubes.
+    cloner.dontCloneInstanceOf(HyperTableCube.class, ScrambleMeta.class);
+    return cloner.deepClone(this);
   }
   
 }
@@ -0,0 +1,961 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.querying.ola;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.verdictdb.commons.TypeCasting;
+import org.verdictdb.connection.ColumnarQueryResult;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.DbmsQueryResultMetaData;
+import org.verdictdb.core.sqlobject.AliasReference;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.GroupingAttribute;
+import org.verdictdb.core.sqlobject.OrderbyAttribute;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+
+/**
+ * Evaluates the query composed by SelectAsyncAggExecutionNode directly on a HashAggregateTable.
+ * The query has the following form:
+ *
+ * <pre>
+ * select [expressions of aggregates] from (
+ *   select [scaled columns] from [hash aggregate table]) as t
+ * group by ... having ... order by ... limit ...
+ * </pre>
+ *
+ * <p>Only the operations that appear in such queries (arithmetic, comparisons, logical
+ * operations, case-when, and the basic aggregates) are supported. For any other query, {@link
+ * #evaluate(SelectQuery, Map)} throws an UnsupportedQueryException; then, the caller is expected
+ * to run the query on a database.
+ *
+ * <p>The numeric types follow those of the in-memory database used for the same queries: decimal
+ * literals (e.g., scale factors) are decimals, and an arithmetic operation on integers and decimals
+ * yields a decimal, while one involving a floating-point number yields a double. An integer
+ * operation that would overflow is left to the database.
+ */
+class AggregateQueryEvaluator {
+
+  private static final Pattern INTEGER_LITERAL = Pattern.compile("-?\\d+");
+
+  private static final Pattern DECIMAL_LITERAL =
+      Pattern.compile("-?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?");
+
+  /** Thrown when a query cannot be evaluated in memory. */
+  static class UnsupportedQueryException extends Exception {
+
+    private static final long serialVersionUID = 8241593017394850142L;
+
+    UnsupportedQueryException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * @param query The query to evaluate
+   * @param tables Hash aggregate tables by their names
+   * @return The result of the query
+   * @throws UnsupportedQueryException If the query cannot be evaluated in memory.
+   */
+  static DbmsQueryResult evaluate(SelectQuery query, Map<String, HashAggregateTable> tables)
+      throws UnsupportedQueryException {
+    if (query.getFromList().size() != 1 || !(query.getFromList().get(0) instanceof SelectQuery)) {
+      throw new UnsupportedQueryException("The query must have a single subquery.");
+    }
+    SelectQuery inner = (SelectQuery) query.getFromList().get(0);
+    if (inner.getFromList().size() != 1
+        || !(inner.getFromList().get(0) instanceof BaseTable)
+        || !inner.getGroupby().isEmpty()
+        || inner.getHaving().isPresent()
+        || !inner.getOrderby().isEmpty()
+        || inner.getLimit().isPresent()) {
+      throw new UnsupportedQueryException("The subquery must be a simple projection.");
+    }
+    String tableName = ((BaseTable) inner.getFromList().get(0)).getTableName();
+    HashAggregateTable table = tables.get(tableName);
+    if (table == null) {
+      throw new UnsupportedQueryException("No in-memory table exists: " + tableName);
+    }
+
+    // the subquery: scaling
+    Scope tableScope = new TableScope(table);
+    List<Expression> innerExprs = new ArrayList<>();
+    List<String> innerNames = new ArrayList<>();
+    for (SelectItem sel : inner.getSelectList()) {
+      if (!(sel instanceof AliasedColumn)) {
+        throw new UnsupportedQueryException("Unnamed select items are not supported.");
+      }
+      innerExprs.add(compile(((AliasedColumn) sel).getColumn(), tableScope, false));
+      innerNames.add(((AliasedColumn) sel).getAliasName());
+    }
+    Expression innerFilter = null;
+    if (inner.getFilter().isPresent()) {
+      innerFilter = compile(inner.getFilter().get(), tableScope, false);
+    }
+
+    List<Object[]> innerRows = new ArrayList<>();
+    for (int g = 0; g < table.getGroupCount(); g++) {
+      Object[] source = table.getRow(g);
+      if (innerFilter != null && !Boolean.TRUE.equals(innerFilter.evaluate(source, null))) {
+        continue;
+      }
+      Object[] row = new Object[innerExprs.size()];
+      for (int i = 0; i < row.length; i++) {
+        row[i] = innerExprs.get(i).evaluate(source, null);
+      }
+      innerRows.add(row);
+    }
+
+    // the outer query: aggregation
+    Scope innerScope = new SubqueryScope(innerNames, innerExprs);
+    List<Expression> selectExprs = new ArrayList<>();
+    List<String> selectNames = new ArrayList<>();
+    boolean hasAggregate = false;
+    for (SelectItem sel : query.getSelectList()) {
+      if (!(sel instanceof AliasedColumn)) {
+        throw new UnsupportedQueryException("Unnamed select items are not supported.");
+      }
+      UnnamedColumn col = ((AliasedColumn) sel).getColumn();
+      selectExprs.add(compile(col, innerScope, true));
+      selectNames.add(((AliasedColumn) sel).getAliasName());
+      hasAggregate = hasAggregate || col.isAggregateColumn();
+    }
+    Expression filter = null;
+    if (query.getFilter().isPresent()) {
+      filter = compile(query.getFilter().get(), innerScope, false);
+    }
+    Expression having = null;
+    if (query.getHaving().isPresent()) {
+      having = compile(query.getHaving().get(), innerScope, true);
+      hasAggregate = true;
+    }
+    List<Expression> groupExprs = new ArrayList<>();
+    for (GroupingAttribute attr : query.getGroupby()) {
+      groupExprs.add(compileGroupingAttribute(attr, innerScope, false));
+    }
+    List<Expression> orderExprs = new ArrayList<>();
+    List<Integer> orderOutputIndex = new ArrayList<>();
+    for (OrderbyAttribute attr : query.getOrderby()) {
+      GroupingAttribute a = attr.getAttribute();
+      int outputIndex = -1;
+      if (a instanceof AliasReference) {
+        outputIndex = selectNames.indexOf(((AliasReference) a).getAliasName());
+      }
+      orderOutputIndex.add(outputIndex);
+      orderExprs.add((outputIndex >= 0) ? null : compileGroupingAttribute(a, innerScope, true));
+      if (a instanceof UnnamedColumn && ((UnnamedColumn) a).isAggregateColumn()) {
+        hasAggregate = true;
+      }
+    }
+    long limit = -1;
+    if (query.getLimit().isPresent()) {
+      UnnamedColumn limitColumn = query.getLimit().get();
+      Object value =
+          (limitColumn instanceof ConstantColumn)
+              ? parseConstant((ConstantColumn) limitColumn)
+              : null;
+      if (!HashAggregateTable.isIntegral(value)) {
+        throw new UnsupportedQueryException("The limit must be an integer.");
+      }
+      limit = ((Number) value).longValue();
+    }
+
+    // groups the rows
+    List<List<Object[]>> groups = new ArrayList<>();
+    if (groupExprs.isEmpty() && hasAggregate) {
+      List<Object[]> all = new ArrayList<>();
+      for (Object[] row : innerRows) {
+        if (filter == null || Boolean.TRUE.equals(filter.evaluate(row, null))) {
+          all.add(row);
+        }
+      }
+      groups.add(all);
+    } else {
+      Map<List<Object>, List<Object[]>> keyToGroup = new LinkedHashMap<>();
+      for (Object[] row : innerRows) {
+        if (filter != null && !Boolean.TRUE.equals(filter.evaluate(row, null))) {
+          continue;
+        }
+        if (groupExprs.isEmpty()) {
+          groups.add(Arrays.<Object[]>asList(row));
+          continue;
+        }
+        List<Object> key = new ArrayList<>(groupExprs.size());
+        for (Expression e : groupExprs) {
+          key.add(e.evaluate(row, null));
+        }
+        List<Object[]> group = keyToGroup.get(key);
+        if (group == null) {
+          group = new ArrayList<>();
+          keyToGroup.put(key, group);
+        }
+        group.add(row);
+      }
+      groups.addAll(keyToGroup.values());
+    }
+
+    // computes the output rows
+    final List<Object[]> outputs = new ArrayList<>();
+    for (List<Object[]> group : groups) {
+      Object[] first = group.isEmpty() ? null : group.get(0);
+      if (having != null && !Boolean.TRUE.equals(having.evaluate(first, group))) {
+        continue;
+      }
+      Object[] output = new Object[selectExprs.size() + orderExprs.size()];
+      for (int i = 0; i < selectExprs.size(); i++) {
+        output[i] = selectExprs.get(i).evaluate(first, group);
+      }
+      for (int i = 0; i < orderExprs.size(); i++) {
+        int outputIndex = orderOutputIndex.get(i);
+        output[selectExprs.size() + i] =
+            (outputIndex >= 0) ? output[outputIndex] : orderExprs.get(i).evaluate(first, group);
+      }
+      outputs.add(output);
+    }
+
+    if (!query.getOrderby().isEmpty()) {
+      sort(outputs, query.getOrderby(), selectExprs.size());
+    }
+
+    List<Integer> types = new ArrayList<>();
+    DbmsQueryResultMetaData metaData = new DbmsQueryResultMetaData();
+    for (Expression e : selectExprs) {
+      types.add(e.getType());
+      if (e.getSourceColumn() >= 0) {
+        HashAggregateTable.copyMetaData(table.getMetaData(), e.getSourceColumn(), metaData);
+      } else {
+        HashAggregateTable.addDefaultMetaData(metaData, e.getType());
+      }
+    }
+    ColumnarQueryResult result = new ColumnarQueryResult(selectNames, types, metaData);
+    for (Object[] output : outputs) {
+      if (limit >= 0 && result.getRowCount() >= limit) {
+        break;
+      }
+      result.addRow(Arrays.asList(output).subList(0, selectExprs.size()));
+    }
+    return result;
+  }
+
+  private static void sort(
+      List<Object[]> outputs, List<OrderbyAttribute> orderby, final int offset)
+      throws UnsupportedQueryException {
+    final int size = orderby.size();
+    final boolean[] descending = new boolean[size];
+    final boolean[] nullsFirst = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      OrderbyAttribute attr = orderby.get(i);
+      descending[i] = attr.getOrder().equalsIgnoreCase("desc");
+      String nullsOrder = attr.getNullsOrder();
+      if (nullsOrder == null || nullsOrder.isEmpty()) {
+        // nulls are regarded as the smallest values.
+        nullsFirst[i] = !descending[i];
+      } else {
+        nullsFirst[i] = nullsOrder.equalsIgnoreCase("nulls first");
+      }
+    }
+
+    try {
+      Collections.sort(
+          outputs,
+          new Comparator<Object[]>() {
+            @Override
+            public int compare(Object[] o1, Object[] o2) {
+              for (int i = 0; i < size; i++) {
+                Object v1 = o1[offset + i];
+                Object v2 = o2[offset + i];
+                int c;
+                if (v1 == null && v2 == null) {
+                  c = 0;
+                } else if (v1 == null) {
+                  return nullsFirst[i] ? -1 : 1;
+                } else if (v2 == null) {
+                  return nullsFirst[i] ? 1 : -1;
+                } else {
+                  c = HashAggregateTable.compareValues(v1, v2);
+                }
+                if (c != 0) {
+                  return descending[i] ? -c : c;
+                }
+              }
+              return 0;
+            }
+          });
+    } catch (IllegalArgumentException e) {
+      throw new UnsupportedQueryException(e.getMessage());
+    }
+  }
+
+  private static Expression compileGroupingAttribute(
+      GroupingAttribute attr, Scope scope, boolean allowAggregate)
+      throws UnsupportedQueryException {
+    if (attr instanceof AliasReference) {
+      return scope.resolve(((AliasReference) attr).getAliasName());
+    } else if (attr instanceof UnnamedColumn) {
+      return compile((UnnamedColumn) attr, scope, allowAggregate);
+    }
+    throw new UnsupportedQueryException("Unsupported grouping attribute: " + attr);
+  }
+
+  private static Expression compile(UnnamedColumn column, Scope scope, boolean allowAggregate)
+      throws UnsupportedQueryException {
+    if (column instanceof BaseColumn) {
+      return scope.resolve(((BaseColumn) column).getColumnName());
+    } else if (column instanceof AliasReference) {
+      return scope.resolve(((AliasReference) column).getAliasName());
+    } else if (column instanceof ConstantColumn) {
+      return new Constant(parseConstant((ConstantColumn) column));
+    } else if (!(column instanceof ColumnOp)) {
+      throw new UnsupportedQueryException("Unsupported column: " + column);
+    }
+
+    ColumnOp op = (ColumnOp) column;
+    String opType = op.getOpType();
+    if (Aggregate.isSupported(opType)) {
+      if (!allowAggregate) {
+        throw new UnsupportedQueryException("Aggregates are not allowed here: " + opType);
+      }
+      Expression operand = null;
+      if (!op.getOperands().isEmpty() && !(op.getOperand(0) instanceof AsteriskColumn)) {
+        // nested aggregates are not allowed
+        operand = compile(op.getOperand(0), scope, false);
+      }
+      if (operand == null && !opType.equals("count")) {
+        throw new UnsupportedQueryException("No operand is given for " + opType);
+      }
+      return new Aggregate(opType, operand);
+    } else if (Operation.isSupported(opType)) {
+      List<Expression> operands = new ArrayList<>();
+      for (UnnamedColumn operand : op.getOperands()) {
+        operands.add(compile(operand, scope, allowAggregate));
+      }
+      return new Operation(opType, operands);
+    }
+    throw new UnsupportedQueryException("Unsupported operation: " + opType);
+  }
+
+  static Object parseConstant(ConstantColumn column) throws UnsupportedQueryException {
+    Object value = column.getValue();
+    if (value == null || value instanceof Number || value instanceof Boolean) {
+      return value;
+    }
+    String s = value.toString().trim();
+    if (INTEGER_LITERAL.matcher(s).matches()) {
+      try {
+        return Long.valueOf(s);
+      } catch (NumberFormatException e) {
+        return Double.valueOf(s);
+      }
+    } else if (DECIMAL_LITERAL.matcher(s).matches()) {
+      return new BigDecimal(s);
+    } else if (s.length() >= 2 && s.startsWith("'") && s.endsWith("'")) {
+      return s.substring(1, s.length() - 1).replace("''", "'");
+    } else if (s.equalsIgnoreCase("null")) {
+      return null;
+    } else if (s.equalsIgnoreCase("true") || s.equalsIgnoreCase("false")) {
+      return Boolean.valueOf(s);
+    }
+    throw new UnsupportedQueryException("Unsupported constant: " + s);
+  }
+
+  static boolean isIntegralType(int type) {
+    return type == Types.BIGINT
+        || type == Types.INTEGER
+        || type == Types.SMALLINT
+        || type == Types.TINYINT;
+  }
+
+  /** @return True if the type is an integer or a decimal (i.e., not a floating-point number). */
+  static boolean isExactNumericType(int type) {
+    return isIntegralType(type) || type == Types.DECIMAL || type == Types.NUMERIC;
+  }
+
+  /** Resolves column names to expressions. */
+  interface Scope {
+    Expression resolve(String name) throws UnsupportedQueryException;
+  }
+
+  static class TableScope implements Scope {
+
+    HashAggregateTable table;
+
+    TableScope(HashAggregateTable table) {
+      this.table = table;
+    }
+
+    @Override
+    public Expression resolve(String name) throws UnsupportedQueryException {
+      int index = table.getColumnIndex(name);
+      if (index < 0) {
+        throw new UnsupportedQueryException("No such column: " + name);
+      }
+      return new ColumnReference(index, table.getColumnType(index), index);
+    }
+  }
+
+  static class SubqueryScope implements Scope {
+
+    List<String> names;
+
+    List<Expression> exprs;
+
+    SubqueryScope(List<String> names, List<Expression> exprs) {
+      this.names = names;
+      this.exprs = exprs;
+    }
+
+    @Override
+    public Expression resolve(String name) throws UnsupportedQueryException {
+      int index = names.indexOf(name);
+      if (index < 0) {
+        for (int i = 0; i < names.size(); i++) {
+          if (names.get(i).equalsIgnoreCase(name)) {
+            index = i;
+            break;
+          }
+        }
+      }
+      if (index < 0) {
+        throw new UnsupportedQueryException("No such column: " + name);
+      }
+      Expression e = exprs.get(index);
+      return new ColumnReference(index, e.getType(), e.getSourceColumn());
+    }
+  }
+
+  /** A compiled expression. */
+  abstract static class Expression {
+
+    /**
+     * @param row The current row; null if the current group is empty.
+     * @param group The rows of the current group; null if aggregates are not allowed.
+     * @return The value; null represents SQL null.
+     */
+    abstract Object evaluate(Object[] row, List<Object[]> group) throws UnsupportedQueryException;
+
+    /** @return The type of the value as defined in java.sql.Types */
+    abstract int getType();
+
+    /** @return The table column this expression passes through; -1 if it computes a value. */
+    int getSourceColumn() {
+      return -1;
+    }
+  }
+
+  static class ColumnReference extends Expression {
+
+    int index;
+
+    int type;
+
+    int sourceColumn;
+
+    ColumnReference(int index, int type, int sourceColumn) {
+      this.index = index;
+      this.type = type;
+      this.sourceColumn = sourceColumn;
+    }
+
+    @Override
+    Object evaluate(Object[] row, List<Object[]> group) {
+      return (row == null) ? null : row[index];
+    }
+
+    @Override
+    int getType() {
+      return type;
+    }
+
+    @Override
+    int getSourceColumn() {
+      return sourceColumn;
+    }
+  }
+
+  static class Constant extends Expression {
+
+    Object value;
+
+    Constant(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    Object evaluate(Object[] row, List<Object[]> group) {
+      return value;
+    }
+
+    @Override
+    int getType() {
+      if (value == null) {
+        return Types.NULL;
+      } else if (HashAggregateTable.isIntegral(value)) {
+        return Types.BIGINT;
+      } else if (value instanceof BigDecimal) {
+        return Types.DECIMAL;
+      } else if (value instanceof Number) {
+        return Types.DOUBLE;
+      } else if (value instanceof Boolean) {
+        return Types.BOOLEAN;
+      } else {
+        return Types.VARCHAR;
+      }
+    }
+  }
+
+  static class Aggregate extends Expression {
+
+    String opType;
+
+    Expression operand;
+
+    Aggregate(String opType, Expression operand) {
+      this.opType = opType;
+      this.operand = operand;
+    }
+
+    static boolean isSupported(String opType) {
+      return Arrays.asList("sum", "count", "avg", "max", "min").contains(opType);
+    }
+
+    @Override
+    Object evaluate(Object[] row, List<Object[]> group) throws UnsupportedQueryException {
+      if (opType.equals("count")) {
+        long count = 0;
+        for (Object[] r : group) {
+          if (operand == null || operand.evaluate(r, null) != null) {
+            count++;
+          }
+        }
+        return count;
+      }
+
+      boolean integral = isIntegralType(operand.getType());
+      boolean decimal = !integral && isExactNumericType(operand.getType());
+      long longSum = 0;
+      BigDecimal decimalSum = BigDecimal.ZERO;
+      double doubleSum = 0;
+      long count = 0;
+      Object extreme = null;
+      for (Object[] r : group) {
+        Object value = operand.evaluate(r, null);
+        if (value == null) {
+          continue;
+        }
+        count++;
+        if (opType.equals("max") || opType.equals("min")) {
+          int sign = opType.equals("max") ? 1 : -1;
+          if (extreme == null || sign * compare(value, extreme) > 0) {
+            extreme = value;
+          }
+        } else if (integral && HashAggregateTable.isIntegral(value)) {
+          longSum = addExactly(longSum, ((Number) value).longValue());
+          doubleSum += ((Number) value).doubleValue();
+        } else if (decimal && value instanceof Number) {
+          decimalSum = decimalSum.add(toDecimal((Number) value));
+          doubleSum += ((Number) value).doubleValue();
+        } else {
+          doubleSum += toDouble(value);
+        }
+      }
+
+      if (count == 0) {
+        return null;
+      } else if (opType.equals("max") || opType.equals("min")) {
+        return extreme;
+      } else if (opType.equals("avg") && decimal) {
+        // the database averages decimals as decimals.
+        return divide(decimalSum, BigDecimal.valueOf(count));
+      } else if (opType.equals("avg")) {
+        return doubleSum / count;
+      } else if (integral) {
+        return longSum;
+      } else if (decimal) {
+        return decimalSum;
+      } else {
+        return doubleSum;
+      }
+    }
+
+    @Override
+    int getType() {
+      if (opType.equals("count")) {
+        return Types.BIGINT;
+      } else if (opType.equals("max") || opType.equals("min")) {
+        return operand.getType();
+      } else if (opType.equals("sum") && isIntegralType(operand.getType())) {
+        return Types.BIGINT;
+      } else if ((opType.equals("sum") || opType.equals("avg"))
+          && !isIntegralType(operand.getType())
+          && isExactNumericType(operand.getType())) {
+        return Types.DECIMAL;
+      } else {
+        return Types.DOUBLE;
+      }
+    }
+
+    @Override
+    int getSourceColumn() {
+      if (opType.equals("max") || opType.equals("min")) {
+        return operand.getSourceColumn();
+      }
+      return -1;
+    }
+  }
+
+  static class Operation extends Expression {
+
+    private static final List<String> SUPPORTED =
+        Arrays.asList(
+            "add",
+            "subtract",
+            "multiply",
+            "divide",
+            "equal",
+            "notequal",
+            "greater",
+            "greaterequal",
+            "less",
+            "lessequal",
+            "and",
+            "or",
+            "not",
+            "casewhen",
+            "isnull",
+            "is_null",
+            "is_not_null",
+            "sqrt",
+            "pow");
+
+    String opType;
+
+    List<Expression> operands;
+
+    Operation(String opType, List<Expression> operands) throws UnsupportedQueryException {
+      this.opType = opType;
+      this.operands = operands;
+      if (opType.equals("casewhen") && operands.size() % 2 == 0) {
+        throw new UnsupportedQueryException("A case-when clause without else is not supported.");
+      }
+    }
+
+    static boolean isSupported(String opType) {
+      return SUPPORTED.contains(opType);
+    }
+
+    @Override
+    Object evaluate(Object[] row, List<Object[]> group) throws UnsupportedQueryException {
+      if (opType.equals("casewhen")) {
+        int size = operands.size();
+        for (int i = 0; i < size - 1; i += 2) {
+          if (Boolean.TRUE.equals(operands.get(i).evaluate(row, group))) {
+            return coerce(operands.get(i + 1).evaluate(row, group), getType());
+          }
+        }
+        return coerce(operands.get(size - 1).evaluate(row, group), getType());
+      } else if (opType.equals("and")) {
+        boolean unknown = false;
+        for (Expression e : operands) {
+          Object value = e.evaluate(row, group);
+          if (Boolean.FALSE.equals(value)) {
+            return false;
+          } else if (value == null) {
+            unknown = true;
+          }
+        }
+        return unknown ? null : Boolean.TRUE;
+      } else if (opType.equals("or")) {
+        boolean unknown = false;
+        for (Expression e : operands) {
+          Object value = e.evaluate(row, group);
+          if (Boolean.TRUE.equals(value)) {
+            return true;
+          } else if (value == null) {
+            unknown = true;
+          }
+        }
+        return unknown ? null : Boolean.FALSE;
+      }
+
+      Object left = operands.get(0).evaluate(row, group);
+      if (opType.equals("isnull") || opType.equals("is_null")) {
+        return left == null;
+      } else if (opType.equals("is_not_null")) {
+        return left != null;
+      } else if (left == null) {
+        return null;
+      } else if (opType.equals("not")) {
+        return !toBoolean(left);
+      } else if (opType.equals("sqrt")) {
+        return Math.sqrt(toDouble(left));
+      }
+
+      Object right = operands.get(1).evaluate(row, group);
+      if (right == null) {
+        return null;
+      }
+      switch (opType) {
+        case "equal":
+          return compare(left, right) == 0;
+        case "notequal":
+          return compare(left, right) != 0;
+        case "greater":
+          return compare(left, right) > 0;
+        case "greaterequal":
+          return compare(left, right) >= 0;
+        case "less":
+          return compare(left, right) < 0;
+        case "lessequal":
+          return compare(left, right) <= 0;
+        case "pow":
+          return Math.pow(toDouble(left), toDouble(right));
+        default:
+          return arithmetic(left, right);
+      }
+    }
+
+    private Object arithmetic(Object left, Object right) throws UnsupportedQueryException {
+      if (HashAggregateTable.isIntegral(left) && HashAggregateTable.isIntegral(right)) {
+        long l = ((Number) left).longValue();
+        long r = ((Number) right).longValue();
+        switch (opType) {
+          case "add":
+            return addExactly(l, r);
+          case "subtract":
+            if (r == Long.MIN_VALUE) {
+              throw new UnsupportedQueryException("Integer overflow");
+            }
+            return addExactly(l, -r);
+          case "multiply":
+            return multiplyExactly(l, r);
+          default:
+            if (r == 0) {
+              // let the database report the error
+              throw new UnsupportedQueryException("Division by zero");
+            }
+            return l / r;
+        }
+      }
+
+      if (isExactNumber(left) && isExactNumber(right)) {
+        BigDecimal l = toDecimal((Number) left);
+        BigDecimal r = toDecimal((Number) right);
+        switch (opType) {
+          case "add":
+            return l.add(r);
+          case "subtract":
+            return l.subtract(r);
+          case "multiply":
+            return l.multiply(r);
+          default:
+            if (r.signum() == 0) {
+              throw new UnsupportedQueryException("Division by zero");
+            }
+            return divide(l, r);
+        }
+      }
+
+      double l = toDouble(left);
+      double r = toDouble(right);
+      switch (opType) {
+        case "add":
+          return l + r;
+        case "subtract":
+          return l - r;
+        case "multiply":
+          return l * r;
+        default:
+          if (r == 0) {
+            throw new UnsupportedQueryException("Division by zero");
+          }
+          return l / r;
+      }
+    }
+
+    @Override
+    int getType() {
+      switch (opType) {
+        case "add":
+        case "subtract":
+        case "multiply":
+        case "divide":
+          int leftType = operands.get(0).getType();
+          int rightType = operands.get(1).getType();
+          if (isIntegralType(leftType) && isIntegralType(rightType)) {
+            return Types.BIGINT;
+          } else if (isExactNumericType(leftType) && isExactNumericType(rightType)) {
+            return Types.DECIMAL;
+          }
+          return Types.DOUBLE;
+        case "sqrt":
+        case "pow":
+          return Types.DOUBLE;
+        case "casewhen":
+          return caseWhenType();
+        default:
+          return Types.BOOLEAN;
+      }
+    }
+
+    private int caseWhenType() {
+      List<Integer> types = new ArrayList<>();
+      for (int i = 1; i < operands.size(); i += 2) {
+        types.add(operands.get(i).getType());
+      }
+      types.add(operands.get(operands.size() - 1).getType());
+
+      boolean allNumeric = true;
+      boolean allExact = true;
+      boolean allIntegral = true;
+      Integer firstType = null;
+      for (int type : types) {
+        if (type == Types.NULL) {
+          continue;
+        }
+        if (firstType == null) {
+          firstType = type;
+        }
+        allIntegral = allIntegral && isIntegralType(type);
+        allExact = allExact && isExactNumericType(type);
+        allNumeric = allNumeric && (isIntegralType(type) || isDecimalType(type));
+      }
+      if (firstType == null) {
+        return Types.NULL;
+      } else if (allIntegral) {
+        return Types.BIGINT;
+      } else if (allExact) {
+        return Types.DECIMAL;
+      } else if (allNumeric) {
+        return Types.DOUBLE;
+      }
+      return firstType;
+    }
+
+    @Override
+    int getSourceColumn() {
+      return -1;
+    }
+  }
+
+  private static boolean isDecimalType(int type) {
+    return type == Types.DOUBLE
+        || type == Types.FLOAT
+        || type == Types.REAL
+        || type == Types.DECIMAL
+        || type == Types.NUMERIC;
+  }
+
+  private static Object coerce(Object value, int type) {
+    if (value instanceof Number) {
+      if (type == Types.DOUBLE) {
+        return ((Number) value).doubleValue();
+      } else if (type == Types.BIGINT) {
+        return ((Number) value).longValue();
+      } else if (type == Types.DECIMAL) {
+        return toDecimal((Number) value);
+      }
+    }
+    return value;
+  }
+
+  private static boolean isExactNumber(Object value) {
+    return value instanceof BigDecimal || HashAggregateTable.isIntegral(value);
+  }
+
+  private static BigDecimal toDecimal(Number value) {
+    if (value instanceof BigDecimal) {
+      return (BigDecimal) value;
+    } else if (HashAggregateTable.isIntegral(value)) {
+      return BigDecimal.valueOf(value.longValue());
+    }
+    return BigDecimal.valueOf(value.doubleValue());
+  }
+
+  /**
+   * Divides decimals as the in-memory database does: 25 more digits are kept after the decimal
+   * point than the dividend has, and the trailing zeros are removed.
+   */
+  private static BigDecimal divide(BigDecimal left, BigDecimal right) {
+    BigDecimal result = left.divide(right, Math.max(left.scale(), 0) + 25, RoundingMode.HALF_DOWN);
+    if (result.signum() == 0) {
+      return BigDecimal.ZERO;
+    }
+    result = result.stripTrailingZeros();
+    return (result.scale() < 0) ? result.setScale(0) : result;
+  }
+
+  private static long addExactly(long left, long right) throws UnsupportedQueryException {
+    long sum = left + right;
+    // the addition overflows only if the sign of the sum differs from those of both operands.
+    if (((left ^ sum) & (right ^ sum)) < 0) {
+      throw new UnsupportedQueryException("Integer overflow");
+    }
+    return sum;
+  }
+
+  private static long multiplyExactly(long left, long right) throws UnsupportedQueryException {
+    long product = left * right;
+    if ((Math.abs(left) | Math.abs(right)) >>> 31 != 0
+        && ((right != 0 && product / right != left)
+            || (left == Long.MIN_VALUE && right == -1))) {
+      throw new UnsupportedQueryException("Integer overflow");
+    }
+    return product;
+  }
+
+  private static int compare(Object left, Object right) throws UnsupportedQueryException {
+    try {
+      return HashAggregateTable.compareValues(left, right);
+    } catch (IllegalArgumentException e) {
+      throw new UnsupportedQueryException(e.getMessage());
+    }
+  }
+
+  private static double toDouble(Object value) throws UnsupportedQueryException {
+    Double d = TypeCasting.toDouble(value);
+    if (d == null) {
+      throw new UnsupportedQueryException("Not a number: " + value);
+    }
+    return d;
+  }
+
+  private static boolean toBoolean(Object value) throws UnsupportedQueryException {
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    }
+    throw new UnsupportedQueryException("Not a boolean: " + value);
+  }
+
+  private AggregateQueryEvaluator() {}
+}
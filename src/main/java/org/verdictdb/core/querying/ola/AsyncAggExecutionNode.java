@@ -102,6 +102,12 @@ public class AsyncAggExecutionNode extends ProjectionNode {
 
   int tableNum = 1;
 
+  /**
+   * Keeps the scale factors across the progressive steps. Each step covers the cubes of the
+   * previous step and more; thus, only the new cubes are examined at each step.
+   */
+  private AggMeta scalingAggMeta = new AggMeta();
+
   AsyncAggExecutionNode(IdCreator idCreator) {
     super(idCreator, null);
   }
@@ -240,11 +246,16 @@ public class AsyncAggExecutionNode extends ProjectionNode {
     //    System.out.println(selectQuery);
 
     ExecutionInfoToken token = tokens.get(0);
-    AggMeta sourceAggMeta = (AggMeta) token.getValue("aggMeta");
+    AggMeta tokenAggMeta = (AggMeta) token.getValue("aggMeta");
+    // the columns in the aggmeta are modified below; the one in the token is shared with others.
+    AggMeta sourceAggMeta = tokenAggMeta.deepcopy();
 
     // First, calculate the scale factor and use it to replace the scale factor placeholder
+    scalingAggMeta.setTierColumnForScramble(tokenAggMeta.getTierColumnForScramble());
+    // scalingAggMeta is kept across tokens; it must not hold the list shared through the token.
+    scalingAggMeta.setCubes(new ArrayList<>(tokenAggMeta.getCubes()));
     List<Pair<UnnamedColumn, Double>> conditionToScaleFactor =
-        composeScaleFactorForTierCombinations(sourceAggMeta, INNER_RAW_AGG_TABLE_ALIAS);
+        composeScaleFactorForTierCombinations(scalingAggMeta, INNER_RAW_AGG_TABLE_ALIAS);
 
     // update the agg column scaling factor
     List<UnnamedColumn> scalingOperands = new ArrayList<>();
@@ -278,7 +289,7 @@ public class AsyncAggExecutionNode extends ProjectionNode {
     List<Pair<UnnamedColumn, Double>> scalingFactorPerTier = new ArrayList<>();
 
     Map<TierCombination, Double> scaleFactors = sourceAggMeta.computeScaleFactors();
-    Map<ScrambleMeta, String> tierColums = sourceAggMeta.getTierColumnForScramble();
+    Map<Pair<String, String>, String> tierColumns = sourceAggMeta.getTierColumnAliasIndex();
 
     // each iteration of this loop generates a single condition-then part
     for (Entry<TierCombination, Double> tierScale : scaleFactors.entrySet()) {
@@ -291,7 +302,7 @@ public class AsyncAggExecutionNode extends ProjectionNode {
       for (Entry<Pair<String, String>, Integer> perTable : combination) {
         Pair<String, String> table = perTable.getKey();
         Integer tier = perTable.getValue();
-        String aliasName = findScrambleAlias(tierColums, table);
+        String aliasName = tierColumns.get(table);
 
         UnnamedColumn part =
             ColumnOp.equal(
@@ -310,20 +321,6 @@ public class AsyncAggExecutionNode extends ProjectionNode {
     return scalingFactorPerTier;
   }
 
-  private String findScrambleAlias(
-      Map<ScrambleMeta, String> tierColums, Pair<String, String> table) {
-
-    for (Entry<ScrambleMeta, String> metaToAlias : tierColums.entrySet()) {
-      ScrambleMeta meta = metaToAlias.getKey();
-      String aliasName = metaToAlias.getValue();
-      if (meta.getSchemaName().equals(table.getLeft())
-          && meta.getTableName().equals(table.getRight())) {
-        return aliasName;
-      }
-    }
-    return null;
-  }
-
   @Override
   public ExecutionInfoToken createToken(DbmsQueryResult result) {
     ExecutionInfoToken token = super.createToken(result);
@@ -18,8 +18,10 @@ package org.verdictdb.core.querying.ola;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -87,6 +89,30 @@ public class AsyncQueryExecutionPlan extends QueryExecutionPlan {
     return asyncPlan;
   }
 
+  /**
+   * Lets the combiners of partial aggregates create views instead of tables. Then, the database
+   * merges the partial aggregates when an answer is read from the last combiner, without writing
+   * the intermediate merges.
+   *
+   * @param asViews True if the combiners should create views
+   */
+  public void setAggCombinersAsViews(boolean asViews) {
+    Set<ExecutableNodeBase> visited =
+        Collections.newSetFromMap(new IdentityHashMap<ExecutableNodeBase, Boolean>());
+    List<ExecutableNodeBase> toVisit = new ArrayList<>();
+    toVisit.add(getRootNode());
+    while (!toVisit.isEmpty()) {
+      ExecutableNodeBase node = toVisit.remove(toVisit.size() - 1);
+      if (node == null || !visited.add(node)) {
+        continue;
+      }
+      if (node instanceof AggCombinerExecutionNode) {
+        ((AggCombinerExecutionNode) node).setCreateView(asViews);
+      }
+      toVisit.addAll(node.getSources());
+    }
+  }
+
   /**
    * Returns an asynchronous version of the given plan.
    *
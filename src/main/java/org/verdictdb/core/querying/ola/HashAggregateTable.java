@@ -0,0 +1,545 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.querying.ola;
+
+import java.math.BigDecimal;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.verdictdb.commons.TypeCasting;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.DbmsQueryResultMetaData;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+import org.verdictdb.exception.VerdictDBValueException;
+
+/**
+ * Accumulates the results of individual aggregate blocks in a hash table keyed on the grouping
+ * columns. Each block is merged in place: sum-like aggregates (i.e., sum, count, countdistinct,
+ * approx_distinct) are added up, and max/min aggregates keep their extremes. Thus, merging a block
+ * costs time proportional to the number of rows in the block, not to the number of groups
+ * accumulated so far.
+ *
+ * <p>The sum-like aggregates are stored in arrays (one array per column) whose element type follows
+ * the type of the column in the blocks: long for integral columns (e.g., counts), BigDecimal for
+ * decimal columns, and double for the others. Thus, the column types of the blocks are kept. An
+ * integral sum that overflows a long is converted to a decimal column. This class is not
+ * thread-safe; SelectAsyncAggExecutionNode merges blocks one at a time.
+ */
+public class HashAggregateTable {
+
+  public enum ColumnRole {
+    key,
+    sum,
+    max,
+    min
+  }
+
+  private enum SumKind {
+    integral,
+    decimal,
+    floating
+  }
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  // approximate object sizes used by estimateMemoryBytes()
+  private static final int REFERENCE_BYTES = 8;
+
+  private static final int BOXED_VALUE_BYTES = 24;
+
+  private static final int LIST_BYTES = 40;
+
+  private static final int MAP_ENTRY_BYTES = 48;
+
+  private List<String> columnNames = new ArrayList<>();
+
+  private List<Integer> columnTypes = new ArrayList<>();
+
+  private List<ColumnRole> columnRoles = new ArrayList<>();
+
+  // the index of a column within the storage for its role (keys, sums, or extremes)
+  private List<Integer> storageIndex = new ArrayList<>();
+
+  private DbmsQueryResultMetaData metaData = new DbmsQueryResultMetaData();
+
+  private Map<List<Object>, Integer> groupIndex = new HashMap<>();
+
+  private List<List<Object>> groupKeys = new ArrayList<>();
+
+  private int groupCount = 0;
+
+  private int capacity = INITIAL_CAPACITY;
+
+  private int keyColumnCount = 0;
+
+  // the kinds of the sum-like columns; only the array of the kind is allocated for each column.
+  private SumKind[] sumKinds = new SumKind[0];
+
+  // the column index of the i-th sum-like column
+  private int[] sumColumns = new int[0];
+
+  // longSums[i][g] (or decimalSums or doubleSums) is the sum of the i-th sum-like column for the
+  // g-th group.
+  private long[][] longSums = new long[0][];
+
+  private BigDecimal[][] decimalSums = new BigDecimal[0][];
+
+  private double[][] doubleSums = new double[0][];
+
+  // sumExists[i][g] is false if all the values for sums[i][g] have been null.
+  private boolean[][] sumExists = new boolean[0][];
+
+  // extremes[i][g] is the max (or min) of the i-th max/min column for the g-th group.
+  private Object[][] extremes = new Object[0][];
+
+  private HashAggregateTable() {}
+
+  /**
+   * Creates an empty table whose columns are the select items of an individual aggregate query.
+   * An aggregate column becomes a max, min, or sum-like column depending on its function; a
+   * non-aggregate column becomes a key column.
+   *
+   * @param block The result of an individual aggregate query; its column types are used.
+   * @param dependentQuery The individual aggregate query
+   * @return An empty table
+   * @throws VerdictDBValueException If a select item does not appear in the block.
+   */
+  public static HashAggregateTable create(DbmsQueryResult block, SelectQuery dependentQuery)
+      throws VerdictDBValueException {
+    HashAggregateTable table = new HashAggregateTable();
+    int sumCount = 0;
+    int extremeCount = 0;
+    List<Integer> sumColumnTypes = new ArrayList<>();
+    for (SelectItem sel : dependentQuery.getSelectList()) {
+      if (!(sel instanceof AliasedColumn)) {
+        continue;
+      }
+      String alias = ((AliasedColumn) sel).getAliasName();
+      UnnamedColumn col = ((AliasedColumn) sel).getColumn();
+      int blockIndex = findColumn(block, alias);
+      if (blockIndex < 0) {
+        throw new VerdictDBValueException(
+            String.format("The column %s does not exist in an aggregate block.", alias));
+      }
+
+      ColumnRole role;
+      if (!col.isAggregateColumn()) {
+        role = ColumnRole.key;
+        table.storageIndex.add(table.keyColumnCount++);
+      } else if (col instanceof ColumnOp && ((ColumnOp) col).getOpType().equals("max")) {
+        role = ColumnRole.max;
+        table.storageIndex.add(extremeCount++);
+      } else if (col instanceof ColumnOp && ((ColumnOp) col).getOpType().equals("min")) {
+        role = ColumnRole.min;
+        table.storageIndex.add(extremeCount++);
+      } else {
+        // count, sum, countdistinct, approx_distinct
+        role = ColumnRole.sum;
+        table.storageIndex.add(sumCount++);
+        sumColumnTypes.add(block.getColumnType(blockIndex));
+      }
+      table.columnNames.add(alias);
+      table.columnRoles.add(role);
+      table.columnTypes.add(block.getColumnType(blockIndex));
+      copyMetaData(block, blockIndex, table.metaData);
+    }
+
+    table.sumKinds = new SumKind[sumCount];
+    table.sumColumns = new int[sumCount];
+    table.longSums = new long[sumCount][];
+    table.decimalSums = new BigDecimal[sumCount][];
+    table.doubleSums = new double[sumCount][];
+    for (int i = 0; i < table.columnRoles.size(); i++) {
+      if (table.columnRoles.get(i) == ColumnRole.sum) {
+        table.sumColumns[table.storageIndex.get(i)] = i;
+      }
+    }
+    for (int s = 0; s < sumCount; s++) {
+      int type = sumColumnTypes.get(s);
+      if (AggregateQueryEvaluator.isIntegralType(type)) {
+        table.sumKinds[s] = SumKind.integral;
+        table.longSums[s] = new long[INITIAL_CAPACITY];
+      } else if (type == Types.DECIMAL || type == Types.NUMERIC) {
+        table.sumKinds[s] = SumKind.decimal;
+        table.decimalSums[s] = new BigDecimal[INITIAL_CAPACITY];
+      } else {
+        table.sumKinds[s] = SumKind.floating;
+        table.doubleSums[s] = new double[INITIAL_CAPACITY];
+      }
+    }
+    table.sumExists = new boolean[sumCount][INITIAL_CAPACITY];
+    table.extremes = new Object[extremeCount][INITIAL_CAPACITY];
+    return table;
+  }
+
+  /**
+   * Merges the rows of an aggregate block into this table.
+   *
+   * @param block The result of an individual aggregate query
+   * @throws VerdictDBValueException If a column does not exist or a sum-like column is not
+   *     numeric.
+   */
+  public void merge(DbmsQueryResult block) throws VerdictDBValueException {
+    int columnCount = columnNames.size();
+    int[] blockIndex = new int[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      blockIndex[i] = findColumn(block, columnNames.get(i));
+      if (blockIndex[i] < 0) {
+        throw new VerdictDBValueException(
+            String.format(
+                "The column %s does not exist in an aggregate block.", columnNames.get(i)));
+      }
+    }
+
+    block.rewind();
+    while (block.next()) {
+      List<Object> key = new ArrayList<>(keyColumnCount);
+      for (int i = 0; i < columnCount; i++) {
+        if (columnRoles.get(i) == ColumnRole.key) {
+          key.add(block.getValue(blockIndex[i]));
+        }
+      }
+      Integer group = groupIndex.get(key);
+      if (group == null) {
+        group = addGroup(key);
+      }
+
+      for (int i = 0; i < columnCount; i++) {
+        ColumnRole role = columnRoles.get(i);
+        if (role == ColumnRole.key) {
+          continue;
+        }
+        Object value = block.getValue(blockIndex[i]);
+        if (value == null) {
+          continue;
+        }
+        int s = storageIndex.get(i);
+        if (role == ColumnRole.sum) {
+          if (!(value instanceof Number)) {
+            throw new VerdictDBValueException(
+                String.format(
+                    "The value of the aggregate column %s is not numeric: %s",
+                    columnNames.get(i), value));
+          }
+          addToSum(s, group, (Number) value);
+        } else {
+          Object current = extremes[s][group];
+          int sign = (role == ColumnRole.max) ? 1 : -1;
+          if (current == null || sign * compareValues(value, current) > 0) {
+            extremes[s][group] = value;
+          }
+        }
+      }
+    }
+  }
+
+  private void addToSum(int s, int group, Number value) {
+    if (sumKinds[s] == SumKind.integral) {
+      if (isIntegral(value)) {
+        long current = longSums[s][group];
+        long v = value.longValue();
+        long sum = current + v;
+        // the addition overflows only if the sign of the sum differs from those of both operands.
+        if (((current ^ sum) & (v ^ sum)) >= 0) {
+          longSums[s][group] = sum;
+          sumExists[s][group] = true;
+          return;
+        }
+      }
+      convertToDecimal(s);
+    }
+
+    if (sumKinds[s] == SumKind.decimal) {
+      BigDecimal current = decimalSums[s][group];
+      BigDecimal v = TypeCasting.toBigDecimal(value);
+      decimalSums[s][group] = (current == null) ? v : current.add(v);
+    } else {
+      doubleSums[s][group] += value.doubleValue();
+    }
+    sumExists[s][group] = true;
+  }
+
+  /** Converts an integral sum-like column into a decimal column, e.g., when a long overflows. */
+  private void convertToDecimal(int s) {
+    BigDecimal[] decimals = new BigDecimal[capacity];
+    for (int g = 0; g < groupCount; g++) {
+      if (sumExists[s][g]) {
+        decimals[g] = BigDecimal.valueOf(longSums[s][g]);
+      }
+    }
+    decimalSums[s] = decimals;
+    longSums[s] = null;
+    sumKinds[s] = SumKind.decimal;
+
+    int column = sumColumns[s];
+    columnTypes.set(column, Types.DECIMAL);
+    DbmsQueryResultMetaData decimalMeta = new DbmsQueryResultMetaData();
+    addDefaultMetaData(decimalMeta, Types.DECIMAL);
+    metaData.precision.set(column, decimalMeta.precision.get(0));
+    metaData.scale.set(column, decimalMeta.scale.get(0));
+    metaData.columnDisplaySize.set(column, decimalMeta.columnDisplaySize.get(0));
+    metaData.columnClassName.set(column, decimalMeta.columnClassName.get(0));
+  }
+
+  private int addGroup(List<Object> key) {
+    if (groupCount == capacity) {
+      grow();
+    }
+    int group = groupCount++;
+    groupIndex.put(key, group);
+    groupKeys.add(key);
+    return group;
+  }
+
+  private void grow() {
+    capacity = 2 * capacity;
+    for (int i = 0; i < sumKinds.length; i++) {
+      if (sumKinds[i] == SumKind.integral) {
+        longSums[i] = Arrays.copyOf(longSums[i], capacity);
+      } else if (sumKinds[i] == SumKind.decimal) {
+        decimalSums[i] = Arrays.copyOf(decimalSums[i], capacity);
+      } else {
+        doubleSums[i] = Arrays.copyOf(doubleSums[i], capacity);
+      }
+      sumExists[i] = Arrays.copyOf(sumExists[i], capacity);
+    }
+    for (int i = 0; i < extremes.length; i++) {
+      extremes[i] = Arrays.copyOf(extremes[i], capacity);
+    }
+  }
+
+  public int getGroupCount() {
+    return groupCount;
+  }
+
+  /**
+   * Estimates the heap space used by this table. The estimate counts the primitive arrays exactly
+   * and assumes a fixed cost for each boxed key, decimal sum, or extreme value and for each
+   * hash-map entry.
+   *
+   * @return The estimated number of bytes
+   */
+  public long estimateMemoryBytes() {
+    long bytes = 0;
+    // sums and sumExists
+    for (SumKind kind : sumKinds) {
+      if (kind == SumKind.decimal) {
+        bytes += (long) capacity * (REFERENCE_BYTES + 1) + (long) groupCount * BOXED_VALUE_BYTES;
+      } else {
+        bytes += (long) capacity * (8 + 1);
+      }
+    }
+    // references to the extremes and the extremes themselves
+    bytes += (long) extremes.length * capacity * REFERENCE_BYTES;
+    bytes += (long) extremes.length * groupCount * BOXED_VALUE_BYTES;
+    // a key list and a hash-map entry per group
+    bytes +=
+        (long) groupCount
+            * (MAP_ENTRY_BYTES
+                + LIST_BYTES
+                + keyColumnCount * (REFERENCE_BYTES + BOXED_VALUE_BYTES));
+    return bytes;
+  }
+
+  public int getColumnCount() {
+    return columnNames.size();
+  }
+
+  public String getColumnName(int index) {
+    return columnNames.get(index);
+  }
+
+  public int getColumnType(int index) {
+    return columnTypes.get(index);
+  }
+
+  public ColumnRole getColumnRole(int index) {
+    return columnRoles.get(index);
+  }
+
+  /**
+   * @param name Column name
+   * @return The index of the column; -1 if no such column exists.
+   */
+  public int getColumnIndex(String name) {
+    int index = columnNames.indexOf(name);
+    if (index >= 0) {
+      return index;
+    }
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (columnNames.get(i).equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param group Zero-based group index
+   * @param column Zero-based column index
+   * @return The value; a sum-like column is returned as a Long, a BigDecimal, or a Double
+   *     depending on its type.
+   */
+  public Object getValue(int group, int column) {
+    int s = storageIndex.get(column);
+    switch (columnRoles.get(column)) {
+      case key:
+        return groupKeys.get(group).get(s);
+      case sum:
+        if (!sumExists[s][group]) {
+          return null;
+        } else if (sumKinds[s] == SumKind.integral) {
+          return longSums[s][group];
+        } else if (sumKinds[s] == SumKind.decimal) {
+          return decimalSums[s][group];
+        }
+        return doubleSums[s][group];
+      default:
+        return extremes[s][group];
+    }
+  }
+
+  public Object[] getRow(int group) {
+    Object[] row = new Object[columnNames.size()];
+    for (int i = 0; i < row.length; i++) {
+      row[i] = getValue(group, i);
+    }
+    return row;
+  }
+
+  public DbmsQueryResultMetaData getMetaData() {
+    return metaData;
+  }
+
+  private static int findColumn(DbmsQueryResult block, String name) {
+    for (int i = 0; i < block.getColumnCount(); i++) {
+      if (block.getColumnName(i).equals(name)) {
+        return i;
+      }
+    }
+    for (int i = 0; i < block.getColumnCount(); i++) {
+      if (block.getColumnName(i).equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Compares two non-null values following the SQL semantics: numbers are compared by their
+   * values regardless of their Java types.
+   *
+   * @throws IllegalArgumentException If the two values are not comparable.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  static int compareValues(Object left, Object right) {
+    if (left instanceof Number && right instanceof Number) {
+      if (isIntegral(left) && isIntegral(right)) {
+        return Long.compare(((Number) left).longValue(), ((Number) right).longValue());
+      } else if ((left instanceof BigDecimal || isIntegral(left))
+          && (right instanceof BigDecimal || isIntegral(right))) {
+        return TypeCasting.toBigDecimal(left).compareTo(TypeCasting.toBigDecimal(right));
+      } else {
+        return Double.compare(TypeCasting.toDouble(left), TypeCasting.toDouble(right));
+      }
+    } else if (left instanceof java.util.Date && right instanceof java.util.Date) {
+      return ((java.util.Date) left).compareTo((java.util.Date) right);
+    } else if (left instanceof Comparable && left.getClass().equals(right.getClass())) {
+      return ((Comparable) left).compareTo(right);
+    }
+    throw new IllegalArgumentException(
+        String.format("Incomparable values: %s and %s", left, right));
+  }
+
+  static boolean isIntegral(Object value) {
+    return value instanceof Long
+        || value instanceof Integer
+        || value instanceof Short
+        || value instanceof Byte;
+  }
+
+  static void copyMetaData(
+      DbmsQueryResult source, int index, DbmsQueryResultMetaData target) {
+    DbmsQueryResultMetaData meta = source.getMetaData();
+    if (meta == null
+        || meta.isCurrency.size() <= index
+        || meta.isNullable.size() <= index
+        || meta.precision.size() <= index
+        || meta.scale.size() <= index
+        || meta.columnDisplaySize.size() <= index
+        || meta.isAutoIncrement.size() <= index
+        || meta.columnClassName.size() <= index) {
+      addDefaultMetaData(target, source.getColumnType(index));
+    } else {
+      copyMetaData(meta, index, target);
+    }
+  }
+
+  static void copyMetaData(
+      DbmsQueryResultMetaData source, int index, DbmsQueryResultMetaData target) {
+    target.isCurrency.add(source.isCurrency.get(index));
+    target.isNullable.add(source.isNullable.get(index));
+    target.precision.add(source.precision.get(index));
+    target.scale.add(source.scale.get(index));
+    target.columnDisplaySize.add(source.columnDisplaySize.get(index));
+    target.isAutoIncrement.add(source.isAutoIncrement.get(index));
+    target.columnClassName.add(source.columnClassName.get(index));
+  }
+
+  static void addDefaultMetaData(DbmsQueryResultMetaData target, int type) {
+    int precision = 0;
+    int displaySize = 0;
+    String className = "java.lang.Object";
+    if (type == Types.DOUBLE) {
+      precision = 17;
+      displaySize = 24;
+      className = "java.lang.Double";
+    } else if (type == Types.BIGINT) {
+      precision = 19;
+      displaySize = 20;
+      className = "java.lang.Long";
+    } else if (type == Types.DECIMAL) {
+      precision = 65535;
+      displaySize = 65535;
+      className = "java.math.BigDecimal";
+    } else if (type == Types.BOOLEAN) {
+      precision = 1;
+      displaySize = 5;
+      className = "java.lang.Boolean";
+    } else if (type == Types.VARCHAR) {
+      precision = Integer.MAX_VALUE;
+      displaySize = Integer.MAX_VALUE;
+      className = "java.lang.String";
+    }
+    target.isCurrency.add(false);
+    target.isNullable.add(ResultSetMetaData.columnNullable);
+    target.precision.add(precision);
+    target.scale.add(0);
+    target.columnDisplaySize.add(displaySize);
+    target.isAutoIncrement.add(false);
+    target.columnClassName.add(className);
+  }
+}
@@ -10,8 +10,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.verdictdb.commons.DataTypeConverter;
@@ -19,20 +20,21 @@ import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.connection.DbmsQueryResult;
 import org.verdictdb.connection.JdbcQueryResult;
 import org.verdictdb.core.sqlobject.AbstractRelation;
-import org.verdictdb.core.sqlobject.AliasedColumn;
-import org.verdictdb.core.sqlobject.AsteriskColumn;
-import org.verdictdb.core.sqlobject.BaseColumn;
 import org.verdictdb.core.sqlobject.BaseTable;
-import org.verdictdb.core.sqlobject.ColumnOp;
-import org.verdictdb.core.sqlobject.GroupingAttribute;
-import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.JoinTable;
 import org.verdictdb.core.sqlobject.SelectQuery;
-import org.verdictdb.core.sqlobject.SetOperationRelation;
-import org.verdictdb.core.sqlobject.UnnamedColumn;
 import org.verdictdb.exception.VerdictDBException;
 import org.verdictdb.sqlsyntax.H2Syntax;
 import org.verdictdb.sqlwriter.SelectQueryToSql;
 
+/**
+ * Combines the results of individual aggregate blocks in memory.
+ *
+ * <p>The blocks are merged into a HashAggregateTable, and the final query composed by
+ * SelectAsyncAggExecutionNode is evaluated directly on that table. An embedded H2 database is
+ * used only when the final query contains an expression that AggregateQueryEvaluator does not
+ * support; in that case, the combined table is copied into H2 and the query is run there.
+ */
 public class InMemoryAggregate {
 
   private final String SELECT_ASYNC_AGG_TABLE = "VERDICTDB_SELECTASYNCAGG";
@@ -41,65 +43,197 @@ public class InMemoryAggregate {
 
   private static SelectQueryToSql selectQueryToSql = new SelectQueryToSql(new H2Syntax());
 
+  // the results of aggregate blocks that have not been combined yet
+  private Map<String, DbmsQueryResult> blockResults = new ConcurrentHashMap<>();
+
+  private Map<String, HashAggregateTable> combinedTables = new ConcurrentHashMap<>();
+
+  // created only when a query cannot be evaluated in memory
   private Connection conn;
-  
+
   private boolean aborted = false;
-  
-  private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());;
+
+  private VerdictDBLogger log = VerdictDBLogger.getLogger(this.getClass());
 
   public static InMemoryAggregate create() {
-    InMemoryAggregate inMemoryAggregate = null;
+    return new InMemoryAggregate();
+  }
+
+  public void createTable(DbmsQueryResult dbmsQueryResult, String tableName) throws SQLException {
+    // the query processing has already been finished; thus, no more processing will be needed.
+    if (aborted) {
+      return;
+    }
+    // the result may be shared with other nodes; its cursor is not ours.
+    blockResults.put(tableName, dbmsQueryResult.shallowCopy());
+  }
+
+  public DbmsQueryResult executeQuery(SelectQuery query) throws VerdictDBException, SQLException {
+    // the query processing has already been finished; thus, no more processing will be needed.
+    if (aborted) {
+      return null;
+    }
+
     try {
-      Class.forName("org.h2.Driver");
-      inMemoryAggregate = new InMemoryAggregate();
-      String h2Database = "verdictdb_" + RandomStringUtils.randomAlphanumeric(8).toLowerCase();
-      String DB_CONNECTION = String.format("jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1", h2Database);
-      inMemoryAggregate.conn = DriverManager.getConnection(DB_CONNECTION, "", "");
-    } catch (SQLException | ClassNotFoundException e) {
-      // https://stackoverflow.com/questions/2070293/why-doesnt-java-allow-to-throw-a-checked-exception-from-static-initialization-b
-      throw new ExceptionInInitializerError(e);
+      return AggregateQueryEvaluator.evaluate(query, combinedTables);
+    } catch (AggregateQueryEvaluator.UnsupportedQueryException e) {
+      log.debug("The query is run on an in-memory database: " + e.getMessage());
     }
-    return inMemoryAggregate;
+    return executeQueryOnDatabase(query);
   }
 
-  public void createTable(DbmsQueryResult dbmsQueryResult, String tableName) throws SQLException {
+  private synchronized String getNextTableName() {
+    return SELECT_ASYNC_AGG_TABLE + selectAsyncAggTableID++;
+  }
+
+  /**
+   * Merges an aggregate block into the combined table. The combined table is updated in place;
+   * thus, its name stays the same after the first call, and the block is released once merged.
+   *
+   * @param combinedTableName The name of the aggregate block created by createTable()
+   * @param newAggTableName The name of the combined table returned by the previous call; an empty
+   *     string for the first block
+   * @param dependentQuery The individual aggregate query that produced the block
+   * @return The name of the combined table
+   */
+  public String combineTables(
+      String combinedTableName, String newAggTableName, SelectQuery dependentQuery)
+      throws SQLException, VerdictDBException {
     // the query processing has already been finished; thus, no more processing will be needed.
     if (aborted) {
+      return null;
+    }
+
+    DbmsQueryResult block = blockResults.remove(combinedTableName);
+    String tableName = newAggTableName;
+    HashAggregateTable table = combinedTables.get(tableName);
+    if (table == null) {
+      tableName = getNextTableName();
+      table = HashAggregateTable.create(block, dependentQuery);
+      combinedTables.put(tableName, table);
+    }
+    table.merge(block);
+    return tableName;
+  }
+
+  /**
+   * @return The estimated number of bytes held by the combined tables
+   */
+  public long getMemoryFootprint() {
+    long bytes = 0;
+    for (HashAggregateTable table : combinedTables.values()) {
+      bytes += table.estimateMemoryBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * @return The number of groups in the combined table; 0 if no block has been combined.
+   */
+  public int getGroupCount(String tableName) {
+    HashAggregateTable table = combinedTables.get(tableName);
+    return (table == null) ? 0 : table.getGroupCount();
+  }
+
+  DbmsQueryResult executeQueryOnDatabase(SelectQuery query)
+      throws VerdictDBException, SQLException {
+    List<String> tableNames = new ArrayList<>();
+    collectTableNames(query, tableNames);
+
+    DbmsQueryResult dbmsQueryResult = null;
+    Statement stmt = null;
+    try {
+      synchronized (this) {
+        if (conn == null) {
+          conn = createConnection();
+        }
+      }
+      for (String tableName : tableNames) {
+        loadTable(combinedTables.get(tableName), tableName);
+      }
+
+      String sql = selectQueryToSql.toSql(query);
+      log.debug("The following query is issued: " + sql);
+      stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery(sql);
+      dbmsQueryResult = new JdbcQueryResult(rs);
+      rs.close();
+      for (String tableName : tableNames) {
+        stmt.execute("DROP TABLE IF EXISTS " + tableName);
+      }
+    } catch (SQLException e) {
+      if (aborted) {
+        // do nothing
+      } else {
+        throw e;
+      }
+    } finally {
+      if (stmt != null) {
+        stmt.close();
+      }
+    }
+    return dbmsQueryResult;
+  }
+
+  private static void collectTableNames(AbstractRelation relation, List<String> tableNames) {
+    if (relation instanceof BaseTable) {
+      tableNames.add(((BaseTable) relation).getTableName());
+    } else if (relation instanceof JoinTable) {
+      for (AbstractRelation r : ((JoinTable) relation).getJoinList()) {
+        collectTableNames(r, tableNames);
+      }
+    } else if (relation instanceof SelectQuery) {
+      for (AbstractRelation r : ((SelectQuery) relation).getFromList()) {
+        collectTableNames(r, tableNames);
+      }
+    }
+  }
+
+  private static Connection createConnection() throws SQLException {
+    try {
+      Class.forName("org.h2.Driver");
+    } catch (ClassNotFoundException e) {
+      throw new SQLException(e);
+    }
+    String h2Database = "verdictdb_" + RandomStringUtils.randomAlphanumeric(8).toLowerCase();
+    String DB_CONNECTION = String.format("jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1", h2Database);
+    return DriverManager.getConnection(DB_CONNECTION, "", "");
+  }
+
+  private void loadTable(HashAggregateTable table, String tableName) throws SQLException {
+    if (table == null) {
       return;
     }
-    
+
     StringBuilder insertColNames = new StringBuilder();
     StringBuilder tableColDefs = new StringBuilder();
     StringBuilder bindVariables = new StringBuilder();
-    for (int i = 0; i < dbmsQueryResult.getColumnCount(); i++) {
+    for (int i = 0; i < table.getColumnCount(); i++) {
       if (i > 0) {
         insertColNames.append(", ");
         tableColDefs.append(", ");
         bindVariables.append(", ");
       }
-      tableColDefs.append(String.format("\"%s\"", dbmsQueryResult.getColumnName(i)));
+      tableColDefs.append(String.format("\"%s\"", table.getColumnName(i)));
       tableColDefs.append(" ");
       // char -> varchar in case this type is an array of char
-      int columnType = dbmsQueryResult.getColumnType(i);
+      int columnType = table.getColumnType(i);
       if (columnType == CHAR) {
         columnType = VARCHAR;
       }
       tableColDefs.append(DataTypeConverter.typeName(columnType));
-      insertColNames.append(String.format("\"%s\"", dbmsQueryResult.getColumnName(i)));
+      insertColNames.append(String.format("\"%s\"", table.getColumnName(i)));
       bindVariables.append('?');
     }
-    
+
     Statement stmt = null;
     PreparedStatement pstmt = null;
-    
+
     try {
       // create table
       String createSql = "CREATE TABLE IF NOT EXISTS " + tableName + " (" + tableColDefs + ")";
-//      log.info(createSql);
-      
       stmt = conn.createStatement();
       stmt.execute(createSql);
-      stmt.close();
 
       // insert values
       String sql = "INSERT INTO " + tableName + " ("
@@ -107,25 +241,17 @@ public class InMemoryAggregate {
           + ") VALUES ("
           + bindVariables
           + ")";
-//      log.info(sql);
       pstmt = conn.prepareStatement(sql);
-      while (dbmsQueryResult.next()) {
-        for (int i = 1; i <= dbmsQueryResult.getColumnCount(); i++) {
-          pstmt.setObject(i, dbmsQueryResult.getValue(i - 1));
+      for (int g = 0; g < table.getGroupCount(); g++) {
+        for (int i = 1; i <= table.getColumnCount(); i++) {
+          pstmt.setObject(i, table.getValue(g, i - 1));
         }
         pstmt.addBatch();
       }
       pstmt.executeBatch();
-    
-    } catch (SQLException e) {
-      if (aborted) {
-        // do nothing
-      } else {
-        throw e;
-      }
-      
+
     } finally {
-      if (stmt  != null) {
+      if (stmt != null) {
         stmt.close();
       }
       if (pstmt != null) {
@@ -134,140 +260,25 @@ public class InMemoryAggregate {
     }
   }
 
-  public DbmsQueryResult executeQuery(SelectQuery query) throws VerdictDBException, SQLException {
-    // the query processing has already been finished; thus, no more processing will be needed.
-    if (aborted) {
-      return null;
-    }
-    
-    String sql = selectQueryToSql.toSql(query);
-//    log.info(sql);
-    
-    Statement stmt = conn.createStatement();
-    DbmsQueryResult dbmsQueryResult = null;
-    
-    try {
-      log.debug("The following query is issued: " + sql);
-      ResultSet rs = stmt.executeQuery(sql);
-      dbmsQueryResult = new JdbcQueryResult(rs);
-      rs.close();
-    } catch (SQLException e) {
-      if (aborted) {
-        // do nothing
-      } else {
-        throw e;
-      }
-    } finally {
-      stmt.close();
-    }
-    return dbmsQueryResult;
-  }
-  
-  private synchronized String getNextTableName() {
-    return SELECT_ASYNC_AGG_TABLE + selectAsyncAggTableID++;
-  }
-
-  public String combineTables(
-      String combinedTableName, String newAggTableName, SelectQuery dependentQuery)
-      throws SQLException, VerdictDBException {
-    // the query processing has already been finished; thus, no more processing will be needed.
-    if (aborted) {
-      return null;
-    }
-    
-    String tableName = getNextTableName();
-
-    // check targetTable exists
-    if (newAggTableName.equals("")) {
-      // if not just let it be the copy of combineTable
-      Statement stmt = conn.createStatement();
-      stmt.execute(
-          String.format("CREATE TABLE %s AS SELECT * FROM %s", tableName, combinedTableName));
-      stmt.close();
-      
-    } else {
-      // if exists, combineTables two tables using the logic of AggCombinerExecutionNode
-      List<GroupingAttribute> groupList = new ArrayList<>();
-      SelectQuery copy = dependentQuery.deepcopy();
-      
-      for (SelectItem sel : copy.getSelectList()) {
-        if (sel instanceof AliasedColumn) {
-          UnnamedColumn col = ((AliasedColumn) sel).getColumn();
-          resetSchemaAndTableForCombining(col);
-          String alias = ((AliasedColumn) sel).getAliasName();
-          ((AliasedColumn) sel).setAliasName(alias);
-          
-          if (col.isAggregateColumn()) {
-            if (col instanceof ColumnOp && ((ColumnOp) col).getOpType().equals("max")) {
-              ((AliasedColumn) sel).setColumn(new ColumnOp("max", new BaseColumn(alias)));
-            } else if (col instanceof ColumnOp && ((ColumnOp) col).getOpType().equals("min")) {
-              ((AliasedColumn) sel).setColumn(new ColumnOp("min", new BaseColumn(alias)));
-            } else {    // count, sum, countdistinct, approx_distinct
-              ((AliasedColumn) sel).setColumn(new ColumnOp("sum", new BaseColumn(alias)));
-            }
-            
-          } else {
-            ((AliasedColumn) sel).setColumn(new BaseColumn(alias));
-            groupList.add(((AliasedColumn) sel).getColumn());
-          }
-        }
-      }
-
-      SelectQuery left =
-          SelectQuery.create(new AsteriskColumn(), new BaseTable("PUBLIC", newAggTableName));
-      SelectQuery right =
-          SelectQuery.create(new AsteriskColumn(), new BaseTable("PUBLIC", combinedTableName));
-      AbstractRelation setOperation =
-          new SetOperationRelation(left, right, SetOperationRelation.SetOpType.unionAll);
-
-      copy.clearFilter();
-      copy.setFromList(Arrays.asList(setOperation));
-      copy.clearGroupby();
-      copy.addGroupby(groupList);
-      String sql = selectQueryToSql.toSql(copy);
-      
-      log.debug("Issues the following query to an in-memory db: " + sql);
-      
-      Statement stmt = conn.createStatement();
-      stmt.execute(String.format("CREATE TABLE %s AS %s", tableName, sql));
-      stmt.close();
-    }
-
-    return tableName;
-  }
-
-  private static void resetSchemaAndTableForCombining(UnnamedColumn column) {
-    List<UnnamedColumn> columns = new ArrayList<>();
-    columns.add(column);
-    while (!columns.isEmpty()) {
-      UnnamedColumn col = columns.get(0);
-      columns.remove(0);
-      if (col instanceof ColumnOp) {
-        columns.addAll(((ColumnOp) col).getOperands());
-      }
-      if (col instanceof BaseColumn) {
-        ((BaseColumn) col).setSchemaName("");
-        ((BaseColumn) col).setTableName("UNIONTABLE");
-        ((BaseColumn) col).setTableSourceAlias("");
-        ((BaseColumn) col).setColumnName(((BaseColumn) col).getColumnName());
-      } else if (col instanceof ColumnOp) {
-        columns.addAll(((ColumnOp) col).getOperands());
-      }
-    }
-  }
-
   public void abort() {
     aborted = true;
-    
-    try {
-      if (!conn.isClosed()) {
-        // This will close all the connection and the database.
-        Statement stmt = conn.createStatement();
-        stmt.execute("SHUTDOWN");
-        stmt.close();
+    blockResults.clear();
+    combinedTables.clear();
+
+    synchronized (this) {
+      if (conn == null) {
+        return;
+      }
+      try {
+        if (!conn.isClosed()) {
+          // This will close all the connection and the database.
+          Statement stmt = conn.createStatement();
+          stmt.execute("SHUTDOWN");
+          stmt.close();
+        }
+      } catch (SQLException e) {
+        e.printStackTrace();
       }
-    } catch (SQLException e) {
-      e.printStackTrace();
     }
   }
 }
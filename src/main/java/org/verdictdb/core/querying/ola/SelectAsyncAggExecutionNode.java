@@ -31,8 +31,8 @@ import org.verdictdb.exception.VerdictDBException;
  * An selectAsyncAggExecutionNode will be created when the outer query is an aggregation query
  * that contains the scramble table. Instead of creating AsyncAggExecutionNode,
  * selectAggExecutionNode will be created. The sources of selectAggExecutionNode are
- * selectAggExecutionNode, which will create temporary table in H2 database. Then,
- * selectAsyncAggExecutionNode will use the results from H2 database to calculate the query result.
+ * selectAggExecutionNode, which will store their results in an InMemoryAggregate. Then,
+ * selectAsyncAggExecutionNode will merge those results in memory to calculate the query result.
  *
  * @author Shucheng Zhong
  *
@@ -49,6 +49,11 @@ public class SelectAsyncAggExecutionNode extends AsyncAggExecutionNode {
 
   private String selectAsyncAggTableName = "";
 
+  private int combinedBlockCount = 0;
+
+  // the estimated size of the combined table held by inMemoryAggregate
+  private long accumulatorMemoryBytes = 0;
+
   // The key of this map is a list of tier numbers (e.g., [1, 2]),
   // and the value of this map is the corresponding scale factor (e.g., 10.0);
   // that is, an entry of this map could be [1, 2] -> 10.0
@@ -143,7 +148,8 @@ public class SelectAsyncAggExecutionNode extends AsyncAggExecutionNode {
     SelectQuery dependentQuery = (SelectQuery) token.getValue("dependentQuery");
     
     if (aggMeta == null) {
-      aggMeta = (AggMeta) token.getValue("aggMeta");
+      // aggMeta is updated by later tokens; the one in the token is shared with other nodes.
+      aggMeta = ((AggMeta) token.getValue("aggMeta")).deepcopy();
     } else {
       AggMeta childAggMeta = (AggMeta) token.getValue("aggMeta");
       updateAggMeta(childAggMeta);
@@ -154,6 +160,14 @@ public class SelectAsyncAggExecutionNode extends AsyncAggExecutionNode {
           inMemoryAggregate.combineTables(table, selectAsyncAggTableName, dependentQuery);
       token.setKeyValue("tableName", combinedTableName);
       selectAsyncAggTableName = combinedTableName;
+      combinedBlockCount++;
+      accumulatorMemoryBytes = inMemoryAggregate.getMemoryFootprint();
+      log.debug(
+          String.format(
+              "Combined %d blocks into %d groups (about %d bytes in memory).",
+              combinedBlockCount,
+              inMemoryAggregate.getGroupCount(combinedTableName),
+              accumulatorMemoryBytes));
 
       // here, the base aggregate functions (e.g., sum(col), count(col)) are composed to
       // reconstruct the original aggregate function (e.g., avg(col) = sum(col) / count(col))
@@ -250,6 +264,13 @@ public class SelectAsyncAggExecutionNode extends AsyncAggExecutionNode {
     this.scrambleMeta = meta;
   }
 
+  /**
+   * @return The estimated number of bytes used for combining the blocks received so far
+   */
+  public long getAccumulatorMemoryBytes() {
+    return accumulatorMemoryBytes;
+  }
+
   public void abort() {
     inMemoryAggregate.abort();
   }
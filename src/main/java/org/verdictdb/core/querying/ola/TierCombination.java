@@ -1,5 +1,6 @@
 package org.verdictdb.core.querying.ola;
 
+import java.io.Serializable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -10,7 +11,11 @@ import java.util.TreeMap;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
-public class TierCombination implements Iterable<Map.Entry<Pair<String, String>, Integer>>, Comparable<TierCombination>  {
+public class TierCombination
+    implements Iterable<Map.Entry<Pair<String, String>, Integer>>, Comparable<TierCombination>,
+        Serializable {
+  
+  private static final long serialVersionUID = -2874418420947139226L;
   
   /**
    * Map of
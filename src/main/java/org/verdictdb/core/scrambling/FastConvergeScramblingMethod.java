@@ -18,6 +18,7 @@ package org.verdictdb.core.scrambling;
 
 import static org.verdictdb.core.scrambling.ScramblingNode.computeConditionalProbabilityDistribution;
 
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -26,7 +27,9 @@ import java.util.Map;
 import org.apache.commons.lang3.tuple.Pair;
 import org.verdictdb.commons.DataTypeConverter;
 import org.verdictdb.commons.VerdictDBLogger;
+import org.verdictdb.connection.ColumnarQueryResult;
 import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.DbmsQueryResultMetaData;
 import org.verdictdb.core.execplan.ExecutionInfoToken;
 import org.verdictdb.core.querying.CreateTableAsSelectNode;
 import org.verdictdb.core.querying.ExecutableNodeBase;
@@ -36,12 +39,12 @@ import org.verdictdb.core.querying.QueryNodeWithPlaceHolders;
 import org.verdictdb.core.querying.SubscriptionTicket;
 import org.verdictdb.core.querying.TempIdCreatorInScratchpadSchema;
 import org.verdictdb.core.sqlobject.AbstractRelation;
-import org.verdictdb.core.sqlobject.AliasReference;
 import org.verdictdb.core.sqlobject.AliasedColumn;
 import org.verdictdb.core.sqlobject.BaseColumn;
 import org.verdictdb.core.sqlobject.BaseTable;
 import org.verdictdb.core.sqlobject.ColumnOp;
 import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.CreateTableAsSelectQuery;
 import org.verdictdb.core.sqlobject.JoinTable;
 import org.verdictdb.core.sqlobject.SelectItem;
 import org.verdictdb.core.sqlobject.SelectQuery;
@@ -77,10 +80,21 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
 
   static final double OUTLIER_STDDEV_MULTIPLIER = 3.09;
 
+  // the number of the buckets the primary groups are hashed into; this bounds the size of the
+  // summary table. The hash functions of the syntaxes have the precision of 0.00001.
+  static final int PRIMARY_GROUP_BUCKET_COUNT = 100000;
+
+  static final String STATISTICS_TABLE_PREFIX = "verdictdbstatistics";
+
+  static final String OUTLIER_TABLE_SUFFIX = "outliers";
+
   Optional<String> primaryColumnName = Optional.absent();
 
   private String scratchpadSchemaName;
 
+  // keeps the summary table of the statistics for the scrambles created later.
+  private boolean statisticsReused = false;
+
   List<Double> tier0CumulProbDist = null;
 
   List<Double> tier1CumulProbDist = null;
@@ -114,19 +128,34 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
   }
 
   /**
-   * Computes three nodes. They compute: (1) 0.1% and 99.9% percentiles of numeric columns and the
-   * total count, (for this, we compute standard deviations and estimate those percentiles based on
-   * the standard deviations and normal distribution assumptions. \pm 3.09 * stddev is the 99.9 and
-   * 0.1 percentiles of the standard normal distribution.) (2) the list of "large" groups, and (3)
-   * the sizes of "large" groups
+   * Computes the statistics with a single scan of the original table plus a filtered count. The
+   * nodes compute: (1) a summary table with the count, the average, and the standard deviation of
+   * every numeric column per bucket of primary groups (a single row if there is no primary
+   * column), (2) the averages and standard deviations of numeric columns and the total count, (the
+   * 0.1% and 99.9% percentiles are estimated based on the standard deviations and normal
+   * distribution assumptions. \pm 3.09 * stddev is the 99.9 and 0.1 percentiles of the standard
+   * normal distribution.) (3) the exact number of the tuples outside those percentiles, (4) the
+   * list of "large" buckets, and (5) the sum of the sizes of "large" buckets. The nodes (2), (4),
+   * and (5) only read the summary table, whose size is at most PRIMARY_GROUP_BUCKET_COUNT.
+   *
+   * <p>The primary groups are hashed into buckets like a count-min sketch of depth one: the size of
+   * a bucket is never smaller than the size of any group in it; thus, every large group is found,
+   * while a small group sharing a bucket with large ones is treated as large.
    *
    * <p>Recall that channels 100 and 101 are reserved for column meta and partition meta,
    * respectively.
    *
-   * <p>This method generates up to three nodes, and the token keys set up by those nodes are: 1.
-   * queryResult: this contains avg, std, and count 2. schemaName, tableName: this is the name of
-   * the temporary tables that contains a list of large groups. 3. queryResult: this contains the
-   * sum of the sizes of large groups.
+   * <p>The token keys set up by those nodes are: 1. StatisticsSummaryNode: the name of the summary
+   * table. 2. PercentilesAndCountNode: avg, std, and count. 3. OutlierCountNode: the name of the
+   * table that contains the outlier count. 4. LargeGroupListNode: the name of the temporary table
+   * that contains a list of large buckets. 5. LargeGroupSizeNode: the sum of the sizes of large
+   * buckets. OutlierSizeNode reads the outlier count.
+   *
+   * <p>If the statistics are reused, the summary table and the outlier count are kept in the
+   * scratchpad schema under the names given by getStatisticsTableName() and
+   * getOutlierTableName(), and they are created only if they do not exist; thus, scrambling the
+   * same table again does not scan the table for the statistics. Both tables must be dropped to
+   * collect new statistics.
    */
   @Override
   public List<ExecutableNodeBase> getStatisticsNode(
@@ -137,32 +166,47 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
       String primarykeyMetaTokenKey) {
 
     List<ExecutableNodeBase> statisticsNodes = new ArrayList<>();
+    TempIdCreatorInScratchpadSchema idCreator =
+        new TempIdCreatorInScratchpadSchema(scratchpadSchemaName);
+
+    // the single scan of the original table
+    IdCreator summaryNamer =
+        statisticsReused
+            ? StatisticsSummaryNode.createNamer(
+                scratchpadSchemaName, getStatisticsTableName(oldSchemaName, oldTableName))
+            : idCreator;
+    StatisticsSummaryNode summary =
+        new StatisticsSummaryNode(
+            summaryNamer, oldSchemaName, oldTableName, columnMetaTokenKey, primaryColumnName);
+    summary.setIfNotExists(statisticsReused);
+    statisticsNodes.add(summary);
 
     // outlier checking
-    PercentilesAndCountNode pc =
-        new PercentilesAndCountNode(
-            oldSchemaName,
-            oldTableName,
-            columnMetaTokenKey,
-            partitionMetaTokenKey,
-            primaryColumnName);
+    PercentilesAndCountNode pc = new PercentilesAndCountNode();
+    pc.subscribeTo(summary, 0);
     statisticsNodes.add(pc);
 
-    // outlier proportion computation
-    OutlierProportionNode op = new OutlierProportionNode(oldSchemaName, oldTableName);
-    op.subscribeTo(pc);
-    statisticsNodes.add(op);
+    // the exact number of outliers, which needs the moments for its predicate
+    IdCreator outlierNamer =
+        statisticsReused
+            ? StatisticsSummaryNode.createNamer(
+                scratchpadSchemaName, getOutlierTableName(oldSchemaName, oldTableName))
+            : idCreator;
+    OutlierCountNode oc = new OutlierCountNode(outlierNamer, oldSchemaName, oldTableName);
+    oc.setIfNotExists(statisticsReused);
+    oc.subscribeTo(pc, 0);
+    OutlierSizeNode os = new OutlierSizeNode();
+    oc.registerSubscriber(os.getSubscriptionTicket());
+    statisticsNodes.add(oc);
+    statisticsNodes.add(os);
 
     // primary group's distribution checking
     if (primaryColumnName.isPresent()) {
-      TempIdCreatorInScratchpadSchema idCreator =
-          new TempIdCreatorInScratchpadSchema(scratchpadSchemaName);
-      LargeGroupListNode ll =
-          new LargeGroupListNode(
-              idCreator, oldSchemaName, oldTableName, primaryColumnName.get(), blockSize);
+      LargeGroupListNode ll = new LargeGroupListNode(idCreator, blockSize);
       // subscribed to 'pc' to obtain count(*) of the table, which is used to infer
-      // appropriate sampling ratio.
+      // the minimum size of large groups.
       ll.subscribeTo(pc, 0);
+      ll.subscribeTo(summary, 1);
 
       LargeGroupSizeNode ls = new LargeGroupSizeNode(primaryColumnName.get());
       ll.registerSubscriber(ls.getSubscriptionTicket());
@@ -175,6 +219,42 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
     return statisticsNodes;
   }
 
+  public boolean isStatisticsReused() {
+    return statisticsReused;
+  }
+
+  public void setStatisticsReused(boolean statisticsReused) {
+    this.statisticsReused = statisticsReused;
+  }
+
+  /** @return The name of the summary table kept in the scratchpad schema for reuse */
+  String getStatisticsTableName(String originalSchemaName, String originalTableName) {
+    String name =
+        String.format("%s_%s_%s", STATISTICS_TABLE_PREFIX, originalSchemaName, originalTableName);
+    if (primaryColumnName.isPresent()) {
+      name += "_" + primaryColumnName.get();
+    }
+    return name;
+  }
+
+  /** @return The name of the outlier count kept in the scratchpad schema for reuse */
+  String getOutlierTableName(String originalSchemaName, String originalTableName) {
+    return String.format(
+        "%s_%s_%s_%s",
+        STATISTICS_TABLE_PREFIX, originalSchemaName, originalTableName, OUTLIER_TABLE_SUFFIX);
+  }
+
+  /**
+   * @param column The primary column
+   * @return The bucket of the primary group, i.e., floor(hash(column) *
+   *     PRIMARY_GROUP_BUCKET_COUNT)
+   */
+  static UnnamedColumn createPrimaryGroupBucket(UnnamedColumn column) {
+    return ColumnOp.floor(
+        ColumnOp.multiply(
+            ColumnOp.hash(column), ConstantColumn.valueOf(PRIMARY_GROUP_BUCKET_COUNT)));
+  }
+
   static UnnamedColumn createOutlierTuplePredicate(
       DbmsQueryResult percentileAndCountResult, String sourceTableAlias) {
     boolean printLog = false;
@@ -305,11 +385,11 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
     int totalNumberOfblocks = tableSizeAndBlockNumber.getRight();
     long evenBlockSize = calcuteEvenBlockSize(totalNumberOfblocks, tableSize);
 
-    DbmsQueryResult outlierProportion =
-        (DbmsQueryResult) metaData.get(OutlierProportionNode.class.getSimpleName());
-    outlierProportion.rewind();
-    outlierProportion.next();
-    outlierSize = outlierProportion.getLong(0);
+    DbmsQueryResult outlierSizeResult =
+        (DbmsQueryResult) metaData.get(OutlierSizeNode.class.getSimpleName());
+    outlierSizeResult.rewind();
+    outlierSizeResult.next();
+    outlierSize = outlierSizeResult.getLong(0);
 
     if (outlierSize * 2 >= tableSize) {
       // too large outlier -> no special treatment
@@ -504,7 +584,8 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
               Arrays.asList(JoinTable.JoinType.leftouter),
               Arrays.<UnnamedColumn>asList(
                   ColumnOp.equal(
-                      new BaseColumn(MAIN_TABLE_SOURCE_ALIAS_NAME, primaryColumnName.get()),
+                      createPrimaryGroupBucket(
+                          new BaseColumn(MAIN_TABLE_SOURCE_ALIAS_NAME, primaryColumnName.get())),
                       new BaseColumn(
                           RIGHT_TABLE_SOURCE_ALIAS_NAME,
                           LargeGroupListNode.PRIMARY_GROUP_RENAME))));
@@ -563,9 +644,18 @@ public class FastConvergeScramblingMethod extends ScramblingMethodBase {
   }
 }
 
-class PercentilesAndCountNode extends QueryNodeBase {
+/**
+ * create table some-temp-table-name as select bucket(primaryGroup), count(*), count(col),
+ * avg(col), stddev_pop(col), ... from schemaName.tableName group by bucket(primaryGroup)
+ *
+ * <p>This is the only node that scans every tuple of the original table. The per-column moments
+ * are combined by PercentilesAndCountNode for the moments of the entire table, and the per-bucket
+ * counts bound the sizes of the primary groups hashed into the buckets. Without a primary column,
+ * the summary table has a single row.
+ */
+class StatisticsSummaryNode extends CreateTableAsSelectNode {
 
-  private static final long serialVersionUID = -1745299539668490874L;
+  private static final long serialVersionUID = 6094137426392915738L;
 
   private String schemaName;
 
@@ -573,108 +663,300 @@ class PercentilesAndCountNode extends QueryNodeBase {
 
   private String columnMetaTokenKey;
 
-  private String partitionMetaTokenKey;
-
   private Optional<String> primaryColumnName;
 
-  public static final String AVG_PREFIX = "verdictdbavg";
+  private boolean ifNotExists = false;
 
-  public static final String STDDEV_PREFIX = "verdictdbstddev";
+  private ArrayList<String> numericColumns = new ArrayList<>();
 
-  public static final String TOTAL_COUNT_ALIAS_NAME = "verdictdbtotalcount";
+  public static final String ROW_COUNT_ALIAS = "verdictdbrowcount";
+
+  public static final String NONNULL_COUNT_PREFIX = "verdictdbnonnull";
 
-  public PercentilesAndCountNode(
+  public static final String AVG_PREFIX = "verdictdbmean";
+
+  public static final String STDDEV_PREFIX = "verdictdbsd";
+
+  public static final String NUMERIC_COLUMNS_KEY = "StatisticsSummaryNode:numericColumns";
+
+  public StatisticsSummaryNode(
+      IdCreator namer,
       String schemaName,
       String tableName,
       String columnMetaTokenKey,
-      String partitionMetaTokenKey,
       Optional<String> primaryColumnName) {
-    super(-1, null);
+    super(namer, null);
     this.schemaName = schemaName;
     this.tableName = tableName;
     this.columnMetaTokenKey = columnMetaTokenKey;
-    this.partitionMetaTokenKey = partitionMetaTokenKey;
     this.primaryColumnName = primaryColumnName;
   }
 
-  @Override
-  public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
-    if (tokens.size() == 0) {
-      // no token information passed
-      throw new VerdictDBValueException("No token is passed.");
-    }
+  /** @return The namer that always gives the same table name */
+  static IdCreator createNamer(final String schemaName, final String tableName) {
+    return new IdCreator() {
+      @Override
+      public String generateAliasName() {
+        return null; // we don't need this method
+      }
+
+      @Override
+      public String generateAliasName(String keyword) {
+        return null; // we don't need this method
+      }
+
+      @Override
+      public int generateSerialNumber() {
+        return 0;
+      }
 
-    //    try {
-    //      TimeUnit.SECONDS.sleep(1);
-    //    } catch (InterruptedException e) {
-    //      // TODO Auto-generated catch block
-    //      e.printStackTrace();
-    //    }
+      @Override
+      public Pair<String, String> generateTempTableName() {
+        return Pair.of(schemaName, tableName);
+      }
+    };
+  }
 
-    @SuppressWarnings("unchecked")
-    List<Pair<String, String>> columnNameAndTypes =
-        (List<Pair<String, String>>) tokens.get(0).getValue(columnMetaTokenKey);
+  /** @param ifNotExists If true, the existing summary table is used as it is. */
+  public void setIfNotExists(boolean ifNotExists) {
+    this.ifNotExists = ifNotExists;
+  }
 
+  @Override
+  public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
+    List<Pair<String, String>> columnNameAndTypes = null;
+    for (ExecutionInfoToken token : tokens) {
+      if (token.containsKey(columnMetaTokenKey)) {
+        @SuppressWarnings("unchecked")
+        List<Pair<String, String>> value =
+            (List<Pair<String, String>>) token.getValue(columnMetaTokenKey);
+        columnNameAndTypes = value;
+        break;
+      }
+    }
     if (columnNameAndTypes == null) {
       throw new VerdictDBValueException(
           "The passed token does not have the key: " + columnMetaTokenKey);
     }
 
-    List<String> numericColumns = getNumericColumns(columnNameAndTypes);
     String tableSourceAlias = "t";
-
-    // compose a select list
+    numericColumns.clear();
     List<SelectItem> selectList = new ArrayList<>();
-    for (String col : numericColumns) {
-      if (primaryColumnName.isPresent() && col.equals(primaryColumnName.get())) {
+    UnnamedColumn bucket = null;
+    if (primaryColumnName.isPresent()) {
+      bucket =
+          FastConvergeScramblingMethod.createPrimaryGroupBucket(
+              new BaseColumn(tableSourceAlias, primaryColumnName.get()));
+      selectList.add(new AliasedColumn(bucket, LargeGroupListNode.PRIMARY_GROUP_RENAME));
+    }
+    selectList.add(new AliasedColumn(ColumnOp.count(), ROW_COUNT_ALIAS));
+    for (Pair<String, String> nameAndType : columnNameAndTypes) {
+      String col = nameAndType.getLeft();
+      if (!DataTypeConverter.isNumeric(nameAndType.getRight())
+          || (primaryColumnName.isPresent() && col.equals(primaryColumnName.get()))) {
         continue;
       }
-
-      // mean
-      SelectItem item;
-      item =
-          new AliasedColumn(ColumnOp.avg(new BaseColumn(tableSourceAlias, col)), AVG_PREFIX + col);
-      selectList.add(item);
-
-      // standard deviation
-      item =
-          new AliasedColumn(
-              ColumnOp.std(new BaseColumn(tableSourceAlias, col)), STDDEV_PREFIX + col);
-      selectList.add(item);
+      numericColumns.add(col);
+
+      BaseColumn column = new BaseColumn(tableSourceAlias, col);
+      // multiplied by 1.0 first so that the moments of integers are not truncated.
+      UnnamedColumn value = ColumnOp.multiply(ConstantColumn.valueOf(1.0), column);
+      selectList.add(new AliasedColumn(ColumnOp.count(column), NONNULL_COUNT_PREFIX + col));
+      selectList.add(new AliasedColumn(ColumnOp.avg(value), AVG_PREFIX + col));
+      selectList.add(new AliasedColumn(ColumnOp.std(value), STDDEV_PREFIX + col));
     }
-    selectList.add(new AliasedColumn(ColumnOp.count(), TOTAL_COUNT_ALIAS_NAME));
 
-    selectQuery =
+    SelectQuery selectQuery =
         SelectQuery.create(selectList, new BaseTable(schemaName, tableName, tableSourceAlias));
-    return selectQuery;
+    if (primaryColumnName.isPresent()) {
+      selectQuery.addGroupby(bucket);
+    }
+    this.selectQuery = selectQuery;
+
+    CreateTableAsSelectQuery query = (CreateTableAsSelectQuery) super.createQuery(tokens);
+    query.setIfNotExists(ifNotExists);
+    return query;
   }
 
-  private List<String> getNumericColumns(List<Pair<String, String>> columnNameAndTypes) {
-    List<String> numericColumns = new ArrayList<>();
-    for (Pair<String, String> nameAndType : columnNameAndTypes) {
-      String name = nameAndType.getLeft();
-      String type = nameAndType.getRight();
-      if (DataTypeConverter.isNumeric(type)) {
-        numericColumns.add(name);
+  @Override
+  public ExecutionInfoToken createToken(DbmsQueryResult result) {
+    ExecutionInfoToken token = super.createToken(result);
+    Pair<String, String> fullTableName =
+        Pair.of((String) token.getValue("schemaName"), (String) token.getValue("tableName"));
+    token.setKeyValue(this.getClass().getSimpleName(), fullTableName);
+    token.setKeyValue(NUMERIC_COLUMNS_KEY, new ArrayList<>(numericColumns));
+    return token;
+  }
+}
+
+/**
+ * Computes the averages and standard deviations of numeric columns and the total count from the
+ * summary table created by StatisticsSummaryNode:
+ *
+ * <p>select sum(count), sum(count(col)), sum(count(col) * avg(col)), sum(count(col) *
+ * (stddev(col)^2 + (avg(col) - g.avg)^2)), ... from summary, (select weighted avg(col) as avg
+ * from summary) g
+ *
+ * <p>The squared deviations of the buckets are added up around the average of the entire table,
+ * so the variances are not computed as the difference of two large numbers.
+ *
+ * <p>The token carries the result with the columns verdictdbavg[col], verdictdbstddev[col], ...,
+ * and verdictdbtotalcount, where the standard deviations are population ones.
+ */
+class PercentilesAndCountNode extends QueryNodeBase {
+
+  private static final long serialVersionUID = -1745299539668490874L;
+
+  private List<String> numericColumns = new ArrayList<>();
+
+  public static final String AVG_PREFIX = "verdictdbavg";
+
+  public static final String STDDEV_PREFIX = "verdictdbstddev";
+
+  public static final String TOTAL_COUNT_ALIAS_NAME = "verdictdbtotalcount";
+
+  private static final String SUM_PREFIX = "verdictdbsum";
+
+  private static final String SQUARED_DEVIATION_PREFIX = "verdictdbsqdev";
+
+  public PercentilesAndCountNode() {
+    super(-1, null);
+  }
+
+  @Override
+  public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
+    String summaryKey = StatisticsSummaryNode.class.getSimpleName();
+    Pair<String, String> summaryTable = null;
+    for (ExecutionInfoToken token : tokens) {
+      if (token.containsKey(summaryKey)) {
+        @SuppressWarnings("unchecked")
+        Pair<String, String> table = (Pair<String, String>) token.getValue(summaryKey);
+        @SuppressWarnings("unchecked")
+        List<String> columns =
+            (List<String>) token.getValue(StatisticsSummaryNode.NUMERIC_COLUMNS_KEY);
+        summaryTable = table;
+        numericColumns = columns;
+        break;
       }
     }
-    return numericColumns;
+    if (summaryTable == null) {
+      throw new VerdictDBValueException("The passed token does not have the key: " + summaryKey);
+    }
+
+    // the averages of the entire table
+    String averageSourceAlias = "s";
+    List<SelectItem> averageList = new ArrayList<>();
+    for (String col : numericColumns) {
+      UnnamedColumn count =
+          ColumnOp.sum(
+              new BaseColumn(averageSourceAlias, StatisticsSummaryNode.NONNULL_COUNT_PREFIX + col));
+      UnnamedColumn sum =
+          ColumnOp.sum(
+              ColumnOp.multiply(
+                  new BaseColumn(
+                      averageSourceAlias, StatisticsSummaryNode.NONNULL_COUNT_PREFIX + col),
+                  new BaseColumn(averageSourceAlias, StatisticsSummaryNode.AVG_PREFIX + col)));
+      averageList.add(
+          new AliasedColumn(
+              ColumnOp.casewhen(
+                  Arrays.asList(
+                      ColumnOp.greater(count, ConstantColumn.valueOf(0)),
+                      ColumnOp.divide(sum, count),
+                      ConstantColumn.valueOf(0))),
+              AVG_PREFIX + col));
+    }
+    String averageTableAlias = "g";
+    SelectQuery averages =
+        SelectQuery.create(
+            averageList,
+            new BaseTable(summaryTable.getLeft(), summaryTable.getRight(), averageSourceAlias));
+    averages.setAliasName(averageTableAlias);
+
+    String tableSourceAlias = "t";
+    List<SelectItem> selectList = new ArrayList<>();
+    selectList.add(
+        new AliasedColumn(
+            ColumnOp.sum(new BaseColumn(tableSourceAlias, StatisticsSummaryNode.ROW_COUNT_ALIAS)),
+            TOTAL_COUNT_ALIAS_NAME));
+    for (String col : numericColumns) {
+      UnnamedColumn count =
+          new BaseColumn(tableSourceAlias, StatisticsSummaryNode.NONNULL_COUNT_PREFIX + col);
+      UnnamedColumn average =
+          new BaseColumn(tableSourceAlias, StatisticsSummaryNode.AVG_PREFIX + col);
+      UnnamedColumn stddev =
+          new BaseColumn(tableSourceAlias, StatisticsSummaryNode.STDDEV_PREFIX + col);
+      UnnamedColumn deviation =
+          ColumnOp.subtract(average, new BaseColumn(averageTableAlias, AVG_PREFIX + col));
+      selectList.add(
+          new AliasedColumn(
+              ColumnOp.sum(count), StatisticsSummaryNode.NONNULL_COUNT_PREFIX + col));
+      selectList.add(
+          new AliasedColumn(ColumnOp.sum(ColumnOp.multiply(count, average)), SUM_PREFIX + col));
+      selectList.add(
+          new AliasedColumn(
+              ColumnOp.sum(
+                  ColumnOp.multiply(
+                      count,
+                      ColumnOp.add(
+                          ColumnOp.multiply(stddev, stddev),
+                          ColumnOp.multiply(deviation, deviation)))),
+              SQUARED_DEVIATION_PREFIX + col));
+    }
+
+    List<AbstractRelation> sources = new ArrayList<>();
+    sources.add(new BaseTable(summaryTable.getLeft(), summaryTable.getRight(), tableSourceAlias));
+    if (!numericColumns.isEmpty()) {
+      sources.add(averages);
+    }
+    selectQuery = SelectQuery.create(selectList, sources);
+    return selectQuery;
   }
 
   @Override
   public ExecutionInfoToken createToken(DbmsQueryResult result) {
+    List<String> names = new ArrayList<>();
+    List<Integer> types = new ArrayList<>();
+    List<Object> row = new ArrayList<>();
+    DbmsQueryResultMetaData metaData = new DbmsQueryResultMetaData();
+
+    result.rewind();
+    result.next();
+    for (int i = 0; i < numericColumns.size(); i++) {
+      String col = numericColumns.get(i);
+      double count = result.getDouble(1 + 3 * i);
+      double sum = result.getDouble(2 + 3 * i);
+      double squaredDeviation = result.getDouble(3 + 3 * i);
+      double avg = (count > 0) ? sum / count : 0;
+      double variance = (count > 0) ? Math.max(0, squaredDeviation / count) : 0;
+
+      names.add(AVG_PREFIX + col);
+      types.add(Types.DOUBLE);
+      row.add(avg);
+      names.add(STDDEV_PREFIX + col);
+      types.add(Types.DOUBLE);
+      row.add(Math.sqrt(variance));
+    }
+    names.add(TOTAL_COUNT_ALIAS_NAME);
+    types.add(Types.BIGINT);
+    row.add(result.getLong(0));
+    result.rewind();
+
+    ColumnarQueryResult moments = new ColumnarQueryResult(names, types, metaData);
+    moments.addRow(row);
     ExecutionInfoToken token = new ExecutionInfoToken();
-    token.setKeyValue(this.getClass().getSimpleName(), result);
+    token.setKeyValue(this.getClass().getSimpleName(), moments);
     return token;
   }
 }
 
 /**
- * select count(*) from originalSchema.originalTable where some-outlier-predicates
+ * create table some-temp-table-name as select count(*) as verdictdboutliersize from
+ * schemaName.tableName where (outlier predicate)
  *
- * @author Yongjoo Park
+ * <p>The predicate is the one of createOutlierTuplePredicate(), which depends on the moments
+ * computed by PercentilesAndCountNode; thus, the count is exact.
  */
-class OutlierProportionNode extends QueryNodeBase {
+class OutlierCountNode extends CreateTableAsSelectNode {
 
   private static final long serialVersionUID = 3650001574444658985L;
 
@@ -682,32 +964,96 @@ class OutlierProportionNode extends QueryNodeBase {
 
   private String tableName;
 
-  public static String OUTLIER_SIZE_ALIAS = "verdictdbOutlierProportion";
+  private boolean ifNotExists = false;
 
-  public OutlierProportionNode(String schemaName, String tableName) {
-    super(-1, null);
+  public static final String OUTLIER_SIZE_ALIAS = "verdictdboutliersize";
+
+  public OutlierCountNode(IdCreator namer, String schemaName, String tableName) {
+    super(namer, null);
     this.schemaName = schemaName;
     this.tableName = tableName;
   }
 
+  /** @param ifNotExists If true, the existing outlier count is used as it is. */
+  public void setIfNotExists(boolean ifNotExists) {
+    this.ifNotExists = ifNotExists;
+  }
+
   @Override
   public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
-    //    System.out.println(tokens);
+    String countNodeKey = PercentilesAndCountNode.class.getSimpleName();
+    DbmsQueryResult percentileAndCountResult = null;
+    for (ExecutionInfoToken token : tokens) {
+      if (token.containsKey(countNodeKey)) {
+        percentileAndCountResult = (DbmsQueryResult) token.getValue(countNodeKey);
+        break;
+      }
+    }
+    if (percentileAndCountResult == null) {
+      throw new VerdictDBValueException("The passed token does not have the key: " + countNodeKey);
+    }
 
-    DbmsQueryResult percentileAndCountResult =
-        (DbmsQueryResult) tokens.get(0).getValue(PercentilesAndCountNode.class.getSimpleName());
-    String tableSourceAliasName = FastConvergeScramblingMethod.MAIN_TABLE_SOURCE_ALIAS_NAME;
-    boolean pringInfoLog = true;
-    UnnamedColumn outlierPrediacte =
+    String tableSourceAlias = FastConvergeScramblingMethod.MAIN_TABLE_SOURCE_ALIAS_NAME;
+    boolean printInfoLog = true;
+    UnnamedColumn outlierPredicate =
         FastConvergeScramblingMethod.createOutlierTuplePredicate(
-            percentileAndCountResult, tableSourceAliasName, pringInfoLog);
+            percentileAndCountResult, tableSourceAlias, printInfoLog);
+    if (outlierPredicate == null) {
+      // no numeric columns; thus, no outliers
+      outlierPredicate = ColumnOp.equal(ConstantColumn.valueOf(0), ConstantColumn.valueOf(1));
+    }
 
-    selectQuery =
+    SelectQuery selectQuery =
         SelectQuery.create(
             new AliasedColumn(ColumnOp.count(), OUTLIER_SIZE_ALIAS),
-            new BaseTable(schemaName, tableName, tableSourceAliasName));
-    selectQuery.addFilterByAnd(outlierPrediacte);
+            new BaseTable(schemaName, tableName, tableSourceAlias));
+    selectQuery.addFilterByAnd(outlierPredicate);
+    this.selectQuery = selectQuery;
 
+    CreateTableAsSelectQuery query = (CreateTableAsSelectQuery) super.createQuery(tokens);
+    query.setIfNotExists(ifNotExists);
+    return query;
+  }
+
+  @Override
+  public ExecutionInfoToken createToken(DbmsQueryResult result) {
+    ExecutionInfoToken token = super.createToken(result);
+    Pair<String, String> fullTableName =
+        Pair.of((String) token.getValue("schemaName"), (String) token.getValue("tableName"));
+    token.setKeyValue(this.getClass().getSimpleName(), fullTableName);
+    return token;
+  }
+}
+
+/** select sum(verdictdboutliersize) from the table created by OutlierCountNode */
+class OutlierSizeNode extends QueryNodeWithPlaceHolders {
+
+  private static final long serialVersionUID = -3196392164426542310L;
+
+  private SubscriptionTicket subscriptionTicket;
+
+  public OutlierSizeNode() {
+    super(-1, null);
+
+    String tableSourceAlias = "t";
+    Pair<BaseTable, SubscriptionTicket> placeholder = createPlaceHolderTable(tableSourceAlias);
+    selectQuery =
+        SelectQuery.create(
+            new AliasedColumn(
+                ColumnOp.sum(
+                    new BaseColumn(tableSourceAlias, OutlierCountNode.OUTLIER_SIZE_ALIAS)),
+                OutlierCountNode.OUTLIER_SIZE_ALIAS),
+            placeholder.getLeft());
+    subscriptionTicket = placeholder.getRight();
+  }
+
+  public SubscriptionTicket getSubscriptionTicket() {
+    return subscriptionTicket;
+  }
+
+  @Override
+  public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
+    super.createQuery(tokens); // placeholder replacements performed here
     return selectQuery;
   }
 
@@ -723,8 +1069,7 @@ class LargeGroupListNode extends CreateTableAsSelectNode {
 
   private static final long serialVersionUID = -2889642011123433574L;
 
-  // p0 is the sampling ratio used for obtaining the large group list.
-  // How to tweak this value?
+  // The groups of at least (1 / p0) tuples are considered large.
   //
   // Our goal is to identify the groups that will appear anyway when sampled by simple random
   // sampling. Suppose a block size is 10, and there are 100 tuples. This means the sampling ratio
@@ -734,38 +1079,25 @@ class LargeGroupListNode extends CreateTableAsSelectNode {
   //     Formally, let pi = (block size) / (table size). Let N be the number of the tuples in a
   // group. If (1 - pi)^N <= 0.01  =>  N <= log(0.01) / log(1 - pi).
   //
-  //     Then, what is the good p0 for estimting N? A good rule of thumb would be to use a
-  // single-block-many tuples, i.e., (block size). Then, p0 = (block size) / (table size).
+  //     As a rule of thumb, a group is large if it is expected to have at least a single tuple in
+  // a block, i.e., p0 = (block size) / (table size). The summary table has the sizes of the
+  // buckets of primary groups, which are never smaller than the sizes of the groups in them.
   private double p0 = 0.001;
 
-  private String schemaName;
-
-  private String tableName;
-
-  private String primaryColumnName;
-
   private long blockSize;
 
   public static final String PRIMARY_GROUP_RENAME = "verdictdbrenameprimarygroup";
 
   public static final String LARGE_GROUP_SIZE_COLUMN_ALIAS = "groupSize";
 
-  public LargeGroupListNode(
-      IdCreator idCreator,
-      String schemaName,
-      String tableName,
-      String primaryColumnName,
-      long blockSize) {
+  public LargeGroupListNode(IdCreator idCreator, long blockSize) {
     super(idCreator, null);
-    this.schemaName = schemaName;
-    this.tableName = tableName;
-    this.primaryColumnName = primaryColumnName;
     this.blockSize = blockSize;
   }
 
   /**
-   * create table some-temp-table-name as select primaryGroup, count(*) * (1/p0) from
-   * schemaName.tableName where rand() < p0 group by primaryGroup;
+   * create table some-temp-table-name as select primaryGroup, count as groupSize from summary
+   * where count >= (1/p0);
    *
    * @throws VerdictDBException
    */
@@ -773,17 +1105,26 @@ class LargeGroupListNode extends CreateTableAsSelectNode {
   public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
     String tableSourceAlias = "t";
 
-    // search for the token that contains the table size.
+    // search for the tokens that contain the table size and the summary table.
     String countNodeKey = PercentilesAndCountNode.class.getSimpleName();
+    String summaryKey = StatisticsSummaryNode.class.getSimpleName();
     long tableSize = -1;
+    Pair<String, String> summaryTable = null;
     for (ExecutionInfoToken token : tokens) {
       if (token.containsKey(countNodeKey)) {
         DbmsQueryResult tableSizeResult = (DbmsQueryResult) token.getValue(countNodeKey);
         tableSizeResult.rewind();
         tableSizeResult.next();
         tableSize = tableSizeResult.getLong(PercentilesAndCountNode.TOTAL_COUNT_ALIAS_NAME);
-        break;
       }
+      if (token.containsKey(summaryKey)) {
+        @SuppressWarnings("unchecked")
+        Pair<String, String> table = (Pair<String, String>) token.getValue(summaryKey);
+        summaryTable = table;
+      }
+    }
+    if (summaryTable == null) {
+      throw new VerdictDBValueException("The passed token does not have the key: " + summaryKey);
     }
 
     // set the value of p0
@@ -797,23 +1138,23 @@ class LargeGroupListNode extends CreateTableAsSelectNode {
     List<SelectItem> selectList = new ArrayList<>();
     selectList.add(
         new AliasedColumn(
-            new BaseColumn(tableSourceAlias, primaryColumnName), PRIMARY_GROUP_RENAME));
+            new BaseColumn(tableSourceAlias, PRIMARY_GROUP_RENAME), PRIMARY_GROUP_RENAME));
     selectList.add(
         new AliasedColumn(
-            ColumnOp.multiply(
-                ColumnOp.count(),
-                ColumnOp.divide(ConstantColumn.valueOf(1.0), ConstantColumn.valueOf(p0))),
+            new BaseColumn(tableSourceAlias, StatisticsSummaryNode.ROW_COUNT_ALIAS),
             LARGE_GROUP_SIZE_COLUMN_ALIAS));
 
     // from
     SelectQuery selectQuery =
-        SelectQuery.create(selectList, new BaseTable(schemaName, tableName, tableSourceAlias));
+        SelectQuery.create(
+            selectList,
+            new BaseTable(summaryTable.getLeft(), summaryTable.getRight(), tableSourceAlias));
 
     // where
-    selectQuery.addFilterByAnd(ColumnOp.less(ColumnOp.rand(), ConstantColumn.valueOf(p0)));
-
-    // group by
-    selectQuery.addGroupby(new AliasReference(primaryColumnName));
+    selectQuery.addFilterByAnd(
+        ColumnOp.greaterequal(
+            new BaseColumn(tableSourceAlias, StatisticsSummaryNode.ROW_COUNT_ALIAS),
+            ConstantColumn.valueOf(1.0 / p0)));
 
     this.selectQuery = selectQuery;
     return super.createQuery(tokens);
@@ -40,6 +40,10 @@ public class HashScramblingMethod extends ScramblingMethodBase {
       String columnMetaTokenKey,
       String partitionMetaTokenKey,
       String primarykeyMetaTokenKey) {
+    // the table size is not needed if the distribution is given.
+    if (hasGivenCumulativeProbabilityDistributions()) {
+      return Arrays.asList();
+    }
     TableSizeCountNode countNode = new TableSizeCountNode(oldSchemaName, oldTableName);
     return Arrays.<ExecutableNodeBase>asList(countNode);
   }
@@ -78,6 +82,15 @@ public class HashScramblingMethod extends ScramblingMethodBase {
   private List<Double> calculateBlockCountsAndCumulativeProbabilityDistForTier(
       Map<String, Object> metaData, int tier) {
 
+    List<Double> given = getGivenCumulativeProbabilityDistributionForTier(tier);
+    if (given != null) {
+      // the blocks are the first ones of equally likely blocks.
+      actualNumberOfBlocks = given.size();
+      totalNumberOfblocks = (int) Math.round(1.0 / given.get(0));
+      storeCumulativeProbabilityDistribution(tier, given);
+      return given;
+    }
+
     DbmsQueryResult tableSizeResult =
         (DbmsQueryResult) metaData.get(TableSizeCountNode.class.getSimpleName());
     tableSizeResult.next();
@@ -0,0 +1,153 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.InsertIntoSelectQuery;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+
+/**
+ * Composes the query that inserts new rows of a table (e.g., the rows appended to the original
+ * table since its scramble was created) into an existing scramble. The rows are assigned to the
+ * blocks with the same probabilities as the rows already in the scramble, i.e., by the cumulative
+ * distribution stored in the scramble's metadata; thus, the metadata stays valid after the rows are
+ * appended, and the scramble need not be rebuilt.
+ *
+ * <p>If the scramble has multiple tiers, the new rows are placed in the last tier. The rows of
+ * every tier are assigned to the blocks by the distribution of that tier, so the answers stay
+ * unbiased even if the new rows would have belonged to another tier when the scramble was created.
+ * If the scramble is smaller than its original table, the new rows are sampled at the same ratio.
+ */
+public class ScrambleAppender {
+
+  private static final String SOURCE_ALIAS = "t";
+
+  private static final String FILTER_ALIAS = "tmp";
+
+  private ScrambleMeta meta;
+
+  private String sourceSchemaName;
+
+  private String sourceTableName;
+
+  private UnnamedColumn condition = null;
+
+  private List<String> partitionColumns = new ArrayList<>();
+
+  /**
+   * @param meta The metadata of the scramble to which rows are appended
+   * @param sourceSchemaName The schema of the table from which rows are read
+   * @param sourceTableName The table from which rows are read; it must have all the columns of the
+   *     original table of the scramble.
+   */
+  public ScrambleAppender(ScrambleMeta meta, String sourceSchemaName, String sourceTableName) {
+    this.meta = meta;
+    this.sourceSchemaName = sourceSchemaName;
+    this.sourceTableName = sourceTableName;
+  }
+
+  /** @param condition The predicate on the source table that selects the rows to append */
+  public void setCondition(UnnamedColumn condition) {
+    this.condition = condition;
+  }
+
+  /** @param partitionColumns The partition columns of the scramble table, in order */
+  public void setPartitionColumns(List<String> partitionColumns) {
+    this.partitionColumns = partitionColumns;
+  }
+
+  /**
+   * @param scrambleColumns The columns of the scramble table, in order
+   * @return The query that inserts the rows of the source table into the scramble
+   */
+  public InsertIntoSelectQuery createQuery(List<String> scrambleColumns) {
+    int tier = meta.getNumberOfTiers() - 1;
+    List<Double> cumulProb = meta.getCumulativeDistributionForTier(tier);
+
+    List<SelectItem> selectItems = new ArrayList<>();
+    for (String column : scrambleColumns) {
+      if (column.equals(meta.getTierColumn())) {
+        selectItems.add(new AliasedColumn(ConstantColumn.valueOf(tier), column));
+      } else if (column.equals(meta.getAggregationBlockColumn())) {
+        selectItems.add(new AliasedColumn(getBlockExpr(cumulProb), column));
+      } else {
+        selectItems.add(new AliasedColumn(new BaseColumn(SOURCE_ALIAS, column), column));
+      }
+    }
+    BaseTable source = new BaseTable(sourceSchemaName, sourceTableName, SOURCE_ALIAS);
+    SelectQuery select =
+        (condition == null)
+            ? SelectQuery.create(selectItems, source)
+            : SelectQuery.create(selectItems, source, condition);
+
+    // the rows assigned to the blocks thrown away are not part of the scramble.
+    if (cumulProb.get(cumulProb.size() - 1) < 1.0) {
+      select.setAliasName(FILTER_ALIAS);
+      select = SelectQuery.create(new AsteriskColumn(), select);
+      select.addFilterByAnd(
+          ColumnOp.less(
+              new BaseColumn(FILTER_ALIAS, meta.getAggregationBlockColumn()),
+              ConstantColumn.valueOf(meta.getAggregationBlockCount())));
+    }
+
+    InsertIntoSelectQuery insert =
+        new InsertIntoSelectQuery(meta.getSchemaName(), meta.getTableName(), select);
+    for (String column : partitionColumns) {
+      insert.addPartitionColumn(column);
+    }
+    return insert;
+  }
+
+  private UnnamedColumn getBlockExpr(List<Double> cumulProb) {
+    if (meta.getMethodWithDefault("uniform").equalsIgnoreCase("hash")) {
+      // the same block as the existing rows with the same value of the hash column
+      int totalBlockCount = (int) Math.round(1.0 / cumulProb.get(0));
+      return ColumnOp.cast(
+          ColumnOp.floor(
+              ColumnOp.multiply(
+                  ColumnOp.hash(new BaseColumn(SOURCE_ALIAS, meta.getHashColumn())),
+                  ConstantColumn.valueOf(totalBlockCount))),
+          ConstantColumn.valueOf("int"));
+    }
+
+    // the rows that fall through all the blocks get the block count, i.e., are thrown away.
+    List<Double> condProb = ScramblingNode.computeConditionalProbabilityDistribution(cumulProb);
+    int blockCount = condProb.size();
+    boolean isReduced = cumulProb.get(blockCount - 1) < 1.0;
+    int lastWhen = isReduced ? blockCount : blockCount - 1;
+    if (lastWhen == 0) {
+      return ConstantColumn.valueOf(0);
+    }
+    List<UnnamedColumn> operands = new ArrayList<>();
+    for (int j = 0; j < lastWhen; j++) {
+      operands.add(ColumnOp.lessequal(ColumnOp.rand(), ConstantColumn.valueOf(condProb.get(j))));
+      operands.add(ConstantColumn.valueOf(j));
+    }
+    operands.add(ConstantColumn.valueOf(lastWhen));
+    return ColumnOp.casewhen(operands);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.verdictdb.core.scrambling;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.querying.QueryNodeBase;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.InsertIntoSelectQuery;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.SqlConvertible;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+
+/**
+ * Inserts a chunk staged by a ScramblingChunkNode into the scramble table. The insertions are not
+ * recorded: if the scrambling is interrupted, the scramble table is created again and all the
+ * staged chunks are inserted again (see ScramblingCoordinator).
+ *
+ * <p>On Impala, whose dynamic partitioning is faulty, every chunk goes through its own temporary
+ * table (see InsertQueryToSql).
+ */
+public class ScramblingChunkMergeNode extends QueryNodeBase {
+
+  private static final long serialVersionUID = 7160452361908851205L;
+
+  private static final String TABLE_ALIAS = "t";
+
+  private int chunk;
+
+  private int chunkCount;
+
+  // shared by the chunks of the same scramble for reporting progress
+  private AtomicInteger finishedChunkCount;
+
+  private String schemaName;
+
+  private String tableName;
+
+  public ScramblingChunkMergeNode(int chunk, int chunkCount, AtomicInteger finishedChunkCount) {
+    super(-1, null);
+    this.chunk = chunk;
+    this.chunkCount = chunkCount;
+    this.finishedChunkCount = finishedChunkCount;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
+    if (tokens.size() == 0) {
+      throw new VerdictDBValueException("No token is passed.");
+    }
+    ExecutionInfoToken token = tokens.get(0);
+    schemaName = (String) token.getValue("schemaName");
+    tableName = (String) token.getValue("tableName");
+
+    String stagingTableName = ScramblingChunkNode.getStagingTableName(tableName, chunk);
+    SelectQuery select =
+        SelectQuery.create(
+            new AsteriskColumn(), new BaseTable(schemaName, stagingTableName, TABLE_ALIAS));
+    InsertIntoSelectQuery insert = new InsertIntoSelectQuery(schemaName, tableName, select);
+    for (String column :
+        (List<String>) token.getValue(ScramblingChunkNode.PARTITION_COLUMNS_KEY)) {
+      insert.addPartitionColumn(column);
+    }
+    // the chunks inserted concurrently go through different tables on Impala.
+    int randomNum = ThreadLocalRandom.current().nextInt(0, 10000);
+    insert.setTempTableName(
+        String.format("verdictdb_scrambling_temp_%d_chunk%d", randomNum, chunk));
+    return insert;
+  }
+
+  @Override
+  public ExecutionInfoToken createToken(DbmsQueryResult result) {
+    int finished = finishedChunkCount.incrementAndGet();
+    log.info(
+        String.format(
+            "Scrambled chunk %d into %s.%s (%d/%d chunks done)",
+            chunk, schemaName, tableName, finished, chunkCount));
+    return ExecutionInfoToken.empty();
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import java.util.List;
+import java.util.Set;
+
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.querying.QueryNodeBase;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.CreateTableAsSelectQuery;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.SqlConvertible;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+
+/**
+ * Stages a chunk of the rows of a scramble whose (empty) table is created by the ScramblingNode.
+ * The rows of the original table are split into chunks by a column (see ScramblingChunkSplit), so
+ * that every row belongs to exactly one chunk and the chunks can be staged independently and
+ * concurrently.
+ *
+ * <p>Every chunk is staged in its own table, which is created by a single statement, and is then
+ * inserted into the scramble table by a ScramblingChunkMergeNode. The staging table of a chunk is
+ * replaceable: if the scrambling is interrupted, a chunk that is being staged leaves at most a
+ * staging table, which is dropped and created again when the scrambling is resumed.
+ *
+ * <p>Every staged chunk is reported to a ScramblingProgressListener, which records it. When an
+ * interrupted scrambling is resumed, the chunks recorded as staged are not staged again.
+ */
+public class ScramblingChunkNode extends QueryNodeBase {
+
+  private static final long serialVersionUID = -3419480261337712049L;
+
+  /** The select query that composes the rows of the scramble from the original table. */
+  static final String SCRAMBLING_QUERY_KEY = "scramblingChunk:scramblingQuery";
+
+  /** The column of the original table (with its alias) by which the rows are split. */
+  static final String CHUNK_COLUMN_KEY = "scramblingChunk:chunkColumn";
+
+  /** How the split of a new scramble is computed; see ScramblingChunkSplitNode. */
+  static final String CHUNK_SPLIT_SOURCE_KEY = "scramblingChunk:chunkSplitSource";
+
+  /** The ScramblingChunkSplit by which the rows are split. */
+  static final String CHUNK_SPLIT_KEY = "scramblingChunk:chunkSplit";
+
+  /** The partition columns of the scramble table. */
+  static final String PARTITION_COLUMNS_KEY = "scramblingChunk:partitionColumns";
+
+  /** The number of blocks kept in the scramble; set only if some blocks are thrown away. */
+  static final String ACTUAL_BLOCK_COUNT_KEY = "scramblingChunk:actualBlockCount";
+
+  /** The set of the chunks recorded as staged by an interrupted scrambling. */
+  static final String COMPLETED_CHUNKS_KEY = "scramblingChunk:completedChunks";
+
+  private static final String FILTER_ALIAS = "tmp";
+
+  private int chunk;
+
+  private int chunkCount;
+
+  private String blockColumnName;
+
+  private transient ScramblingProgressListener listener;
+
+  private ExecutionInfoToken token;
+
+  private boolean skipped = false;
+
+  public ScramblingChunkNode(int chunk, int chunkCount, String blockColumnName) {
+    super(-1, null);
+    this.chunk = chunk;
+    this.chunkCount = chunkCount;
+    this.blockColumnName = blockColumnName;
+  }
+
+  /** @param listener Notified after the chunk is staged */
+  public void setProgressListener(ScramblingProgressListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @param tableName The scramble table
+   * @param chunk The chunk number
+   * @return The name of the table in which the chunk is staged, in the schema of the scramble.
+   */
+  public static String getStagingTableName(String tableName, int chunk) {
+    return String.format("%s_verdictdbchunk%d", tableName, chunk);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
+    if (tokens.size() == 0) {
+      throw new VerdictDBValueException("No token is passed.");
+    }
+    token = tokens.get(0);
+    String schemaName = (String) token.getValue("schemaName");
+    String tableName = (String) token.getValue("tableName");
+
+    Set<Integer> completedChunks = (Set<Integer>) token.getValue(COMPLETED_CHUNKS_KEY);
+    if (completedChunks != null && completedChunks.contains(chunk)) {
+      skipped = true;
+      return null;
+    }
+
+    SelectQuery select = ((SelectQuery) token.getValue(SCRAMBLING_QUERY_KEY)).deepcopy();
+    ScramblingChunkSplit split = (ScramblingChunkSplit) token.getValue(CHUNK_SPLIT_KEY);
+    select.addFilterByAnd(
+        split.createPredicate((BaseColumn) token.getValue(CHUNK_COLUMN_KEY), chunk, chunkCount));
+
+    // the rows assigned to the blocks thrown away are not part of the scramble.
+    Integer actualBlockCount = (Integer) token.getValue(ACTUAL_BLOCK_COUNT_KEY);
+    if (actualBlockCount != null) {
+      select.setAliasName(FILTER_ALIAS);
+      select = SelectQuery.create(new AsteriskColumn(), select);
+      select.addFilterByAnd(
+          ColumnOp.less(
+              new BaseColumn(FILTER_ALIAS, blockColumnName),
+              ConstantColumn.valueOf(actualBlockCount)));
+    }
+
+    return new CreateTableAsSelectQuery(
+        schemaName, getStagingTableName(tableName, chunk), select);
+  }
+
+  @Override
+  public ExecutionInfoToken createToken(DbmsQueryResult result) {
+    String tableName = (String) token.getValue("tableName");
+    if (skipped) {
+      log.info(String.format("Chunk %d of %s was already staged", chunk, tableName));
+    } else {
+      if (listener != null) {
+        try {
+          listener.chunkStaged(chunk);
+        } catch (VerdictDBException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      log.info(String.format("Staged chunk %d of %s", chunk, tableName));
+    }
+    return token.copy();
+  }
+}
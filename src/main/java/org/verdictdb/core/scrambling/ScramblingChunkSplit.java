@@ -0,0 +1,191 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.verdictdb.core.scrambling;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+
+/**
+ * How the rows of the original table are split into the chunks of a scrambling (see
+ * ScramblingChunkNode). It is recorded in ScramblingProgress so that a resumed scrambling splits
+ * the rows in the same way.
+ *
+ * <p>If possible, the rows are split into the ranges between the boundary values of a column: the
+ * values of an existing partition column, so that a chunk consists of whole partitions, or evenly
+ * spaced integers between the minimum and the maximum of an integral primary key column. Since a
+ * range predicate prunes partitions or uses the index, the chunks together read the original table
+ * about once.
+ *
+ * <p>Otherwise, the rows are split by the hash of a column. A hash predicate can neither prune
+ * partitions nor use an index; thus, every chunk scans the entire original table, and N chunks
+ * read it N times.
+ */
+public class ScramblingChunkSplit implements Serializable {
+
+  private static final long serialVersionUID = 5023876510349927581L;
+
+  /** Splits the rows by the hash of the column. */
+  public static final String HASH = "hash";
+
+  /** Splits the rows by numeric boundaries. */
+  public static final String NUMERIC_RANGE = "numericRange";
+
+  /** Splits the rows by boundaries written as string literals (e.g., strings and dates). */
+  public static final String STRING_RANGE = "stringRange";
+
+  private String method = HASH;
+
+  // chunk i has the values between boundaries[i-1] (inclusive) and boundaries[i] (exclusive)
+  private List<String> boundaries = new ArrayList<>();
+
+  public ScramblingChunkSplit() {}
+
+  private ScramblingChunkSplit(String method, List<String> boundaries) {
+    this.method = method;
+    this.boundaries = boundaries;
+  }
+
+  public static ScramblingChunkSplit byHash() {
+    return new ScramblingChunkSplit();
+  }
+
+  /**
+   * Splits the integers between min and max into the ranges of (almost) the same length.
+   *
+   * @param min The minimum value of the column
+   * @param max The maximum value of the column
+   * @param chunkCount The number of chunks
+   */
+  public static ScramblingChunkSplit byIntegerRange(
+      BigInteger min, BigInteger max, int chunkCount) {
+    BigInteger length = max.subtract(min).add(BigInteger.ONE);
+    List<String> boundaries = new ArrayList<>();
+    for (int i = 1; i < chunkCount; i++) {
+      BigInteger offset =
+          length.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(chunkCount));
+      boundaries.add(min.add(offset).toString());
+    }
+    return new ScramblingChunkSplit(NUMERIC_RANGE, boundaries);
+  }
+
+  /**
+   * Splits the distinct values of a column (e.g., the partitions) into the groups of (almost) the
+   * same number of values.
+   *
+   * @param sortedValues The distinct non-null values of the column in ascending order
+   * @param numeric True if the values are numbers; false if they are written as string literals
+   * @param chunkCount The number of chunks
+   * @return The split by hash if there is no value or if some value cannot be written as a literal
+   *     without escaping.
+   */
+  public static ScramblingChunkSplit byValues(
+      List<String> sortedValues, boolean numeric, int chunkCount) {
+    if (sortedValues.isEmpty()) {
+      return byHash();
+    }
+    for (String value : sortedValues) {
+      if (!numeric && (value.contains("'") || value.contains("\\") || value.contains("\""))) {
+        return byHash();
+      }
+    }
+    List<String> boundaries = new ArrayList<>();
+    for (int i = 1; i < chunkCount; i++) {
+      boundaries.add(sortedValues.get(i * sortedValues.size() / chunkCount));
+    }
+    return new ScramblingChunkSplit(numeric ? NUMERIC_RANGE : STRING_RANGE, boundaries);
+  }
+
+  /**
+   * @param column The column by which rows are split into chunks
+   * @param chunk The chunk number, between 0 and chunkCount - 1
+   * @param chunkCount The number of chunks
+   * @return The predicate satisfied only by the rows of the chunk. The rows whose column values
+   *     are null belong to the last chunk.
+   */
+  public UnnamedColumn createPredicate(BaseColumn column, int chunk, int chunkCount) {
+    UnnamedColumn predicate;
+    if (method.equals(HASH)) {
+      UnnamedColumn chunkExpr =
+          ColumnOp.floor(
+              ColumnOp.multiply(ColumnOp.hash(column), ConstantColumn.valueOf(chunkCount)));
+      predicate = ColumnOp.equal(chunkExpr, ConstantColumn.valueOf(chunk));
+    } else {
+      predicate = null;
+      if (chunk > 0) {
+        predicate = ColumnOp.greaterequal(column, boundaryOf(chunk - 1));
+      }
+      if (chunk < chunkCount - 1) {
+        UnnamedColumn upper = ColumnOp.less(column, boundaryOf(chunk));
+        predicate = (predicate == null) ? upper : ColumnOp.and(predicate, upper);
+      }
+    }
+    if (chunk == chunkCount - 1) {
+      UnnamedColumn isNull = ColumnOp.rightisnull(column);
+      predicate = (predicate == null) ? isNull : ColumnOp.or(predicate, isNull);
+    }
+    return predicate;
+  }
+
+  private UnnamedColumn boundaryOf(int index) {
+    String boundary = boundaries.get(index);
+    if (method.equals(STRING_RANGE)) {
+      boundary = "'" + boundary + "'";
+    }
+    return ConstantColumn.valueOf(boundary);
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public List<String> getBoundaries() {
+    return boundaries;
+  }
+
+  public void setMethod(String method) {
+    this.method = method;
+  }
+
+  public void setBoundaries(List<String> boundaries) {
+    this.boundaries = boundaries;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return EqualsBuilder.reflectionEquals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return HashCodeBuilder.reflectionHashCode(this);
+  }
+
+  @Override
+  public String toString() {
+    return method + boundaries;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.verdictdb.core.scrambling;
+
+import java.math.BigInteger;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.querying.QueryNodeBase;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.OrderbyAttribute;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.SqlConvertible;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+
+/**
+ * Determines how the rows are split into chunks (see ScramblingChunkSplit) and passes the token of
+ * the ScramblingNode on to the ScramblingChunkNodes together with the split.
+ *
+ * <p>For a new scramble, the split is computed by a query that the databases can answer from their
+ * metadata or index rather than by scanning the table: the distinct values of a partition column
+ * (i.e., the partitions), or the minimum and the maximum of an integral key column, such as the
+ * primary key or a sort key given as the chunk column. Otherwise, the rows are split by hash. The
+ * listener is then notified that the table is created. A resumed scrambling uses the split it
+ * started with.
+ */
+class ScramblingChunkSplitNode extends QueryNodeBase {
+
+  private static final long serialVersionUID = 6283513795946129704L;
+
+  /** The chunks are split by the values of a partition column. */
+  static final String SPLIT_BY_PARTITION = "partition";
+
+  /** The chunks are split by the range of an integral key column (e.g., the primary key). */
+  static final String SPLIT_BY_RANGE = "range";
+
+  private static final String TABLE_ALIAS = "t";
+
+  private static final String VALUE_ALIAS = "verdictdbchunkvalue";
+
+  private static final Set<Integer> INTEGRAL_TYPES =
+      new HashSet<>(Arrays.asList(Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT));
+
+  private static final Set<Integer> NUMERIC_TYPES =
+      new HashSet<>(
+          Arrays.asList(
+              Types.TINYINT,
+              Types.SMALLINT,
+              Types.INTEGER,
+              Types.BIGINT,
+              Types.DECIMAL,
+              Types.NUMERIC,
+              Types.REAL,
+              Types.FLOAT,
+              Types.DOUBLE));
+
+  private String originalSchemaName;
+
+  private String originalTableName;
+
+  private int chunkCount;
+
+  // null until determined if the scramble is new
+  private ScramblingChunkSplit split;
+
+  // the chunks staged by the interrupted scrambling that is resumed; null if the scramble is new
+  private Set<Integer> completedChunks;
+
+  private String splitSource;
+
+  private transient ScramblingProgressListener listener;
+
+  private ExecutionInfoToken scramblingToken;
+
+  /**
+   * @param originalSchemaName The schema of the original table
+   * @param originalTableName The original table
+   * @param chunkCount The number of chunks
+   * @param resumed The progress of the interrupted scrambling that is resumed; null if the
+   *     scramble is new.
+   * @param listener Notified when the scramble table is created; may be null.
+   */
+  ScramblingChunkSplitNode(
+      String originalSchemaName,
+      String originalTableName,
+      int chunkCount,
+      ScramblingProgress resumed,
+      ScramblingProgressListener listener) {
+    super(-1, null);
+    this.originalSchemaName = originalSchemaName;
+    this.originalTableName = originalTableName;
+    this.chunkCount = chunkCount;
+    if (resumed != null) {
+      // the rows of a progress recorded without its split were split by hash.
+      this.split =
+          (resumed.getChunkSplit() == null)
+              ? ScramblingChunkSplit.byHash()
+              : resumed.getChunkSplit();
+      this.completedChunks = new HashSet<>(resumed.getCompletedChunks());
+    }
+    this.listener = listener;
+  }
+
+  @Override
+  public SqlConvertible createQuery(List<ExecutionInfoToken> tokens) throws VerdictDBException {
+    if (tokens.size() == 0) {
+      throw new VerdictDBValueException("No token is passed.");
+    }
+    scramblingToken = tokens.get(0);
+    if (completedChunks != null) {
+      return null;
+    }
+
+    BaseColumn chunkColumn =
+        (BaseColumn) scramblingToken.getValue(ScramblingChunkNode.CHUNK_COLUMN_KEY);
+    BaseColumn column = new BaseColumn(TABLE_ALIAS, chunkColumn.getColumnName());
+    BaseTable table = new BaseTable(originalSchemaName, originalTableName, TABLE_ALIAS);
+    splitSource = (String) scramblingToken.getValue(ScramblingChunkNode.CHUNK_SPLIT_SOURCE_KEY);
+    if (SPLIT_BY_PARTITION.equals(splitSource)) {
+      // select t.col as value from original t group by t.col order by value
+      // The boundaries must be in the order of the database, which the predicates follow.
+      selectQuery = SelectQuery.create(new AliasedColumn(column, VALUE_ALIAS), table);
+      selectQuery.addGroupby(column);
+      selectQuery.addOrderby(new OrderbyAttribute(VALUE_ALIAS));
+    } else if (SPLIT_BY_RANGE.equals(splitSource)) {
+      selectQuery =
+          SelectQuery.create(
+              Arrays.<SelectItem>asList(
+                  new AliasedColumn(new ColumnOp("min", column), VALUE_ALIAS + "min"),
+                  new AliasedColumn(new ColumnOp("max", column), VALUE_ALIAS + "max")),
+              table);
+    } else {
+      split = ScramblingChunkSplit.byHash();
+      return null;
+    }
+    return selectQuery;
+  }
+
+  @Override
+  public ExecutionInfoToken createToken(DbmsQueryResult result) {
+    if (split == null) {
+      split = computeSplit(result);
+    }
+    if (completedChunks != null) {
+      log.info(
+          String.format(
+              "Resumes scrambling: %d of %d chunks were already staged.",
+              completedChunks.size(), chunkCount));
+    } else {
+      log.info(String.format("The rows are split into %d chunks by %s.", chunkCount, split));
+      if (listener != null) {
+        BaseColumn chunkColumn =
+            (BaseColumn) scramblingToken.getValue(ScramblingChunkNode.CHUNK_COLUMN_KEY);
+        try {
+          listener.scrambleTableCreated(chunkColumn.getColumnName(), split);
+        } catch (VerdictDBException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+
+    ExecutionInfoToken token = scramblingToken.copy();
+    token.setKeyValue(ScramblingChunkNode.CHUNK_SPLIT_KEY, split);
+    token.setKeyValue(
+        ScramblingChunkNode.COMPLETED_CHUNKS_KEY,
+        (completedChunks == null) ? new HashSet<Integer>() : completedChunks);
+    return token;
+  }
+
+  private ScramblingChunkSplit computeSplit(DbmsQueryResult result) {
+    result.rewind();
+    int type = result.getColumnType(0);
+    if (SPLIT_BY_PARTITION.equals(splitSource)) {
+      List<String> values = new ArrayList<>();
+      while (result.next()) {
+        if (result.getValue(0) != null) {
+          values.add(result.getString(0));
+        }
+      }
+      return ScramblingChunkSplit.byValues(values, NUMERIC_TYPES.contains(type), chunkCount);
+    }
+
+    // the minimum and the maximum are null if the table is empty.
+    if (INTEGRAL_TYPES.contains(type) && result.next() && result.getValue(0) != null) {
+      return ScramblingChunkSplit.byIntegerRange(
+          new BigInteger(result.getString(0)), new BigInteger(result.getString(1)), chunkCount);
+    }
+    return ScramblingChunkSplit.byHash();
+  }
+}
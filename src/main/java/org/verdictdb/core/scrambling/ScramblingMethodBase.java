@@ -30,6 +30,9 @@ public abstract class ScramblingMethodBase implements ScramblingMethod {
 
   private final Map<Integer, List<Double>> storedProbDist = new HashMap<>();
 
+  // the distributions used instead of those computed from the statistics
+  private Map<Integer, List<Double>> givenProbDist = null;
+
   public ScramblingMethodBase(long blockSize, int maxBlockCount, double relativeSize) {
     this.blockSize = blockSize;
     this.maxBlockCount = maxBlockCount;
@@ -48,4 +51,23 @@ public abstract class ScramblingMethodBase implements ScramblingMethod {
   public List<Double> getStoredCumulativeProbabilityDistributionForTier(int tier) {
     return storedProbDist.get(tier);
   }
+
+  /**
+   * Makes this method assign the blocks by the given cumulative distributions (e.g., those with
+   * which an interrupted scrambling started) instead of computing them from the statistics.
+   *
+   * @param dist The key is the id of a tier.
+   */
+  public void setCumulativeProbabilityDistributions(Map<Integer, List<Double>> dist) {
+    givenProbDist = dist;
+  }
+
+  /** @return The distribution set by setCumulativeProbabilityDistributions(); null if not set. */
+  protected List<Double> getGivenCumulativeProbabilityDistributionForTier(int tier) {
+    return (givenProbDist == null) ? null : givenProbDist.get(tier);
+  }
+
+  protected boolean hasGivenCumulativeProbabilityDistributions() {
+    return givenProbDist != null;
+  }
 }
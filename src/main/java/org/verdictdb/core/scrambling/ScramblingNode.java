@@ -49,6 +49,20 @@ public class ScramblingNode extends CreateScrambledTableNode {
 
   //  Map<String, String> options;
 
+  // if larger than one, the rows are staged by ScramblingChunkNodes and then inserted by
+  // ScramblingChunkMergeNodes; this node only creates an empty table.
+  private int chunkCount = 1;
+
+  private SelectQuery scramblingQuery;
+
+  private BaseColumn chunkColumn;
+
+  // how the split by the chunk column is computed; null to split by hash
+  private String chunkSplitSource = null;
+
+  // the column by which the rows are split into chunks; chosen by this node if null
+  private String chunkColumnName = null;
+
   public ScramblingNode(
       IdCreator namer,
       String originalSchemaName,
@@ -78,7 +92,8 @@ public class ScramblingNode extends CreateScrambledTableNode {
    * @param oldTableName
    * @param method
    * @param options Key-value map. It must contain the following keys: "blockColumnName",
-   *     "tierColumnName"
+   *     "tierColumnName". If "scramblingChunkCount" is larger than one, the table is created empty
+   *     for ScramblingChunkNodes, which split the rows by "scramblingChunkColumn" if given.
    * @return
    */
   public static ScramblingNode create(
@@ -124,15 +139,25 @@ public class ScramblingNode extends CreateScrambledTableNode {
     if (createIfNotExistsStr != null && createIfNotExistsStr.equals("true")) {
       createIfNotExists = true;
     }
-    return new ScramblingNode(
-        idCreator,
-        oldSchemaName,
-        oldTableName,
-        method,
-        tierColumnName,
-        blockColumnName,
-        existingPartitionColumns,
-        createIfNotExists);
+    String chunkCountStr = options.get("scramblingChunkCount");
+    int chunkCount = (chunkCountStr == null) ? 1 : Integer.parseInt(chunkCountStr);
+    ScramblingNode node =
+        new ScramblingNode(
+            idCreator,
+            oldSchemaName,
+            oldTableName,
+            method,
+            tierColumnName,
+            blockColumnName,
+            existingPartitionColumns,
+            createIfNotExists);
+    node.chunkCount = chunkCount;
+    node.chunkColumnName = options.get("scramblingChunkColumn");
+    return node;
+  }
+
+  public int getChunkCount() {
+    return chunkCount;
   }
 
   @Override
@@ -150,9 +175,58 @@ public class ScramblingNode extends CreateScrambledTableNode {
     // add partitioning for block agg column
     addPartitionColumn(blockColumnName);
 
+    if (chunkCount > 1) {
+      scramblingQuery = selectQuery.deepcopy();
+      chunkColumn = chooseChunkColumn(metaData);
+      selectQuery.addFilterByAnd(
+          ColumnOp.equal(ConstantColumn.valueOf(1), ConstantColumn.valueOf(0)));
+    }
+
     return super.createQuery(tokens);
   }
 
+  /**
+   * The rows are split into chunks by an existing partition column, if any, so that a chunk
+   * consists of whole partitions of the original table; otherwise, by the ranges of the first
+   * primary key column, or by the hash of the first column. The column given by
+   * "scramblingChunkColumn" (e.g., an indexed or sort key) is split by its partitions or ranges. A
+   * resumed scrambling uses the column with which it started.
+   */
+  @SuppressWarnings("unchecked")
+  private BaseColumn chooseChunkColumn(Map<String, Object> metaData) {
+    String mainTableAlias = method.getMainTableAlias();
+    List<String> primaryKeyColumns =
+        (List<String>) metaData.get(ScramblingPlan.PRIMARYKEY_METADATA_KEY);
+    String primaryKeyColumn =
+        (primaryKeyColumns == null || primaryKeyColumns.isEmpty())
+            ? null
+            : primaryKeyColumns.get(0);
+    String column = chunkColumnName;
+    if (column == null) {
+      for (String partitionColumn : partitionColumns) {
+        if (!partitionColumn.equals(blockColumnName)) {
+          column = partitionColumn;
+          break;
+        }
+      }
+    }
+    if (column == null) {
+      column = primaryKeyColumn;
+    }
+    if (column == null) {
+      List<Pair<String, String>> columnNamesAndTypes =
+          (List<Pair<String, String>>) metaData.get(ScramblingPlan.COLUMN_METADATA_KEY);
+      column = columnNamesAndTypes.get(0).getLeft();
+    }
+
+    if (partitionColumns.contains(column) && !column.equals(blockColumnName)) {
+      chunkSplitSource = ScramblingChunkSplitNode.SPLIT_BY_PARTITION;
+    } else if (column.equals(chunkColumnName) || column.equals(primaryKeyColumn)) {
+      chunkSplitSource = ScramblingChunkSplitNode.SPLIT_BY_RANGE;
+    }
+    return new BaseColumn(mainTableAlias, column);
+  }
+
   SelectQuery composeQuery(Map<String, Object> metaData) {
     // read option values
     List<UnnamedColumn> tierPredicates = method.getTierExpressions(metaData);
@@ -278,6 +352,18 @@ public class ScramblingNode extends CreateScrambledTableNode {
 
   @Override
   public ExecutionInfoToken createToken(DbmsQueryResult result) {
-    return super.createToken(result);
+    ExecutionInfoToken token = super.createToken(result);
+    if (chunkCount > 1) {
+      token.setKeyValue(ScramblingChunkNode.SCRAMBLING_QUERY_KEY, scramblingQuery);
+      token.setKeyValue(ScramblingChunkNode.CHUNK_COLUMN_KEY, chunkColumn);
+      token.setKeyValue(ScramblingChunkNode.CHUNK_SPLIT_SOURCE_KEY, chunkSplitSource);
+      token.setKeyValue(
+          ScramblingChunkNode.PARTITION_COLUMNS_KEY, new ArrayList<>(partitionColumns));
+      if (method.getActualBlockCount() < method.getBlockCount()) {
+        token.setKeyValue(
+            ScramblingChunkNode.ACTUAL_BLOCK_COUNT_KEY, method.getActualBlockCount());
+      }
+    }
+    return token;
   }
 }
@@ -18,6 +18,7 @@ package org.verdictdb.core.scrambling;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.verdictdb.core.querying.ExecutableNodeBase;
 
@@ -32,7 +33,12 @@ import org.verdictdb.core.querying.ExecutableNodeBase;
  *   <li>actual scramble table creation node
  * </ol>
  *
- * Those nodes should be provided by the ScramblingMethod instance
+ * Those nodes should be provided by the ScramblingMethod instance.
+ *
+ * <p>If the "scramblingChunkCount" option is larger than one, the third node only creates an empty
+ * table. After a node that determines how the rows are split, that many chunk nodes stage the
+ * chunks concurrently, each in its own table, and every staged chunk is then inserted into the
+ * scramble table.
  *
  * @author Yongjoo Park
  */
@@ -63,7 +69,8 @@ public class ScramblingPlan extends SimpleTreePlan {
    * @param oldTableName
    * @param method
    * @param options Key-value map. It must contain the following keys: "blockColumnName",
-   *     "tierColumnName", "blockCount" (optional)
+   *     "tierColumnName", "blockCount" (optional), "scramblingChunkCount" (optional),
+   *     "scramblingChunkColumn" (optional)
    * @return
    */
   public static ScramblingPlan create(
@@ -73,6 +80,25 @@ public class ScramblingPlan extends SimpleTreePlan {
       String oldTableName,
       ScramblingMethod method,
       Map<String, String> options) {
+    return create(
+        newSchemaName, newTableName, oldSchemaName, oldTableName, method, options, null, null);
+  }
+
+  /**
+   * @param resumed The progress of the interrupted scrambling that this plan resumes; null if the
+   *     scramble is new. The chunks recorded as staged are not staged again.
+   * @param listener Records the progress of the scrambling in chunks; may be null.
+   * @see #create(String, String, String, String, ScramblingMethod, Map)
+   */
+  public static ScramblingPlan create(
+      String newSchemaName,
+      String newTableName,
+      String oldSchemaName,
+      String oldTableName,
+      ScramblingMethod method,
+      Map<String, String> options,
+      ScramblingProgress resumed,
+      ScramblingProgressListener listener) {
 
     // create a node for step 1 - column meta data retrieval
     // these nodes will set "scramblingPlan:columnMetaData" and "scramblingPlan:partitionMetaData"
@@ -96,7 +122,7 @@ public class ScramblingPlan extends SimpleTreePlan {
     }
 
     // create a node for step 3 - scrambling
-    ExecutableNodeBase scramblingNode =
+    ScramblingNode scramblingNode =
         ScramblingNode.create(
             newSchemaName, newTableName, oldSchemaName, oldTableName, method, options);
 
@@ -106,7 +132,30 @@ public class ScramblingPlan extends SimpleTreePlan {
       scramblingNode.subscribeTo(statsNodes.get(i), i);
     }
 
-    ScramblingPlan scramblingPlan = new ScramblingPlan(scramblingNode);
+    if (scramblingNode.getChunkCount() <= 1) {
+      return new ScramblingPlan(scramblingNode);
+    }
+
+    // create nodes for step 4 - staging the rows chunk by chunk and inserting the staged chunks
+    int chunkCount = scramblingNode.getChunkCount();
+    ScramblingChunkSplitNode splitNode =
+        new ScramblingChunkSplitNode(oldSchemaName, oldTableName, chunkCount, resumed, listener);
+    splitNode.subscribeTo(scramblingNode, 0);
+
+    ExecutableNodeBase root = new ExecutableNodeBase(-1);
+    AtomicInteger finishedChunkCount = new AtomicInteger(0);
+    for (int i = 0; i < chunkCount; i++) {
+      ScramblingChunkNode chunkNode =
+          new ScramblingChunkNode(i, chunkCount, options.get("blockColumnName"));
+      chunkNode.setProgressListener(listener);
+      chunkNode.subscribeTo(splitNode, 0);
+      ScramblingChunkMergeNode mergeNode =
+          new ScramblingChunkMergeNode(i, chunkCount, finishedChunkCount);
+      mergeNode.subscribeTo(chunkNode, 0);
+      root.subscribeTo(mergeNode, i);
+    }
+
+    ScramblingPlan scramblingPlan = new ScramblingPlan(root);
     return scramblingPlan;
   }
 }
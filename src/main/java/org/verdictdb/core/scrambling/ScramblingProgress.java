@@ -0,0 +1,134 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The state of a scrambling whose rows are staged in chunks (see ScramblingChunkNode). It is kept
+ * in the metastore until the scrambling completes, so that an interrupted scrambling is resumed
+ * with the distributions it started with and with the same chunks.
+ */
+public class ScramblingProgress {
+
+  /** The metadata of the scramble being created, including its cumulative distributions. */
+  private ScrambleMeta meta;
+
+  private int chunkCount;
+
+  /** The column of the original table by which the rows are split into chunks. */
+  private String chunkColumn;
+
+  /** How the rows are split into chunks by the chunk column. */
+  private ScramblingChunkSplit chunkSplit;
+
+  // recorded separately as every chunk is staged
+  @JsonIgnore private Set<Integer> completedChunks = new HashSet<>();
+
+  // recorded separately once all the chunks are inserted into the scramble table
+  @JsonIgnore private boolean merged = false;
+
+  public ScramblingProgress() {}
+
+  public ScramblingProgress(
+      ScrambleMeta meta, int chunkCount, String chunkColumn, ScramblingChunkSplit chunkSplit) {
+    this.meta = meta;
+    this.chunkCount = chunkCount;
+    this.chunkColumn = chunkColumn;
+    this.chunkSplit = chunkSplit;
+  }
+
+  public ScrambleMeta getMeta() {
+    return meta;
+  }
+
+  public int getChunkCount() {
+    return chunkCount;
+  }
+
+  public String getChunkColumn() {
+    return chunkColumn;
+  }
+
+  public ScramblingChunkSplit getChunkSplit() {
+    return chunkSplit;
+  }
+
+  @JsonIgnore
+  public Set<Integer> getCompletedChunks() {
+    return completedChunks;
+  }
+
+  /** @return True if all the chunks are inserted into the scramble table. */
+  @JsonIgnore
+  public boolean isMerged() {
+    return merged;
+  }
+
+  public void setMeta(ScrambleMeta meta) {
+    this.meta = meta;
+  }
+
+  public void setChunkCount(int chunkCount) {
+    this.chunkCount = chunkCount;
+  }
+
+  public void setChunkColumn(String chunkColumn) {
+    this.chunkColumn = chunkColumn;
+  }
+
+  public void setChunkSplit(ScramblingChunkSplit chunkSplit) {
+    this.chunkSplit = chunkSplit;
+  }
+
+  @JsonIgnore
+  public void setMerged(boolean merged) {
+    this.merged = merged;
+  }
+
+  public void addCompletedChunk(int chunk) {
+    completedChunks.add(chunk);
+  }
+
+  public String toJsonString() {
+    ObjectMapper objectMapper = new ObjectMapper();
+    try {
+      return objectMapper.writeValueAsString(this);
+    } catch (JsonProcessingException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  public static ScramblingProgress fromJsonString(String jsonString) {
+    ObjectMapper objectMapper = new ObjectMapper();
+    objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    try {
+      return objectMapper.readValue(jsonString, ScramblingProgress.class);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+}
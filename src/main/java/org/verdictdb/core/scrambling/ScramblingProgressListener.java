@@ -0,0 +1,39 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.scrambling;
+
+import org.verdictdb.exception.VerdictDBException;
+
+/**
+ * Records the progress of a scrambling whose rows are staged in chunks, so that the scrambling can
+ * be resumed if interrupted. See ScramblingChunkSplitNode and ScramblingChunkNode.
+ */
+public interface ScramblingProgressListener {
+
+  /**
+   * Called after the (empty) scramble table is created and before any chunk is staged. The
+   * distributions of the scrambling method are determined at this point.
+   *
+   * @param chunkColumn The column of the original table by which the rows are split into chunks
+   * @param split How the rows are split into chunks
+   */
+  public void scrambleTableCreated(String chunkColumn, ScramblingChunkSplit split)
+      throws VerdictDBException;
+
+  /** Called after the rows of a chunk are staged in its own table. */
+  public void chunkStaged(int chunk) throws VerdictDBException;
+}
@@ -149,7 +149,12 @@ public class ColumnOp implements UnnamedColumn, SelectItem {
   public static ColumnOp count() {
     return new ColumnOp("count");
   }
-  
+
+  /** count(column): the number of non-null values */
+  public static ColumnOp count(UnnamedColumn column) {
+    return new ColumnOp("count", column);
+  }
+
   public static ColumnOp countdistinct() {
     return new ColumnOp("countdistinct");
   }
@@ -0,0 +1,47 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.sqlobject;
+
+/** Represents a create view query. */
+public class CreateViewQuery implements SqlConvertible {
+
+  private static final long serialVersionUID = 6930482207310154871L;
+
+  String schemaName;
+
+  String viewName;
+
+  SelectQuery select;
+
+  public CreateViewQuery(String schemaName, String viewName, SelectQuery select) {
+    this.schemaName = schemaName;
+    this.viewName = viewName;
+    this.select = select;
+  }
+
+  public String getSchemaName() {
+    return schemaName;
+  }
+
+  public String getViewName() {
+    return viewName;
+  }
+
+  public SelectQuery getSelect() {
+    return select;
+  }
+}
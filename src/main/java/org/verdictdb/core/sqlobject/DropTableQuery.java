@@ -16,6 +16,12 @@
 
 package org.verdictdb.core.sqlobject;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
 public class DropTableQuery implements SqlConvertible {
 
   private static final long serialVersionUID = -3481351240470800158L;
@@ -26,6 +32,12 @@ public class DropTableQuery implements SqlConvertible {
 
   boolean isIfExists;
 
+  // drops a view instead of a table
+  boolean isView = false;
+
+  // the tables dropped together by the same statement; supported only by some databases.
+  List<Pair<String, String>> otherTables = new ArrayList<>();
+
   public DropTableQuery(String schemaName, String tableName) {
     this.schemaName = schemaName;
     this.tableName = tableName;
@@ -43,6 +55,22 @@ public class DropTableQuery implements SqlConvertible {
     return tableName;
   }
 
+  /**
+   * Adds a table to drop in the same statement. Only the databases supporting {@link
+   * org.verdictdb.sqlsyntax.SqlSyntax#doesSupportDropMultipleTables()} can drop multiple tables.
+   */
+  public void addTable(String schemaName, String tableName) {
+    otherTables.add(new ImmutablePair<>(schemaName, tableName));
+  }
+
+  /** @return All the tables to drop, starting with the first one. */
+  public List<Pair<String, String>> getTables() {
+    List<Pair<String, String>> tables = new ArrayList<>();
+    tables.add(new ImmutablePair<>(schemaName, tableName));
+    tables.addAll(otherTables);
+    return tables;
+  }
+
   public boolean isIfExists() {
     return isIfExists;
   }
@@ -50,4 +78,12 @@ public class DropTableQuery implements SqlConvertible {
   public void setIfExists(boolean ifExists) {
     isIfExists = ifExists;
   }
+
+  public boolean isView() {
+    return isView;
+  }
+
+  public void setView(boolean view) {
+    isView = view;
+  }
 }
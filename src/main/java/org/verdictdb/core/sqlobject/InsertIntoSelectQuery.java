@@ -0,0 +1,79 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.core.sqlobject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts the result of a select query into an existing table. The columns of the select query
+ * must be in the same order as the columns of the table; for the databases that require the
+ * partition columns to be specified (e.g., Hive), the partition columns must come last.
+ */
+public class InsertIntoSelectQuery implements SqlConvertible {
+
+  private static final long serialVersionUID = 4862437935367211592L;
+
+  protected String schemaName;
+
+  protected String tableName;
+
+  protected SelectQuery select;
+
+  protected List<String> partitionColumns = new ArrayList<>();
+
+  protected String tempTableName = null;
+
+  public InsertIntoSelectQuery(String schemaName, String tableName, SelectQuery select) {
+    this.schemaName = schemaName;
+    this.tableName = tableName;
+    this.select = select;
+  }
+
+  public String getSchemaName() {
+    return schemaName;
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  public SelectQuery getSelect() {
+    return select;
+  }
+
+  public List<String> getPartitionColumns() {
+    return partitionColumns;
+  }
+
+  public void addPartitionColumn(String column) {
+    partitionColumns.add(column);
+  }
+
+  public String getTempTableName() {
+    return tempTableName;
+  }
+
+  /**
+   * @param tempTableName The name of the table (in the same schema) in which the rows are staged
+   *     before they are inserted into a partitioned table on Impala; if null, a random name is
+   *     used. The inserts that run concurrently must use different names.
+   */
+  public void setTempTableName(String tempTableName) {
+    this.tempTableName = tempTableName;
+  }
+}
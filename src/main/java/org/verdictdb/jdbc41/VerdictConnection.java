@@ -115,7 +115,7 @@ public class VerdictConnection implements java.sql.Connection {
 
   @Override
   public java.sql.PreparedStatement prepareStatement(String sql) throws SQLException {
-    return new VerdictPreparedStatement(new VerdictStatement(this, vc));
+    return new VerdictPreparedStatement(sql, new VerdictStatement(this, vc));
   }
 
   @Override
@@ -37,14 +37,62 @@ import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 
+import org.verdictdb.coordinator.QueryParameters;
+import org.verdictdb.exception.VerdictDBValueException;
+
+/**
+ * A prepared statement whose query may contain parameter markers (?). The plan of a select query is
+ * created at its first execution and reused for the later executions with different parameter
+ * values; only the values are replaced in a copy of the plan.
+ */
 public class VerdictPreparedStatement implements java.sql.PreparedStatement {
 
   VerdictStatement stmt;
 
+  String sql;
+
+  // SQL literals of the parameter values; null if not set
+  String[] parameters;
+
   public VerdictPreparedStatement(VerdictStatement stmt) {
+    this(null, stmt);
+  }
+
+  public VerdictPreparedStatement(String sql, VerdictStatement stmt) {
+    this.sql = sql;
     this.stmt = stmt;
+    this.parameters = new String[(sql == null) ? 0 : QueryParameters.countMarkers(sql)];
+  }
+
+  private void setParameter(int parameterIndex, Object value) throws SQLException {
+    if (parameterIndex < 1 || parameterIndex > parameters.length) {
+      throw new SQLException(
+          String.format(
+              "The parameter index %d is out of range (1 to %d).",
+              parameterIndex, parameters.length));
+    }
+    try {
+      parameters[parameterIndex - 1] =
+          QueryParameters.toLiteral(value, stmt.executionContext.getSyntax());
+    } catch (VerdictDBValueException e) {
+      throw new SQLException(e);
+    }
+  }
+
+  private List<String> getParameters() throws SQLException {
+    if (sql == null) {
+      throw new SQLException("No query was prepared for this statement.");
+    }
+    for (int i = 0; i < parameters.length; i++) {
+      if (parameters[i] == null) {
+        throw new SQLException(String.format("No value was set for the parameter %d.", i + 1));
+      }
+    }
+    return Arrays.asList(parameters);
   }
 
   @Override
@@ -269,62 +317,62 @@ public class VerdictPreparedStatement implements java.sql.PreparedStatement {
 
   @Override
   public ResultSet executeQuery() throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    return stmt.executeQuery(sql, getParameters());
   }
 
   @Override
   public int executeUpdate() throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    return stmt.executeUpdate(sql, getParameters());
   }
 
   @Override
   public void setNull(int parameterIndex, int sqlType) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, null);
   }
 
   @Override
   public void setBoolean(int parameterIndex, boolean x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setByte(int parameterIndex, byte x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setShort(int parameterIndex, short x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setInt(int parameterIndex, int x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setLong(int parameterIndex, long x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setFloat(int parameterIndex, float x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setDouble(int parameterIndex, double x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setString(int parameterIndex, String x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
@@ -334,17 +382,17 @@ public class VerdictPreparedStatement implements java.sql.PreparedStatement {
 
   @Override
   public void setDate(int parameterIndex, Date x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setTime(int parameterIndex, Time x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
@@ -364,22 +412,26 @@ public class VerdictPreparedStatement implements java.sql.PreparedStatement {
 
   @Override
   public void clearParameters() throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    Arrays.fill(parameters, null);
   }
 
   @Override
   public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    try {
+      setParameter(parameterIndex, QueryParameters.convert(x, targetSqlType));
+    } catch (VerdictDBValueException e) {
+      throw new SQLException(e);
+    }
   }
 
   @Override
   public void setObject(int parameterIndex, Object x) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public boolean execute() throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    return stmt.execute(sql, getParameters());
   }
 
   @Override
@@ -435,7 +487,7 @@ public class VerdictPreparedStatement implements java.sql.PreparedStatement {
 
   @Override
   public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, null);
   }
 
   @Override
@@ -455,7 +507,7 @@ public class VerdictPreparedStatement implements java.sql.PreparedStatement {
 
   @Override
   public void setNString(int parameterIndex, String value) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    setParameter(parameterIndex, value);
   }
 
   @Override
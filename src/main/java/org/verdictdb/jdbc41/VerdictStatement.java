@@ -21,12 +21,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.sql.SQLWarning;
+import java.util.List;
 
 import org.verdictdb.VerdictContext;
 import org.verdictdb.VerdictResultStream;
 import org.verdictdb.VerdictSingleResult;
 import org.verdictdb.commons.VerdictDBLogger;
 import org.verdictdb.coordinator.ExecutionContext;
+import org.verdictdb.coordinator.QueryParameters;
 import org.verdictdb.exception.VerdictDBException;
 
 public class VerdictStatement implements java.sql.Statement {
@@ -42,6 +44,8 @@ public class VerdictStatement implements java.sql.Statement {
   public VerdictStatement(Connection conn, VerdictContext context) {
     this.conn = conn;
     this.executionContext = context.createNewExecutionContext();
+    // the results are returned as result sets, which their users close.
+    this.executionContext.setStreamingResults(true);
   }
 
   /**
@@ -106,6 +110,7 @@ public class VerdictStatement implements java.sql.Statement {
   @Override
   public boolean execute(String sql) throws SQLException {
     try {
+      closeResult();
       result = executionContext.sql(sql, false);
       if (result == null) {
         return false;
@@ -128,6 +133,7 @@ public class VerdictStatement implements java.sql.Statement {
         new Thread(executeStream).start();
         return resultSet;
       }
+      closeResult();
       result = executionContext.sql(sql);
       return new VerdictResultSet(result);
     } catch (VerdictDBException e) {
@@ -138,6 +144,7 @@ public class VerdictStatement implements java.sql.Statement {
   @Override
   public int executeUpdate(String sql) throws SQLException {
     try {
+      closeResult();
       result = executionContext.sql(sql);
       return (int) result.getRowCount();
     } catch (VerdictDBException e) {
@@ -145,12 +152,66 @@ public class VerdictStatement implements java.sql.Statement {
     }
   }
 
+  /**
+   * Executes a query with parameter markers (?) for VerdictPreparedStatement.
+   *
+   * @param parameters SQL literals in the order of the markers
+   */
+  boolean execute(String sql, List<String> parameters) throws SQLException {
+    try {
+      closeResult();
+      result = executionContext.sql(sql, parameters, false);
+      if (result == null) {
+        return false;
+      }
+      return !result.isEmpty();
+    } catch (VerdictDBException e) {
+      throw new SQLException(e);
+    }
+  }
+
+  ResultSet executeQuery(String sql, List<String> parameters) throws SQLException {
+    try {
+      if (checkStreamQuery(sql)) {
+        // streamed queries are not planned ahead.
+        return executeQuery(QueryParameters.bind(sql, parameters));
+      }
+      closeResult();
+      result = executionContext.sql(sql, parameters, true);
+      return new VerdictResultSet(result);
+    } catch (VerdictDBException e) {
+      throw new SQLException(e);
+    }
+  }
+
+  int executeUpdate(String sql, List<String> parameters) throws SQLException {
+    try {
+      closeResult();
+      result = executionContext.sql(sql, parameters, true);
+      return (int) result.getRowCount();
+    } catch (VerdictDBException e) {
+      throw new SQLException(e);
+    }
+  }
+
   @Override
   public void close() throws SQLException {
+    closeResult();
     // dongyoungy: is this correct for close() to also call terminate() just like cancel()?
     executionContext.terminate();
   }
 
+  /**
+   * Closes the current result, which may still hold a database connection. As with other JDBC
+   * statements, the result is closed when the statement executes another query or is closed.
+   */
+  private void closeResult() {
+    if (result != null) {
+      result.close();
+      result = null;
+    }
+  }
+
   @Override
   public boolean isClosed() throws SQLException {
     // TODO Auto-generated method stub
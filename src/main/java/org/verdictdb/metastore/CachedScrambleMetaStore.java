@@ -8,6 +8,8 @@ public class CachedScrambleMetaStore extends VerdictMetaStore {
   
   ScrambleMetaSet cachedMetaSet = null;
   
+  private long version = 0;
+  
   public CachedScrambleMetaStore(VerdictMetaStore metaStore) {
     this.originalMetaStore = metaStore;
   }
@@ -23,6 +25,15 @@ public class CachedScrambleMetaStore extends VerdictMetaStore {
   
   public void refreshCache() {
     cachedMetaSet = originalMetaStore.retrieve();
+    version++;
+  }
+  
+  /**
+   * @return The number of times the cache has been refreshed; used to tell whether the plans made
+   *     with earlier metadata are still valid.
+   */
+  public long getVersion() {
+    return version;
   }
 
 }
@@ -34,6 +34,7 @@ import org.verdictdb.connection.DbmsQueryResult;
 import org.verdictdb.coordinator.VerdictSingleResultFromDbmsQueryResult;
 import org.verdictdb.core.scrambling.ScrambleMeta;
 import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.scrambling.ScramblingProgress;
 import org.verdictdb.core.sqlobject.BaseColumn;
 import org.verdictdb.core.sqlobject.BaseTable;
 import org.verdictdb.core.sqlobject.CreateSchemaQuery;
@@ -66,6 +67,13 @@ public class ScrambleMetaStore extends VerdictMetaStore {
 
   private static final String DELETED = "DELETED";
 
+  // the method of the entries recording a scrambling in progress; see ScramblingProgress
+  private static final String IN_PROGRESS = "IN_PROGRESS";
+
+  private static final String COMPLETED_CHUNK = "COMPLETED_CHUNK";
+
+  private static final String MERGED = "MERGED";
+
   private DbmsConnection conn;
 
   private String storeSchema;
@@ -221,6 +229,102 @@ public class ScrambleMetaStore extends VerdictMetaStore {
    * @throws VerdictDBException
    */
   public void addToStore(ScrambleMetaSet scrambleMetaSet) throws VerdictDBException {
+    createStoreIfNotExists();
+
+    // insert a new entry
+    StringBuilder insertSqls = new StringBuilder();
+    for (ScrambleMeta meta : scrambleMetaSet) {
+      InsertValuesQuery q = createInsertMetaQuery(meta);
+      String s = QueryToSql.convert(conn.getSyntax(), q);
+      LOG.debug("Adding a new scramble meta entry with the query: {}", s);
+      insertSqls.append(s);
+      insertSqls.append("; ");
+    }
+    conn.execute(insertSqls.toString());
+  }
+
+  /**
+   * Records that a scramble is being created in chunks. Until the metadata of the completed
+   * scramble is added, the scramble is not retrieved by retrieve().
+   *
+   * @param progress The metadata of the scramble and the chunks by which it is inserted
+   * @throws VerdictDBException
+   */
+  public void addInProgressToStore(ScramblingProgress progress) throws VerdictDBException {
+    createStoreIfNotExists();
+    ScrambleMeta meta = progress.getMeta();
+    InsertValuesQuery query = createInsertQuery(meta, IN_PROGRESS, progress.toJsonString());
+    conn.execute(QueryToSql.convert(conn.getSyntax(), query));
+  }
+
+  /**
+   * Records that a chunk of a scramble in progress (see addInProgressToStore()) is inserted.
+   *
+   * @param meta The metadata of the scramble
+   * @param chunk The chunk inserted
+   * @throws VerdictDBException
+   */
+  public void addCompletedChunkToStore(ScrambleMeta meta, int chunk) throws VerdictDBException {
+    InsertValuesQuery query = createInsertQuery(meta, COMPLETED_CHUNK, String.valueOf(chunk));
+    conn.execute(QueryToSql.convert(conn.getSyntax(), query));
+  }
+
+  /**
+   * Records that all the chunks of a scramble in progress (see addInProgressToStore()) are inserted
+   * into the scramble table.
+   *
+   * @param meta The metadata of the scramble
+   * @throws VerdictDBException
+   */
+  public void addMergedToStore(ScrambleMeta meta) throws VerdictDBException {
+    InsertValuesQuery query = createInsertQuery(meta, MERGED, String.valueOf(true));
+    conn.execute(QueryToSql.convert(conn.getSyntax(), query));
+  }
+
+  /**
+   * Retrieves the progress of a scramble whose creation in chunks was not completed.
+   *
+   * @return The progress recorded by the latest addInProgressToStore() and the chunks completed
+   *     (and merged) since; null if the latest entry of the scramble is not in progress.
+   * @throws VerdictDBException
+   */
+  public ScramblingProgress retrieveInProgress(String scrambleSchema, String scrambleTable)
+      throws VerdictDBException {
+    if (!conn.getSchemas().contains(storeSchema)
+        || !conn.getTables(storeSchema).contains(getMetaStoreTableName())) {
+      return null;
+    }
+
+    String sql = createRetrieveQuery(conn, storeSchema, getMetaStoreTableName());
+    DbmsQueryResult result = conn.execute(sql);
+    Set<Integer> completedChunks = new HashSet<>();
+    boolean merged = false;
+    while (result.next()) {
+      if (!result.getString(2).equals(scrambleSchema)
+          || !result.getString(3).equals(scrambleTable)) {
+        continue;
+      }
+      String method = result.getString(6);
+      if (COMPLETED_CHUNK.equals(method)) {
+        completedChunks.add(Integer.valueOf(result.getString(5)));
+      } else if (MERGED.equals(method)) {
+        merged = true;
+      } else if (IN_PROGRESS.equals(method)) {
+        ScramblingProgress progress = ScramblingProgress.fromJsonString(result.getString(5));
+        for (int chunk : completedChunks) {
+          progress.addCompletedChunk(chunk);
+        }
+        progress.setMerged(merged);
+        return progress;
+      } else {
+        // completed or deleted
+        return null;
+      }
+    }
+    return null;
+  }
+
+  private void createStoreIfNotExists() throws VerdictDBException {
     String sql;
 
     // create a schema if not exists
@@ -237,17 +341,23 @@ public class ScrambleMetaStore extends VerdictMetaStore {
       sql = QueryToSql.convert(conn.getSyntax(), createTableQuery);
       conn.execute(sql);
     }
+  }
 
-    // insert a new entry
-    StringBuilder insertSqls = new StringBuilder();
-    for (ScrambleMeta meta : scrambleMetaSet) {
-      InsertValuesQuery q = createInsertMetaQuery(meta);
-      String s = QueryToSql.convert(conn.getSyntax(), q);
-      LOG.debug("Adding a new scramble meta entry with the query: {}", s);
-      insertSqls.append(s);
-      insertSqls.append("; ");
-    }
-    conn.execute(insertSqls.toString());
+  private InsertValuesQuery createInsertQuery(ScrambleMeta meta, String method, String data) {
+    InsertValuesQuery query = new InsertValuesQuery();
+    query.setSchemaName(getStoreSchema());
+    query.setTableName(getMetaStoreTableName());
+    VerdictTimestamp timestamp = new VerdictTimestamp(new Date());
+    query.setValues(
+        Arrays.<Object>asList(
+            meta.getOriginalSchemaName(),
+            meta.getOriginalTableName(),
+            meta.getSchemaName(),
+            meta.getTableName(),
+            method,
+            timestamp,
+            data));
+    return query;
   }
 
   private CreateTableDefinitionQuery createScrambleMetaStoreTableStatement() {
@@ -271,29 +381,7 @@ public class ScrambleMetaStore extends VerdictMetaStore {
   }
 
   private InsertValuesQuery createInsertMetaQuery(ScrambleMeta meta) {
-    InsertValuesQuery query = new InsertValuesQuery();
-    query.setSchemaName(getStoreSchema());
-    query.setTableName(getMetaStoreTableName());
-
-    String originalSchema = meta.getOriginalSchemaName();
-    String originalTable = meta.getOriginalTableName();
-    String scrambleSchema = meta.getSchemaName();
-    String scrambleTable = meta.getTableName();
-    String scrambleMethod = meta.getMethod();
-    VerdictTimestamp timestamp = new VerdictTimestamp(new Date());
-    //    System.out.println("new date: " + timestamp);
-    //    System.out.println("calendar: " + Calendar.getInstance().get(Calendar.MILLISECOND));
-    String jsonString = meta.toJsonString();
-    query.setValues(
-        Arrays.<Object>asList(
-            originalSchema,
-            originalTable,
-            scrambleSchema,
-            scrambleTable,
-            scrambleMethod,
-            timestamp,
-            jsonString));
-    return query;
+    return createInsertQuery(meta, meta.getMethod(), meta.toJsonString());
   }
 
   /**
@@ -328,20 +416,7 @@ public class ScrambleMetaStore extends VerdictMetaStore {
       }
 
       // now ready to retrieve
-      String tableAlias = "t";
-      SelectQuery query =
-          SelectQuery.create(
-              Arrays.<SelectItem>asList(
-                  new BaseColumn(tableAlias, ORIGINAL_SCHEMA_COLUMN),
-                  new BaseColumn(tableAlias, ORIGINAL_TABLE_COLUMN),
-                  new BaseColumn(tableAlias, SCRAMBLE_SCHEMA_COLUMN),
-                  new BaseColumn(tableAlias, SCRAMBLE_TABLE_COLUMN),
-                  new BaseColumn(tableAlias, ADDED_AT_COLUMN),
-                  new BaseColumn(tableAlias, DATA_COLUMN)),
-              new BaseTable(storeSchema, storeTable, tableAlias));
-      query.addOrderby(new OrderbyAttribute(ADDED_AT_COLUMN, "desc"));
-      String sql = QueryToSql.convert(conn.getSyntax(), query);
-      DbmsQueryResult result = conn.execute(sql);
+      DbmsQueryResult result = conn.execute(createRetrieveQuery(conn, storeSchema, storeTable));
 
       Set<Pair<String, String>> deletedSet = new HashSet<>();
       Set<Pair<String, String>> addedSet = new HashSet<>();
@@ -367,6 +442,14 @@ public class ScrambleMetaStore extends VerdictMetaStore {
         if (addedSet.contains(pair)) {
           continue;
         }
+        // a scramble being created is not used until completed
+        String method = result.getString(6);
+        if (IN_PROGRESS.equals(method)
+            || COMPLETED_CHUNK.equals(method)
+            || MERGED.equals(method)) {
+          addedSet.add(pair);
+          continue;
+        }
         ScrambleMeta meta = ScrambleMeta.fromJsonString(jsonString);
         retrieved.addScrambleMeta(meta);
 
@@ -378,4 +461,23 @@ public class ScrambleMetaStore extends VerdictMetaStore {
 
     return retrieved;
   }
+
+  /** Reads all the entries, the latest first. */
+  private static String createRetrieveQuery(
+      DbmsConnection conn, String storeSchema, String storeTable) throws VerdictDBException {
+    String tableAlias = "t";
+    SelectQuery query =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new BaseColumn(tableAlias, ORIGINAL_SCHEMA_COLUMN),
+                new BaseColumn(tableAlias, ORIGINAL_TABLE_COLUMN),
+                new BaseColumn(tableAlias, SCRAMBLE_SCHEMA_COLUMN),
+                new BaseColumn(tableAlias, SCRAMBLE_TABLE_COLUMN),
+                new BaseColumn(tableAlias, ADDED_AT_COLUMN),
+                new BaseColumn(tableAlias, DATA_COLUMN),
+                new BaseColumn(tableAlias, SCRAMBLE_METHOD_COLUMN)),
+            new BaseTable(storeSchema, storeTable, tableAlias));
+    query.addOrderby(new OrderbyAttribute(ADDED_AT_COLUMN, "desc"));
+    return QueryToSql.convert(conn.getSyntax(), query);
+  }
 }
@@ -52,9 +52,7 @@ public class RelationStandardizer {
 
   private SqlSyntax syntax;
 
-  private static long itemID = 1;
-
-  private static long duplicateIdentifer = 1;
+  private final AliasCounter counter;
 
   private static String verdictTableAliasPrefix = "vt";
 
@@ -83,13 +81,31 @@ public class RelationStandardizer {
   // alias name we replaced.
   private HashMap<String, String> oldTableAliasMap = new HashMap<>();
 
+  /**
+   * The numbers appended to the aliases generated while a query is standardized. The standardizers
+   * created for the subqueries of a query share the counter of the query's standardizer, while
+   * different queries have their own; thus, queries can be standardized on different threads at the
+   * same time, and a query is always standardized in the same way.
+   */
+  private static class AliasCounter {
+
+    long itemID = 1;
+
+    long duplicateIdentifier = 1;
+  }
+
   public RelationStandardizer(MetaDataProvider meta) {
-    this.meta = meta;
+    this(meta, null);
   }
 
   public RelationStandardizer(MetaDataProvider meta, SqlSyntax syntax) {
+    this(meta, syntax, new AliasCounter());
+  }
+
+  private RelationStandardizer(MetaDataProvider meta, SqlSyntax syntax, AliasCounter counter) {
     this.meta = meta;
     this.syntax = syntax;
+    this.counter = counter;
   }
   
 
@@ -176,10 +192,11 @@ public class RelationStandardizer {
             duplicateColNameAndColAlias.put(
                 new ImmutablePair<>(
                     ((BaseColumn) sel).getTableSourceAlias(), ((BaseColumn) sel).getColumnName()),
-                ((BaseColumn) sel).getColumnName() + duplicateIdentifer);
+                ((BaseColumn) sel).getColumnName() + counter.duplicateIdentifier);
             newSelectItemList.add(
                 new AliasedColumn(
-                    (BaseColumn) sel, ((BaseColumn) sel).getColumnName() + duplicateIdentifer++));
+                    (BaseColumn) sel,
+                    ((BaseColumn) sel).getColumnName() + counter.duplicateIdentifier++));
           }
         } else if (sel instanceof ColumnOp) {
           // First replace the possible base column inside the columnop using the same way we did on
@@ -187,20 +204,20 @@ public class RelationStandardizer {
           sel = replaceFilter((ColumnOp) sel);
 
           if (((ColumnOp) sel).getOpType().equals("count")) {
-            columnOpAliasMap.put((ColumnOp) sel, "c" + itemID);
-            newSelectItemList.add(new AliasedColumn((ColumnOp) sel, "c" + itemID++));
+            columnOpAliasMap.put((ColumnOp) sel, "c" + counter.itemID);
+            newSelectItemList.add(new AliasedColumn((ColumnOp) sel, "c" + counter.itemID++));
           } else if (((ColumnOp) sel).getOpType().equals("sum")) {
-            columnOpAliasMap.put((ColumnOp) sel, "s" + itemID);
-            newSelectItemList.add(new AliasedColumn((ColumnOp) sel, "s" + itemID++));
+            columnOpAliasMap.put((ColumnOp) sel, "s" + counter.itemID);
+            newSelectItemList.add(new AliasedColumn((ColumnOp) sel, "s" + counter.itemID++));
           } else if (((ColumnOp) sel).getOpType().equals("avg")) {
-            columnOpAliasMap.put((ColumnOp) sel, "a" + itemID);
-            newSelectItemList.add(new AliasedColumn((ColumnOp) sel, "a" + itemID++));
+            columnOpAliasMap.put((ColumnOp) sel, "a" + counter.itemID);
+            newSelectItemList.add(new AliasedColumn((ColumnOp) sel, "a" + counter.itemID++));
           } else if (((ColumnOp) sel).getOpType().equals("countdistinct")) {
-            columnOpAliasMap.put((ColumnOp) sel, "cd" + itemID);
-            newSelectItemList.add(new AliasedColumn((ColumnOp) sel, "cd" + itemID++));
+            columnOpAliasMap.put((ColumnOp) sel, "cd" + counter.itemID);
+            newSelectItemList.add(new AliasedColumn((ColumnOp) sel, "cd" + counter.itemID++));
           } else {
-            columnOpAliasMap.put((ColumnOp) sel, "vc" + itemID);
-            newSelectItemList.add(new AliasedColumn((ColumnOp) sel, "vc" + itemID++));
+            columnOpAliasMap.put((ColumnOp) sel, "vc" + counter.itemID);
+            newSelectItemList.add(new AliasedColumn((ColumnOp) sel, "vc" + counter.itemID++));
           }
         }
       } else {
@@ -237,7 +254,7 @@ public class RelationStandardizer {
           searchList.add(col);
         }
       } else if (cond instanceof SubqueryColumn) {
-        RelationStandardizer g = new RelationStandardizer(meta, syntax);
+        RelationStandardizer g = new RelationStandardizer(meta, syntax, counter);
         g.oldTableAliasMap.putAll(oldTableAliasMap);
         g.setColNameAndColAlias(colNameAndColAlias);
         g.setColumnOpAliasMap(columnOpAliasMap);
@@ -408,9 +425,9 @@ public class RelationStandardizer {
         String alias = table.getAliasName().get();
         alias = alias.replace("`", "");
         alias = alias.replace("\"", "");
-        oldTableAliasMap.put(alias, verdictTableAliasPrefix + itemID);
+        oldTableAliasMap.put(alias, verdictTableAliasPrefix + counter.itemID);
       }
-      table.setAliasName(verdictTableAliasPrefix + itemID++);
+      table.setAliasName(verdictTableAliasPrefix + counter.itemID++);
     }
     // if (!table.getAliasName().isPresent() && !(table instanceof JoinTable)) {
     //  table.setAliasName(verdictTableAliasPrefix + itemID++);
@@ -447,7 +464,7 @@ public class RelationStandardizer {
       
     } else if (table instanceof SelectQuery) {
       List<String> colName = new ArrayList<>();
-      RelationStandardizer g = new RelationStandardizer(meta, syntax);
+      RelationStandardizer g = new RelationStandardizer(meta, syntax, counter);
       g.oldTableAliasMap.putAll(oldTableAliasMap);
       g.setTableInfoAndAlias(tableInfoAndAlias);
       g.setColNameAndTableAlias(colNameAndTableAlias);
@@ -625,7 +642,10 @@ public class RelationStandardizer {
     return columnOpAliasMap;
   }
 
-  public static void resetItemID() {
-    itemID = 1;
-  }
+  /**
+   * @deprecated The aliases of each query are numbered from one by its own standardizer; there is no
+   *     longer a global counter to reset.
+   */
+  @Deprecated
+  public static void resetItemID() {}
 }
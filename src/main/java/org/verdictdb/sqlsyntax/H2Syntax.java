@@ -63,6 +63,11 @@ public class H2Syntax extends SqlSyntax {
     return false;
   }
 
+  @Override
+  public boolean doesSupportDropMultipleTables() {
+    return true;
+  }
+
   @Override
   public String randFunction() {
     return "rand()";
@@ -117,7 +122,16 @@ public class H2Syntax extends SqlSyntax {
 
   @Override
   public String hashFunction(String column) {
-    // TODO Auto-generated method stub
-    return null;
+    // ora_hash(expr, max) returns an integer between 0 and max (inclusive).
+    String f =
+        String.format(
+            "ora_hash(%s, %d) / cast(%d as double)", column, hashPrecision - 1, hashPrecision);
+    return f;
+  }
+
+  @Override
+  public String quoteStringLiteral(String value) {
+    // a backslash is an ordinary character in the string literals of standard SQL.
+    return "'" + value.replace("'", "''") + "'";
   }
 }
@@ -36,6 +36,11 @@ public class MysqlSyntax extends SqlSyntax {
     return true;
   }
 
+  @Override
+  public boolean doesSupportDropMultipleTables() {
+    return true;
+  }
+
   @Override
   public void dropTable(String schema, String tablename) {}
 
@@ -229,5 +234,9 @@ public class MysqlSyntax extends SqlSyntax {
     return f;
   }
 
-
+  @Override
+  public String quoteStringLiteral(String value) {
+    // quotes are doubled (not escaped) so that literals stay closed under NO_BACKSLASH_ESCAPES.
+    return "'" + value.replace("\\", "\\\\").replace("'", "''") + "'";
+  }
 }
@@ -73,6 +73,16 @@ public class PostgresqlSyntax extends SqlSyntax {
     return true;
   }
 
+  @Override
+  public boolean doesSupportDropMultipleTables() {
+    return true;
+  }
+
+  @Override
+  public boolean doesPreferViewsForAggCombiners() {
+    return true;
+  }
+
   @Override
   public String randFunction() {
     return "random()";
@@ -167,4 +177,11 @@ public class PostgresqlSyntax extends SqlSyntax {
         column, hashPrecision, hashPrecision);
     return f;
   }
+
+  @Override
+  public String quoteStringLiteral(String value) {
+    // an escape string constant reads backslashes the same way regardless of
+    // standard_conforming_strings.
+    return "E'" + value.replace("\\", "\\\\").replace("'", "''") + "'";
+  }
 }
@@ -34,6 +34,11 @@ public class PrestoSyntax extends SqlSyntax {
     return false;
   }
 
+  @Override
+  public boolean doesPreferViewsForAggCombiners() {
+    return true;
+  }
+
   @Override
   public void dropTable(String schema, String tablename) {}
 
@@ -174,4 +179,10 @@ public class PrestoSyntax extends SqlSyntax {
         column, hashPrecision, hashPrecision);
     return f;
   }
+
+  @Override
+  public String quoteStringLiteral(String value) {
+    // a backslash is an ordinary character in the string literals of standard SQL.
+    return "'" + value.replace("'", "''") + "'";
+  }
 }
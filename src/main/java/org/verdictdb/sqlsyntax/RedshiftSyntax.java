@@ -36,6 +36,11 @@ public class RedshiftSyntax extends SqlSyntax {
     return true;
   }
 
+  @Override
+  public boolean doesSupportDropMultipleTables() {
+    return true;
+  }
+
   @Override
   public void dropTable(String schema, String tablename) {}
 
@@ -233,4 +238,10 @@ public class RedshiftSyntax extends SqlSyntax {
         column, hashPrecision, hashPrecision);
     return f;
   }
+
+  @Override
+  public String quoteStringLiteral(String value) {
+    // Redshift reads a backslash as an escape character.
+    return "'" + value.replace("\\", "\\\\").replace("'", "''") + "'";
+  }
 }
@@ -25,6 +25,11 @@ public class SparkSyntax extends SqlSyntax {
     return true;
   }
 
+  @Override
+  public boolean doesPreferViewsForAggCombiners() {
+    return true;
+  }
+
   @Override
   public void dropTable(String schema, String tablename) {}
 
@@ -127,4 +127,36 @@ public abstract class SqlSyntax {
   public String getPrimaryKey(String schema, String table) {
     return null;
   }
+
+  /**
+   * Whether a single DROP TABLE statement can drop multiple (comma-separated) tables.
+   *
+   * @return True if supported
+   */
+  public boolean doesSupportDropMultipleTables() {
+    return false;
+  }
+
+  /**
+   * Whether the partial aggregates of progressive aggregation should be merged by views instead of
+   * tables. Views avoid writing intermediate results, and suit the databases for which reading
+   * nested views is cheap compared to creating tables.
+   *
+   * @return True if the combiners of partial aggregates should create views
+   */
+  public boolean doesPreferViewsForAggCombiners() {
+    return false;
+  }
+
+  /**
+   * Writes a value as a string literal. By default, a backslash escapes the next character in a
+   * string literal (as in Hive, Spark, and Impala), so both backslashes and quotes are escaped with
+   * a backslash.
+   *
+   * @param value The value to quote
+   * @return The quoted string literal
+   */
+  public String quoteStringLiteral(String value) {
+    return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+  }
 }
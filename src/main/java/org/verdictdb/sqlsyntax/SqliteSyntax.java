@@ -127,4 +127,10 @@ public class SqliteSyntax extends SqlSyntax {
   public String hashFunction(String column) {
     return null;
   }
+
+  @Override
+  public String quoteStringLiteral(String value) {
+    // a backslash is an ordinary character in the string literals of standard SQL.
+    return "'" + value.replace("'", "''") + "'";
+  }
 }
@@ -109,6 +109,7 @@ public class CreateTableToSql {
             new AsteriskColumn(), new BaseTable(schemaName, tempTableName, aliasName));
     CreateTableAsSelectQuery insert =
         new CreateTableAsSelectQuery(schemaName, tableName, selectAllFromTemp);
+    insert.setIfNotExists(query.isIfNotExists());
     for (String col : query.getPartitionColumns()) {
       insert.addPartitionColumn(col);
     }
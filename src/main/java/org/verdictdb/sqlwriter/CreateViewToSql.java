@@ -0,0 +1,43 @@
+/*
+ *    Copyright 2018 University of Michigan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.verdictdb.sqlwriter;
+
+import org.verdictdb.core.sqlobject.CreateViewQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.SqlSyntax;
+
+public class CreateViewToSql {
+
+  protected SqlSyntax syntax;
+
+  public CreateViewToSql(SqlSyntax syntax) {
+    this.syntax = syntax;
+  }
+
+  public String toSql(CreateViewQuery query) throws VerdictDBException {
+    StringBuilder sql = new StringBuilder();
+    sql.append("create view ");
+    sql.append(syntax.quoteName(query.getSchemaName()));
+    sql.append(".");
+    sql.append(syntax.quoteName(query.getViewName()));
+    sql.append(" as ");
+
+    SelectQueryToSql selectWriter = new SelectQueryToSql(syntax);
+    sql.append(selectWriter.toSql(query.getSelect()));
+    return sql.toString();
+  }
+}
@@ -16,8 +16,12 @@
 
 package org.verdictdb.sqlwriter;
 
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.Pair;
 import org.verdictdb.core.sqlobject.DropTableQuery;
 import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
 import org.verdictdb.sqlsyntax.SqlSyntax;
 
 public class DropTableToSql {
@@ -31,17 +35,24 @@ public class DropTableToSql {
   public String toSql(DropTableQuery query) throws VerdictDBException {
     StringBuilder sql = new StringBuilder();
 
-    String schemaName = query.getSchemaName();
-    String tableName = query.getTableName();
+    List<Pair<String, String>> tables = query.getTables();
+    if (tables.size() > 1 && (query.isView() || !syntax.doesSupportDropMultipleTables())) {
+      throw new VerdictDBValueException("The database cannot drop multiple tables at once.");
+    }
 
     // table
-    sql.append("drop table ");
+    sql.append(query.isView() ? "drop view " : "drop table ");
     if (query.isIfExists()) {
       sql.append("if exists ");
     }
-    sql.append(quoteName(schemaName));
-    sql.append(".");
-    sql.append(quoteName(tableName));
+    for (int i = 0; i < tables.size(); i++) {
+      if (i > 0) {
+        sql.append(", ");
+      }
+      sql.append(quoteName(tables.get(i).getLeft()));
+      sql.append(".");
+      sql.append(quoteName(tables.get(i).getRight()));
+    }
 
     return sql.toString();
   }
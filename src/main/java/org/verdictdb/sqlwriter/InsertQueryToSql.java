@@ -17,11 +17,21 @@
 package org.verdictdb.sqlwriter;
 
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.verdictdb.commons.VerdictTimestamp;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.CreateTableAsSelectQuery;
+import org.verdictdb.core.sqlobject.DropTableQuery;
+import org.verdictdb.core.sqlobject.InsertIntoSelectQuery;
 import org.verdictdb.core.sqlobject.InsertValuesQuery;
+import org.verdictdb.core.sqlobject.SelectQuery;
 import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.HiveSyntax;
+import org.verdictdb.sqlsyntax.ImpalaSyntax;
 import org.verdictdb.sqlsyntax.PrestoSyntax;
+import org.verdictdb.sqlsyntax.SparkSyntax;
 import org.verdictdb.sqlsyntax.SqlSyntax;
 
 public class InsertQueryToSql {
@@ -70,6 +80,98 @@ public class InsertQueryToSql {
     return sql.toString();
   }
 
+  public String toSql(InsertIntoSelectQuery query) throws VerdictDBException {
+    if (syntax instanceof ImpalaSyntax && !query.getPartitionColumns().isEmpty()) {
+      return insertImpalaPartitionTableToSql(query);
+    }
+    return insertIntoSelectToSql(query);
+  }
+
+  private String insertIntoSelectToSql(InsertIntoSelectQuery query) throws VerdictDBException {
+    StringBuilder sql = new StringBuilder();
+
+    // Hive-like databases need the partition columns for dynamic partitioning.
+    boolean isPartitionSpecified =
+        (syntax instanceof HiveSyntax
+                || syntax instanceof ImpalaSyntax
+                || syntax instanceof SparkSyntax)
+            && !query.getPartitionColumns().isEmpty();
+
+    // table
+    sql.append("insert into ");
+    if (isPartitionSpecified) {
+      sql.append("table ");
+    }
+    sql.append(quoteName(query.getSchemaName()));
+    sql.append(".");
+    sql.append(quoteName(query.getTableName()));
+    sql.append(" ");
+
+    // partitions
+    if (isPartitionSpecified) {
+      sql.append("partition (");
+      boolean isFirst = true;
+      for (String column : query.getPartitionColumns()) {
+        if (isFirst == false) {
+          sql.append(", ");
+        }
+        sql.append(quoteName(column));
+        isFirst = false;
+      }
+      sql.append(") ");
+    }
+
+    // select
+    SelectQueryToSql selectWriter = new SelectQueryToSql(syntax);
+    sql.append(selectWriter.toSql(query.getSelect()));
+
+    return sql.toString();
+  }
+
+  private String insertImpalaPartitionTableToSql(InsertIntoSelectQuery query)
+      throws VerdictDBException {
+
+    // Impala's dynamic partitioning is faulty when used in conjunction with rand(); thus, the rows
+    // are first materialized in a non-partitioned temp table (see CreateTableToSql).
+    StringBuilder sql = new StringBuilder();
+
+    String schemaName = query.getSchemaName();
+    String tableName = query.getTableName();
+
+    // this table will be created and dropped at the end
+    String tempTableName = query.getTempTableName();
+    if (tempTableName == null) {
+      int randomNum = ThreadLocalRandom.current().nextInt(0, 10000);
+      tempTableName = "verdictdb_scrambling_temp_" + randomNum;
+    }
+
+    // create a non-partitioned temp table as a select
+    CreateTableAsSelectQuery tempCreate =
+        new CreateTableAsSelectQuery(schemaName, tempTableName, query.getSelect());
+    sql.append(QueryToSql.convert(syntax, tempCreate));
+    sql.append(";");
+
+    // insert the temp table into the partitioned table.
+    String aliasName = "t";
+    SelectQuery selectAllFromTemp =
+        SelectQuery.create(
+            new AsteriskColumn(), new BaseTable(schemaName, tempTableName, aliasName));
+    InsertIntoSelectQuery insert =
+        new InsertIntoSelectQuery(schemaName, tableName, selectAllFromTemp);
+    for (String column : query.getPartitionColumns()) {
+      insert.addPartitionColumn(column);
+    }
+    sql.append(insertIntoSelectToSql(insert));
+    sql.append(";");
+
+    // drop the temp table
+    DropTableQuery drop = new DropTableQuery(schemaName, tempTableName);
+    sql.append(QueryToSql.convert(syntax, drop));
+    sql.append(";");
+
+    return sql.toString();
+  }
+
   String quoteName(String name) {
     String quoteString = syntax.getQuoteString();
     return quoteString + name + quoteString;
@@ -18,7 +18,9 @@ package org.verdictdb.sqlwriter;
 
 import org.verdictdb.core.sqlobject.CreateSchemaQuery;
 import org.verdictdb.core.sqlobject.CreateTableQuery;
+import org.verdictdb.core.sqlobject.CreateViewQuery;
 import org.verdictdb.core.sqlobject.DropTableQuery;
+import org.verdictdb.core.sqlobject.InsertIntoSelectQuery;
 import org.verdictdb.core.sqlobject.InsertValuesQuery;
 import org.verdictdb.core.sqlobject.SelectQuery;
 import org.verdictdb.core.sqlobject.SetOperationRelation;
@@ -44,12 +46,18 @@ public class QueryToSql {
     } else if (query instanceof CreateTableQuery) {
       CreateTableToSql tosql = new CreateTableToSql(syntax);
       return tosql.toSql((CreateTableQuery) query);
+    } else if (query instanceof CreateViewQuery) {
+      CreateViewToSql tosql = new CreateViewToSql(syntax);
+      return tosql.toSql((CreateViewQuery) query);
     } else if (query instanceof DropTableQuery) {
       DropTableToSql tosql = new DropTableToSql(syntax);
       return tosql.toSql((DropTableQuery) query);
     } else if (query instanceof InsertValuesQuery) {
       InsertQueryToSql tosql = new InsertQueryToSql(syntax);
       return tosql.toSql((InsertValuesQuery) query);
+    } else if (query instanceof InsertIntoSelectQuery) {
+      InsertQueryToSql tosql = new InsertQueryToSql(syntax);
+      return tosql.toSql((InsertIntoSelectQuery) query);
     } else if (query instanceof SetOperationRelation) {
       SetOperationToSql tosql = new SetOperationToSql(syntax);
       return tosql.toSql((SetOperationRelation) query);
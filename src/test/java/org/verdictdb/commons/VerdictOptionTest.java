@@ -70,4 +70,78 @@ public class VerdictOptionTest {
     assertEquals("mymeta", option.getVerdictMetaSchemaName());
     assertEquals("mytemp", option.getVerdictTempSchemaName());
   }
+
+  @Test
+  public void threadModeParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals(VerdictOption.getDefaultThreadMode(), option.getVerdictThreadMode());
+
+    option.parseConnectionString("jdbc:db://localhost:3306?threadmode=virtual");
+    assertEquals("virtual", option.getVerdictThreadMode());
+
+    Properties prop = new Properties();
+    prop.setProperty("threadmode", "Platform");
+    option.parseProperties(prop);
+    assertEquals("platform", option.getVerdictThreadMode());
+  }
+
+  @Test
+  public void fetchSizeParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals(VerdictOption.getDefaultFetchSize(), option.getVerdictFetchSize());
+
+    option.parseConnectionString("jdbc:db://localhost:3306?fetchsize=500");
+    assertEquals(500, option.getVerdictFetchSize());
+
+    Properties prop = new Properties();
+    prop.setProperty("fetchsize", "10000");
+    option.parseProperties(prop);
+    assertEquals(10000, option.getVerdictFetchSize());
+  }
+
+  @Test
+  public void planCacheSizeParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals(VerdictOption.getDefaultPlanCacheSize(), option.getVerdictPlanCacheSize());
+
+    option.parseConnectionString("jdbc:db://localhost:3306?plancachesize=0");
+    assertEquals(0, option.getVerdictPlanCacheSize());
+
+    Properties prop = new Properties();
+    prop.setProperty("plancachesize", "16");
+    option.parseProperties(prop);
+    assertEquals(16, option.getVerdictPlanCacheSize());
+  }
+
+  @Test
+  public void metaDataCacheTtlParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals(VerdictOption.getDefaultMetaDataCacheTtl(), option.getVerdictMetaDataCacheTtl());
+
+    option.parseConnectionString("jdbc:db://localhost:3306?metadatacachettl=0");
+    assertEquals(0, option.getVerdictMetaDataCacheTtl());
+
+    Properties prop = new Properties();
+    prop.setProperty("metadatacachettl", "30");
+    option.parseProperties(prop);
+    assertEquals(30, option.getVerdictMetaDataCacheTtl());
+  }
+
+  @Test
+  public void accuracyTargetParseTest() {
+    VerdictOption option = new VerdictOption();
+    assertEquals(VerdictOption.getDefaultTargetError(), option.getVerdictTargetError(), 0);
+    assertEquals(VerdictOption.getDefaultConfidence(), option.getVerdictConfidence(), 0);
+
+    option.parseConnectionString("jdbc:db://localhost:3306?targeterror=0.01&confidence=0.99");
+    assertEquals(0.01, option.getVerdictTargetError(), 0);
+    assertEquals(0.99, option.getVerdictConfidence(), 0);
+
+    Properties prop = new Properties();
+    prop.setProperty("targeterror", "0.1");
+    prop.setProperty("confidence", "0.9");
+    option.parseProperties(prop);
+    assertEquals(0.1, option.getVerdictTargetError(), 0);
+    assertEquals(0.9, option.getVerdictConfidence(), 0);
+  }
 }
@@ -0,0 +1,154 @@
+package org.verdictdb.commons;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.connection.StreamingJdbcQueryResult;
+import org.verdictdb.coordinator.VerdictSingleResultFromDbmsQueryResult;
+import org.verdictdb.coordinator.VerdictSingleResultFromListData;
+import org.verdictdb.exception.VerdictDBException;
+
+public class VerdictResultColumnarWriterTest {
+
+  private static VerdictSingleResult createResult(int rowCount) {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < rowCount; i++) {
+      rows.add(
+          Arrays.<Object>asList(
+              (i % 3 == 0) ? null : (Object) i,
+              i * 0.5,
+              i % 2 == 0,
+              new BigDecimal(i + ".25"),
+              Date.valueOf("2018-01-0" + (i % 9 + 1)),
+              (i % 4 == 0) ? (Object) "x" : (Object) (long) i));
+    }
+    return new VerdictSingleResultFromListData(
+        Arrays.asList("i", "d", "b", "dec", "dt", "mixed"), rows);
+  }
+
+  private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static List<String> readStrings(DataInputStream in, int rowCount) throws IOException {
+    int[] offsets = new int[rowCount + 1];
+    for (int r = 0; r <= rowCount; r++) {
+      offsets[r] = in.readInt();
+    }
+    List<String> strings = new ArrayList<>();
+    for (int r = 0; r < rowCount; r++) {
+      strings.add(
+          new String(readBytes(in, offsets[r + 1] - offsets[r]), StandardCharsets.UTF_8));
+    }
+    return strings;
+  }
+
+  @Test
+  public void testWritesColumns() throws IOException {
+    VerdictSingleResult result = createResult(5);
+    DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(result.toColumnarBytes(100)));
+    assertEquals(VerdictResultColumnarWriter.MAGIC, in.readInt());
+    assertEquals(VerdictResultColumnarWriter.VERSION, in.readByte());
+    assertEquals(6, in.readInt());
+    assertEquals(5, in.readInt());
+
+    assertEquals(VerdictResultColumnarWriter.LONG, in.readByte());
+    assertArrayEquals(new byte[] {1, 0, 0, 1, 0}, readBytes(in, 5));
+    for (long expected : new long[] {0, 1, 2, 0, 4}) {
+      assertEquals(expected, in.readLong());
+    }
+
+    assertEquals(VerdictResultColumnarWriter.DOUBLE, in.readByte());
+    assertArrayEquals(new byte[5], readBytes(in, 5));
+    for (int r = 0; r < 5; r++) {
+      assertEquals(r * 0.5, in.readDouble(), 0);
+    }
+
+    assertEquals(VerdictResultColumnarWriter.BOOLEAN, in.readByte());
+    readBytes(in, 5);
+    assertArrayEquals(new byte[] {1, 0, 1, 0, 1}, readBytes(in, 5));
+
+    assertEquals(VerdictResultColumnarWriter.DECIMAL, in.readByte());
+    readBytes(in, 5);
+    assertEquals(Arrays.asList("0.25", "1.25", "2.25", "3.25", "4.25"), readStrings(in, 5));
+
+    assertEquals(VerdictResultColumnarWriter.STRING, in.readByte());
+    readBytes(in, 5);
+    assertEquals("2018-01-02", readStrings(in, 5).get(1));
+
+    // the columns whose values are of different kinds are written as strings.
+    assertEquals(VerdictResultColumnarWriter.STRING, in.readByte());
+    readBytes(in, 5);
+    assertEquals(Arrays.asList("x", "1", "2", "3", "x"), readStrings(in, 5));
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  public void testWritesInChunks() throws IOException {
+    VerdictSingleResult result = createResult(250);
+    int total = 0;
+    int chunkCount = 0;
+    while (true) {
+      DataInputStream in =
+          new DataInputStream(new ByteArrayInputStream(result.toColumnarBytes(100)));
+      in.readInt();
+      in.readByte();
+      in.readInt();
+      int rowCount = in.readInt();
+      if (rowCount == 0) {
+        break;
+      }
+      assertEquals(VerdictResultColumnarWriter.LONG, in.readByte());
+      readBytes(in, rowCount);
+      // the first value of each chunk continues from the previous chunk.
+      long first = in.readLong();
+      assertEquals((total % 3 == 0) ? 0 : total, first);
+      total += rowCount;
+      chunkCount++;
+    }
+    assertEquals(250, total);
+    assertEquals(3, chunkCount);
+    assertFalse(result.next());
+  }
+
+  @Test
+  public void testDoesNotMaterializeStreamedResult()
+      throws IOException, SQLException, VerdictDBException {
+    Connection conn = DriverManager.getConnection("jdbc:h2:mem:columnarwritertest", "", "");
+    JdbcConnection jdbc = JdbcConnection.create(conn);
+    DbmsQueryResult streamed = jdbc.executeStreaming("SELECT x FROM SYSTEM_RANGE(1, 3000)", 100);
+    VerdictSingleResult result = new VerdictSingleResultFromDbmsQueryResult(streamed, true);
+
+    DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(result.toColumnarBytes(2000)));
+    in.readInt();
+    in.readByte();
+    assertEquals(1, in.readInt());
+    assertEquals(2000, in.readInt());
+    // the remaining rows are still read from the database.
+    assertFalse(((StreamingJdbcQueryResult) streamed).isMaterialized());
+    result.close();
+    conn.close();
+  }
+}
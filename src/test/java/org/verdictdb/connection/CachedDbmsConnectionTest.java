@@ -0,0 +1,232 @@
+package org.verdictdb.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import org.verdictdb.VerdictContext;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.commons.VerdictOption;
+import org.verdictdb.coordinator.ExecutionContext;
+import org.verdictdb.exception.VerdictDBDbmsException;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class CachedDbmsConnectionTest {
+
+  static String schema = "cachedconntest";
+
+  static Connection h2conn;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    h2conn = DriverManager.getConnection("jdbc:h2:mem:cachedconntest;DB_CLOSE_DELAY=-1", "", "");
+    Statement stmt = h2conn.createStatement();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", schema));
+    stmt.execute(
+        String.format(
+            "CREATE SCHEMA IF NOT EXISTS \"%s\"", VerdictOption.getDefaultTempSchemaName()));
+    stmt.execute(
+        String.format(
+            "CREATE TABLE \"%s\".\"sales\" AS SELECT x AS \"id\", x AS \"price\" "
+                + "FROM SYSTEM_RANGE(1, 10)",
+            schema));
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    Statement stmt = h2conn.createStatement();
+    stmt.execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", schema));
+    stmt.execute(
+        String.format(
+            "DROP SCHEMA IF EXISTS \"%s\" CASCADE", VerdictOption.getDefaultTempSchemaName()));
+    stmt.close();
+    h2conn.close();
+  }
+
+  @Test
+  public void testSessionsShareCache() throws VerdictDBException {
+    CachedDbmsConnection conn =
+        new CachedDbmsConnection(new JdbcConnection(h2conn, new H2Syntax()));
+    CachedDbmsConnection first = conn.createSession();
+    CachedDbmsConnection second = conn.createSession();
+
+    assertEquals(2, first.getColumns(schema, "sales").size());
+    assertEquals(1, first.getIssuedCallCount());
+    assertEquals(0, first.getCachedCallCount());
+
+    assertEquals(2, second.getColumns(schema, "sales").size());
+    assertEquals(0, second.getIssuedCallCount());
+    assertEquals(1, second.getCachedCallCount());
+
+    conn.clearCache();
+    second.getColumns(schema, "sales");
+    assertEquals(1, second.getIssuedCallCount());
+    assertEquals(0, conn.getIssuedCallCount());
+  }
+
+  @Test
+  public void testCacheExpires() throws VerdictDBException, InterruptedException {
+    CachedDbmsConnection conn =
+        new CachedDbmsConnection(new JdbcConnection(h2conn, new H2Syntax()));
+    conn.setCacheTtlMillis(200);
+    conn.getSchemas();
+    conn.getSchemas();
+    assertEquals(1, conn.getIssuedCallCount());
+    assertEquals(1, conn.getCachedCallCount());
+
+    Thread.sleep(400);
+    assertTrue(conn.getSchemas().contains(schema));
+    assertEquals(2, conn.getIssuedCallCount());
+
+    // a non-positive ttl disables the expiration.
+    conn.setCacheTtlMillis(0);
+    Thread.sleep(400);
+    conn.getSchemas();
+    assertEquals(2, conn.getIssuedCallCount());
+  }
+
+  @Test
+  public void testWarmSelectQueryMakesNoMetaDataCalls() throws VerdictDBException {
+    VerdictOption options = new VerdictOption();
+    options.setVerdictPlanCacheSize(0); // every query is standardized again
+    VerdictContext vc = new VerdictContext(new JdbcConnection(h2conn, new H2Syntax()), options);
+    ExecutionContext exec = vc.createNewExecutionContext();
+    String sql = String.format("select sum(\"price\") from \"%s\".\"sales\"", schema);
+
+    VerdictSingleResult result = exec.sql(sql);
+    result.next();
+    assertEquals(55, result.getLong(0));
+
+    exec.sql(sql);
+    assertEquals(0, exec.getLastIssuedMetaDataCallCount());
+    assertTrue(exec.getLastCachedMetaDataCallCount() > 0);
+
+    // a bypassed statement may change the tables; thus, the metadata is fetched again.
+    exec.sql(String.format("bypass create table \"%s\".\"other\" (\"a\" int)", schema));
+    exec.sql(sql);
+    assertTrue(exec.getLastIssuedMetaDataCallCount() > 0);
+    exec.sql(sql);
+    assertEquals(0, exec.getLastIssuedMetaDataCallCount());
+  }
+
+  /** Counts the column and partition lookups that reach the database. */
+  static class CountingConnection extends JdbcConnection {
+
+    AtomicInteger columnCalls = new AtomicInteger(0);
+
+    AtomicInteger partitionCalls = new AtomicInteger(0);
+
+    CountingConnection() {
+      super(h2conn, new H2Syntax());
+    }
+
+    @Override
+    public List<Pair<String, String>> getColumns(String schema, String table)
+        throws VerdictDBDbmsException {
+      columnCalls.incrementAndGet();
+      try {
+        Thread.sleep(100); // lets the other lookups arrive while loading
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return super.getColumns(schema, table);
+    }
+
+    @Override
+    public List<String> getPartitionColumns(String schema, String table) {
+      partitionCalls.incrementAndGet();
+      return Arrays.asList("p");
+    }
+  }
+
+  @Test
+  public void testConcurrentMissesLoadOnce() throws Exception {
+    CountingConnection counting = new CountingConnection();
+    final CachedDbmsConnection conn = new CachedDbmsConnection(counting);
+    final int threadCount = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    List<Future<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      futures.add(
+          executor.submit(
+              new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                  start.await();
+                  return conn.createSession().getColumns(schema, "sales").size();
+                }
+              }));
+    }
+    start.countDown();
+    for (Future<Integer> f : futures) {
+      assertEquals(2, f.get().intValue());
+    }
+    executor.shutdown();
+
+    assertEquals(1, counting.columnCalls.get());
+    assertEquals(1, conn.getCacheMissCount());
+    assertEquals(threadCount - 1, conn.getCacheHitCount());
+    assertEquals((threadCount - 1) / (double) threadCount, conn.getCacheHitRate(), 1e-9);
+  }
+
+  @Test
+  public void testPartitionColumnsCached() throws VerdictDBException {
+    CountingConnection counting = new CountingConnection();
+    CachedDbmsConnection conn = new CachedDbmsConnection(counting);
+    assertEquals(Arrays.asList("p"), conn.getPartitionColumns(schema, "sales"));
+    assertEquals(Arrays.asList("p"), conn.getPartitionColumns(schema, "sales"));
+    assertEquals(1, counting.partitionCalls.get());
+    assertEquals(1, conn.getCachedCallCount());
+  }
+
+  @Test
+  public void testTargetedInvalidation() throws VerdictDBException {
+    CountingConnection counting = new CountingConnection();
+    CachedDbmsConnection conn = new CachedDbmsConnection(counting);
+    conn.getSchemas();
+    conn.getColumns(schema, "sales");
+    conn.getPartitionColumns(schema, "sales");
+    assertEquals(3, conn.getIssuedCallCount());
+
+    // the metadata of other schemas is kept; only the list of schemas is read again.
+    conn.invalidateSchema("otherschema");
+    conn.getColumns(schema, "sales");
+    assertEquals(1, counting.columnCalls.get());
+    conn.getSchemas();
+    assertEquals(4, conn.getIssuedCallCount());
+
+    conn.invalidateTable(schema, "sales");
+    conn.getSchemas();
+    conn.getColumns(schema, "sales");
+    conn.getPartitionColumns(schema, "sales");
+    assertEquals(2, counting.columnCalls.get());
+    assertEquals(2, counting.partitionCalls.get());
+    assertEquals(6, conn.getIssuedCallCount());
+
+    conn.invalidateSchema(schema);
+    conn.getSchemas();
+    conn.getColumns(schema, "sales");
+    assertEquals(3, counting.columnCalls.get());
+    assertEquals(8, conn.getIssuedCallCount());
+  }
+}
@@ -0,0 +1,163 @@
+package org.verdictdb.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ColumnarQueryResultTest {
+
+  static Connection conn;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    final String DB_CONNECTION = "jdbc:h2:mem:columnarqueryresulttest;DB_CLOSE_DELAY=-1";
+    conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+    Statement stmt = conn.createStatement();
+    stmt.execute(
+        "CREATE TABLE people AS SELECT "
+            + "CAST(x AS INT) AS id, "
+            + "x * 1000000000 AS big, "
+            + "CAST(x AS DOUBLE) / 4 AS score, "
+            + "CAST(x AS DECIMAL(10,2)) AS amount, "
+            + "CONCAT('name', MOD(x, 3)) AS name "
+            + "FROM SYSTEM_RANGE(1, 100)");
+    stmt.execute("UPDATE people SET score = NULL, name = NULL WHERE MOD(id, 10) = 0");
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    conn.close();
+  }
+
+  @Test
+  public void testSameAsJdbcQueryResult() throws SQLException {
+    String sql = "SELECT id, big, score, amount, name FROM people ORDER BY id";
+    Statement stmt = conn.createStatement();
+    ResultSet rs = stmt.executeQuery(sql);
+    JdbcQueryResult expected = new JdbcQueryResult(rs);
+    rs.close();
+    rs = stmt.executeQuery(sql);
+    ColumnarQueryResult actual = new ColumnarQueryResult(rs);
+    rs.close();
+    stmt.close();
+
+    assertEquals(expected.getRowCount(), actual.getRowCount());
+    assertEquals(expected.getColumnCount(), actual.getColumnCount());
+    for (int i = 0; i < expected.getColumnCount(); i++) {
+      assertEquals(expected.getColumnName(i), actual.getColumnName(i));
+      assertEquals(expected.getColumnType(i), actual.getColumnType(i));
+    }
+    while (expected.next()) {
+      assertTrue(actual.next());
+      for (int i = 0; i < expected.getColumnCount(); i++) {
+        assertEquals(expected.getValue(i), actual.getValue(i));
+      }
+      for (int i = 0; i < 4; i++) {
+        assertEquals(expected.getLong(i), actual.getLong(i));
+        assertEquals(expected.getDouble(i), actual.getDouble(i), 1e-9);
+      }
+    }
+    assertFalse(actual.next());
+  }
+
+  @Test
+  public void testPrimitiveGetters() {
+    ColumnarQueryResult result =
+        new ColumnarQueryResult(
+            Arrays.asList("cnt", "avg", "grp"),
+            Arrays.asList(Types.BIGINT, Types.DOUBLE, Types.VARCHAR),
+            new DbmsQueryResultMetaData());
+    for (int i = 0; i < 1000; i++) {
+      Double avg = (i % 7 == 0) ? null : i / 2.0;
+      result.addRow(Arrays.<Object>asList((long) i, avg, "g" + (i % 5)));
+    }
+    assertEquals(1000, result.getRowCount());
+
+    result.rewind();
+    int i = 0;
+    while (result.next()) {
+      assertEquals(i, result.getLong(0));
+      assertEquals(i, result.getInt(0));
+      if (i % 7 == 0) {
+        assertTrue(result.isNull(1));
+        assertNull(result.getValue(1));
+        assertEquals(0.0, result.getDouble(1), 0);
+      } else {
+        assertFalse(result.isNull(1));
+        assertEquals(i / 2.0, result.getDouble(1), 0);
+      }
+      assertEquals("g" + (i % 5), result.getString(2));
+      assertEquals("g" + (i % 5), result.getString("grp"));
+      i++;
+    }
+
+    ColumnarQueryResult.StringColumn names =
+        (ColumnarQueryResult.StringColumn) result.columns.get(2);
+    assertEquals(5, names.dictionary.size());
+  }
+
+  @Test
+  public void testMixedValueClasses() {
+    ColumnarQueryResult result =
+        new ColumnarQueryResult(
+            Arrays.asList("a"), Arrays.asList(Types.BIGINT), new DbmsQueryResultMetaData());
+    result.addRow(Arrays.<Object>asList(1L));
+    result.addRow(Arrays.<Object>asList((Object) null));
+    result.addRow(Arrays.<Object>asList(new BigDecimal("2.5")));
+
+    // the column falls back to objects when a value does not fit in a long array.
+    assertTrue(result.columns.get(0) instanceof ColumnarQueryResult.ObjectColumn);
+    result.next();
+    assertEquals(1L, result.getValue(0));
+    result.next();
+    assertNull(result.getValue(0));
+    result.next();
+    assertEquals(new BigDecimal("2.5"), result.getValue(0));
+    assertEquals(2.5, result.getDouble(0), 0);
+  }
+
+  @Test
+  public void testCopies() throws SQLException {
+    Statement stmt = conn.createStatement();
+    ResultSet rs = stmt.executeQuery("SELECT id, name FROM people ORDER BY id");
+    ColumnarQueryResult original = ColumnarQueryResult.from(new JdbcQueryResult(rs));
+    rs.close();
+    stmt.close();
+
+    original.next();
+    DbmsQueryResult shallow = original.shallowCopy();
+    ColumnarQueryResult serialized = SerializationUtils.clone(original);
+    for (DbmsQueryResult copy : Arrays.<DbmsQueryResult>asList(shallow, serialized)) {
+      copy.rewind();
+      assertEquals(100, copy.getRowCount());
+      int idSum = 0;
+      int nullCount = 0;
+      while (copy.next()) {
+        idSum += copy.getInt(0);
+        if (copy.getString(1) == null) {
+          nullCount++;
+        }
+      }
+      assertEquals(5050, idSum);
+      assertEquals(10, nullCount);
+    }
+    // the cursor of the original is not affected by its copies.
+    assertEquals(1, original.getInt(0));
+  }
+}
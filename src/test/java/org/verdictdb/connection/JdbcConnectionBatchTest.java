@@ -0,0 +1,95 @@
+package org.verdictdb.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.exception.VerdictDBDbmsException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class JdbcConnectionBatchTest {
+
+  static final String URL = "jdbc:h2:mem:jdbcconnectionbatchtest;DB_CLOSE_DELAY=-1";
+
+  static Connection h2conn;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    h2conn = DriverManager.getConnection(URL, "", "");
+    Statement stmt = h2conn.createStatement();
+    stmt.execute("CREATE TABLE \"people\" (\"id\" int, \"name\" varchar(20))");
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    Statement stmt = h2conn.createStatement();
+    stmt.execute("DROP TABLE IF EXISTS \"people\"");
+    stmt.close();
+    h2conn.close();
+  }
+
+  private static long countRows(DbmsConnection conn) throws VerdictDBDbmsException {
+    DbmsQueryResult result = conn.execute("SELECT count(*) FROM \"people\"");
+    result.next();
+    return result.getLong(0);
+  }
+
+  @Test
+  public void testInsertsRunAsBatch() throws VerdictDBDbmsException {
+    JdbcConnection conn = new JdbcConnection(h2conn, new H2Syntax());
+    conn.execute("DELETE FROM \"people\"");
+    StringBuilder script = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      script.append(String.format("INSERT INTO \"people\" VALUES (%d, 'a;b'); ", i));
+    }
+
+    assertNull(conn.execute(script.toString()));
+    // the whole script is reported as a single batch.
+    assertEquals(1, conn.getLastStatementTimings().size());
+    assertEquals(20, countRows(conn));
+  }
+
+  @Test
+  public void testMixedStatementsRunOneByOne() throws VerdictDBDbmsException {
+    JdbcConnection conn = new JdbcConnection(h2conn, new H2Syntax());
+    conn.execute("DELETE FROM \"people\"");
+    DbmsQueryResult result =
+        conn.execute(
+            "INSERT INTO \"people\" VALUES (1, 'x'); "
+                + "INSERT INTO \"people\" VALUES (2, 'y'); "
+                + "SELECT count(*) FROM \"people\"");
+    result.next();
+    assertEquals(2, result.getLong(0));
+
+    List<Pair<String, Long>> timings = conn.getLastStatementTimings();
+    assertEquals(3, timings.size());
+    assertTrue(timings.get(2).getLeft().trim().startsWith("SELECT"));
+    for (Pair<String, Long> t : timings) {
+      assertTrue(t.getRight() >= 0);
+    }
+  }
+
+  @Test
+  public void testFailedBatchIsReported() throws VerdictDBDbmsException {
+    JdbcConnection conn = new JdbcConnection(h2conn, new H2Syntax());
+    try {
+      conn.execute(
+          "INSERT INTO \"people\" VALUES (1, 'x'); INSERT INTO \"nosuchtable\" VALUES (1)");
+      fail();
+    } catch (VerdictDBDbmsException e) {
+      assertTrue(e.getMessage().contains("batch of 2 statements"));
+    }
+  }
+}
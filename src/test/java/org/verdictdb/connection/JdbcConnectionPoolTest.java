@@ -0,0 +1,194 @@
+package org.verdictdb.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.verdictdb.exception.VerdictDBDbmsException;
+
+public class JdbcConnectionPoolTest {
+
+  static final String URL = "jdbc:h2:mem:jdbcconnectionpooltest;DB_CLOSE_DELAY=-1";
+
+  @Test
+  public void testCheckoutDistinctConnections() throws VerdictDBDbmsException {
+    JdbcConnectionPool pool = new JdbcConnectionPool(URL, null, 1, 3);
+    assertEquals(1, pool.getSize());
+
+    Set<JdbcConnection> checkedOut = new HashSet<>();
+    for (int i = 0; i < 3; i++) {
+      checkedOut.add(pool.checkout());
+    }
+    // busy connections are never handed out while the pool can grow.
+    assertEquals(3, checkedOut.size());
+    assertEquals(3, pool.getSize());
+    assertEquals(0, pool.getIdleCount());
+
+    for (JdbcConnection c : checkedOut) {
+      pool.release(c);
+    }
+    assertEquals(3, pool.getIdleCount());
+    assertEquals(3, pool.getCheckoutCount());
+    pool.close();
+  }
+
+  @Test
+  public void testWaitForReturnedConnection() throws Exception {
+    final JdbcConnectionPool pool = new JdbcConnectionPool(URL, null, 1, 1);
+    final JdbcConnection first = pool.checkout();
+
+    final AtomicReference<JdbcConnection> second = new AtomicReference<>();
+    final CountDownLatch done = new CountDownLatch(1);
+    Thread waiter =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              second.set(pool.checkout());
+            } catch (VerdictDBDbmsException e) {
+              e.printStackTrace();
+            }
+            done.countDown();
+          }
+        };
+    waiter.start();
+    assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+
+    pool.release(first);
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertSame(first, second.get());
+    assertEquals(1, pool.getWaitCount());
+    assertTrue(pool.getMaxWaitMillis() >= 150);
+    pool.release(second.get());
+    pool.close();
+  }
+
+  @Test
+  public void testCheckoutFailsAfterMaxWait() throws VerdictDBDbmsException {
+    JdbcConnectionPool pool = new JdbcConnectionPool(URL, null, 1, 1);
+    pool.setMaxWaitMillis(50);
+    JdbcConnection first = pool.checkout();
+    try {
+      pool.checkout();
+      fail("A busy connection must not be handed out again.");
+    } catch (VerdictDBDbmsException e) {
+      // expected
+    }
+    assertEquals(1, pool.getTimeoutCount());
+
+    pool.release(first);
+    assertEquals(1, pool.getIdleCount());
+    assertSame(first, pool.checkout());
+    pool.release(first);
+    pool.close();
+  }
+
+  @Test
+  public void testConcurrentCheckoutsDoNotExceedMaxSize() throws Exception {
+    final JdbcConnectionPool pool = new JdbcConnectionPool(URL, null, 0, 3);
+    final Set<JdbcConnection> seen = Collections.synchronizedSet(new HashSet<JdbcConnection>());
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] =
+          new Thread() {
+            @Override
+            public void run() {
+              try {
+                for (int j = 0; j < 20; j++) {
+                  JdbcConnection c = pool.checkout();
+                  // a connection is never checked out by two threads at once.
+                  assertTrue(seen.add(c));
+                  assertTrue(seen.remove(c));
+                  pool.release(c);
+                }
+              } catch (Throwable e) {
+                failure.set(e);
+              }
+            }
+          };
+      threads[i].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+    assertTrue(pool.getSize() <= 3);
+    assertEquals(pool.getSize(), pool.getIdleCount());
+    pool.close();
+  }
+
+  @Test
+  public void testIdleEviction() throws VerdictDBDbmsException {
+    JdbcConnectionPool pool = new JdbcConnectionPool(URL, null, 1, 4);
+    JdbcConnection[] connections = new JdbcConnection[4];
+    for (int i = 0; i < 4; i++) {
+      connections[i] = pool.checkout();
+    }
+    for (int i = 0; i < 4; i++) {
+      pool.release(connections[i]);
+    }
+    assertEquals(4, pool.getSize());
+
+    pool.setIdleTimeoutMillis(0);
+    JdbcConnection c = pool.checkout();
+    // the idle connections are closed down to the minimum size.
+    assertEquals(1, pool.getSize());
+    assertEquals(3, pool.getEvictedCount());
+    pool.release(c);
+    pool.close();
+  }
+
+  @Test
+  public void testInvalidConnectionIsReplaced() throws VerdictDBDbmsException, SQLException {
+    JdbcConnectionPool pool = new JdbcConnectionPool(URL, null, 1, 2);
+    JdbcConnection broken = pool.checkout();
+    pool.release(broken);
+    broken.getConnection().close();
+
+    pool.setValidationIntervalMillis(0);
+    JdbcConnection c = pool.checkout();
+    assertNotSame(broken, c);
+    assertFalse(c.getConnection().isClosed());
+    assertEquals(1, pool.getSize());
+    pool.release(c);
+    pool.close();
+  }
+
+  @Test
+  public void testStreamingResultReturnsConnection() throws VerdictDBDbmsException {
+    ConcurrentJdbcConnection conn = new ConcurrentJdbcConnection(URL, null, null, 1, 2);
+    assertEquals(2, conn.getConcurrentQueryCapacity());
+    JdbcConnectionPool pool = conn.getPool();
+
+    DbmsQueryResult result = conn.executeStreaming("SELECT x FROM SYSTEM_RANGE(1, 100)", 10);
+    assertEquals(0, pool.getIdleCount());
+    int count = 0;
+    while (result.next()) {
+      count++;
+    }
+    assertEquals(100, count);
+    // the connection is returned once all the rows are read.
+    assertEquals(1, pool.getIdleCount());
+
+    result = conn.executeStreaming("SELECT x FROM SYSTEM_RANGE(1, 100)", 10);
+    result.next();
+    ((StreamingJdbcQueryResult) result).close();
+    assertEquals(1, pool.getIdleCount());
+    conn.close();
+  }
+}
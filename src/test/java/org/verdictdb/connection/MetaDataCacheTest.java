@@ -0,0 +1,79 @@
+package org.verdictdb.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.verdictdb.exception.VerdictDBDbmsException;
+
+public class MetaDataCacheTest {
+
+  static class CountingLoader implements MetaDataCache.Loader<String> {
+
+    AtomicInteger count = new AtomicInteger(0);
+
+    String value;
+
+    CountingLoader(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public String load() throws VerdictDBDbmsException {
+      count.incrementAndGet();
+      return value;
+    }
+  }
+
+  @Test
+  public void testEvictsOldestWhenFull() throws VerdictDBDbmsException {
+    MetaDataCache<String, String> cache = new MetaDataCache<>(0);
+    cache.setMaxSize(2);
+    CountingLoader loader = new CountingLoader("v");
+    cache.get("k1", loader);
+    cache.get("k2", loader);
+    cache.get("k3", loader);
+    assertEquals(2, cache.size());
+    assertEquals(3, loader.count.get());
+
+    // k1 was loaded the earliest.
+    cache.get("k1", loader);
+    assertEquals(4, loader.count.get());
+    cache.get("k3", loader);
+    assertEquals(4, loader.count.get());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(4, cache.getMissCount());
+  }
+
+  @Test
+  public void testFailedLoadIsNotCached() throws VerdictDBDbmsException {
+    MetaDataCache<String, String> cache = new MetaDataCache<>(0);
+    try {
+      cache.get(
+          "k",
+          new MetaDataCache.Loader<String>() {
+            @Override
+            public String load() throws VerdictDBDbmsException {
+              throw new VerdictDBDbmsException("unavailable");
+            }
+          });
+      fail();
+    } catch (VerdictDBDbmsException e) {
+      assertEquals("unavailable", e.getMessage());
+    }
+    assertEquals(0, cache.size());
+    assertEquals("v", cache.get("k", new CountingLoader("v")));
+  }
+
+  @Test
+  public void testNullKeyIsNotCached() throws VerdictDBDbmsException {
+    MetaDataCache<String, String> cache = new MetaDataCache<>(0);
+    CountingLoader loader = new CountingLoader("v");
+    cache.get(null, loader);
+    cache.get(null, loader);
+    assertEquals(2, loader.count.get());
+    assertEquals(0, cache.size());
+  }
+}
@@ -5,6 +5,10 @@ import static org.junit.Assert.assertEquals;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -164,4 +168,36 @@ public class SparkConnectionTest {
     
     sparkConnection.execute("DROP SCHEMA IF EXISTS myschema CASCADE");
   }
+
+  @Test
+  public void testConcurrentStatementsInJobGroups() throws Exception {
+    final SparkConnection sparkConnection = new SparkConnection(spark, new SparkSyntax());
+    sparkConnection.setConcurrentQueryCapacity(3);
+    assertEquals(3, sparkConnection.copy().getConcurrentQueryCapacity());
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    List<Future<Long>> futures = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      final int n = (i + 1) * 10;
+      futures.add(
+          executor.submit(
+              new Callable<Long>() {
+                @Override
+                public Long call() throws VerdictDBDbmsException {
+                  DbmsQueryResult result =
+                      sparkConnection.execute(String.format("SELECT count(*) FROM range(%d)", n));
+                  result.next();
+                  return result.getLong(0);
+                }
+              }));
+    }
+    for (int i = 0; i < 3; i++) {
+      assertEquals((i + 1) * 10, futures.get(i).get().longValue());
+    }
+    executor.shutdown();
+
+    // the job group of a finished statement is cleared.
+    assertEquals(0, sparkConnection.getRunningJobGroups().size());
+    sparkConnection.abort();
+  }
 }
@@ -0,0 +1,177 @@
+package org.verdictdb.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.VerdictContext;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.jdbc41.VerdictStatement;
+
+public class StreamingJdbcQueryResultTest {
+
+  static final int rowCount = 5000;
+
+  static Connection conn;
+
+  static JdbcConnection jdbc;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException, VerdictDBException {
+    final String DB_CONNECTION = "jdbc:h2:mem:streamingjdbcqueryresulttest;DB_CLOSE_DELAY=-1";
+    conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+    jdbc = JdbcConnection.create(conn);
+    Statement stmt = conn.createStatement();
+    stmt.execute(
+        String.format(
+            "CREATE TABLE items AS SELECT x AS id, CONCAT('item', x) AS name "
+                + "FROM SYSTEM_RANGE(1, %d)",
+            rowCount));
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    conn.close();
+  }
+
+  @Test
+  public void testReadOnce() throws VerdictDBException {
+    DbmsQueryResult result = jdbc.executeStreaming("SELECT id, name FROM items ORDER BY id", 100);
+    assertTrue(result instanceof StreamingJdbcQueryResult);
+    assertEquals(2, result.getColumnCount());
+    assertEquals(2, result.getMetaData().precision.size());
+
+    long expected = 1;
+    while (result.next()) {
+      assertEquals(expected, result.getLong(0));
+      assertEquals("item" + expected, result.getString(1));
+      // the end of the rows is known only after the last row is passed.
+      assertFalse(((StreamingJdbcQueryResult) result).isMaterialized());
+      expected++;
+    }
+    assertEquals(rowCount + 1, expected);
+    assertTrue(((StreamingJdbcQueryResult) result).isClosed());
+  }
+
+  @Test
+  public void testMaterializeOnRowCount() throws VerdictDBException {
+    DbmsQueryResult result = jdbc.executeStreaming("SELECT id FROM items ORDER BY id", 100);
+    assertTrue(result.next());
+    assertTrue(result.next());
+    assertEquals(2, result.getLong(0));
+
+    // the remaining rows are read into memory; the cursor stays at the same row.
+    assertEquals(rowCount, result.getRowCount());
+    assertTrue(((StreamingJdbcQueryResult) result).isMaterialized());
+    assertEquals(2, result.getLong(0));
+    assertTrue(result.next());
+    assertEquals(3, result.getLong(0));
+
+    result.rewind();
+    assertTrue(result.next());
+    assertEquals(1, result.getLong(0));
+  }
+
+  @Test
+  public void testScrollToEnd() throws VerdictDBException, SQLException {
+    VerdictContext vc = new VerdictContext(jdbc);
+    ResultSet rs =
+        new VerdictStatement(null, vc)
+            .executeQuery("bypass SELECT id FROM items WHERE id <= 5 ORDER BY id");
+    assertTrue(rs.isBeforeFirst());
+    for (int i = 1; i <= 5; i++) {
+      assertTrue(rs.next());
+      assertEquals(i, rs.getLong(1));
+      // the rows are streamed until the third row; isLast() then reads the rest into memory.
+      if (i >= 3) {
+        assertEquals(i == 5, rs.isLast());
+        assertFalse(rs.isAfterLast());
+      }
+    }
+    assertFalse(rs.next());
+
+    rs.afterLast();
+    assertTrue(rs.isAfterLast());
+    assertFalse(rs.isLast());
+    rs.close();
+  }
+
+  @Test
+  public void testRewindAfterReading() throws VerdictDBException {
+    DbmsQueryResult result = jdbc.executeStreaming("SELECT id FROM items ORDER BY id", 100);
+    for (int i = 0; i < 3; i++) {
+      assertTrue(result.next());
+    }
+
+    // the rows read so far are kept; the others are still read from the database.
+    result.rewind();
+    assertFalse(((StreamingJdbcQueryResult) result).isMaterialized());
+    long expected = 1;
+    while (result.next()) {
+      assertEquals(expected, result.getLong(0));
+      expected++;
+    }
+    assertEquals(rowCount + 1, expected);
+    assertEquals(rowCount, result.getRowCount());
+  }
+
+  @Test
+  public void testMultipleStatements() throws VerdictDBException {
+    DbmsQueryResult result =
+        jdbc.executeStreaming(
+            "CREATE TABLE IF NOT EXISTS items2 AS SELECT * FROM items; "
+                + "SELECT count(*) FROM items2",
+            100);
+    assertTrue(result.next());
+    assertEquals(rowCount, result.getLong(0));
+    assertFalse(result.next());
+  }
+
+  @Test
+  public void testBypassQuery() throws VerdictDBException {
+    VerdictContext vc = new VerdictContext(jdbc);
+    VerdictSingleResult result = vc.sql("bypass SELECT id FROM items ORDER BY id");
+    long expected = 1;
+    while (result.next()) {
+      assertEquals(expected, result.getLong(0));
+      expected++;
+    }
+    assertEquals(rowCount + 1, expected);
+    result.close();
+  }
+
+  @Test
+  public void testOnlyResultSetsHoldConnections() throws VerdictDBException, SQLException {
+    ConcurrentJdbcConnection pooled =
+        new ConcurrentJdbcConnection(
+            "jdbc:h2:mem:streamingjdbcqueryresulttest;DB_CLOSE_DELAY=-1", null, null, 1, 1);
+    VerdictContext vc = new VerdictContext(pooled);
+    JdbcConnectionPool pool = pooled.getPool();
+
+    // the results of VerdictContext.sql() are read into memory; they need not be closed.
+    for (int i = 0; i < 3; i++) {
+      VerdictSingleResult result = vc.sql("bypass SELECT id FROM items ORDER BY id");
+      assertTrue(result.next());
+      assertEquals(pool.getSize(), pool.getIdleCount());
+    }
+
+    // a result set holds its connection until it is closed.
+    ResultSet rs = new VerdictStatement(null, vc).executeQuery("bypass SELECT id FROM items");
+    assertTrue(rs.next());
+    assertEquals(0, pool.getIdleCount());
+    rs.close();
+    assertEquals(pool.getSize(), pool.getIdleCount());
+    pooled.close();
+  }
+}
@@ -0,0 +1,119 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.coordinator.ExecutionContext.QueryType;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class AppendScrambleTest {
+
+  static String schema = "appendtest";
+
+  static Connection conn;
+
+  static DbmsConnection dbmsConn;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    conn = DriverManager.getConnection("jdbc:h2:mem:appendtest;DB_CLOSE_DELAY=-1", "", "");
+    Statement stmt = conn.createStatement();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", schema));
+    stmt.execute(
+        String.format(
+            "CREATE TABLE \"%s\".\"sales\" AS SELECT x AS \"id\", x * 2 AS \"price\" "
+                + "FROM SYSTEM_RANGE(1, 1000)",
+            schema));
+    stmt.close();
+    dbmsConn = new JdbcConnection(conn, new H2Syntax());
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    Statement stmt = conn.createStatement();
+    stmt.execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", schema));
+    stmt.close();
+    conn.close();
+  }
+
+  private long countOf(String sql) throws SQLException {
+    ResultSet rs = conn.createStatement().executeQuery(sql);
+    assertTrue(rs.next());
+    return rs.getLong(1);
+  }
+
+  @Test
+  public void testAppendScrambleSyntax() {
+    assertEquals(
+        QueryType.append_scramble,
+        ExecutionContext.identifyQueryType("APPEND SCRAMBLE tpch.lineitem_scramble"));
+    assertEquals(
+        QueryType.append_scramble,
+        ExecutionContext.identifyQueryType(
+            "APPEND SCRAMBLE tpch.lineitem_scramble FROM tpch.lineitem_new "
+                + "WHERE l_shipdate >= '1998-01-01'"));
+  }
+
+  @Test
+  public void testAppendNewRows() throws SQLException, VerdictDBException {
+    conn.createStatement()
+        .execute(
+            String.format(
+                "CREATE TABLE \"%s\".\"new_sales\" AS SELECT x AS \"id\", x * 2 AS \"price\" "
+                    + "FROM SYSTEM_RANGE(1001, 1600)",
+                schema));
+    ScramblingCoordinator scrambler = new ScramblingCoordinator(dbmsConn, schema, schema, 100L);
+    ScrambleMeta meta = scrambler.scramble(schema, "sales", schema, "sales_scrambled");
+    String countSql = String.format("SELECT COUNT(*) FROM \"%s\".\"sales_scrambled\"", schema);
+    assertEquals(1000, countOf(countSql));
+
+    scrambler.append(
+        meta,
+        schema,
+        "new_sales",
+        ColumnOp.lessequal(new BaseColumn("id"), ConstantColumn.valueOf(1500)));
+
+    // every new row is assigned to one of the existing blocks of the single tier
+    assertEquals(1500, countOf(countSql));
+    assertEquals(
+        500,
+        countOf(
+            String.format(
+                "SELECT COUNT(*) FROM \"%s\".\"sales_scrambled\" "
+                    + "WHERE \"id\" > 1000 AND \"verdictdbblock\" >= 0 "
+                    + "AND \"verdictdbblock\" < %d AND \"verdictdbtier\" = 0",
+                schema, meta.getAggregationBlockCount())));
+  }
+
+  @Test
+  public void testAppendOriginalTableWithoutCondition() throws SQLException, VerdictDBException {
+    ScramblingCoordinator scrambler = new ScramblingCoordinator(dbmsConn, schema, schema, 100L);
+    ScrambleMeta meta = scrambler.scramble(schema, "sales", schema, "sales_scrambled2");
+    try {
+      scrambler.append(meta, schema, "sales", null);
+      fail();
+    } catch (VerdictDBValueException e) {
+      // the rows of the original table are already in the scramble.
+    }
+    assertEquals(
+        1000, countOf(String.format("SELECT COUNT(*) FROM \"%s\".\"sales_scrambled2\"", schema)));
+  }
+}
@@ -0,0 +1,261 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.execplan.ExecutableNodeScheduler;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.scrambling.ScramblingChunkSplit;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.metastore.ScrambleMetaStore;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class ChunkedScramblingCoordinatorTest {
+
+  static String schema = "chunkedtest";
+
+  static String metaSchema = "chunkedtestmeta";
+
+  static Connection conn;
+
+  static DbmsConnection dbmsConn;
+
+  static ScrambleMetaStore metaStore;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    conn = DriverManager.getConnection("jdbc:h2:mem:chunkedtest;DB_CLOSE_DELAY=-1", "", "");
+    Statement stmt = conn.createStatement();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", schema));
+    stmt.execute(
+        String.format(
+            "CREATE TABLE \"%s\".\"sales\" AS SELECT x AS \"id\", x * 2 AS \"price\" "
+                + "FROM SYSTEM_RANGE(1, 1000)",
+            schema));
+    // the metastore table is created in advance with VARCHAR columns, which H2 returns as strings
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", metaSchema));
+    stmt.execute(
+        String.format(
+            "CREATE TABLE \"%s\".\"verdictdbmeta\" (\"original_schema\" VARCHAR, "
+                + "\"original_table\" VARCHAR, \"scramble_schema\" VARCHAR, "
+                + "\"scramble_table\" VARCHAR, \"scramble_method\" VARCHAR, "
+                + "\"added_at\" TIMESTAMP, \"data\" VARCHAR)",
+            metaSchema));
+    stmt.close();
+    dbmsConn = new JdbcConnection(conn, new H2Syntax());
+    metaStore = new ScrambleMetaStore(dbmsConn, metaSchema);
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    Statement stmt = conn.createStatement();
+    stmt.execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", schema));
+    stmt.execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", metaSchema));
+    stmt.close();
+    conn.close();
+  }
+
+  private long countOf(String sql) throws SQLException {
+    ResultSet rs = conn.createStatement().executeQuery(sql);
+    assertTrue(rs.next());
+    return rs.getLong(1);
+  }
+
+  private ScrambleMeta scrambleInChunks(
+      String newTable, long blockSize, ScrambleMetaStore store, String chunkColumn)
+      throws VerdictDBException {
+    ScramblingCoordinator scrambler =
+        new ScramblingCoordinator(dbmsConn, schema, schema, blockSize);
+    scrambler.setChunkCount(4);
+    if (chunkColumn != null) {
+      scrambler.setChunkColumn(chunkColumn);
+    }
+    scrambler.setMetaStore(store);
+    return scrambler.scramble(schema, "sales", schema, newTable);
+  }
+
+  private ScrambleMeta scrambleInChunks(String newTable, long blockSize)
+      throws VerdictDBException {
+    return scrambleInChunks(newTable, blockSize, metaStore, null);
+  }
+
+  private ScrambleMeta scrambleInChunks(String newTable) throws VerdictDBException {
+    return scrambleInChunks(newTable, 100L);
+  }
+
+  // fails to record a chunk as if the scrambling were interrupted while staging it, leaving only a
+  // part of its rows in its staging table
+  private ScrambleMetaStore interruptedWhileStaging(final String table, final int chunk) {
+    return new ScrambleMetaStore(dbmsConn, metaSchema) {
+      @Override
+      public void addCompletedChunkToStore(ScrambleMeta meta, int completed)
+          throws VerdictDBException {
+        if (completed != chunk) {
+          super.addCompletedChunkToStore(meta, completed);
+          return;
+        }
+        dbmsConn.execute(
+            String.format(
+                "DELETE FROM \"%s\".\"%s_verdictdbchunk%d\" WHERE MOD(\"id\", 2) = 0",
+                schema, table, chunk));
+        throw new VerdictDBValueException("interrupted");
+      }
+    };
+  }
+
+  // waits for the nodes of a failed scrambling that may still be running
+  private void waitForRunningNodes() throws InterruptedException {
+    ExecutableNodeScheduler scheduler = ExecutableNodeScheduler.getDefault();
+    for (int i = 0; i < 100; i++) {
+      if (scheduler.getRunningNodeCount() == 0 && scheduler.getPendingNodeCount() == 0) {
+        return;
+      }
+      Thread.sleep(100);
+    }
+    fail("The nodes of the failed scrambling are still running.");
+  }
+
+  private long countOfScramble(String table) throws SQLException {
+    return countOf(String.format("SELECT COUNT(*) FROM \"%s\".\"%s\"", schema, table));
+  }
+
+  private long countOfStagingTables(String table) throws SQLException {
+    return countOf(
+        String.format(
+            "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = '%s' "
+                + "AND TABLE_NAME LIKE '%s_verdictdbchunk%%'",
+            schema, table));
+  }
+
+  private void assertScrambleHasAllRows(String table) throws SQLException {
+    assertEquals(1000, countOfScramble(table));
+    assertEquals(
+        1000,
+        countOf(String.format("SELECT COUNT(DISTINCT \"id\") FROM \"%s\".\"%s\"", schema, table)));
+    assertEquals(0, countOfStagingTables(table));
+  }
+
+  private void assertScramblingFails(String table, String message) {
+    try {
+      scrambleInChunks(table);
+      fail();
+    } catch (Exception e) {
+      Throwable cause = e;
+      while (cause.getCause() != null && !(cause instanceof VerdictDBValueException)) {
+        cause = cause.getCause();
+      }
+      assertTrue(cause.getMessage(), cause.getMessage().contains(message));
+    }
+  }
+
+  @Test
+  public void testScrambleInChunks() throws SQLException, VerdictDBException {
+    ScrambleMeta meta = scrambleInChunks("sales_chunked");
+
+    // every row is inserted exactly once
+    assertScrambleHasAllRows("sales_chunked");
+    assertEquals(
+        0,
+        countOf(
+            String.format(
+                "SELECT COUNT(*) FROM \"%s\".\"sales_chunked\" "
+                    + "WHERE \"verdictdbblock\" < 0 OR \"verdictdbblock\" >= %d",
+                schema, meta.getAggregationBlockCount())));
+
+    // without a partition column or a primary key, the rows are split by hash.
+    assertEquals(
+        ScramblingChunkSplit.byHash(),
+        metaStore.retrieveInProgress(schema, "sales_chunked").getChunkSplit());
+
+    // the scramble is not used until its metadata is added after the scrambling
+    assertFalse(metaStore.retrieve().isScrambled(schema, "sales_chunked"));
+    metaStore.addToStore(meta);
+    ScrambleMetaSet metaSet = metaStore.retrieve();
+    assertTrue(metaSet.isScrambled(schema, "sales_chunked"));
+    assertEquals(meta, metaSet.getSingleMeta(schema, "sales_chunked"));
+
+    // a completed scramble is not filled again
+    assertScramblingFails("sales_chunked", "already exists");
+    assertEquals(1000, countOfScramble("sales_chunked"));
+  }
+
+  @Test
+  public void testScrambleInChunksByKeyRange() throws SQLException, VerdictDBException {
+    scrambleInChunks("sales_ranged", 100L, metaStore, "id");
+
+    assertScrambleHasAllRows("sales_ranged");
+    assertEquals(
+        ScramblingChunkSplit.byIntegerRange(BigInteger.valueOf(1), BigInteger.valueOf(1000), 4),
+        metaStore.retrieveInProgress(schema, "sales_ranged").getChunkSplit());
+  }
+
+  @Test
+  public void testResumeInterruptedScrambling()
+      throws SQLException, VerdictDBException, InterruptedException {
+    try {
+      scrambleInChunks("sales_resumed", 100L, interruptedWhileStaging("sales_resumed", 1), null);
+      fail();
+    } catch (Exception e) {
+      // interrupted
+    }
+    waitForRunningNodes();
+    ScrambleMeta started = metaStore.retrieveInProgress(schema, "sales_resumed").getMeta();
+    assertTrue(countOfScramble("sales_resumed") < 1000);
+
+    // the partially staged chunk is staged again, and the staged chunks are inserted again into
+    // the scramble table, with the distribution the scrambling started with
+    ScrambleMeta resumed = scrambleInChunks("sales_resumed", 50L);
+    assertEquals(started, resumed);
+    assertScrambleHasAllRows("sales_resumed");
+    assertEquals(
+        0,
+        countOf(
+            String.format(
+                "SELECT COUNT(*) FROM \"%s\".\"sales_resumed\" WHERE \"verdictdbblock\" >= %d",
+                schema, started.getAggregationBlockCount())));
+  }
+
+  @Test
+  public void testResumeAfterAllChunksAreInserted() throws SQLException, VerdictDBException {
+    ScrambleMeta meta = scrambleInChunks("sales_merged");
+
+    // a staging table remains as if the scrambling were interrupted before dropping it
+    conn.createStatement()
+        .execute(
+            String.format(
+                "CREATE TABLE \"%s\".\"sales_merged_verdictdbchunk0\" AS SELECT 1 AS \"id\"",
+                schema));
+
+    // the scramble is not filled again since all the chunks are recorded as inserted
+    assertEquals(meta, scrambleInChunks("sales_merged"));
+    assertScrambleHasAllRows("sales_merged");
+  }
+
+  @Test
+  public void testExistingTableIsNotFilled() throws SQLException, VerdictDBException {
+    conn.createStatement()
+        .execute(
+            String.format(
+                "CREATE TABLE \"%s\".\"sales_existing\" AS SELECT * FROM \"%s\".\"sales\"",
+                schema, schema));
+
+    assertScramblingFails("sales_existing", "already exists");
+    assertEquals(1000, countOfScramble("sales_existing"));
+  }
+}
@@ -0,0 +1,113 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+import org.verdictdb.exception.VerdictDBValueException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+import org.verdictdb.sqlsyntax.HiveSyntax;
+import org.verdictdb.sqlsyntax.ImpalaSyntax;
+import org.verdictdb.sqlsyntax.MysqlSyntax;
+import org.verdictdb.sqlsyntax.PostgresqlSyntax;
+import org.verdictdb.sqlsyntax.PrestoSyntax;
+import org.verdictdb.sqlsyntax.SparkSyntax;
+import org.verdictdb.sqlsyntax.SqlSyntax;
+
+public class QueryParametersTest {
+
+  @Test
+  public void testMarkersOutsideQuotes() throws VerdictDBValueException {
+    String sql = "select '?', \"a?\" from t where x = ? and y in (?, ?)";
+    assertEquals(3, QueryParameters.countMarkers(sql));
+    assertEquals(
+        "select '?', \"a?\" from t where x = 'verdictdbparam0' and y in ('verdictdbparam1', "
+            + "'verdictdbparam2')",
+        QueryParameters.replaceMarkersWithPlaceholders(sql));
+    assertEquals(
+        "select '?', \"a?\" from t where x = 1 and y in ('b', NULL)",
+        QueryParameters.bind(sql, Arrays.asList("1", "'b'", "NULL")));
+
+    Map<String, String> bindings = QueryParameters.bindingsOf(sql, Arrays.asList("1", "2", "3"));
+    assertEquals(3, bindings.size());
+    assertEquals("2", bindings.get("'verdictdbparam1'"));
+  }
+
+  @Test(expected = VerdictDBValueException.class)
+  public void testWrongParameterCount() throws VerdictDBValueException {
+    QueryParameters.bind("select a from t where x = ?", Arrays.asList("1", "2"));
+  }
+
+  @Test
+  public void testLiterals() throws VerdictDBValueException {
+    SqlSyntax syntax = new H2Syntax();
+    assertEquals("NULL", QueryParameters.toLiteral(null, syntax));
+    assertEquals("3", QueryParameters.toLiteral(3, syntax));
+    assertEquals("2.5", QueryParameters.toLiteral(2.5, syntax));
+    assertEquals(
+        "100000000000000000000", QueryParameters.toLiteral(new BigDecimal("1E+20"), syntax));
+    assertEquals("true", QueryParameters.toLiteral(true, syntax));
+    assertEquals("'it''s'", QueryParameters.toLiteral("it's", syntax));
+    assertEquals(
+        "date '2018-01-02'", QueryParameters.toLiteral(Date.valueOf("2018-01-02"), syntax));
+    assertEquals(
+        "timestamp '2018-01-02 03:04:05.0'",
+        QueryParameters.toLiteral(Timestamp.valueOf("2018-01-02 03:04:05"), syntax));
+  }
+
+  @Test
+  public void testBackslashInStringLiterals() throws VerdictDBValueException {
+    String value = "x\\' OR 1=1 -- ";
+    assertEquals("'x\\'' OR 1=1 -- '", QueryParameters.toLiteral(value, new H2Syntax()));
+    assertEquals("'x\\'' OR 1=1 -- '", QueryParameters.toLiteral(value, new PrestoSyntax()));
+    assertEquals(
+        "'x\\\\\\' OR 1=1 -- '", QueryParameters.toLiteral(value, new HiveSyntax()));
+    assertEquals(
+        "'x\\\\\\' OR 1=1 -- '", QueryParameters.toLiteral(value, new ImpalaSyntax()));
+    assertEquals(
+        "'x\\\\\\' OR 1=1 -- '", QueryParameters.toLiteral(value, new SparkSyntax()));
+    assertEquals(
+        "'x\\\\'' OR 1=1 -- '", QueryParameters.toLiteral(value, new MysqlSyntax()));
+    assertEquals(
+        "E'x\\\\'' OR 1=1 -- '", QueryParameters.toLiteral(value, new PostgresqlSyntax()));
+  }
+
+  @Test
+  public void testNonFiniteNumbersRejected() {
+    Object[] values = {Double.NaN, Double.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY};
+    for (Object value : values) {
+      try {
+        QueryParameters.toLiteral(value, new H2Syntax());
+        fail(value + " was written as a literal.");
+      } catch (VerdictDBValueException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testConvertToTargetType() throws VerdictDBValueException {
+    SqlSyntax syntax = new H2Syntax();
+    assertEquals(
+        "'12'", QueryParameters.toLiteral(QueryParameters.convert(12, Types.VARCHAR), syntax));
+    assertEquals(
+        "12", QueryParameters.toLiteral(QueryParameters.convert("12", Types.INTEGER), syntax));
+    assertEquals(
+        "date '2018-01-02'",
+        QueryParameters.toLiteral(QueryParameters.convert("2018-01-02", Types.DATE), syntax));
+    assertEquals(
+        "false", QueryParameters.toLiteral(QueryParameters.convert(0, Types.BOOLEAN), syntax));
+  }
+
+  @Test(expected = VerdictDBValueException.class)
+  public void testConvertInvalidValue() throws VerdictDBValueException {
+    QueryParameters.convert("1 OR 1=1", Types.INTEGER);
+  }
+}
@@ -0,0 +1,246 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.VerdictContext;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.commons.VerdictOption;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.querying.TempIdCreatorInScratchpadSchema;
+import org.verdictdb.core.resulthandler.ExecutionResultReader;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.scrambling.UniformScrambler;
+import org.verdictdb.core.sqlobject.CreateTableAsSelectQuery;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+public class QueryPlanCacheTest {
+
+  static final int aggBlockCount = 5;
+
+  static final int rowCount = 1000;
+
+  static String schema = "plancachetest";
+
+  static Connection h2conn;
+
+  static DbmsConnection conn;
+
+  static ScrambleMetaSet metaSet = new ScrambleMetaSet();
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException, VerdictDBException {
+    h2conn = DriverManager.getConnection("jdbc:h2:mem:plancachetest;DB_CLOSE_DELAY=-1", "", "");
+    conn = new JdbcConnection(h2conn, new H2Syntax());
+
+    Statement stmt = h2conn.createStatement();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", schema));
+    stmt.execute(
+        String.format(
+            "CREATE SCHEMA IF NOT EXISTS \"%s\"", VerdictOption.getDefaultTempSchemaName()));
+    stmt.execute(
+        String.format("CREATE TABLE \"%s\".\"sales\"(\"id\" int, \"price\" double)", schema));
+    stmt.execute(
+        String.format(
+            "INSERT INTO \"%s\".\"sales\" SELECT x, x FROM SYSTEM_RANGE(1, %d)", schema, rowCount));
+
+    UniformScrambler scrambler =
+        new UniformScrambler(schema, "sales", schema, "sales_scrambled", aggBlockCount);
+    CreateTableAsSelectQuery scramblingQuery = scrambler.createQuery();
+    stmt.executeUpdate(QueryToSql.convert(new H2Syntax(), scramblingQuery));
+    ScrambleMeta tablemeta = scrambler.generateMeta();
+    tablemeta.setMethod("uniform");
+    tablemeta.setNumberOfTiers(1);
+    tablemeta.setOriginalSchemaName(schema);
+    tablemeta.setOriginalTableName("sales");
+    HashMap<Integer, List<Double>> distribution = new HashMap<>();
+    List<Double> cumulative = new ArrayList<>();
+    for (int i = 0; i < aggBlockCount; i++) {
+      cumulative.add((i + 1) / (double) aggBlockCount);
+    }
+    distribution.put(0, cumulative);
+    tablemeta.setCumulativeDistributionForTier(distribution);
+    metaSet.addScrambleMeta(tablemeta);
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    Statement stmt = h2conn.createStatement();
+    stmt.execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", schema));
+    stmt.execute(
+        String.format(
+            "DROP SCHEMA IF EXISTS \"%s\" CASCADE", VerdictOption.getDefaultTempSchemaName()));
+    stmt.close();
+    h2conn.close();
+  }
+
+  private DbmsQueryResult readLast(ExecutionResultReader reader) {
+    DbmsQueryResult last = null;
+    while (reader.hasNext()) {
+      last = reader.next();
+    }
+    return last;
+  }
+
+  private SelectQueryCoordinator createCoordinator(QueryPlanCache cache) {
+    SelectQueryCoordinator coordinator =
+        new SelectQueryCoordinator(conn, metaSet, new VerdictOption());
+    coordinator.setPlanCache(cache, 0);
+    return coordinator;
+  }
+
+  @Test
+  public void testReuseAsyncPlan() throws VerdictDBException {
+    QueryPlanCache cache = new QueryPlanCache(10);
+    String sql = String.format("select count(*) as c from \"%s\".\"sales\"", schema);
+
+    for (int i = 0; i < 3; i++) {
+      SelectQueryCoordinator coordinator = createCoordinator(cache);
+      // the same query with different spacing shares the plan.
+      String query = (i == 0) ? sql : sql.replace(" from ", "\n  from  ") + ";";
+      DbmsQueryResult last =
+          readLast(coordinator.process(query, new QueryContext("abc", (long) i)));
+      last.next();
+      assertEquals(rowCount, Math.round(last.getDouble(0)));
+      assertNotNull(coordinator.getLastQuery());
+    }
+    assertEquals(1, cache.getMissCount());
+    assertEquals(2, cache.getHitCount());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testReuseAsyncPlanWithParameters() throws VerdictDBException {
+    QueryPlanCache cache = new QueryPlanCache(10);
+    String sql =
+        String.format("select count(*) as c from \"%s\".\"sales\" where \"id\" <= ?", schema);
+
+    int[] values = {100, 500, 1000};
+    for (int i = 0; i < values.length; i++) {
+      SelectQueryCoordinator coordinator = createCoordinator(cache);
+      List<String> parameters = Arrays.asList(QueryParameters.toLiteral(values[i], new H2Syntax()));
+      DbmsQueryResult last =
+          readLast(coordinator.process(sql, parameters, new QueryContext("abc", (long) i)));
+      last.next();
+      assertEquals(values[i], Math.round(last.getDouble(0)));
+    }
+    assertEquals(1, cache.getMissCount());
+    assertEquals(2, cache.getHitCount());
+  }
+
+  @Test
+  public void testCopiesAreIndependent() throws VerdictDBException {
+    QueryPlanCache cache = new QueryPlanCache(10);
+    String sql = String.format("select sum(price) as s from \"%s\".\"sales\"", schema);
+    String key = QueryPlanCache.createKey(sql, conn.getDefaultSchema(), 0);
+    readLast(createCoordinator(cache).process(sql, null));
+
+    QueryPlanCache.CachedPlan first = cache.get(key);
+    QueryPlanCache.CachedPlan second = cache.get(key);
+    assertNotSame(first.getPlan(), second.getPlan());
+    assertNotSame(first.getPlan().getRootNode(), second.getPlan().getRootNode());
+    // the parts that are only read while the plan runs are shared.
+    assertSame(first.getQuery(), second.getQuery());
+    assertSame(
+        first.getPlan().getRootNode().getAggMeta(), second.getPlan().getRootNode().getAggMeta());
+
+    // the temp tables of the copies are named differently.
+    TempIdCreatorInScratchpadSchema firstIds =
+        (TempIdCreatorInScratchpadSchema) first.getPlan().getIdCreator();
+    TempIdCreatorInScratchpadSchema secondIds =
+        (TempIdCreatorInScratchpadSchema) second.getPlan().getIdCreator();
+    firstIds.renew(new QueryContext("abc", 1L));
+    secondIds.renew(new QueryContext("abc", 2L));
+    assertNotEquals(firstIds.generateTempTableName(), secondIds.generateTempTableName());
+  }
+
+  @Test
+  public void testQueryWithoutScrambles() throws VerdictDBException {
+    QueryPlanCache cache = new QueryPlanCache(10);
+    String sql = String.format("select count(*) as c from \"%s\".\"sales\" where id < 10", schema);
+
+    SelectQueryCoordinator coordinator =
+        new SelectQueryCoordinator(conn, new ScrambleMetaSet(), new VerdictOption());
+    coordinator.setPlanCache(cache, 0);
+    for (int i = 0; i < 2; i++) {
+      DbmsQueryResult result = readLast(coordinator.process(sql, null));
+      result.next();
+      assertEquals(9, result.getLong(0));
+      assertNull(coordinator.getLastQuery());
+    }
+    assertEquals(1, cache.getHitCount());
+    assertNull(cache.get(QueryPlanCache.createKey(sql, conn.getDefaultSchema(), 0)).getPlan());
+  }
+
+  @Test
+  public void testCachedSelectSkipsParsing() throws VerdictDBException {
+    VerdictContext vc = new VerdictContext(conn);
+    QueryPlanCache cache = vc.getPlanCache();
+    String sql = String.format("select count(*) as c from \"%s\".\"sales\" where id < 10", schema);
+    for (int i = 0; i < 2; i++) {
+      VerdictSingleResult result = vc.sql(sql);
+      result.next();
+      assertEquals(9, result.getLong(0));
+    }
+    assertEquals(1, cache.getMissCount());
+    // the second query is known to be a select query from the cache, without being parsed.
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testKeysAndEviction() {
+    String sql = "select a from t";
+    assertEquals(
+        QueryPlanCache.createKey(sql, "s", 1),
+        QueryPlanCache.createKey("  select   a\n\tfrom t ;", "s", 1));
+    assertNotEquals(
+        QueryPlanCache.createKey(sql, "s", 1), QueryPlanCache.createKey(sql, "s", 2));
+    assertNotEquals(
+        QueryPlanCache.createKey(sql, "s", 1), QueryPlanCache.createKey(sql, "other", 1));
+    // spaces inside literals are kept.
+    assertNotEquals(
+        QueryPlanCache.normalize("select 'a  b' from t"),
+        QueryPlanCache.normalize("select 'a b' from t"));
+
+    QueryPlanCache cache = new QueryPlanCache(2);
+    SelectQuery query = new SelectQuery();
+    cache.put("k1", new QueryPlanCache.CachedPlan(query, null));
+    cache.put("k2", new QueryPlanCache.CachedPlan(query, null));
+    assertNotNull(cache.get("k1")); // k2 becomes the least recently used
+    cache.put("k3", new QueryPlanCache.CachedPlan(query, null));
+    assertNull(cache.get("k2"));
+    assertNotNull(cache.get("k1"));
+    assertNotNull(cache.get("k3"));
+    assertEquals(2, cache.size());
+
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+    assertNull(cache.get("k1"));
+    assertEquals(3, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+}
@@ -0,0 +1,112 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlreader.NonValidatingSQLParser;
+
+public class QueryResultAccuracyEstimatorFromConfidenceIntervalTest {
+
+  private static double normalQuantile(double p) {
+    return QueryResultAccuracyEstimatorFromConfidenceInterval.normalQuantile(p);
+  }
+
+  private static SelectQuery parse(String sql) throws VerdictDBException {
+    return (SelectQuery) new NonValidatingSQLParser().toRelation(sql);
+  }
+
+  /** Creates an answer whose rows are pairs of a group and its sum. */
+  private static VerdictSingleResult answer(Object... groupAndSums) {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < groupAndSums.length; i += 2) {
+      rows.add(Arrays.asList(groupAndSums[i], groupAndSums[i + 1]));
+    }
+    return new VerdictSingleResultFromListData(Arrays.asList("g", "s"), rows);
+  }
+
+  private static QueryResultAccuracyEstimator groupedSumEstimator() throws VerdictDBException {
+    return new QueryResultAccuracyEstimatorFromConfidenceInterval(
+        parse("select g, sum(v) as s from t group by g"), 0.05, 0.95);
+  }
+
+  @Test
+  public void testNormalQuantile() {
+    assertEquals(1.959964, normalQuantile(0.975), 1e-6);
+    assertEquals(-2.326348, normalQuantile(0.01), 1e-6);
+    assertEquals(0, normalQuantile(0.5), 1e-9);
+  }
+
+  @Test
+  public void testStopsWhenIntervalsAreNarrow() throws VerdictDBException {
+    QueryResultAccuracyEstimator accEst = groupedSumEstimator();
+    accEst.add(answer("a", 100.0, "b", 200.0));
+    assertFalse(accEst.isLastResultAccurate());
+    accEst.add(answer("a", 100.5, "b", 199.0));
+    assertFalse(accEst.isLastResultAccurate());
+    // the block estimates of "a" are 100, 101, and 99.48; those of "b" are 200, 198, and 198.01.
+    accEst.add(answer("a", 100.16, "b", 198.67));
+    assertTrue(accEst.isLastResultAccurate());
+
+    // the answer is read again by the caller.
+    VerdictSingleResult last = accEst.getAnswers().get(2);
+    assertTrue(last.next());
+    assertEquals("a", last.getValue(0));
+  }
+
+  @Test
+  public void testContinuesWhileIntervalsAreWide() throws VerdictDBException {
+    QueryResultAccuracyEstimator accEst = groupedSumEstimator();
+    accEst.add(answer("a", 100.0));
+    accEst.add(answer("a", 150.0));
+    accEst.add(answer("a", 120.0));
+    assertFalse(accEst.isLastResultAccurate());
+  }
+
+  @Test
+  public void testNewGroupIsNotAccurate() throws VerdictDBException {
+    QueryResultAccuracyEstimator accEst = groupedSumEstimator();
+    accEst.add(answer("a", 100.0));
+    accEst.add(answer("a", 100.0));
+    accEst.add(answer("a", 100.0, "b", 3.0));
+    assertFalse(accEst.isLastResultAccurate());
+    // the earlier estimates of "b" are zero; thus, its interval stays wide.
+    accEst.add(answer("a", 100.0, "b", 3.0));
+    assertFalse(accEst.isLastResultAccurate());
+  }
+
+  @Test
+  public void testNullAggregateIsNotCounted() {
+    QueryResultAccuracyEstimatorFromConfidenceInterval.GroupState state =
+        new QueryResultAccuracyEstimatorFromConfidenceInterval.GroupState(2, 0);
+    state.update(0, 1, 100.0);
+    state.update(1, 1, 10.0);
+    // the second column is null in the answer after the second block.
+    state.update(0, 2, 100.5);
+    state.update(0, 3, 100.16);
+    state.update(1, 3, 12.0);
+
+    assertEquals(3, state.count[0]);
+    assertEquals(2, state.count[1]);
+    // the second and third blocks of the second column sum to 3 * 12 - 10; their average, 13, is
+    // folded in as a single block estimate.
+    assertEquals(11.5, state.mean[1], 1e-9);
+    assertEquals(4.5, state.m2[1], 1e-9);
+  }
+
+  @Test
+  public void testNoAggregatesIsExact() throws VerdictDBException {
+    QueryResultAccuracyEstimator accEst =
+        new QueryResultAccuracyEstimatorFromConfidenceInterval(parse("select g, v from t"));
+    accEst.add(answer("a", 1.0));
+    assertTrue(accEst.isLastResultAccurate());
+  }
+}
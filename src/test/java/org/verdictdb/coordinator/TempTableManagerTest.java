@@ -0,0 +1,229 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.commons.VerdictOption;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.querying.TempIdCreatorInScratchpadSchema;
+import org.verdictdb.core.resulthandler.ExecutionResultReader;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.scrambling.UniformScrambler;
+import org.verdictdb.core.sqlobject.CreateTableAsSelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+public class TempTableManagerTest {
+
+  static final int aggBlockCount = 5;
+
+  static String schema = "temptablemanagertest";
+
+  static String tempSchema = VerdictOption.getDefaultTempSchemaName();
+
+  static Connection h2conn;
+
+  static DbmsConnection conn;
+
+  static ScrambleMetaSet metaSet = new ScrambleMetaSet();
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException, VerdictDBException {
+    h2conn =
+        DriverManager.getConnection("jdbc:h2:mem:temptablemanagertest;DB_CLOSE_DELAY=-1", "", "");
+    conn = new JdbcConnection(h2conn, new H2Syntax());
+
+    Statement stmt = h2conn.createStatement();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", schema));
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", tempSchema));
+    stmt.execute(
+        String.format(
+            "CREATE TABLE \"%s\".\"sales\" AS SELECT x AS \"id\", x AS \"price\" "
+                + "FROM SYSTEM_RANGE(1, 1000)",
+            schema));
+
+    UniformScrambler scrambler =
+        new UniformScrambler(schema, "sales", schema, "sales_scrambled", aggBlockCount);
+    CreateTableAsSelectQuery scramblingQuery = scrambler.createQuery();
+    stmt.executeUpdate(QueryToSql.convert(new H2Syntax(), scramblingQuery));
+    ScrambleMeta tablemeta = scrambler.generateMeta();
+    tablemeta.setMethod("uniform");
+    tablemeta.setNumberOfTiers(1);
+    tablemeta.setOriginalSchemaName(schema);
+    tablemeta.setOriginalTableName("sales");
+    HashMap<Integer, List<Double>> distribution = new HashMap<>();
+    List<Double> cumulative = new ArrayList<>();
+    for (int i = 0; i < aggBlockCount; i++) {
+      cumulative.add((i + 1) / (double) aggBlockCount);
+    }
+    distribution.put(0, cumulative);
+    tablemeta.setCumulativeDistributionForTier(distribution);
+    metaSet.addScrambleMeta(tablemeta);
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    Statement stmt = h2conn.createStatement();
+    stmt.execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", schema));
+    stmt.execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", tempSchema));
+    stmt.close();
+    h2conn.close();
+  }
+
+  private static boolean exists(String table) throws SQLException {
+    Statement stmt = h2conn.createStatement();
+    ResultSet rs =
+        stmt.executeQuery(
+            String.format(
+                "SELECT count(*) FROM information_schema.tables "
+                    + "WHERE table_schema = '%s' AND table_name = '%s'",
+                tempSchema, table));
+    rs.next();
+    boolean exists = rs.getInt(1) > 0;
+    stmt.close();
+    return exists;
+  }
+
+  private static Pair<String, String> createTable(String table) throws SQLException {
+    Statement stmt = h2conn.createStatement();
+    stmt.execute(String.format("CREATE TABLE \"%s\".\"%s\" (\"a\" int)", tempSchema, table));
+    stmt.close();
+    return Pair.of(tempSchema, table);
+  }
+
+  @Test
+  public void testDropsInBatches() throws SQLException {
+    TempTableManager manager = new TempTableManager(conn, "batch", tempSchema);
+    manager.setBatchSize(4);
+    List<Pair<String, String>> tables = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      tables.add(createTable("verdictdbtemptable_batch_1_" + i));
+    }
+    // a table that no longer exists does not fail its batch.
+    tables.add(Pair.of(tempSchema, "verdictdbtemptable_batch_1_missing"));
+
+    manager.release(1, tables);
+    manager.close();
+    for (Pair<String, String> t : tables) {
+      assertFalse(exists(t.getRight()));
+    }
+    assertEquals(11, manager.getDroppedTableCount());
+    assertEquals(3, manager.getDropStatementCount());
+  }
+
+  @Test
+  public void testReclaimsOrphans() throws SQLException {
+    TempTableManager manager = new TempTableManager(conn, "orphan", tempSchema);
+    manager.register(1);
+    createTable("verdictdbtemptable_orphan_1_0_0");
+    createTable("verdictdbtemptable_orphan_2_0_0");
+    createTable("verdictdbtemptable_orphan_2_0_1");
+    createTable("verdictdbtemptable_other_2_0_0"); // another VerdictContext
+
+    assertEquals(2, manager.reclaimOrphans());
+    assertTrue(exists("verdictdbtemptable_orphan_1_0_0"));
+    assertFalse(exists("verdictdbtemptable_orphan_2_0_0"));
+    assertFalse(exists("verdictdbtemptable_orphan_2_0_1"));
+    assertTrue(exists("verdictdbtemptable_other_2_0_0"));
+
+    // the tables of a context are reclaimed once it is no longer live.
+    manager.release(1, new ArrayList<Pair<String, String>>());
+    assertEquals(1, manager.reclaimOrphans());
+    assertFalse(exists("verdictdbtemptable_orphan_1_0_0"));
+    manager.close();
+  }
+
+  @Test
+  public void testDropsTempTablesOfAsyncQuery() throws VerdictDBException, SQLException {
+    SelectQueryCoordinator coordinator =
+        new SelectQueryCoordinator(conn, metaSet, new VerdictOption());
+    ExecutionResultReader reader =
+        coordinator.process(
+            String.format("select sum(\"price\") from \"%s\".\"sales\"", schema),
+            new QueryContext("async", 3L));
+    while (reader.hasNext()) {
+      reader.next();
+    }
+
+    TempIdCreatorInScratchpadSchema creator =
+        (TempIdCreatorInScratchpadSchema) coordinator.getLastIdCreator();
+    List<Pair<String, String>> tempTables = creator.getGeneratedTempTables();
+    assertTrue(tempTables.size() > 0);
+    for (Pair<String, String> t : tempTables) {
+      assertEquals(tempSchema, t.getLeft());
+      assertTrue(t.getRight().startsWith("verdictdbtemptable_async_3_"));
+    }
+
+    TempTableManager manager = new TempTableManager(conn, "async", tempSchema);
+    manager.release(3, tempTables);
+    manager.flush();
+    assertEquals(tempTables.size(), manager.getDroppedTableCount());
+    manager.close();
+
+    // a renewed creator starts tracking anew.
+    creator.renew(new QueryContext("async", 4L));
+    assertEquals(0, creator.getGeneratedTempTables().size());
+  }
+
+  /** Merges the partial aggregates by views. */
+  static class H2ViewSyntax extends H2Syntax {
+    @Override
+    public boolean doesPreferViewsForAggCombiners() {
+      return true;
+    }
+  }
+
+  @Test
+  public void testDropsTempViewsOfCombiners() throws VerdictDBException, SQLException {
+    DbmsConnection viewConn = new JdbcConnection(h2conn, new H2ViewSyntax());
+    SelectQueryCoordinator coordinator =
+        new SelectQueryCoordinator(viewConn, metaSet, new VerdictOption());
+    ExecutionResultReader reader =
+        coordinator.process(
+            String.format(
+                "select * from (select sum(\"price\") as \"s\" from \"%s\".\"sales\") t",
+                schema),
+            new QueryContext("view", 5L));
+    double last = 0;
+    while (reader.hasNext()) {
+      DbmsQueryResult result = reader.next();
+      result.next();
+      last = result.getDouble(0);
+    }
+    assertEquals(500500, last, 1e-6);
+
+    TempIdCreatorInScratchpadSchema creator =
+        (TempIdCreatorInScratchpadSchema) coordinator.getLastIdCreator();
+    List<Pair<String, String>> tempViews = creator.getGeneratedTempViews();
+    assertTrue(tempViews.size() > 0);
+    for (Pair<String, String> v : tempViews) {
+      assertTrue(exists(v.getRight()));
+    }
+
+    TempTableManager manager = new TempTableManager(viewConn, "view", tempSchema);
+    manager.release(5, creator.getGeneratedTempTables(), tempViews);
+    manager.close();
+    for (Pair<String, String> v : tempViews) {
+      assertFalse(exists(v.getRight()));
+    }
+  }
+}
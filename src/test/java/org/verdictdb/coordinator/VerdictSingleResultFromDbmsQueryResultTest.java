@@ -0,0 +1,47 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.verdictdb.VerdictSingleResult;
+import org.verdictdb.connection.ColumnarQueryResult;
+import org.verdictdb.connection.DbmsQueryResultMetaData;
+
+public class VerdictSingleResultFromDbmsQueryResultTest {
+
+  @Test
+  public void testWrappedResultsHaveOwnCursors() {
+    ColumnarQueryResult source =
+        new ColumnarQueryResult(
+            Arrays.asList("id"), Arrays.asList(Types.BIGINT), new DbmsQueryResultMetaData());
+    for (long i = 0; i < 10; i++) {
+      source.addRow(Arrays.<Object>asList(i));
+    }
+    source.next();
+    source.next();
+
+    VerdictSingleResult first = new VerdictSingleResultFromDbmsQueryResult(source);
+    VerdictSingleResult second = new VerdictSingleResultFromDbmsQueryResult(source);
+    assertEquals(10, first.getRowCount());
+    assertTrue(first.next());
+    assertTrue(first.next());
+    assertTrue(second.next());
+    assertEquals(1, first.getLong(0));
+    assertEquals(0, second.getLong(0));
+
+    // the cursor of the wrapped result is not moved by the wrappers.
+    assertEquals(1, source.getLong(0));
+
+    int count = 1;
+    while (second.next()) {
+      count++;
+    }
+    assertEquals(10, count);
+    assertFalse(second.next());
+  }
+}
@@ -0,0 +1,33 @@
+package org.verdictdb.coordinator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class VerdictSingleResultFromListDataTest {
+
+  @Test
+  public void testChangesToGivenListAreNotVisible() {
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.<Object>asList(1, "a"));
+    rows.add(Arrays.<Object>asList(2, "b"));
+    VerdictSingleResultFromListData result =
+        new VerdictSingleResultFromListData(Arrays.asList("id", "name"), rows);
+
+    rows.clear();
+    rows.add(Arrays.<Object>asList(3, "c"));
+
+    assertEquals(2, result.getRowCount());
+    assertTrue(result.next());
+    assertEquals(1, result.getValue(0));
+    assertTrue(result.next());
+    assertEquals("b", result.getValue(1));
+    assertFalse(result.next());
+  }
+}
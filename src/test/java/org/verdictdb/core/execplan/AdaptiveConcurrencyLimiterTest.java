@@ -0,0 +1,139 @@
+package org.verdictdb.core.execplan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+  static final long MS = 1000 * 1000;
+
+  /**
+   * Runs as many blocks as the current limit, all starting at {@code now} and all finishing after
+   * {@code elapsedMs}; each block reports {@code latencyMs} of backend time.
+   *
+   * @return The time when the round ended
+   */
+  private long runRound(
+      AdaptiveConcurrencyLimiter limiter, long now, long elapsedMs, long latencyMs) {
+    int limit = limiter.getLimit();
+    Object[] blocks = new Object[limit];
+    for (int i = 0; i < limit; i++) {
+      blocks[i] = new Object();
+      limiter.onStart(blocks[i], now);
+    }
+    long end = now + elapsedMs * MS;
+    for (Object block : blocks) {
+      limiter.onComplete(block, true, latencyMs * MS, end);
+    }
+    return end;
+  }
+
+  @Test
+  public void testGrowsWhileThroughputImproves() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 20);
+    assertEquals(2, limiter.getLimit());
+
+    // every block takes 100 ms regardless of the concurrency: the backend scales perfectly.
+    long now = 0;
+    now = runRound(limiter, now, 100, 100);
+    assertEquals(4, limiter.getLimit()); // the first round always counts as an improvement
+    now = runRound(limiter, now, 100, 100);
+    assertEquals(8, limiter.getLimit());
+    now = runRound(limiter, now, 100, 100);
+    assertEquals(16, limiter.getLimit());
+    now = runRound(limiter, now, 100, 100);
+    assertEquals(20, limiter.getLimit()); // capped by the max
+    assertEquals(30, limiter.getSampleCount());
+    assertEquals(0, limiter.getInFlightCount());
+  }
+
+  @Test
+  public void testStopsGrowingWhenThroughputIsFlat() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 20);
+    long now = 0;
+    now = runRound(limiter, now, 100, 100); // 2 blocks in 100 ms
+    now = runRound(limiter, now, 200, 100); // 4 blocks in 200 ms: no improvement
+    assertEquals(4, limiter.getLimit());
+
+    // the slow start has ended, so the limit grows by one from now on.
+    now = runRound(limiter, now, 100, 100);
+    assertEquals(5, limiter.getLimit());
+  }
+
+  @Test
+  public void testBacksOffWhenCongested() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 20);
+    long now = 0;
+    now = runRound(limiter, now, 100, 100);
+    now = runRound(limiter, now, 100, 100);
+    assertEquals(8, limiter.getLimit());
+
+    // the backend queues the blocks: throughput stays the same and the latency grows.
+    now = runRound(limiter, now, 800, 800);
+    assertEquals(6, limiter.getLimit());
+    assertEquals(100, limiter.getMinLatencyMillis(), 1e-9);
+    assertEquals(800, limiter.getLastLatencyMillis(), 1e-9);
+  }
+
+  @Test
+  public void testFailureBacksOff() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 20);
+    long now = 0;
+    now = runRound(limiter, now, 100, 100);
+    now = runRound(limiter, now, 100, 100);
+    assertEquals(8, limiter.getLimit());
+
+    Object block = new Object();
+    limiter.onStart(block, now);
+    assertTrue(limiter.isInFlight(block));
+    limiter.onComplete(block, false, 0, now + 10 * MS);
+    assertFalse(limiter.isInFlight(block));
+    assertEquals(6, limiter.getLimit());
+    assertEquals(1, limiter.getFailureCount());
+
+    // a repeated report of the same block is ignored.
+    limiter.onComplete(block, false, 0, now + 20 * MS);
+    assertEquals(6, limiter.getLimit());
+    assertEquals(1, limiter.getFailureCount());
+  }
+
+  @Test
+  public void testBounds() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(3, 5);
+    assertEquals(3, limiter.getLimit());
+    long now = 0;
+    for (int i = 0; i < 5; i++) {
+      limiter.onComplete(new Object(), false, 0, now); // not started; ignored
+      Object block = new Object();
+      limiter.onStart(block, now);
+      limiter.onComplete(block, false, 0, now);
+    }
+    assertEquals(3, limiter.getLimit());
+    assertEquals(5, limiter.getFailureCount());
+
+    AdaptiveConcurrencyLimiter single = new AdaptiveConcurrencyLimiter(1, 1);
+    runRound(single, 0, 10, 10);
+    runRound(single, 10 * MS, 1, 10);
+    assertEquals(1, single.getLimit());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidBounds() {
+    new AdaptiveConcurrencyLimiter(0, 4);
+  }
+
+  @Test
+  public void testDroppedBlock() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 10);
+    Object block = new Object();
+    limiter.onStart(block, 0);
+    assertEquals(1, limiter.getInFlightCount());
+    limiter.onDrop(block);
+    assertEquals(0, limiter.getInFlightCount());
+    assertEquals(0, limiter.getSampleCount());
+    assertEquals(2, limiter.getLimit());
+  }
+}
@@ -0,0 +1,149 @@
+package org.verdictdb.core.execplan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ExecutableNodeSchedulerTest {
+
+  @Test
+  public void testGlobalLimit() throws InterruptedException {
+    ExecutableNodeScheduler scheduler = new ExecutableNodeScheduler(3, 10);
+    ExecutableNodeScheduler.Group group1 = scheduler.createGroup();
+    ExecutableNodeScheduler.Group group2 = scheduler.createGroup();
+
+    int taskCount = 20;
+    CountDownLatch done = new CountDownLatch(taskCount);
+    AtomicInteger running = new AtomicInteger(0);
+    AtomicInteger maxRunning = new AtomicInteger(0);
+    for (int i = 0; i < taskCount; i++) {
+      ExecutableNodeScheduler.Group group = (i % 2 == 0) ? group1 : group2;
+      group.submit(new CountingTask(running, maxRunning, done));
+    }
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue(maxRunning.get() <= 3);
+    assertEquals(taskCount, scheduler.getQueueWaitStatistics().getCount());
+    assertEquals(taskCount / 2, group1.getQueueWaitStatistics().getCount());
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testGroupLimit() throws InterruptedException {
+    ExecutableNodeScheduler scheduler = new ExecutableNodeScheduler(10, 2);
+    ExecutableNodeScheduler.Group group = scheduler.createGroup();
+
+    int taskCount = 10;
+    CountDownLatch done = new CountDownLatch(taskCount);
+    AtomicInteger running = new AtomicInteger(0);
+    AtomicInteger maxRunning = new AtomicInteger(0);
+    for (int i = 0; i < taskCount; i++) {
+      group.submit(new CountingTask(running, maxRunning, done));
+    }
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue(maxRunning.get() <= 2);
+    assertEquals(0, group.getPendingNodeCount());
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testRoundRobinAcrossGroups() throws InterruptedException {
+    // a single worker makes the execution order equal to the dispatch order.
+    ExecutableNodeScheduler scheduler = new ExecutableNodeScheduler(1, 1);
+    ExecutableNodeScheduler.Group heavy = scheduler.createGroup();
+    ExecutableNodeScheduler.Group light = scheduler.createGroup();
+
+    final CountDownLatch blocker = new CountDownLatch(1);
+    final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    int taskCount = 5;
+    final CountDownLatch done = new CountDownLatch(2 * taskCount + 1);
+
+    // occupies the only worker until all the other tasks are queued.
+    heavy.submit(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              blocker.await();
+            } catch (InterruptedException e) {
+              e.printStackTrace();
+            }
+            done.countDown();
+          }
+        });
+    for (int i = 0; i < taskCount; i++) {
+      heavy.submit(new RecordingTask("heavy", order, done));
+    }
+    for (int i = 0; i < taskCount; i++) {
+      light.submit(new RecordingTask("light", order, done));
+    }
+    blocker.countDown();
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(2 * taskCount, order.size());
+    for (int i = 0; i < order.size(); i++) {
+      assertEquals((i % 2 == 0) ? "heavy" : "light", order.get(i));
+    }
+    scheduler.shutdown();
+  }
+
+  static class CountingTask implements Runnable {
+
+    AtomicInteger running;
+
+    AtomicInteger maxRunning;
+
+    CountDownLatch done;
+
+    CountingTask(AtomicInteger running, AtomicInteger maxRunning, CountDownLatch done) {
+      this.running = running;
+      this.maxRunning = maxRunning;
+      this.done = done;
+    }
+
+    @Override
+    public void run() {
+      int current = running.incrementAndGet();
+      synchronized (maxRunning) {
+        maxRunning.set(Math.max(maxRunning.get(), current));
+      }
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      }
+      running.decrementAndGet();
+      done.countDown();
+    }
+  }
+
+  static class RecordingTask implements Runnable {
+
+    String name;
+
+    List<String> order;
+
+    CountDownLatch done;
+
+    RecordingTask(String name, List<String> order, CountDownLatch done) {
+      this.name = name;
+      this.order = order;
+      this.done = done;
+    }
+
+    @Override
+    public void run() {
+      order.add(name);
+      done.countDown();
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package org.verdictdb.core.execplan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.connection.JdbcQueryResult;
+import org.verdictdb.core.querying.ola.AggMeta;
+import org.verdictdb.exception.VerdictDBDbmsException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+import com.rits.cloning.Cloner;
+
+public class ExecutionInfoTokenTest {
+
+  static final int rowCount = 10000;
+
+  static final int subscriberCount = 10;
+
+  static final int broadcastCount = 20;
+
+  static Connection conn;
+
+  static DbmsQueryResult result;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException, VerdictDBDbmsException {
+    final String DB_CONNECTION = "jdbc:h2:mem:executioninfotokentest;DB_CLOSE_DELAY=-1";
+    conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+    JdbcConnection jdbc = new JdbcConnection(conn, new H2Syntax());
+    result =
+        jdbc.executeQuery(
+            String.format(
+                "SELECT x AS id, x * 1.5 AS price, CONCAT('name', x) AS name "
+                    + "FROM SYSTEM_RANGE(1, %d)",
+                rowCount));
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    conn.close();
+  }
+
+  @Test
+  public void testCopyHasOwnKeys() {
+    ExecutionInfoToken token = new ExecutionInfoToken();
+    token.setKeyValue("tableName", "t1");
+    token.setKeyValue("queryResult", result);
+
+    ExecutionInfoToken copied = token.copy();
+    copied.setKeyValue("channel", 1);
+    copied.setKeyValue("tableName", "t2");
+
+    assertNull(token.getValue("channel"));
+    assertEquals("t1", token.getValue("tableName"));
+    assertEquals(1, copied.getValue("channel"));
+    assertEquals("t2", copied.getValue("tableName"));
+  }
+
+  @Test
+  public void testCopySharesOtherValues() {
+    AggMeta aggMeta = new AggMeta();
+    ExecutionInfoToken token = new ExecutionInfoToken();
+    token.setKeyValue("aggMeta", aggMeta);
+
+    // the values are read-only; they are not copied per subscriber.
+    assertSame(aggMeta, token.copy().getValue("aggMeta"));
+  }
+
+  @Test
+  public void testCopySharesRowsWithNewCursor() {
+    ExecutionInfoToken token = new ExecutionInfoToken();
+    token.setKeyValue("queryResult", result);
+    ExecutionInfoToken copied1 = token.copy();
+    ExecutionInfoToken copied2 = token.copy();
+
+    JdbcQueryResult result1 = (JdbcQueryResult) copied1.getValue("queryResult");
+    JdbcQueryResult result2 = (JdbcQueryResult) copied2.getValue("queryResult");
+    assertSame(((JdbcQueryResult) result).getResult(), result1.getResult());
+    assertSame(result1.getResult(), result2.getResult());
+
+    // reading one copy does not move the cursor of the other.
+    int count = 0;
+    while (result1.next()) {
+      count++;
+    }
+    assertEquals(rowCount, count);
+    assertFalse(result1.next());
+    assertTrue(result2.next());
+    assertEquals(1, result2.getLong(0));
+  }
+
+  /**
+   * Measures the per-broadcast cost of delivering a token carrying a 10k-row result to its
+   * subscribers, using the reflection-based deep copy and the shared-payload copy.
+   */
+  @Test
+  public void testBroadcastCost() {
+    ExecutionInfoToken token = new ExecutionInfoToken();
+    token.setKeyValue("queryResult", result);
+    token.setKeyValue("schemaName", "verdictdbtemp");
+    token.setKeyValue("tableName", "verdictdbtemptable_0");
+    Cloner cloner = new Cloner();
+
+    // warm-up
+    for (int i = 0; i < 3; i++) {
+      cloner.deepClone(token);
+      token.copy();
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < broadcastCount; i++) {
+      for (int j = 0; j < subscriberCount; j++) {
+        cloner.deepClone(token);
+      }
+    }
+    double deepCopyCost = (System.nanoTime() - start) / (double) broadcastCount / 1e6;
+
+    start = System.nanoTime();
+    for (int i = 0; i < broadcastCount; i++) {
+      for (int j = 0; j < subscriberCount; j++) {
+        token.copy();
+      }
+    }
+    double copyCost = (System.nanoTime() - start) / (double) broadcastCount / 1e6;
+
+    System.out.println(
+        String.format(
+            "%d rows, %d subscribers: deep copy %.3f ms/broadcast, copy %.3f ms/broadcast",
+            rowCount, subscriberCount, deepCopyCost, copyCost));
+    assertTrue(copyCost < deepCopyCost);
+  }
+}
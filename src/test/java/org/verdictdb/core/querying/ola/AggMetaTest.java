@@ -126,6 +126,57 @@ public class AggMetaTest {
     assertEquals(1.0 / (0.3*0.3), tierToScaleFactor.get(testtier), 1e-6);
   }
   
+  @Test
+  public void testScaleFactorsUpdatedIncrementally() throws VerdictDBValueException {
+    String schemaName1 = "new_schema1";
+    String tableName1 = "new_table1";
+    String schemaName2 = "new_schema2";
+    String tableName2 = "new_table2";
+    TierCombination tier10 = new TierCombination(
+        Arrays.asList(Pair.of(schemaName1, tableName1), Pair.of(schemaName2, tableName2)),
+        Arrays.asList(1, 0));
+    
+    AggMeta aggmeta = new AggMeta();
+    aggmeta.addScrambleTableTierColumnAlias(
+        createTwoTierScrambleMeta(schemaName1, tableName1), "tier_alias1");
+    aggmeta.addScrambleTableTierColumnAlias(
+        createTwoTierScrambleMeta(schemaName2, tableName2), "tier_alias2");
+    aggmeta.addCube(new HyperTableCube(Arrays.asList(
+        new Dimension(schemaName1, tableName1, 0, 0),
+        new Dimension(schemaName2, tableName2, 0, 0))));
+    assertEquals(4, aggmeta.computeScaleFactors().size());
+    assertEquals(1.0 / (0.2*0.3), aggmeta.computeScaleFactors().get(tier10), 1e-6);
+    
+    // a combiner appends cubes to the list directly.
+    aggmeta.getCubes().add(new HyperTableCube(Arrays.asList(
+        new Dimension(schemaName1, tableName1, 1, 1),
+        new Dimension(schemaName2, tableName2, 0, 0))));
+    assertEquals(1.0 / (0.2*0.3 + 0.3*0.3), aggmeta.computeScaleFactors().get(tier10), 1e-6);
+    
+    // the next step covers the cubes of the previous step and more.
+    List<HyperTableCube> cubes = new ArrayList<>(aggmeta.getCubes());
+    cubes.add(new HyperTableCube(Arrays.asList(
+        new Dimension(schemaName1, tableName1, 2, 2),
+        new Dimension(schemaName2, tableName2, 0, 0))));
+    aggmeta.setCubes(cubes);
+    assertEquals(1.0 / 0.3, aggmeta.computeScaleFactors().get(tier10), 1e-6);
+    
+    // other cubes are examined from scratch.
+    cubes = new ArrayList<>();
+    cubes.add(new HyperTableCube(Arrays.asList(
+        new Dimension(schemaName1, tableName1, 0, 2),
+        new Dimension(schemaName2, tableName2, 0, 1))));
+    aggmeta.setCubes(cubes);
+    assertEquals(1.0 / 0.6, aggmeta.computeScaleFactors().get(tier10), 1e-6);
+    
+    // the copies share the cubes, but not the scale factors.
+    AggMeta copied = aggmeta.deepcopy();
+    assertEquals(aggmeta.getCubes().get(0), copied.getCubes().get(0));
+    copied.getCubes().add(aggmeta.getCubes().get(0));
+    assertEquals(1.0 / 1.2, copied.computeScaleFactors().get(tier10), 1e-6);
+    assertEquals(1.0 / 0.6, aggmeta.computeScaleFactors().get(tier10), 1e-6);
+  }
+  
   private ScrambleMeta createSingleTierScrambleMeta(
       String scrambleSchemaName, String scrambleTableName
   ) throws VerdictDBValueException {
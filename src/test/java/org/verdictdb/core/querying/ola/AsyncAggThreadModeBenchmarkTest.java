@@ -0,0 +1,157 @@
+package org.verdictdb.core.querying.ola;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.commons.VerdictOption;
+import org.verdictdb.connection.ConcurrentJdbcConnection;
+import org.verdictdb.connection.DbmsConnection;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.coordinator.SelectQueryCoordinator;
+import org.verdictdb.core.execplan.ExecutableNodeScheduler;
+import org.verdictdb.core.resulthandler.ExecutionResultReader;
+import org.verdictdb.core.scrambling.ScrambleMeta;
+import org.verdictdb.core.scrambling.ScrambleMetaSet;
+import org.verdictdb.core.scrambling.UniformScrambler;
+import org.verdictdb.core.sqlobject.CreateTableAsSelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+/**
+ * Compares the platform-thread and the virtual-thread execution modes on an asynchronous
+ * aggregation plan with 100 blocks. The virtual-thread mode is measured only on JDK 21 or later.
+ */
+public class AsyncAggThreadModeBenchmarkTest {
+
+  static final int aggBlockCount = 100;
+
+  static final int rowCount = 20000;
+
+  static final int connectionCount = 10;
+
+  static final int repeatCount = 3;
+
+  static String schema = "threadmodebenchmark";
+
+  static String originalTable = "originalTable";
+
+  static String scrambledTable = "originalTable_scrambled";
+
+  static List<Connection> h2conns = new ArrayList<>();
+
+  static DbmsConnection conn;
+
+  static ScrambleMetaSet metaSet = new ScrambleMetaSet();
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException, VerdictDBException {
+    final String DB_CONNECTION = "jdbc:h2:mem:threadmodebenchmark;DB_CLOSE_DELAY=-1";
+    List<JdbcConnection> jdbcConns = new ArrayList<>();
+    for (int i = 0; i < connectionCount; i++) {
+      Connection c = DriverManager.getConnection(DB_CONNECTION, "", "");
+      h2conns.add(c);
+      jdbcConns.add(new JdbcConnection(c, new H2Syntax()));
+    }
+    conn = new ConcurrentJdbcConnection(jdbcConns);
+
+    Statement stmt = h2conns.get(0).createStatement();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", schema));
+    stmt.execute(
+        String.format(
+            "CREATE SCHEMA IF NOT EXISTS \"%s\"", VerdictOption.getDefaultTempSchemaName()));
+    stmt.execute(
+        String.format(
+            "CREATE TABLE \"%s\".\"%s\"(\"id\" int, \"value\" double)", schema, originalTable));
+    stmt.execute(
+        String.format(
+            "INSERT INTO \"%s\".\"%s\" SELECT x, x FROM SYSTEM_RANGE(1, %d)",
+            schema, originalTable, rowCount));
+
+    UniformScrambler scrambler =
+        new UniformScrambler(schema, originalTable, schema, scrambledTable, aggBlockCount);
+    CreateTableAsSelectQuery scramblingQuery = scrambler.createQuery();
+    stmt.executeUpdate(QueryToSql.convert(new H2Syntax(), scramblingQuery));
+    ScrambleMeta tablemeta = scrambler.generateMeta();
+    tablemeta.setMethod("uniform");
+    tablemeta.setNumberOfTiers(1);
+    tablemeta.setOriginalSchemaName(schema);
+    tablemeta.setOriginalTableName(originalTable);
+    HashMap<Integer, List<Double>> distribution = new HashMap<>();
+    List<Double> cumulative = new ArrayList<>();
+    for (int i = 0; i < aggBlockCount; i++) {
+      cumulative.add((i + 1) / (double) aggBlockCount);
+    }
+    distribution.put(0, cumulative);
+    tablemeta.setCumulativeDistributionForTier(distribution);
+    metaSet.addScrambleMeta(tablemeta);
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    Statement stmt = h2conns.get(0).createStatement();
+    stmt.execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", schema));
+    stmt.execute(
+        String.format(
+            "DROP SCHEMA IF EXISTS \"%s\" CASCADE", VerdictOption.getDefaultTempSchemaName()));
+    stmt.close();
+    for (Connection c : h2conns) {
+      c.close();
+    }
+  }
+
+  @Test
+  public void testPlatformThreadMode() throws VerdictDBException {
+    runBenchmark(ExecutableNodeScheduler.PLATFORM_THREAD_MODE);
+  }
+
+  @Test
+  public void testVirtualThreadMode() throws VerdictDBException {
+    Assume.assumeTrue(ExecutableNodeScheduler.isVirtualThreadSupported());
+    runBenchmark(ExecutableNodeScheduler.VIRTUAL_THREAD_MODE);
+  }
+
+  private void runBenchmark(String threadMode) throws VerdictDBException {
+    VerdictOption options = new VerdictOption();
+    options.setVerdictThreadMode(threadMode);
+    String sql =
+        String.format("select count(*) as c from \"%s\".\"%s\"", schema, scrambledTable);
+
+    long totalElapsed = 0;
+    for (int i = 0; i < repeatCount; i++) {
+      SelectQueryCoordinator coordinator = new SelectQueryCoordinator(conn, metaSet, options);
+      long start = System.nanoTime();
+      ExecutionResultReader reader = coordinator.process(sql);
+      DbmsQueryResult last = null;
+      int answerCount = 0;
+      while (reader.hasNext()) {
+        last = reader.next();
+        answerCount++;
+      }
+      totalElapsed += System.nanoTime() - start;
+
+      // the last answer is computed from all the blocks; thus, it must be exact.
+      last.next();
+      assertEquals(rowCount, Math.round(last.getDouble(0)));
+      System.out.println(
+          String.format("[%s] run %d: %d progressive answers", threadMode, i, answerCount));
+    }
+    System.out.println(
+        String.format(
+            "[%s] %d blocks, avg elapsed: %.1f ms",
+            threadMode, aggBlockCount, totalElapsed / (double) repeatCount / 1e6));
+  }
+}
@@ -0,0 +1,319 @@
+package org.verdictdb.core.querying.ola;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.ColumnarQueryResult;
+import org.verdictdb.connection.DbmsQueryResult;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.core.sqlobject.AliasReference;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.OrderbyAttribute;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.core.sqlobject.UnnamedColumn;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+/**
+ * Checks that the in-memory evaluation of combined aggregate blocks returns the same answers as
+ * running the same queries on H2.
+ */
+public class InMemoryAggregateTest {
+
+  static final int blockCount = 5;
+
+  static Connection conn;
+
+  static JdbcConnection jdbc;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException {
+    final String DB_CONNECTION = "jdbc:h2:mem:inmemoryaggregatetest;DB_CLOSE_DELAY=-1";
+    conn = DriverManager.getConnection(DB_CONNECTION, "", "");
+    jdbc = new JdbcConnection(conn, new H2Syntax());
+    Statement stmt = conn.createStatement();
+    stmt.execute(
+        "CREATE TABLE sales AS SELECT "
+            + "x AS id, "
+            + "MOD(x, 7) AS region, "
+            + "CAST(MOD(x * 13, 100) AS DOUBLE) AS price, "
+            + "MOD(x, 2) AS tier, "
+            + "MOD(x, " + blockCount + ") AS block "
+            + "FROM SYSTEM_RANGE(1, 2000)");
+    stmt.execute("UPDATE sales SET price = NULL WHERE MOD(id, 97) = 0");
+    stmt.close();
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    conn.close();
+  }
+
+  // select region, sum(price), count(*), max(price), min(price), tier from sales group by ...
+  static SelectQuery dependentQuery() {
+    List<SelectItem> items = new ArrayList<>();
+    items.add(new AliasedColumn(new BaseColumn("t", "region"), "region"));
+    items.add(new AliasedColumn(ColumnOp.sum(new BaseColumn("t", "price")), "agg0"));
+    items.add(new AliasedColumn(ColumnOp.count(), "agg1"));
+    items.add(new AliasedColumn(new ColumnOp("max", new BaseColumn("t", "price")), "agg2"));
+    items.add(new AliasedColumn(new ColumnOp("min", new BaseColumn("t", "price")), "agg3"));
+    items.add(new AliasedColumn(new BaseColumn("t", "tier"), "verdictdb_tier"));
+    return SelectQuery.create(items, new BaseTable("PUBLIC", "SALES", "t"));
+  }
+
+  static InMemoryAggregate combineBlocks(List<String> combinedNames)
+      throws SQLException, VerdictDBException {
+    InMemoryAggregate aggregate = InMemoryAggregate.create();
+    String combined = "";
+    for (int b = 0; b < blockCount; b++) {
+      DbmsQueryResult block =
+          jdbc.executeQuery(
+              "SELECT region AS \"region\", SUM(price) AS \"agg0\", COUNT(*) AS \"agg1\", "
+                  + "MAX(price) AS \"agg2\", MIN(price) AS \"agg3\", tier AS \"verdictdb_tier\" "
+                  + "FROM sales WHERE block = " + b + " GROUP BY region, tier");
+      aggregate.createTable(block, "VERDICTDB_SELECTAGG_" + b);
+      combined = aggregate.combineTables("VERDICTDB_SELECTAGG_" + b, combined, dependentQuery());
+    }
+    combinedNames.add(combined);
+    return aggregate;
+  }
+
+  // select ... from (select region, <scaled agg0>, <scaled agg1>, agg2, agg3 from combined) t
+  static SelectQuery finalQuery(String combinedName, List<SelectItem> outerItems) {
+    UnnamedColumn scale =
+        new ColumnOp(
+            "casewhen",
+            Arrays.<UnnamedColumn>asList(
+                ColumnOp.equal(
+                    new BaseColumn("verdictdb_internal_tier_consolidated", "verdictdb_tier"),
+                    ConstantColumn.valueOf(0)),
+                ConstantColumn.valueOf("2.0"),
+                ConstantColumn.valueOf("1.0")));
+    List<SelectItem> innerItems = new ArrayList<>();
+    innerItems.add(new AliasedColumn(new BaseColumn("region"), "region"));
+    innerItems.add(new AliasedColumn(ColumnOp.multiply(scale, new BaseColumn("agg0")), "agg0"));
+    innerItems.add(new AliasedColumn(ColumnOp.multiply(scale, new BaseColumn("agg1")), "agg1"));
+    innerItems.add(new AliasedColumn(new BaseColumn("agg2"), "agg2"));
+    innerItems.add(new AliasedColumn(new BaseColumn("agg3"), "agg3"));
+    SelectQuery inner =
+        SelectQuery.create(
+            innerItems,
+            new BaseTable("PUBLIC", combinedName, "verdictdb_internal_tier_consolidated"));
+    inner.setAliasName("verdictdb_internal_before_scaling");
+    return SelectQuery.create(outerItems, inner);
+  }
+
+  static void assertSameResult(DbmsQueryResult expected, DbmsQueryResult actual) {
+    assertEquals(expected.getRowCount(), actual.getRowCount());
+    assertEquals(expected.getColumnCount(), actual.getColumnCount());
+    expected.rewind();
+    actual.rewind();
+    while (expected.next()) {
+      assertTrue(actual.next());
+      for (int i = 0; i < expected.getColumnCount(); i++) {
+        Object e = expected.getValue(i);
+        Object a = actual.getValue(i);
+        if (e == null || a == null) {
+          assertEquals(e, a);
+        } else if (e instanceof Number) {
+          assertEquals(e.getClass(), a.getClass());
+          assertEquals(((Number) e).doubleValue(), ((Number) a).doubleValue(), 1e-6);
+        } else {
+          assertEquals(e.toString(), a.toString());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testGroupbyHavingOrderby() throws SQLException, VerdictDBException {
+    List<String> names = new ArrayList<>();
+    InMemoryAggregate aggregate = combineBlocks(names);
+
+    List<SelectItem> items = new ArrayList<>();
+    items.add(new AliasedColumn(new BaseColumn("region"), "region"));
+    items.add(
+        new AliasedColumn(
+            ColumnOp.divide(
+                ColumnOp.sum(new BaseColumn("agg0")), ColumnOp.sum(new BaseColumn("agg1"))),
+            "avg_price"));
+    items.add(new AliasedColumn(new ColumnOp("max", new BaseColumn("agg2")), "max_price"));
+    items.add(new AliasedColumn(new ColumnOp("min", new BaseColumn("agg3")), "min_price"));
+    SelectQuery query = finalQuery(names.get(0), items);
+    query.addGroupby(new BaseColumn("region"));
+    query.addHavingByAnd(
+        ColumnOp.greater(ColumnOp.sum(new BaseColumn("agg1")), ConstantColumn.valueOf(400)));
+    query.addOrderby(new OrderbyAttribute(new AliasReference("avg_price"), "desc"));
+    query.addLimit(ConstantColumn.valueOf(4));
+
+    DbmsQueryResult inMemory = aggregate.executeQuery(query);
+    assertTrue(inMemory instanceof ColumnarQueryResult);
+    DbmsQueryResult onDatabase = aggregate.executeQueryOnDatabase(query);
+    assertEquals(4, inMemory.getRowCount());
+    assertSameResult(onDatabase, inMemory);
+    aggregate.abort();
+  }
+
+  @Test
+  public void testWithoutGroupby() throws SQLException, VerdictDBException {
+    List<String> names = new ArrayList<>();
+    InMemoryAggregate aggregate = combineBlocks(names);
+
+    List<SelectItem> items = new ArrayList<>();
+    items.add(new AliasedColumn(ColumnOp.sum(new BaseColumn("agg0")), "total"));
+    items.add(new AliasedColumn(ColumnOp.sum(new BaseColumn("agg1")), "cnt"));
+    items.add(
+        new AliasedColumn(
+            ColumnOp.add(
+                ConstantColumn.valueOf(1), new ColumnOp("max", new BaseColumn("agg2"))),
+            "max_plus_one"));
+    SelectQuery query = finalQuery(names.get(0), items);
+
+    DbmsQueryResult inMemory = aggregate.executeQuery(query);
+    assertTrue(inMemory instanceof ColumnarQueryResult);
+    assertSameResult(aggregate.executeQueryOnDatabase(query), inMemory);
+
+    // every tier-0 row is counted twice
+    inMemory.rewind();
+    inMemory.next();
+    assertEquals(3000, inMemory.getLong(1));
+    aggregate.abort();
+  }
+
+  @Test
+  public void testIntegralSumsStayExact() throws SQLException, VerdictDBException {
+    List<SelectItem> items = new ArrayList<>();
+    items.add(new AliasedColumn(ColumnOp.sum(new BaseColumn("t", "big")), "agg0"));
+    items.add(new AliasedColumn(ColumnOp.count(), "agg1"));
+    SelectQuery dependentQuery = SelectQuery.create(items, new BaseTable("PUBLIC", "T", "t"));
+
+    InMemoryAggregate aggregate = InMemoryAggregate.create();
+    String combined = "";
+    for (int b = 0; b < 3; b++) {
+      // 2^62 + 1 per block: the sum exceeds the range of a long, and 2^53 + 1 is not a double.
+      DbmsQueryResult block =
+          jdbc.executeQuery(
+              "SELECT CAST(4611686018427387905 AS BIGINT) AS \"agg0\", "
+                  + "CAST(9007199254740993 AS BIGINT) AS \"agg1\"");
+      aggregate.createTable(block, "VERDICTDB_SELECTAGG_BIG" + b);
+      combined = aggregate.combineTables("VERDICTDB_SELECTAGG_BIG" + b, combined, dependentQuery);
+    }
+
+    List<SelectItem> outer = new ArrayList<>();
+    outer.add(new AliasedColumn(ColumnOp.sum(new BaseColumn("agg0")), "total"));
+    outer.add(new AliasedColumn(ColumnOp.sum(new BaseColumn("agg1")), "cnt"));
+    List<SelectItem> inner = new ArrayList<>();
+    inner.add(new AliasedColumn(new BaseColumn("agg0"), "agg0"));
+    inner.add(new AliasedColumn(new BaseColumn("agg1"), "agg1"));
+    SelectQuery innerQuery = SelectQuery.create(inner, new BaseTable("PUBLIC", combined, "s"));
+    innerQuery.setAliasName("t");
+
+    DbmsQueryResult result = aggregate.executeQuery(SelectQuery.create(outer, innerQuery));
+    result.next();
+    assertEquals(
+        new BigDecimal("4611686018427387905").multiply(BigDecimal.valueOf(3)),
+        result.getValue(0));
+    assertEquals(3 * 9007199254740993L, result.getValue(1));
+    aggregate.abort();
+  }
+
+  @Test
+  public void testDecimalAverageMatchesDatabase() throws SQLException, VerdictDBException {
+    List<SelectItem> items = new ArrayList<>();
+    items.add(new AliasedColumn(new BaseColumn("t", "region"), "region"));
+    items.add(new AliasedColumn(new BaseColumn("t", "amount"), "amount"));
+    SelectQuery dependentQuery = SelectQuery.create(items, new BaseTable("PUBLIC", "T", "t"));
+
+    InMemoryAggregate aggregate = InMemoryAggregate.create();
+    String combined = "";
+    for (int b = 0; b < blockCount; b++) {
+      DbmsQueryResult block =
+          jdbc.executeQuery(
+              "SELECT region AS \"region\", CAST(price / 3 AS DECIMAL(10, 2)) AS \"amount\" "
+                  + "FROM sales WHERE block = " + b);
+      aggregate.createTable(block, "VERDICTDB_SELECTAGG_DEC" + b);
+      combined = aggregate.combineTables("VERDICTDB_SELECTAGG_DEC" + b, combined, dependentQuery);
+    }
+
+    List<SelectItem> outer = new ArrayList<>();
+    outer.add(new AliasedColumn(new BaseColumn("region"), "region"));
+    outer.add(new AliasedColumn(new ColumnOp("avg", new BaseColumn("amount")), "avg_amount"));
+    List<SelectItem> inner = new ArrayList<>();
+    inner.add(new AliasedColumn(new BaseColumn("region"), "region"));
+    inner.add(new AliasedColumn(new BaseColumn("amount"), "amount"));
+    SelectQuery innerQuery = SelectQuery.create(inner, new BaseTable("PUBLIC", combined, "s"));
+    innerQuery.setAliasName("t");
+    SelectQuery query = SelectQuery.create(outer, innerQuery);
+    query.addGroupby(new BaseColumn("region"));
+    query.addOrderby(new OrderbyAttribute("region"));
+
+    DbmsQueryResult inMemory = aggregate.executeQuery(query);
+    assertTrue(inMemory instanceof ColumnarQueryResult);
+    inMemory.next();
+    assertTrue(inMemory.getValue(1) instanceof BigDecimal);
+    assertSameResult(aggregate.executeQueryOnDatabase(query), inMemory);
+    aggregate.abort();
+  }
+
+  @Test
+  public void testSingleAccumulator() throws SQLException, VerdictDBException {
+    List<String> names = new ArrayList<>();
+    InMemoryAggregate aggregate = combineBlocks(names);
+    String combined = names.get(0);
+    assertEquals(14, aggregate.getGroupCount(combined));
+    long footprint = aggregate.getMemoryFootprint();
+    assertTrue(footprint > 0);
+
+    // merging more blocks with the same groups neither renames nor grows the accumulator.
+    for (int i = 0; i < 20; i++) {
+      DbmsQueryResult block =
+          jdbc.executeQuery(
+              "SELECT region AS \"region\", SUM(price) AS \"agg0\", COUNT(*) AS \"agg1\", "
+                  + "MAX(price) AS \"agg2\", MIN(price) AS \"agg3\", tier AS \"verdictdb_tier\" "
+                  + "FROM sales GROUP BY region, tier");
+      aggregate.createTable(block, "VERDICTDB_SELECTAGG_EXTRA" + i);
+      assertEquals(
+          combined,
+          aggregate.combineTables("VERDICTDB_SELECTAGG_EXTRA" + i, combined, dependentQuery()));
+    }
+    assertEquals(14, aggregate.getGroupCount(combined));
+    assertEquals(footprint, aggregate.getMemoryFootprint());
+    aggregate.abort();
+  }
+
+  @Test
+  public void testUnsupportedQueryFallsBackToDatabase() throws SQLException, VerdictDBException {
+    List<String> names = new ArrayList<>();
+    InMemoryAggregate aggregate = combineBlocks(names);
+
+    List<SelectItem> items = new ArrayList<>();
+    items.add(new AliasedColumn(new BaseColumn("region"), "region"));
+    items.add(
+        new AliasedColumn(new ColumnOp("floor", ColumnOp.sum(new BaseColumn("agg0"))), "total"));
+    SelectQuery query = finalQuery(names.get(0), items);
+    query.addGroupby(new BaseColumn("region"));
+    query.addOrderby(new OrderbyAttribute("region"));
+
+    DbmsQueryResult result = aggregate.executeQuery(query);
+    assertEquals(7, result.getRowCount());
+    assertTrue(!(result instanceof ColumnarQueryResult));
+    aggregate.abort();
+  }
+}
@@ -12,6 +12,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.verdictdb.connection.DbmsConnection;
@@ -22,6 +23,7 @@ import org.verdictdb.core.execplan.ExecutablePlanRunner;
 import org.verdictdb.core.execplan.ExecutionInfoToken;
 import org.verdictdb.core.querying.ExecutableNodeBase;
 import org.verdictdb.core.querying.TempIdCreatorInScratchpadSchema;
+import org.verdictdb.core.resulthandler.ExecutionTokenReader;
 import org.verdictdb.core.sqlobject.ColumnOp;
 import org.verdictdb.core.sqlobject.SqlConvertible;
 import org.verdictdb.core.sqlobject.UnnamedColumn;
@@ -122,23 +124,22 @@ public class FastConvergeScramblingMethodTest {
   public void testLargeGroupListNodeWithoutTableSize() throws VerdictDBException {
     String scratchpadSchemaName = "verdictdbtempSchema";
     TempIdCreatorInScratchpadSchema idCreator = new TempIdCreatorInScratchpadSchema(scratchpadSchemaName);
-    String schemaName = "oldSchema";
-    String tableName = "oldTable";
-    String primaryColumnName = "pcolumn";
     long blockSize = 10;
-    LargeGroupListNode node = 
-        new LargeGroupListNode(idCreator, schemaName, tableName, primaryColumnName, blockSize);
+    LargeGroupListNode node = new LargeGroupListNode(idCreator, blockSize);
     
-    SqlConvertible sqlobj = node.createQuery(Arrays.<ExecutionInfoToken>asList());
+    ExecutionInfoToken summary = new ExecutionInfoToken();
+    summary.setKeyValue(
+        StatisticsSummaryNode.class.getSimpleName(), Pair.of("summarySchema", "summaryTable"));
+    
+    SqlConvertible sqlobj = node.createQuery(Arrays.<ExecutionInfoToken>asList(summary));
     String sql = QueryToSql.convert(new HiveSyntax(), sqlobj);
     String actual = sql.replaceAll("verdictdbtemptable_\\d+_\\d+", "verdictdbtemptable");
     
     String expected = "create table `verdictdbtempSchema`.`verdictdbtemptable` stored as parquet "
-        + "as select t.`pcolumn` as `verdictdbrenameprimarygroup`, "
-        + "count(*) * (1.0 / 0.001) as `groupSize` "
-        + "from `oldSchema`.`oldTable` as t "
-        + "where rand() < 0.001 "
-        + "group by `pcolumn`";
+        + "as select t.`verdictdbrenameprimarygroup` as `verdictdbrenameprimarygroup`, "
+        + "t.`verdictdbrowcount` as `groupSize` "
+        + "from `summarySchema`.`summaryTable` as t "
+        + "where t.`verdictdbrowcount` >= 1000.0";
     assertEquals(expected, actual);
   }
   
@@ -146,12 +147,8 @@ public class FastConvergeScramblingMethodTest {
   public void testLargeGroupListNodeWithTableSize() throws VerdictDBException, SQLException {
     String scratchpadSchemaName = "verdictdbtempSchema";
     TempIdCreatorInScratchpadSchema idCreator = new TempIdCreatorInScratchpadSchema(scratchpadSchemaName);
-    String schemaName = "oldSchema";
-    String tableName = "oldTable";
-    String primaryColumnName = "pcolumn";
     long blockSize = 10;
-    LargeGroupListNode node = 
-        new LargeGroupListNode(idCreator, schemaName, tableName, primaryColumnName, blockSize);
+    LargeGroupListNode node = new LargeGroupListNode(idCreator, blockSize);
     
     // provision table size token
     int tableSize = 100;
@@ -161,18 +158,20 @@ public class FastConvergeScramblingMethodTest {
     
     ExecutionInfoToken e = new ExecutionInfoToken();
     e.setKeyValue(PercentilesAndCountNode.class.getSimpleName(), result);
+    ExecutionInfoToken summary = new ExecutionInfoToken();
+    summary.setKeyValue(
+        StatisticsSummaryNode.class.getSimpleName(), Pair.of("summarySchema", "summaryTable"));
     
     // run the method to test
-    SqlConvertible sqlobj = node.createQuery(Arrays.<ExecutionInfoToken>asList(e));
+    SqlConvertible sqlobj = node.createQuery(Arrays.<ExecutionInfoToken>asList(e, summary));
     String sql = QueryToSql.convert(new HiveSyntax(), sqlobj);
     String actual = sql.replaceAll("verdictdbtemptable_\\d+_\\d+", "verdictdbtemptable");
     
     String expected = "create table `verdictdbtempSchema`.`verdictdbtemptable` stored as parquet "
-        + "as select t.`pcolumn` as `verdictdbrenameprimarygroup`, "
-        + "count(*) * (1.0 / 0.1) as `groupSize` "
-        + "from `oldSchema`.`oldTable` as t "
-        + "where rand() < 0.1 "
-        + "group by `pcolumn`";
+        + "as select t.`verdictdbrenameprimarygroup` as `verdictdbrenameprimarygroup`, "
+        + "t.`verdictdbrowcount` as `groupSize` "
+        + "from `summarySchema`.`summaryTable` as t "
+        + "where t.`verdictdbrowcount` >= 10.0";
     assertEquals(expected, actual);
   }
   
@@ -196,19 +195,101 @@ public class FastConvergeScramblingMethodTest {
     ExecutableNodeBase columnMetaDataNode = 
         ColumnMetadataRetrievalNode.create(oldSchemaName, oldTableName, columnMetaTokenKey);
     
+    // only the summary node reads the original table.
     ExecutableNodeBase tableStatisticsRoot = nodes.get(0);
     tableStatisticsRoot.subscribeTo(columnMetaDataNode, 100);
-//    ExecutablePlan columnMetaPlan = new SimpleTreePlan(tableStatisticsRoot);
-//    DbmsConnection conn = new JdbcConnection(h2conn);
-//    ExecutablePlanRunner.runTillEnd(conn, columnMetaPlan);
+    assertEquals(6, nodes.size());
     
-    ExecutableNodeBase groupSizeRoot = nodes.get(2);
-    groupSizeRoot.subscribeTo(columnMetaDataNode, 100);
+    ExecutableNodeBase groupSizeRoot = nodes.get(5);
     ExecutablePlan groupSizePlan = new SimpleTreePlan(groupSizeRoot);
     DbmsConnection conn = JdbcConnection.create(h2conn);
     ExecutablePlanRunner.runTillEnd(conn, groupSizePlan);
   }
   
+  @Test
+  public void testStatisticsReused() throws VerdictDBException, SQLException {
+    int blockSize = 3;
+    String tempTableSchema = "test";
+    FastConvergeScramblingMethod method = new FastConvergeScramblingMethod(blockSize, tempTableSchema);
+    method.setStatisticsReused(true);
+    ScramblingPlan plan =
+        ScramblingPlan.create("test", "people_scramble_reused1", "test", "people", method, options);
+    JdbcConnection jdbcConn = JdbcConnection.create(h2conn);
+    ExecutablePlanRunner.runTillEnd(jdbcConn, plan);
+    assertEquals(3, method.getBlockCount());    // ceil(8 / 3)
+    
+    // the summary table is kept; altered to tell whether it is read again.
+    String statisticsTable = method.getStatisticsTableName("test", "people");
+    Statement stmt = h2conn.createStatement();
+    stmt.execute(String.format(
+        "UPDATE \"test\".\"%s\" SET \"%s\" = 30", 
+        statisticsTable, StatisticsSummaryNode.ROW_COUNT_ALIAS));
+    
+    method = new FastConvergeScramblingMethod(blockSize, tempTableSchema);
+    method.setStatisticsReused(true);
+    plan = ScramblingPlan.create("test", "people_scramble_reused2", "test", "people", method, options);
+    ExecutablePlanRunner.runTillEnd(jdbcConn, plan);
+    assertEquals(10, method.getBlockCount());   // ceil(30 / 3)
+    
+    stmt.execute(String.format("DROP TABLE \"test\".\"%s\"", statisticsTable));
+    stmt.execute(String.format(
+        "DROP TABLE \"test\".\"%s\"", method.getOutlierTableName("test", "people")));
+    stmt.close();
+  }
+  
+  @Test
+  public void testStableMomentsAndExactOutlierCount() throws VerdictDBException, SQLException {
+    // the values are close to each other relative to their magnitude.
+    Statement stmt = h2conn.createStatement();
+    stmt.execute("DROP TABLE \"test\".\"offsets\" IF EXISTS");
+    stmt.execute("CREATE TABLE \"test\".\"offsets\" (\"grp\" int, \"val\" double)");
+    List<Double> offsets = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      offsets.add((double) (i % 2));
+    }
+    offsets.add(1000.0);
+    for (int i = 0; i < offsets.size(); i++) {
+      stmt.execute(String.format(
+          "INSERT INTO \"test\".\"offsets\" VALUES (%d, %f)", i % 7, 1e9 + offsets.get(i)));
+    }
+    stmt.close();
+    double mean = 0;
+    for (double offset : offsets) {
+      mean += offset / offsets.size();
+    }
+    double variance = 0;
+    for (double offset : offsets) {
+      variance += (offset - mean) * (offset - mean) / offsets.size();
+    }
+    
+    DbmsConnection conn = JdbcConnection.create(h2conn);
+    DbmsQueryResult moments = 
+        (DbmsQueryResult) runStatisticsNode(conn, 1, "PercentilesAndCountNode");
+    moments.next();
+    assertEquals(1e9 + mean, moments.getDouble(0), 1e-4);
+    assertEquals(Math.sqrt(variance), moments.getDouble(1), 1e-4);
+    assertEquals(1001, moments.getLong(2));
+    
+    // only the value of 1e9 + 1000 is outside avg \pm 3.09 * stddev.
+    DbmsQueryResult outlierSize = 
+        (DbmsQueryResult) runStatisticsNode(conn, 3, "OutlierSizeNode");
+    outlierSize.next();
+    assertEquals(1, outlierSize.getLong(0));
+  }
+  
+  private Object runStatisticsNode(DbmsConnection conn, int index, String tokenKey) 
+      throws VerdictDBException {
+    FastConvergeScramblingMethod method = new FastConvergeScramblingMethod(100, "test", "grp");
+    List<ExecutableNodeBase> nodes = 
+        method.getStatisticsNode("test", "offsets", "columnMeta", "partitionMeta", "primaryMeta");
+    ExecutableNodeBase columnMetaDataNode = 
+        ColumnMetadataRetrievalNode.create("test", "offsets", "columnMeta");
+    nodes.get(0).subscribeTo(columnMetaDataNode, 100);
+    ExecutionTokenReader reader = 
+        ExecutablePlanRunner.getTokenReader(conn, new SimpleTreePlan(nodes.get(index)));
+    return reader.next().getValue(tokenKey);
+  }
+  
   @Test
   public void testGetTierExpressions() throws VerdictDBDbmsException {
     int blockSize = 10;
@@ -0,0 +1,118 @@
+package org.verdictdb.core.scrambling;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.ConstantColumn;
+import org.verdictdb.core.sqlobject.InsertIntoSelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.HiveSyntax;
+import org.verdictdb.sqlsyntax.ImpalaSyntax;
+import org.verdictdb.sqlsyntax.MysqlSyntax;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+public class ScrambleAppenderTest {
+
+  private List<String> scrambleColumns =
+      Arrays.asList("id", "price", "verdictdbtier", "verdictdbblock");
+
+  private ScrambleMeta createMeta(List<Double> cumulProb, String method, String hashColumn)
+      throws VerdictDBException {
+    Map<Integer, List<Double>> dist = new HashMap<>();
+    dist.put(0, cumulProb);
+    return new ScrambleMeta(
+        "newschema",
+        "sales_scrambled",
+        "oldschema",
+        "sales",
+        "verdictdbblock",
+        cumulProb.size(),
+        "verdictdbtier",
+        1,
+        dist,
+        method,
+        hashColumn);
+  }
+
+  @Test
+  public void testUniformAppendQuery() throws VerdictDBException {
+    ScrambleMeta meta = createMeta(Arrays.asList(0.5, 1.0), "uniform", null);
+    ScrambleAppender appender = new ScrambleAppender(meta, "oldschema", "new_sales");
+    appender.setCondition(
+        ColumnOp.greater(new BaseColumn("t", "id"), ConstantColumn.valueOf(1000)));
+    InsertIntoSelectQuery query = appender.createQuery(scrambleColumns);
+
+    String expected =
+        "insert into `newschema`.`sales_scrambled` "
+            + "select t.`id` as `id`, t.`price` as `price`, 0 as `verdictdbtier`, "
+            + "case when (rand() <= 0.5) then 0 else 1 end as `verdictdbblock` "
+            + "from `oldschema`.`new_sales` as t where t.`id` > 1000";
+    assertEquals(expected, QueryToSql.convert(new MysqlSyntax(), query));
+  }
+
+  @Test
+  public void testReducedAppendQuery() throws VerdictDBException {
+    ScrambleMeta meta = createMeta(Arrays.asList(0.25, 0.5), "uniform", null);
+    ScrambleAppender appender = new ScrambleAppender(meta, "oldschema", "sales");
+    appender.setPartitionColumns(Arrays.asList("verdictdbblock"));
+    InsertIntoSelectQuery query = appender.createQuery(scrambleColumns);
+
+    // the rows that would be in the blocks thrown away are filtered out.
+    String expected =
+        "insert into table `newschema`.`sales_scrambled` partition (`verdictdbblock`) "
+            + "select * from ("
+            + "select t.`id` as `id`, t.`price` as `price`, 0 as `verdictdbtier`, "
+            + "case when (rand() <= 0.25) then 0 when (rand() <= 0.3333333333333333) then 1 "
+            + "else 2 end as `verdictdbblock` "
+            + "from `oldschema`.`sales` as t) as tmp "
+            + "where tmp.`verdictdbblock` < 2";
+    assertEquals(expected, QueryToSql.convert(new HiveSyntax(), query));
+  }
+
+  @Test
+  public void testImpalaAppendQuery() throws VerdictDBException {
+    ScrambleMeta meta = createMeta(Arrays.asList(0.5, 1.0), "uniform", null);
+    ScrambleAppender appender = new ScrambleAppender(meta, "oldschema", "sales");
+    appender.setPartitionColumns(Arrays.asList("verdictdbblock"));
+    InsertIntoSelectQuery query = appender.createQuery(scrambleColumns);
+
+    // rand() is evaluated before the rows are dynamically partitioned.
+    String actual =
+        QueryToSql.convert(new ImpalaSyntax(), query)
+            .replaceAll("verdictdb_scrambling_temp_\\d+", "verdictdb_scrambling_temp")
+            .replaceAll("rand\\(unix_timestamp\\(\\)\\+\\d+\\)", "rand()");
+    String expected =
+        "create table `newschema`.`verdictdb_scrambling_temp` stored as parquet as "
+            + "select t.`id` as `id`, t.`price` as `price`, 0 as `verdictdbtier`, "
+            + "case when (rand() <= 0.5) then 0 else 1 end as `verdictdbblock` "
+            + "from `oldschema`.`sales` as t;"
+            + "insert into table `newschema`.`sales_scrambled` partition (`verdictdbblock`) "
+            + "select * from `newschema`.`verdictdb_scrambling_temp` as t;"
+            + "drop table `newschema`.`verdictdb_scrambling_temp`;";
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testHashAppendQuery() throws VerdictDBException {
+    ScrambleMeta meta = createMeta(Arrays.asList(0.25, 0.5), "hash", "id");
+    ScrambleAppender appender = new ScrambleAppender(meta, "oldschema", "sales");
+    InsertIntoSelectQuery query = appender.createQuery(scrambleColumns);
+
+    String expected =
+        "insert into `newschema`.`sales_scrambled` "
+            + "select * from ("
+            + "select t.`id` as `id`, t.`price` as `price`, 0 as `verdictdbtier`, "
+            + "cast(floor((conv(substr(md5(t.`id`), 1, 8), 16, 10) % 100000) / 100000 * 4) "
+            + "as unsigned) as `verdictdbblock` "
+            + "from `oldschema`.`sales` as t) as tmp "
+            + "where tmp.`verdictdbblock` < 2";
+    assertEquals(expected, QueryToSql.convert(new MysqlSyntax(), query));
+  }
+}
@@ -0,0 +1,93 @@
+package org.verdictdb.core.scrambling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.sqlobject.AliasedColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.ColumnOp;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.ImpalaSyntax;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+public class ScramblingChunkNodeTest {
+
+  private ExecutionInfoToken createSplitToken() {
+    SelectQuery select =
+        SelectQuery.create(
+            Arrays.<SelectItem>asList(
+                new AliasedColumn(new BaseColumn("t", "id"), "id"),
+                new AliasedColumn(ColumnOp.rand(), "verdictdbblock")),
+            new BaseTable("oldschema", "sales", "t"));
+    ExecutionInfoToken token = new ExecutionInfoToken();
+    token.setKeyValue("schemaName", "newschema");
+    token.setKeyValue("tableName", "sales_scrambled");
+    token.setKeyValue(ScramblingChunkNode.SCRAMBLING_QUERY_KEY, select);
+    token.setKeyValue(ScramblingChunkNode.CHUNK_COLUMN_KEY, new BaseColumn("t", "id"));
+    token.setKeyValue(
+        ScramblingChunkNode.CHUNK_SPLIT_KEY,
+        ScramblingChunkSplit.byIntegerRange(BigInteger.ONE, BigInteger.valueOf(100), 2));
+    token.setKeyValue(
+        ScramblingChunkNode.PARTITION_COLUMNS_KEY, Arrays.asList("verdictdbblock"));
+    token.setKeyValue(ScramblingChunkNode.COMPLETED_CHUNKS_KEY, new HashSet<>(Arrays.asList(1)));
+    return token;
+  }
+
+  @Test
+  public void testChunkIsStagedInItsOwnTable() throws VerdictDBException {
+    ScramblingChunkNode node = new ScramblingChunkNode(0, 2, "verdictdbblock");
+    String sql =
+        QueryToSql.convert(
+            new ImpalaSyntax(), node.createQuery(Arrays.asList(createSplitToken())));
+    assertTrue(
+        sql.startsWith(
+            "create table `newschema`.`sales_scrambled_verdictdbchunk0` stored as parquet as "
+                + "select t.`id` as `id`, rand("));
+    assertTrue(sql.endsWith("from `oldschema`.`sales` as t where t.`id` < 51"));
+  }
+
+  @Test
+  public void testStagedChunkIsSkipped() throws VerdictDBException {
+    ScramblingChunkNode node = new ScramblingChunkNode(1, 2, "verdictdbblock");
+    assertNull(node.createQuery(Arrays.asList(createSplitToken())));
+  }
+
+  @Test
+  public void testImpalaChunksAreInsertedSeparately() throws VerdictDBException {
+    String[] tempTables = new String[2];
+    for (int chunk = 0; chunk < 2; chunk++) {
+      ScramblingChunkMergeNode node = new ScramblingChunkMergeNode(chunk, 2, new AtomicInteger(0));
+      List<ExecutionInfoToken> tokens = Arrays.asList(createSplitToken());
+      String[] statements =
+          QueryToSql.convert(new ImpalaSyntax(), node.createQuery(tokens)).split(";");
+      assertEquals(3, statements.length);
+
+      String prefix = "create table `newschema`.`";
+      assertTrue(statements[0].startsWith(prefix));
+      tempTables[chunk] = statements[0].substring(prefix.length()).split("`")[0];
+      assertTrue(tempTables[chunk].endsWith("_chunk" + chunk));
+      assertTrue(
+          statements[0].endsWith(
+              "from `newschema`.`sales_scrambled_verdictdbchunk" + chunk + "` as t"));
+
+      assertEquals(
+          "insert into table `newschema`.`sales_scrambled` partition (`verdictdbblock`) "
+              + "select * from `newschema`.`" + tempTables[chunk] + "` as t",
+          statements[1]);
+      assertEquals("drop table `newschema`.`" + tempTables[chunk] + "`", statements[2]);
+    }
+    assertTrue(!tempTables[0].equals(tempTables[1]));
+  }
+}
@@ -0,0 +1,96 @@
+package org.verdictdb.core.scrambling;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.verdictdb.core.execplan.ExecutionInfoToken;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.BaseColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.HiveSyntax;
+import org.verdictdb.sqlwriter.QueryToSql;
+import org.verdictdb.sqlwriter.SelectQueryToSql;
+
+public class ScramblingChunkSplitTest {
+
+  private String predicateSql(ScramblingChunkSplit split, int chunk, int chunkCount)
+      throws VerdictDBException {
+    SelectQuery select = SelectQuery.create(new AsteriskColumn(), new BaseTable("s", "r", "t"));
+    select.addFilterByAnd(split.createPredicate(new BaseColumn("t", "c"), chunk, chunkCount));
+    String sql = new SelectQueryToSql(new HiveSyntax()).toSql(select);
+    return sql.substring(sql.indexOf(" where ") + " where ".length());
+  }
+
+  @Test
+  public void testIntegerRange() throws VerdictDBException {
+    ScramblingChunkSplit split =
+        ScramblingChunkSplit.byIntegerRange(BigInteger.valueOf(1), BigInteger.valueOf(1000), 4);
+    assertEquals(Arrays.asList("251", "501", "751"), split.getBoundaries());
+    assertEquals("t.`c` < 251", predicateSql(split, 0, 4));
+    assertEquals("(t.`c` >= 251) and (t.`c` < 501)", predicateSql(split, 1, 4));
+    assertEquals("(t.`c` >= 751) or t.`c` is null", predicateSql(split, 3, 4));
+  }
+
+  @Test
+  public void testIntegerRangeDoesNotOverflow() {
+    ScramblingChunkSplit split =
+        ScramblingChunkSplit.byIntegerRange(
+            BigInteger.valueOf(Long.MIN_VALUE), BigInteger.valueOf(Long.MAX_VALUE), 2);
+    assertEquals(Arrays.asList("0"), split.getBoundaries());
+  }
+
+  @Test
+  public void testPartitionValues() throws VerdictDBException {
+    ScramblingChunkSplit split =
+        ScramblingChunkSplit.byValues(
+            Arrays.asList("2018-01-01", "2018-01-02", "2018-01-03", "2018-01-04", "2018-01-05"),
+            false,
+            2);
+    assertEquals(Arrays.asList("2018-01-03"), split.getBoundaries());
+    assertEquals("t.`c` < '2018-01-03'", predicateSql(split, 0, 2));
+    assertEquals("(t.`c` >= '2018-01-03') or t.`c` is null", predicateSql(split, 1, 2));
+  }
+
+  @Test
+  public void testFewerPartitionsThanChunks() {
+    ScramblingChunkSplit split = ScramblingChunkSplit.byValues(Arrays.asList("1", "2"), true, 4);
+    assertEquals(ScramblingChunkSplit.NUMERIC_RANGE, split.getMethod());
+    assertEquals(Arrays.asList("1", "2", "2"), split.getBoundaries());
+  }
+
+  @Test
+  public void testValuesNotWrittenAsLiteralsAreSplitByHash() throws VerdictDBException {
+    ScramblingChunkSplit split =
+        ScramblingChunkSplit.byValues(Arrays.asList("a", "it's"), false, 2);
+    assertEquals(ScramblingChunkSplit.byHash(), split);
+    assertEquals(split, ScramblingChunkSplit.byValues(Arrays.<String>asList(), false, 2));
+  }
+
+  @Test
+  public void testPartitionsAreReadByGroupBy() throws VerdictDBException {
+    ExecutionInfoToken token = new ExecutionInfoToken();
+    token.setKeyValue(ScramblingChunkNode.CHUNK_COLUMN_KEY, new BaseColumn("vt", "dt"));
+    token.setKeyValue(
+        ScramblingChunkNode.CHUNK_SPLIT_SOURCE_KEY, ScramblingChunkSplitNode.SPLIT_BY_PARTITION);
+    ScramblingChunkSplitNode node =
+        new ScramblingChunkSplitNode("oldschema", "sales", 4, null, null);
+    assertEquals(
+        "select t.`dt` as `verdictdbchunkvalue` from `oldschema`.`sales` as t "
+            + "group by t.`dt` order by `verdictdbchunkvalue` asc",
+        QueryToSql.convert(new HiveSyntax(), node.createQuery(Arrays.asList(token))));
+  }
+
+  @Test
+  public void testSplitIsRecordedInProgress() {
+    ScramblingChunkSplit split =
+        ScramblingChunkSplit.byValues(Arrays.asList("a", "b", "c"), false, 2);
+    ScramblingProgress progress = new ScramblingProgress(null, 2, "c", split);
+    ScramblingProgress restored = ScramblingProgress.fromJsonString(progress.toJsonString());
+    assertEquals(split, restored.getChunkSplit());
+  }
+}
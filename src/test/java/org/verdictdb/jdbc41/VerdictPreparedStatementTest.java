@@ -0,0 +1,155 @@
+package org.verdictdb.jdbc41;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.VerdictContext;
+import org.verdictdb.commons.VerdictOption;
+import org.verdictdb.connection.JdbcConnection;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+
+public class VerdictPreparedStatementTest {
+
+  static final int rowCount = 100;
+
+  static String schema = "preparedtest";
+
+  static Connection conn;
+
+  static VerdictContext vc;
+
+  @BeforeClass
+  public static void setupH2Database() throws SQLException, VerdictDBException {
+    conn = DriverManager.getConnection("jdbc:h2:mem:preparedtest;DB_CLOSE_DELAY=-1", "", "");
+    Statement stmt = conn.createStatement();
+    stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS \"%s\"", schema));
+    stmt.execute(
+        String.format(
+            "CREATE SCHEMA IF NOT EXISTS \"%s\"", VerdictOption.getDefaultTempSchemaName()));
+    stmt.execute(
+        String.format(
+            "CREATE TABLE \"%s\".\"items\" AS SELECT x AS \"id\", CONCAT('item', x) AS \"name\" "
+                + "FROM SYSTEM_RANGE(1, %d)",
+            schema, rowCount));
+    stmt.close();
+    vc = new VerdictContext(new JdbcConnection(conn, new H2Syntax()));
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    Statement stmt = conn.createStatement();
+    stmt.execute(String.format("DROP SCHEMA IF EXISTS \"%s\" CASCADE", schema));
+    stmt.execute(
+        String.format(
+            "DROP SCHEMA IF EXISTS \"%s\" CASCADE", VerdictOption.getDefaultTempSchemaName()));
+    stmt.close();
+    conn.close();
+  }
+
+  private long countOf(VerdictPreparedStatement pstmt) throws SQLException {
+    ResultSet rs = pstmt.executeQuery();
+    assertTrue(rs.next());
+    return rs.getLong(1);
+  }
+
+  @Test
+  public void testReusePlanAcrossValues() throws SQLException {
+    String sql =
+        String.format(
+            "select count(*) from \"%s\".\"items\" where \"id\" <= ? and \"name\" <> ?", schema);
+    VerdictPreparedStatement pstmt =
+        new VerdictPreparedStatement(sql, new VerdictStatement(null, vc));
+    long missCount = vc.getPlanCache().getMissCount();
+    long hitCount = vc.getPlanCache().getHitCount();
+
+    pstmt.setInt(1, 10);
+    pstmt.setString(2, "item3");
+    assertEquals(9, countOf(pstmt));
+
+    pstmt.setLong(1, 50);
+    pstmt.setString(2, "it'em");
+    assertEquals(50, countOf(pstmt));
+
+    pstmt.setObject(1, 20);
+    assertEquals(20, countOf(pstmt));
+
+    assertEquals(missCount + 1, vc.getPlanCache().getMissCount());
+    assertEquals(hitCount + 2, vc.getPlanCache().getHitCount());
+  }
+
+  @Test
+  public void testMarkerNotAllowedForPlanning() throws SQLException {
+    // a marker in the limit clause is written into the query before it is parsed.
+    String sql =
+        String.format(
+            "select \"id\" from \"%s\".\"items\" where \"name\" = ? order by \"id\" limit ?",
+            schema);
+    VerdictPreparedStatement pstmt =
+        new VerdictPreparedStatement(sql, new VerdictStatement(null, vc));
+    pstmt.setString(1, "item7");
+    pstmt.setInt(2, 5);
+    ResultSet rs = pstmt.executeQuery();
+    assertTrue(rs.next());
+    assertEquals(7, rs.getLong(1));
+    assertFalse(rs.next());
+  }
+
+  @Test(expected = SQLException.class)
+  public void testMissingParameter() throws SQLException {
+    String sql = String.format("select count(*) from \"%s\".\"items\" where \"id\" < ?", schema);
+    VerdictPreparedStatement pstmt =
+        new VerdictPreparedStatement(sql, new VerdictStatement(null, vc));
+    pstmt.setInt(1, 3);
+    pstmt.clearParameters();
+    pstmt.executeQuery();
+  }
+
+  @Test(expected = SQLException.class)
+  public void testParameterIndexOutOfRange() throws SQLException {
+    String sql = String.format("select count(*) from \"%s\".\"items\" where \"id\" < ?", schema);
+    VerdictPreparedStatement pstmt =
+        new VerdictPreparedStatement(sql, new VerdictStatement(null, vc));
+    pstmt.setInt(2, 3);
+  }
+
+  @Test
+  public void testBackslashInStringParameter() throws SQLException {
+    String sql = String.format("select count(*) from \"%s\".\"items\" where \"name\" = ?", schema);
+    VerdictPreparedStatement pstmt =
+        new VerdictPreparedStatement(sql, new VerdictStatement(null, vc));
+    pstmt.setString(1, "x\\' OR 1=1 -- ");
+    assertEquals(0, countOf(pstmt));
+
+    pstmt.setString(1, "item\\");
+    assertEquals(0, countOf(pstmt));
+  }
+
+  @Test(expected = SQLException.class)
+  public void testNaNParameter() throws SQLException {
+    String sql = String.format("select count(*) from \"%s\".\"items\" where \"id\" < ?", schema);
+    VerdictPreparedStatement pstmt =
+        new VerdictPreparedStatement(sql, new VerdictStatement(null, vc));
+    pstmt.setDouble(1, Double.NaN);
+  }
+
+  @Test
+  public void testObjectParameterWithTargetType() throws SQLException {
+    String sql = String.format("select count(*) from \"%s\".\"items\" where \"id\" <= ?", schema);
+    VerdictPreparedStatement pstmt =
+        new VerdictPreparedStatement(sql, new VerdictStatement(null, vc));
+    pstmt.setObject(1, "30", Types.INTEGER);
+    assertEquals(30, countOf(pstmt));
+  }
+}
@@ -0,0 +1,233 @@
+package org.verdictdb.sqlreader;
+
+import static java.sql.Types.BIGINT;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.verdictdb.connection.StaticMetaData;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.H2Syntax;
+import org.verdictdb.sqlwriter.QueryToSql;
+
+/** Standardizes TPC-H queries on many threads at the same time. */
+public class RelationStandardizerConcurrencyTest {
+
+  static final int threadCount = 8;
+
+  static final int repeatCount = 50;
+
+  static StaticMetaData meta = new StaticMetaData();
+
+  static List<String> queries = new ArrayList<>();
+
+  @BeforeClass
+  public static void setupMetaData() {
+    meta.setDefaultSchema("tpch");
+    addTable("nation", "n_nationkey", "n_name", "n_regionkey", "n_comment");
+    addTable("region", "r_regionkey", "r_name", "r_comment");
+    addTable(
+        "part",
+        "p_partkey",
+        "p_name",
+        "p_brand",
+        "p_mfgr",
+        "p_type",
+        "p_size",
+        "p_container",
+        "p_retailprice",
+        "p_comment");
+    addTable(
+        "supplier",
+        "s_suppkey",
+        "s_name",
+        "s_address",
+        "s_nationkey",
+        "s_phone",
+        "s_acctbal",
+        "s_comment");
+    addTable(
+        "partsupp", "ps_partkey", "ps_suppkey", "ps_availqty", "ps_supplycost", "ps_comment");
+    addTable(
+        "customer",
+        "c_custkey",
+        "c_name",
+        "c_address",
+        "c_nationkey",
+        "c_phone",
+        "c_acctbal",
+        "c_mktsegment",
+        "c_comment");
+    addTable(
+        "orders",
+        "o_orderkey",
+        "o_custkey",
+        "o_orderstatus",
+        "o_totalprice",
+        "o_orderdate",
+        "o_orderpriority",
+        "o_clerk",
+        "o_shippriority",
+        "o_comment");
+    addTable(
+        "lineitem",
+        "l_orderkey",
+        "l_partkey",
+        "l_suppkey",
+        "l_linenumber",
+        "l_quantity",
+        "l_extendedprice",
+        "l_discount",
+        "l_tax",
+        "l_returnflag",
+        "l_linestatus",
+        "l_shipdate",
+        "l_commitdate",
+        "l_receiptdate",
+        "l_shipinstruct",
+        "l_shipmode",
+        "l_comment");
+
+    // Q1
+    queries.add(
+        "select l_returnflag, l_linestatus, sum(l_quantity) as sum_qty, "
+            + "sum(l_extendedprice * (1 - l_discount)) as sum_disc_price, "
+            + "avg(l_discount) as avg_disc, count(*) as count_order "
+            + "from lineitem "
+            + "where l_shipdate <= date '1998-12-01' "
+            + "group by l_returnflag, l_linestatus "
+            + "order by l_returnflag, l_linestatus");
+    // Q3
+    queries.add(
+        "select l_orderkey, sum(l_extendedprice * (1 - l_discount)) as revenue, "
+            + "o_orderdate, o_shippriority "
+            + "from customer, orders, lineitem "
+            + "where c_mktsegment = 'BUILDING' and c_custkey = o_custkey "
+            + "and l_orderkey = o_orderkey and o_orderdate < date '1995-03-15' "
+            + "group by l_orderkey, o_orderdate, o_shippriority "
+            + "order by revenue desc, o_orderdate "
+            + "limit 10");
+    // Q5
+    queries.add(
+        "select n_name, sum(l_extendedprice * (1 - l_discount)) as revenue "
+            + "from customer, orders, lineitem, supplier, nation, region "
+            + "where c_custkey = o_custkey and l_orderkey = o_orderkey "
+            + "and l_suppkey = s_suppkey and c_nationkey = s_nationkey "
+            + "and s_nationkey = n_nationkey and n_regionkey = r_regionkey "
+            + "and r_name = 'ASIA' "
+            + "group by n_name "
+            + "order by revenue desc");
+    // Q13
+    queries.add(
+        "select c_count, count(*) as custdist "
+            + "from (select c_custkey, count(o_orderkey) as c_count "
+            + "from customer left outer join orders on c_custkey = o_custkey "
+            + "group by c_custkey) as c_orders "
+            + "group by c_count "
+            + "order by custdist desc, c_count desc");
+    // Q18
+    queries.add(
+        "select c_name, c_custkey, o_orderkey, o_orderdate, o_totalprice, sum(l_quantity) "
+            + "from customer, orders, lineitem "
+            + "where o_orderkey in (select l_orderkey from lineitem "
+            + "group by l_orderkey having sum(l_quantity) > 300) "
+            + "and c_custkey = o_custkey and o_orderkey = l_orderkey "
+            + "group by c_name, c_custkey, o_orderkey, o_orderdate, o_totalprice "
+            + "order by o_totalprice desc, o_orderdate "
+            + "limit 100");
+    // Q20
+    queries.add(
+        "select s_name, s_address "
+            + "from supplier, nation "
+            + "where s_suppkey in (select ps_suppkey from partsupp, "
+            + "(select l_partkey agg_partkey, l_suppkey agg_suppkey, "
+            + "0.5 * sum(l_quantity) AS agg_quantity "
+            + "from lineitem where l_shipdate >= date '1994-01-01' "
+            + "group by l_partkey, l_suppkey) agg_lineitem "
+            + "where agg_partkey = ps_partkey and agg_suppkey = ps_suppkey "
+            + "and ps_partkey in (select p_partkey from part where p_name like 'forest%') "
+            + "and ps_availqty > agg_quantity) "
+            + "and s_nationkey = n_nationkey and n_name = 'CANADA' "
+            + "order by s_name");
+  }
+
+  private static void addTable(String table, String... columns) {
+    List<Pair<String, Integer>> arr = new ArrayList<>();
+    for (String column : columns) {
+      arr.add(new ImmutablePair<>(column, BIGINT));
+    }
+    meta.addTableData(new StaticMetaData.TableInfo("tpch", table), arr);
+  }
+
+  private static String standardize(String sql) throws VerdictDBException {
+    SelectQuery query = NonValidatingSQLParser.toSelectQuery(sql);
+    query = RelationStandardizer.standardizeSelectQuery(query, meta, new H2Syntax());
+    return QueryToSql.convert(new H2Syntax(), query);
+  }
+
+  @Test
+  public void testEachQueryHasItsOwnAliases() throws VerdictDBException {
+    // the aliases of a query do not depend on the queries standardized before.
+    String first = standardize(queries.get(1));
+    standardize(queries.get(0));
+    assertEquals(first, standardize(queries.get(1)));
+
+    SelectQuery query = NonValidatingSQLParser.toSelectQuery(queries.get(1));
+    query = RelationStandardizer.standardizeSelectQuery(query, meta, new H2Syntax());
+    assertEquals("vt1", ((BaseTable) query.getFromList().get(0)).getAliasName().get());
+  }
+
+  @Test
+  public void testConcurrentStandardization() throws Exception {
+    final List<String> expected = new ArrayList<>();
+    for (String sql : queries) {
+      expected.add(standardize(sql));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Future<List<String>>> futures = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      final int offset = t;
+      futures.add(
+          executor.submit(
+              new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                  start.await();
+                  List<String> mismatches = new ArrayList<>();
+                  for (int i = 0; i < repeatCount; i++) {
+                    // each thread visits the queries in a different order.
+                    int index = (offset + i) % queries.size();
+                    String actual = standardize(queries.get(index));
+                    if (!actual.equals(expected.get(index))) {
+                      mismatches.add(actual);
+                    }
+                  }
+                  return mismatches;
+                }
+              }));
+    }
+    start.countDown();
+    try {
+      for (Future<List<String>> future : futures) {
+        assertEquals(Arrays.<String>asList(), future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
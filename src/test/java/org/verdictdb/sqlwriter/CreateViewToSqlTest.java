@@ -0,0 +1,39 @@
+package org.verdictdb.sqlwriter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.verdictdb.core.sqlobject.AsteriskColumn;
+import org.verdictdb.core.sqlobject.BaseTable;
+import org.verdictdb.core.sqlobject.CreateViewQuery;
+import org.verdictdb.core.sqlobject.DropTableQuery;
+import org.verdictdb.core.sqlobject.SelectItem;
+import org.verdictdb.core.sqlobject.SelectQuery;
+import org.verdictdb.exception.VerdictDBException;
+import org.verdictdb.sqlsyntax.PostgresqlSyntax;
+import org.verdictdb.sqlsyntax.PrestoSyntax;
+
+public class CreateViewToSqlTest {
+
+  @Test
+  public void createViewSelectAllTest() throws VerdictDBException {
+    BaseTable base = new BaseTable("myschema", "mytable", "t");
+    SelectQuery relation =
+        SelectQuery.create(Arrays.<SelectItem>asList(new AsteriskColumn()), base);
+    CreateViewQuery create = new CreateViewQuery("newschema", "newview", relation);
+    String expected =
+        "create view \"newschema\".\"newview\" as select * from \"myschema\".\"mytable\" as t";
+    assertEquals(expected, QueryToSql.convert(new PrestoSyntax(), create));
+  }
+
+  @Test
+  public void dropViewTest() throws VerdictDBException {
+    DropTableQuery drop = new DropTableQuery("myschema", "myview");
+    drop.setView(true);
+    drop.setIfExists(true);
+    String expected = "drop view if exists \"myschema\".\"myview\"";
+    assertEquals(expected, QueryToSql.convert(new PostgresqlSyntax(), drop));
+  }
+}